@@ -0,0 +1,354 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import wyal.lang.WyalFile;
+import wybs.util.StdProject;
+import wyc.Activator;
+import wyc.check.AmbiguousCoercionCheck;
+import wyc.check.DefiniteAssignmentCheck;
+import wyc.check.DefiniteUnassignmentCheck;
+import wyc.check.FlowTypeCheck;
+import wyc.check.FunctionalCheck;
+import wyc.check.StaticVariableCheck;
+import wyc.io.WhileyFileLexer;
+import wyc.io.WhileyFileParser;
+import wyc.lang.WhileyFile;
+import wyc.task.CompileTask;
+import wyc.util.TestUtils;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+import wyil.stage.MoveAnalysis;
+import wyil.stage.RecursiveTypeAnalysis;
+import wyil.stage.VerificationConditionGenerator;
+
+/**
+ * <p>
+ * Measures the time taken by each stage of the compiler pipeline over a corpus
+ * of Whiley source files (by default, <code>tests/valid</code>). Each benchmark
+ * runs a single stage over every file in the corpus, using inputs which have
+ * been brought up to the start of that stage beforehand. For example, the
+ * <code>typeCheck</code> benchmark is given freshly parsed files, whilst the
+ * benchmarks for the checking passes are given freshly parsed and type checked
+ * files.
+ * </p>
+ * <p>
+ * Only those files in the corpus which compile successfully are included. This
+ * is determined once, by compiling the corpus in a temporary directory. This
+ * also produces the WyIL files needed to resolve names across modules.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompilerBenchmark {
+
+	// ========================================================================
+	// Front End
+	// ========================================================================
+
+	@Benchmark
+	public void lex(Corpus corpus, Blackhole bh) {
+		for (String text : corpus.texts) {
+			bh.consume(new WhileyFileLexer(text).scan());
+		}
+	}
+
+	@Benchmark
+	public void lexPacked(Corpus corpus, Blackhole bh) {
+		for (String text : corpus.texts) {
+			bh.consume(new WhileyFileLexer(text).scanPacked());
+		}
+	}
+
+	@Benchmark
+	public void parse(Corpus corpus, Blackhole bh) {
+		for (int i = 0; i != corpus.sources.size(); ++i) {
+			WhileyFile wf = new WhileyFile(corpus.sources.get(i));
+			bh.consume(new WhileyFileParser(wf, corpus.tokens.get(i)).read());
+		}
+	}
+
+	@Benchmark
+	public void typeCheck(Parsed input) {
+		new FlowTypeCheck(input.task).check(input.files);
+	}
+
+	// ========================================================================
+	// Checking Passes
+	// ========================================================================
+
+	@Benchmark
+	public void definiteAssignment(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new DefiniteAssignmentCheck().check(wf);
+		}
+	}
+
+	@Benchmark
+	public void definiteUnassignment(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new DefiniteUnassignmentCheck(input.task).check(wf);
+		}
+	}
+
+	@Benchmark
+	public void functional(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new FunctionalCheck(input.task).check(wf);
+		}
+	}
+
+	@Benchmark
+	public void staticVariable(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new StaticVariableCheck(input.task).check(wf);
+		}
+	}
+
+	@Benchmark
+	public void ambiguousCoercion(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new AmbiguousCoercionCheck(input.task).check(wf);
+		}
+	}
+
+	@Benchmark
+	public void moveAnalysis(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new MoveAnalysis(input.task).apply(wf);
+		}
+	}
+
+	@Benchmark
+	public void recursiveTypeAnalysis(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new RecursiveTypeAnalysis(input.task).apply(wf);
+		}
+	}
+
+	@Benchmark
+	public void sequentialPasses(Typed input) {
+		for (WhileyFile wf : input.files) {
+			new DefiniteAssignmentCheck().check(wf);
+			new DefiniteUnassignmentCheck(input.task).check(wf);
+			new FunctionalCheck(input.task).check(wf);
+			new StaticVariableCheck(input.task).check(wf);
+			new AmbiguousCoercionCheck(input.task).check(wf);
+			new MoveAnalysis(input.task).apply(wf);
+			new RecursiveTypeAnalysis(input.task).apply(wf);
+		}
+	}
+
+	// ========================================================================
+	// Verification Condition Generation
+	// ========================================================================
+
+	@Benchmark
+	public void generateVerificationConditions(Checked input, Blackhole bh) {
+		Corpus corpus = input.corpus;
+		for (int i = 0; i != input.files.size(); ++i) {
+			WyalFile target = new WyalFile(corpus.targets.get(i));
+			VerificationConditionGenerator vcg = new VerificationConditionGenerator(target,
+					input.task.getNameResolver());
+			bh.consume(vcg.translate(input.files.get(i)));
+		}
+	}
+
+	// ========================================================================
+	// States
+	// ========================================================================
+
+	/**
+	 * The set of source files being compiled, along with their contents and
+	 * tokens.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class Corpus {
+		/**
+		 * The directory containing the Whiley source files to compile.
+		 */
+		@Param({ "tests/valid" })
+		public String corpus;
+
+		private File dir;
+		private StdProject project;
+		private final List<Path.Entry<WhileyFile>> sources = new ArrayList<>();
+		private final List<Path.Entry<WyalFile>> targets = new ArrayList<>();
+		private final List<String> texts = new ArrayList<>();
+		private final List<List<WhileyFileLexer.Token>> tokens = new ArrayList<>();
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			dir = Files.createTempDirectory("wybench").toFile();
+			ArrayList<String> names = new ArrayList<>();
+			for (File f : new File(corpus).listFiles()) {
+				String name = f.getName();
+				if (name.endsWith(".whiley")) {
+					Files.copy(f.toPath(), new File(dir, name).toPath());
+					names.add(name.substring(0, name.length() - ".whiley".length()));
+				}
+			}
+			// Compile every file, thereby identifying those which compile
+			// successfully and producing the binary files they depend upon.
+			ArrayList<String> valid = new ArrayList<>();
+			for (String name : names) {
+				if (TestUtils.compile(dir, false, name).first()) {
+					valid.add(name);
+				}
+			}
+			DirectoryRoot root = new DirectoryRoot(dir, new Activator.Registry());
+			project = new StdProject(Arrays.asList(root));
+			for (String name : valid) {
+				Path.ID id = Trie.fromString(name);
+				Path.Entry<WhileyFile> source = root.get(id, WhileyFile.ContentType);
+				String text = new String(Files.readAllBytes(new File(dir, name + ".whiley").toPath()),
+						StandardCharsets.UTF_8);
+				sources.add(source);
+				targets.add(root.get(id, WyalFile.ContentType));
+				texts.add(text);
+				tokens.add(new WhileyFileLexer(text).scan());
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void teardown() {
+			delete(dir);
+		}
+
+		/**
+		 * Construct a fresh compile task, such that no caches are shared
+		 * between invocations.
+		 *
+		 * @return
+		 */
+		public CompileTask createTask() {
+			return new CompileTask(project);
+		}
+
+		/**
+		 * Parse every file in the corpus afresh.
+		 *
+		 * @return
+		 */
+		public List<WhileyFile> parse() {
+			ArrayList<WhileyFile> files = new ArrayList<>();
+			for (int i = 0; i != sources.size(); ++i) {
+				WhileyFile wf = new WhileyFile(sources.get(i));
+				files.add(new WhileyFileParser(wf, new WhileyFileLexer(texts.get(i)).scan()).read());
+			}
+			return files;
+		}
+
+		private static void delete(File file) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				for (File child : children) {
+					delete(child);
+				}
+			}
+			file.delete();
+		}
+	}
+
+	/**
+	 * Provides freshly parsed files for each invocation.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	@State(Scope.Thread)
+	public static class Parsed {
+		private CompileTask task;
+		private List<WhileyFile> files;
+
+		@Setup(Level.Invocation)
+		public void setup(Corpus corpus) {
+			task = corpus.createTask();
+			files = corpus.parse();
+		}
+	}
+
+	/**
+	 * Provides freshly parsed and type checked files for each invocation.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	@State(Scope.Thread)
+	public static class Typed {
+		private CompileTask task;
+		private List<WhileyFile> files;
+
+		@Setup(Level.Invocation)
+		public void setup(Corpus corpus) {
+			task = corpus.createTask();
+			files = corpus.parse();
+			new FlowTypeCheck(task).check(files);
+		}
+	}
+
+	/**
+	 * Provides files which have been freshly parsed, type checked and passed
+	 * through every checking pass for each invocation. This corresponds to the
+	 * WyIL files given to the verification condition generator.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	@State(Scope.Thread)
+	public static class Checked {
+		private Corpus corpus;
+		private CompileTask task;
+		private List<WhileyFile> files;
+
+		@Setup(Level.Invocation)
+		public void setup(Corpus corpus) {
+			this.corpus = corpus;
+			task = corpus.createTask();
+			files = corpus.parse();
+			new FlowTypeCheck(task).check(files);
+			for (WhileyFile wf : files) {
+				new DefiniteAssignmentCheck().check(wf);
+				new DefiniteUnassignmentCheck(task).check(wf);
+				new FunctionalCheck(task).check(wf);
+				new StaticVariableCheck(task).check(wf);
+				new AmbiguousCoercionCheck(task).check(wf);
+				new MoveAnalysis(task).apply(wf);
+				new RecursiveTypeAnalysis(task).apply(wf);
+			}
+		}
+	}
+}
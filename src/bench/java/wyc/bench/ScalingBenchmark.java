@@ -0,0 +1,142 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import wybs.util.StdBuildGraph;
+import wybs.util.StdProject;
+import wyc.Activator;
+import wyc.lang.WhileyFile;
+import wyc.task.CompileTask;
+import wyc.task.Wyil2WyalBuilder;
+import wyc.testing.ProgramGenerator;
+import wyc.util.TestUtils;
+import wycc.util.Pair;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * <p>
+ * Measures how the time taken to compile a project, and to generate its
+ * verification conditions, grows with the size of the project. Projects are
+ * generated (see {@link ProgramGenerator}) with an increasing number of
+ * modules, each of a fixed size, such that the import graph deepens as the
+ * project grows.
+ * </p>
+ * <p>
+ * The memory used is measured using the GC profiler of JMH, which reports the
+ * bytes allocated per compilation. The results for each size can be written
+ * in CSV form for charting, for example:
+ * </p>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-prof gc -rf csv -rff scaling.csv ScalingBenchmark"
+ * </pre>
+ *
+ * @author David J. Pearce
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScalingBenchmark {
+
+	@Benchmark
+	public Object compile(Project project) throws IOException {
+		CompileTask task = new CompileTask(project.project);
+		return task.build(project.sources, new StdBuildGraph());
+	}
+
+	@Benchmark
+	public Object generateVerificationConditions(Project project) throws IOException {
+		Wyil2WyalBuilder builder = new Wyil2WyalBuilder(project.project);
+		return builder.build(project.binaries, new StdBuildGraph());
+	}
+
+	/**
+	 * A generated project, along with the WyIL files compiled from it.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class Project {
+		/**
+		 * The number of modules in the project.
+		 */
+		@Param({ "4", "8", "16", "32", "64" })
+		public int modules;
+
+		/**
+		 * The number of long functions in each module.
+		 */
+		@Param({ "8" })
+		public int functions;
+
+		@Param({ "1" })
+		public long seed;
+
+		private File dir;
+		private StdProject project;
+		private final List<Pair<Path.Entry<?>, Path.Root>> sources = new ArrayList<>();
+		private final List<Pair<Path.Entry<?>, Path.Root>> binaries = new ArrayList<>();
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			dir = Files.createTempDirectory("wybench").toFile();
+			List<String> names = new ProgramGenerator(seed, modules, functions, 3, 8).write(dir);
+			// Compile the project once, thereby checking it compiles and
+			// producing the binary files from which verification conditions
+			// are generated.
+			Pair<Boolean, String> result = TestUtils.compile(dir, false, names.toArray(new String[names.size()]));
+			if (!result.first()) {
+				throw new IllegalStateException(result.second());
+			}
+			DirectoryRoot root = new DirectoryRoot(dir, new Activator.Registry());
+			project = new StdProject(Arrays.asList(root));
+			for (String name : names) {
+				Path.ID id = Trie.fromString(name);
+				sources.add(new Pair<>(root.get(id, WhileyFile.ContentType), root));
+				binaries.add(new Pair<>(root.get(id, WhileyFile.BinaryContentType), root));
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void teardown() {
+			delete(dir);
+		}
+
+		private static void delete(File file) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				for (File child : children) {
+					delete(child);
+				}
+			}
+			file.delete();
+		}
+	}
+}
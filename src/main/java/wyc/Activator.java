@@ -24,7 +24,9 @@ import wyfs.util.Trie;
 import wyil.interpreter.ConcreteSemantics.RValue;
 import wyil.interpreter.Interpreter;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.regex.Pattern;
 
 import wyal.lang.WyalFile;
 import wybs.lang.Build;
@@ -36,18 +38,56 @@ import wybs.util.AbstractCompilationUnit.Value;
 import wyc.lang.WhileyFile;
 import wyc.lang.WhileyFile.Type;
 import wyc.task.CompileTask;
+import wyc.task.Wyil2WyalBuilder;
+import wyc.util.BinaryCache;
+import wyc.util.Budget;
+import wyc.util.Profiler;
 
 public class Activator implements Module.Activator {
 
 	public static Trie SOURCE_CONFIG_OPTION = Trie.fromString("build/whiley/source");
 	public static Trie TARGET_CONFIG_OPTION = Trie.fromString("build/whiley/target");
+	public static Trie WORKERS_CONFIG_OPTION = Trie.fromString("build/whiley/workers");
+	public static Trie ENGINE_CONFIG_OPTION = Trie.fromString("build/whiley/engine");
+	public static Trie PROFILE_CONFIG_OPTION = Trie.fromString("build/whiley/profile");
+	public static Trie CACHE_CONFIG_OPTION = Trie.fromString("build/whiley/cache");
+	public static Trie LOWMEMORY_CONFIG_OPTION = Trie.fromString("build/whiley/lowmemory");
+	public static Trie SLOWEST_CONFIG_OPTION = Trie.fromString("build/whiley/slowest");
+	public static Trie BUDGET_CONFIG_OPTION = Trie.fromString("build/whiley/budget");
+	public static Trie WYAL_SOURCE_CONFIG_OPTION = Trie.fromString("build/wyal/source");
+	public static Trie WYAL_TARGET_CONFIG_OPTION = Trie.fromString("build/wyal/target");
+	public static Trie WYAL_PROFILE_CONFIG_OPTION = Trie.fromString("build/wyal/profile");
+	public static Trie WYAL_SLOWEST_CONFIG_OPTION = Trie.fromString("build/wyal/slowest");
+	public static Trie WYAL_BUDGET_CONFIG_OPTION = Trie.fromString("build/wyal/budget");
 	private static Value.UTF8 SOURCE_DEFAULT = new Value.UTF8("src".getBytes());
 	private static Value.UTF8 TARGET_DEFAULT = new Value.UTF8("bin".getBytes());
+	private static Value.Int WORKERS_DEFAULT = new Value.Int(Runtime.getRuntime().availableProcessors());
+	private static Value.UTF8 ENGINE_DEFAULT = new Value.UTF8("closure".getBytes());
+	private static Pattern ENGINE_PATTERN = Pattern.compile("tree|closure");
+	private static Value.UTF8 PROFILE_DEFAULT = new Value.UTF8("".getBytes());
+	private static Value.UTF8 CACHE_DEFAULT = new Value.UTF8("".getBytes());
+	private static Value.Bool LOWMEMORY_DEFAULT = new Value.Bool(false);
+	private static Value.Int SLOWEST_DEFAULT = new Value.Int(0);
+	private static Value.Int BUDGET_DEFAULT = new Value.Int(0);
 
 	public static Build.Platform WHILEY_PLATFORM = new Build.Platform() {
 		private Trie source;
 		// Specify directory where generated WyIL files are dumped.
 		private Trie target;
+		// Specify number of worker threads used for compilation.
+		private int workers = WORKERS_DEFAULT.get().intValue();
+		// Specify engine used for executing whiley programs.
+		private Interpreter.Engine engine = Interpreter.Engine.CLOSURE;
+		// Specify file to which a compilation profile is written (if any).
+		private String profile = "";
+		// Specify directory in which compiled WyIL files are cached (if any).
+		private String cache = "";
+		// Specify whether modules are released from memory once compiled.
+		private boolean lowMemory = false;
+		// Specify number of slowest declarations reported (if any).
+		private int slowest = 0;
+		// Specify time in milliseconds allowed for each declaration (if limited).
+		private int budget = 0;
 		//
 		@Override
 		public String getName() {
@@ -58,7 +98,14 @@ public class Activator implements Module.Activator {
 		public Configuration.Schema getConfigurationSchema() {
 			return Configuration.fromArray(
 					Configuration.UNBOUND_STRING(SOURCE_CONFIG_OPTION, "Specify location for whiley source files", SOURCE_DEFAULT),
-					Configuration.UNBOUND_STRING(TARGET_CONFIG_OPTION, "Specify location for generated wyil files", TARGET_DEFAULT));
+					Configuration.UNBOUND_STRING(TARGET_CONFIG_OPTION, "Specify location for generated wyil files", TARGET_DEFAULT),
+					Configuration.BOUND_INTEGER(WORKERS_CONFIG_OPTION, "Specify number of worker threads used for compilation", WORKERS_DEFAULT, 1),
+					Configuration.REGEX_STRING(ENGINE_CONFIG_OPTION, "Specify engine used for executing whiley programs (tree or closure)", ENGINE_DEFAULT, ENGINE_PATTERN),
+					Configuration.UNBOUND_STRING(PROFILE_CONFIG_OPTION, "Specify file to which a compilation profile is written (json or csv)", PROFILE_DEFAULT),
+					Configuration.UNBOUND_STRING(CACHE_CONFIG_OPTION, "Specify directory in which compiled wyil files are cached", CACHE_DEFAULT),
+					Configuration.UNBOUND_BOOLEAN(LOWMEMORY_CONFIG_OPTION, "Specify whether modules are released from memory once compiled", LOWMEMORY_DEFAULT),
+					Configuration.BOUND_INTEGER(SLOWEST_CONFIG_OPTION, "Specify number of slowest declarations to report (0 for none)", SLOWEST_DEFAULT, 0),
+					Configuration.BOUND_INTEGER(BUDGET_CONFIG_OPTION, "Specify time in milliseconds allowed for each declaration in each phase (0 for unlimited)", BUDGET_DEFAULT, 0));
 		}
 
 		@Override
@@ -66,11 +113,30 @@ public class Activator implements Module.Activator {
 			// Extract source path
 			this.source = Trie.fromString(configuration.get(Value.UTF8.class, SOURCE_CONFIG_OPTION).unwrap());
 			this.target = Trie.fromString(configuration.get(Value.UTF8.class, TARGET_CONFIG_OPTION).unwrap());
+			this.workers = configuration.get(Value.Int.class, WORKERS_CONFIG_OPTION).unwrap().intValue();
+			String engine = configuration.get(Value.UTF8.class, ENGINE_CONFIG_OPTION).unwrap();
+			this.engine = Interpreter.Engine.valueOf(engine.toUpperCase());
+			this.profile = configuration.get(Value.UTF8.class, PROFILE_CONFIG_OPTION).unwrap();
+			this.cache = configuration.get(Value.UTF8.class, CACHE_CONFIG_OPTION).unwrap();
+			this.lowMemory = configuration.get(Value.Bool.class, LOWMEMORY_CONFIG_OPTION).unwrap();
+			this.slowest = configuration.get(Value.Int.class, SLOWEST_CONFIG_OPTION).unwrap().intValue();
+			this.budget = configuration.get(Value.Int.class, BUDGET_CONFIG_OPTION).unwrap().intValue();
 		}
 
 		@Override
 		public Task initialise(Build.Project project) {
-			return new CompileTask(project);
+			CompileTask task = new CompileTask(project);
+			task.setParallelism(workers);
+			task.setLowMemory(lowMemory);
+			task.setBudget(new Budget(budget));
+			if (!profile.isEmpty() || slowest > 0) {
+				File output = profile.isEmpty() ? null : new File(profile);
+				task.setProfiler(new Profiler(output, System.err, slowest));
+			}
+			if (!cache.isEmpty()) {
+				task.setBinaryCache(new BinaryCache(new File(cache), BinaryCache.getCompilerVersion()));
+			}
+			return task;
 		}
 
 		@Override
@@ -108,7 +174,7 @@ public class Activator implements Module.Activator {
 			Type.Method sig = new Type.Method(new Tuple<>(new Type[0]), new Tuple<>(), new Tuple<>(), new Tuple<>());
 			NameID name = new NameID(id, method);
 			// Try to run the given function or method
-			Interpreter interpreter = new Interpreter(project, System.out);
+			Interpreter interpreter = Interpreter.create(engine, project, System.out);
 			RValue[] returns = interpreter.execute(name, sig, interpreter.new CallStack());
 			// Print out any return values produced
 			if (returns != null) {
@@ -122,6 +188,94 @@ public class Activator implements Module.Activator {
 		}
 	};
 
+	/**
+	 * Generates verification conditions (i.e. WyAL files) from the WyIL files
+	 * produced by the whiley platform.
+	 */
+	public static Build.Platform WYAL_PLATFORM = new Build.Platform() {
+		// Specify directory containing WyIL files to translate.
+		private Trie source;
+		// Specify directory where generated WyAL files are dumped.
+		private Trie target;
+		// Specify file to which a verification condition generation profile
+		// is written (if any).
+		private String profile = "";
+		// Specify number of slowest declarations reported (if any).
+		private int slowest = 0;
+		// Specify time in milliseconds allowed for each declaration (if limited).
+		private int budget = 0;
+		//
+		@Override
+		public String getName() {
+			return "wyal";
+		}
+
+		@Override
+		public Configuration.Schema getConfigurationSchema() {
+			return Configuration.fromArray(
+					Configuration.UNBOUND_STRING(WYAL_SOURCE_CONFIG_OPTION, "Specify location of wyil files to translate", TARGET_DEFAULT),
+					Configuration.UNBOUND_STRING(WYAL_TARGET_CONFIG_OPTION, "Specify location for generated wyal files", TARGET_DEFAULT),
+					Configuration.UNBOUND_STRING(WYAL_PROFILE_CONFIG_OPTION, "Specify file to which a verification condition generation profile is written (json or csv)", PROFILE_DEFAULT),
+					Configuration.BOUND_INTEGER(WYAL_SLOWEST_CONFIG_OPTION, "Specify number of slowest declarations to report (0 for none)", SLOWEST_DEFAULT, 0),
+					Configuration.BOUND_INTEGER(WYAL_BUDGET_CONFIG_OPTION, "Specify time in milliseconds allowed for each declaration (0 for unlimited)", BUDGET_DEFAULT, 0));
+		}
+
+		@Override
+		public void apply(Configuration configuration) {
+			this.source = Trie.fromString(configuration.get(Value.UTF8.class, WYAL_SOURCE_CONFIG_OPTION).unwrap());
+			this.target = Trie.fromString(configuration.get(Value.UTF8.class, WYAL_TARGET_CONFIG_OPTION).unwrap());
+			this.profile = configuration.get(Value.UTF8.class, WYAL_PROFILE_CONFIG_OPTION).unwrap();
+			this.slowest = configuration.get(Value.Int.class, WYAL_SLOWEST_CONFIG_OPTION).unwrap().intValue();
+			this.budget = configuration.get(Value.Int.class, WYAL_BUDGET_CONFIG_OPTION).unwrap().intValue();
+		}
+
+		@Override
+		public Task initialise(Build.Project project) {
+			Wyil2WyalBuilder builder = new Wyil2WyalBuilder(project);
+			builder.setBudget(new Budget(budget));
+			if (!profile.isEmpty() || slowest > 0) {
+				File output = profile.isEmpty() ? null : new File(profile);
+				builder.setProfiler(new Profiler(output, System.err, slowest));
+			}
+			return builder;
+		}
+
+		@Override
+		public Content.Type<?> getSourceType() {
+			return WhileyFile.BinaryContentType;
+		}
+
+		@Override
+		public Content.Type<?> getTargetType() {
+			return WyalFile.ContentType;
+		}
+
+		@Override
+		public Content.Filter<?> getSourceFilter() {
+			return Content.filter("**", WhileyFile.BinaryContentType);
+		}
+
+		@Override
+		public Content.Filter<?> getTargetFilter() {
+			return Content.filter("**", WyalFile.ContentType);
+		}
+
+		@Override
+		public Path.Root getSourceRoot(Path.Root root) throws IOException {
+			return root.createRelativeRoot(source);
+		}
+
+		@Override
+		public Path.Root getTargetRoot(Path.Root root) throws IOException {
+			return root.createRelativeRoot(target);
+		}
+
+		@Override
+		public void execute(Build.Project project, Path.ID id, String method, Value... args) {
+			throw new UnsupportedOperationException("verification conditions cannot be executed");
+		}
+	};
+
 	/**
 	 * Default implementation of a content registry. This associates whiley and
 	 * wyil files with their respective content types.
@@ -167,6 +321,7 @@ public class Activator implements Module.Activator {
 		final Logger logger = new Logger.Default(System.err);
 		// List of commands to use
 		context.register(Build.Platform.class, WHILEY_PLATFORM);
+		context.register(Build.Platform.class, WYAL_PLATFORM);
 		// List of content types
 		context.register(Content.Type.class, WhileyFile.ContentType);
 		context.register(Content.Type.class, WhileyFile.BinaryContentType);
@@ -29,8 +29,6 @@ import wyc.lang.WhileyFile.Expr;
 import wyc.lang.WhileyFile.Type;
 import wyc.task.CompileTask;
 import wyc.util.AbstractTypedVisitor;
-import wyil.type.subtyping.StrictTypeEmptinessTest;
-import wyil.type.subtyping.SubtypeOperator;
 import wyil.type.util.BinaryRelation;
 import wyil.type.util.HashSetBinaryRelation;
 import wyil.type.subtyping.EmptinessTest.LifetimeRelation;
@@ -84,14 +82,17 @@ import wyil.type.subtyping.EmptinessTest.LifetimeRelation;
 public class AmbiguousCoercionCheck extends AbstractTypedVisitor {
 
 	public AmbiguousCoercionCheck(CompileTask builder) {
-		super(builder.getNameResolver(),
-				new SubtypeOperator(builder.getNameResolver(), new StrictTypeEmptinessTest(builder.getNameResolver())));
+		super(builder.getNameResolver(), builder.getStrictSubtypeOperator());
 	}
 
 	public void check(WhileyFile file) {
 		visitWhileyFile(file);
 	}
 
+	public void check(Decl decl) {
+		visitDeclaration(decl);
+	}
+
 	@Override
 	public void visitExpression(Expr expr, Type target, Environment environment) {
 		checkCoercion(expr, target, environment);
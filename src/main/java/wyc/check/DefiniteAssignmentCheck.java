@@ -53,6 +53,10 @@ public class DefiniteAssignmentCheck extends AbstractFunction<DefiniteAssignment
 		visitWhileyFile(wf, null);
 	}
 
+	public void check(Decl decl) {
+		visitDeclaration(decl, null);
+	}
+
 	/**
 	 * Check a function or method declaration for definite assignment.
 	 *
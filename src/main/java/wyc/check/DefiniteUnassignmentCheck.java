@@ -87,6 +87,10 @@ public class DefiniteUnassignmentCheck
 		visitWhileyFile(wf, null);
 	}
 
+	public void check(Decl decl) {
+		visitDeclaration(decl, null);
+	}
+
 	/**
 	 * Check a function or method declaration for definite assignment.
 	 *
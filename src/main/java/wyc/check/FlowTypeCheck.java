@@ -29,11 +29,10 @@ import wybs.util.AbstractCompilationUnit.Tuple;
 import wybs.util.AbstractCompilationUnit.Value;
 import wyc.check.FlowTypeUtils.Environment;
 import wyc.util.AbstractVisitor;
+import wyc.util.Budget;
+import wyc.util.Profiler;
 import wycc.util.ArrayUtils;
-import wyil.type.subtyping.EmptinessTest;
 import wyil.type.subtyping.EmptinessTest.LifetimeRelation;
-import wyil.type.subtyping.RelaxedTypeEmptinessTest;
-import wyil.type.subtyping.StrictTypeEmptinessTest;
 import wyil.type.subtyping.SubtypeOperator;
 import wyil.type.util.ConcreteTypeExtractor;
 import wyil.type.util.ReadWriteTypeExtractor;
@@ -105,17 +104,18 @@ public class FlowTypeCheck {
 	private final SubtypeOperator strictSubtypeOperator;
 	private final ConcreteTypeExtractor concreteTypeExtractor;
 	private final ReadWriteTypeExtractor rwTypeExtractor;
+	private final Profiler profiler;
+	private final Budget budget;
 
 	public FlowTypeCheck(CompileTask builder) {
 		this.builder = builder;
 		this.resolver = builder.getNameResolver();
-		EmptinessTest<SemanticType> strictEmptiness = new StrictTypeEmptinessTest(resolver);
-		this.concreteTypeExtractor = new ConcreteTypeExtractor(resolver,strictEmptiness);
-		this.relaxedSubtypeOperator = new SubtypeOperator(resolver,
-				new RelaxedTypeEmptinessTest(resolver));
-		this.strictSubtypeOperator = new SubtypeOperator(resolver,
-				strictEmptiness);
+		this.relaxedSubtypeOperator = builder.getRelaxedSubtypeOperator();
+		this.strictSubtypeOperator = builder.getStrictSubtypeOperator();
+		this.concreteTypeExtractor = new ConcreteTypeExtractor(resolver, strictSubtypeOperator);
 		this.rwTypeExtractor = new ReadWriteTypeExtractor(resolver, strictSubtypeOperator);
+		this.profiler = builder.getProfiler();
+		this.budget = builder.getBudget();
 	}
 
 	// =========================================================================
@@ -130,8 +130,16 @@ public class FlowTypeCheck {
 	}
 
 	public void check(WhileyFile wf) {
+		Profiler.Timer timer = profiler.start();
 		for (Decl decl : wf.getDeclarations()) {
-			check(decl);
+			Profiler.Timer t = profiler.start();
+			budget.apply(wf, decl, () -> check(decl));
+			if (profiler.isEnabled() && decl instanceof Decl.Named) {
+				profiler.record("type", wf.getEntry().id(), Profiler.describe((Decl.Named) decl), t);
+			}
+		}
+		if (profiler.isEnabled()) {
+			profiler.record("type", wf.getEntry().id(), timer);
 		}
 	}
 
@@ -329,7 +337,7 @@ public class FlowTypeCheck {
 			} else {
 				return internalFailure("unknown statement: " + stmt.getClass().getName(), stmt);
 			}
-		} catch (SyntaxError e) {
+		} catch (SyntaxError | Budget.Exceeded e) {
 			throw e;
 		} catch (Throwable e) {
 			return internalFailure(e.getMessage(), stmt, e);
@@ -84,6 +84,10 @@ public class FunctionalCheck extends AbstractConsumer<FunctionalCheck.Context> {
 		visitWhileyFile(file, null);
 	}
 
+	public void check(Decl decl) {
+		visitDeclaration(decl, null);
+	}
+
 	public enum Context {
 		PURE, FUNCTIONAL, IMPURE
 	}
@@ -25,6 +25,10 @@ public class StaticVariableCheck extends AbstractConsumer<Set<NameID>> {
 		visitWhileyFile(wf, null);
 	}
 
+	public void check(Decl decl) {
+		visitDeclaration(decl, null);
+	}
+
 	@Override
 	public void visitStaticVariable(Decl.StaticVariable decl, Set<NameID> accessed) {
 		if (decl.hasInitialiser()) {
@@ -0,0 +1,331 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.io;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import wybs.lang.SyntacticItem;
+import wybs.lang.SyntaxError;
+import wybs.util.AbstractCompilationUnit.Name;
+import wybs.util.AbstractCompilationUnit.Tuple;
+import wyc.io.WhileyFileLexer.PackedTokens;
+import wyc.lang.WhileyFile;
+import wyc.lang.WhileyFile.Decl;
+import wyfs.lang.Path;
+
+/**
+ * <p>
+ * Maintains the tokens and <code>WhileyFile</code> for the source of a file
+ * being edited, such that each edit is lexed and parsed incrementally. For
+ * example:
+ * </p>
+ *
+ * <pre>
+ * IncrementalParser parser = new IncrementalParser(entry, source);
+ * WhileyFile file = parser.getFile();
+ * ...
+ * file = parser.edit(offset, 1, "x");
+ * </pre>
+ *
+ * <p>
+ * Following an edit, only the characters affected are lexed again (see
+ * {@link WhileyFileLexer#scanPacked(PackedTokens, int, int, int)}) and only
+ * the top-level declarations affected are parsed again. A token is affected
+ * if it overlaps the edit, or if its kind or text changed. Parsing starts
+ * from the declaration containing the first token affected, and stops once
+ * the next declaration starts where a declaration started before the edit,
+ * after the last token affected. Since parsing from a given token does not
+ * depend on what precedes it, all declarations from that point are
+ * unchanged.
+ * </p>
+ * <p>
+ * Each edit gives a new file, leaving that given by the previous edit
+ * unchanged. This consists of copies of the declarations which were not
+ * affected (with the positions of those following the edit shifted
+ * accordingly), and of those parsed again. Thus, declarations unaffected by
+ * an edit are not parsed again, whilst no file retains the declarations
+ * superseded by an edit (which would otherwise accumulate with each edit).
+ * </p>
+ * <p>
+ * Should the edit precede the first declaration (e.g. affect the package
+ * declaration), or the declarations affected contain a syntax error, then
+ * the whole file is parsed again. This ensures the file and any error reported
+ * are exactly as they would be had the file been parsed from scratch.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class IncrementalParser {
+	private final Path.Entry<WhileyFile> entry;
+	private char[] text;
+	/**
+	 * The tokens of the current text, or <code>null</code> if it has not been
+	 * lexed successfully.
+	 */
+	private PackedTokens tokens;
+	/**
+	 * The file parsed from the current tokens, or <code>null</code> if these
+	 * have not been parsed successfully.
+	 */
+	private WhileyFile file;
+	/**
+	 * The index of the first token of each top-level declaration.
+	 */
+	private ArrayList<Integer> starts;
+	/**
+	 * The number of top-level declarations parsed for the current file.
+	 */
+	private int parsed;
+
+	public IncrementalParser(Path.Entry<WhileyFile> entry, String text) {
+		this.entry = entry;
+		this.text = text.toCharArray();
+	}
+
+	public String getText() {
+		return new String(text);
+	}
+
+	/**
+	 * Get the tokens of the current text.
+	 *
+	 * @return
+	 * @throws SyntaxError
+	 *             If the text cannot be lexed.
+	 */
+	public PackedTokens getTokens() {
+		if (tokens == null) {
+			tokens = new WhileyFileLexer(entry, CharBuffer.wrap(text)).scanPacked();
+		}
+		return tokens;
+	}
+
+	/**
+	 * Get the file parsed from the current text.
+	 *
+	 * @return
+	 * @throws SyntaxError
+	 *             If the text cannot be lexed or parsed.
+	 */
+	public WhileyFile getFile() {
+		if (file == null) {
+			ArrayList<Integer> starts = new ArrayList<>();
+			WhileyFile file = new WhileyFileParser(new WhileyFile(entry), getTokens()).read(starts);
+			this.starts = starts;
+			this.parsed = starts.size();
+			this.file = file;
+		}
+		return file;
+	}
+
+	/**
+	 * Get the number of top-level declarations which were parsed to obtain the
+	 * current file. Following an edit, this is the number of declarations
+	 * affected by it, unless the whole file was parsed again.
+	 *
+	 * @return
+	 */
+	public int getParsed() {
+		return parsed;
+	}
+
+	/**
+	 * Apply an edit to the current text, and update the tokens and file
+	 * accordingly.
+	 *
+	 * @param offset
+	 *            The position of the edit.
+	 * @param removed
+	 *            The number of characters removed.
+	 * @param inserted
+	 *            The characters inserted.
+	 * @return The file parsed from the edited text. This is distinct from any
+	 *         file previously returned, which remains unchanged.
+	 * @throws SyntaxError
+	 *             If the edited text cannot be lexed or parsed.
+	 */
+	public WhileyFile edit(int offset, int removed, String inserted) {
+		if (offset < 0 || removed < 0 || offset + removed > text.length) {
+			throw new IllegalArgumentException("invalid edit: " + offset + ", " + removed);
+		}
+		char[] before = text;
+		text = new char[before.length - removed + inserted.length()];
+		System.arraycopy(before, 0, text, 0, offset);
+		inserted.getChars(0, inserted.length(), text, offset);
+		System.arraycopy(before, offset + removed, text, offset + inserted.length(),
+				before.length - offset - removed);
+		PackedTokens previous = tokens;
+		WhileyFile current = file;
+		tokens = null;
+		file = null;
+		if (previous != null) {
+			tokens = new WhileyFileLexer(entry, CharBuffer.wrap(text)).scanPacked(previous, offset, removed,
+					inserted.length());
+			if (current != null) {
+				file = reparse(current, previous, tokens, offset, removed, inserted.length());
+			}
+		}
+		return getFile();
+	}
+
+	/**
+	 * Parse again those top-level declarations in a file which contain tokens
+	 * affected by an edit.
+	 *
+	 * @param file
+	 *            The file parsed before the edit.
+	 * @param before
+	 *            The tokens before the edit.
+	 * @param after
+	 *            The tokens after the edit.
+	 * @param offset
+	 *            The position of the edit.
+	 * @param removed
+	 *            The number of characters removed.
+	 * @param inserted
+	 *            The number of characters inserted.
+	 * @return The updated file, or <code>null</code> if it must be parsed
+	 *         again in its entirety.
+	 */
+	private WhileyFile reparse(WhileyFile file, PackedTokens before, PackedTokens after, int offset, int removed,
+			int inserted) {
+		int delta = inserted - removed;
+		// Determine the tokens affected, which includes any overlapping the
+		// edit regardless of whether they changed.
+		int limit = Math.min(before.size(), after.size());
+		int lo = Math.min(after.indexOf(offset), limit);
+		int hi = after.indexOf(Math.max(offset + inserted - 1, offset));
+		int prefix = 0;
+		while (prefix < lo && same(before, prefix, after, prefix, 0)) {
+			prefix = prefix + 1;
+		}
+		int shift = after.size() - before.size();
+		int suffix = 0;
+		int bound = Math.min(limit - prefix, after.size() - hi - 1);
+		while (suffix < bound && same(before, before.size() - suffix - 1, after, after.size() - suffix - 1, delta)) {
+			suffix = suffix + 1;
+		}
+		// Parse again from the declaration containing the first token
+		// affected, until the next declaration starts where one started before
+		// the edit, after the last token affected.
+		int first = -1;
+		while (first + 1 < starts.size() && starts.get(first + 1) < prefix) {
+			first = first + 1;
+		}
+		if (first < 0) {
+			// The edit precedes the first declaration
+			return null;
+		}
+		int from = starts.get(first);
+		int unchanged = before.size() - suffix;
+		int[] next = { starts.size() };
+		WhileyFile chunk = new WhileyFile(entry);
+		ArrayList<Integer> chunkStarts = new ArrayList<>();
+		List<Decl> chunkDecls;
+		try {
+			WhileyFileParser parser = new WhileyFileParser(chunk, after.subList(from, after.size()));
+			chunkDecls = parser.parseDeclarations(chunkStarts, i -> {
+				int index = from + i - shift;
+				if (index < unchanged) {
+					return false;
+				}
+				int k = Collections.binarySearch(starts, index);
+				if (k >= 0) {
+					next[0] = k;
+					return true;
+				}
+				return false;
+			});
+		} catch (SyntaxError e) {
+			return null;
+		}
+		int to = next[0] < starts.size() ? starts.get(next[0]) : before.size();
+		int position = to < before.size() ? before.getStart(to) : Integer.MAX_VALUE;
+		// Construct the updated file from copies of the declarations which
+		// were not affected, and of those parsed again.
+		WhileyFile result = new WhileyFile(entry);
+		IdentityHashMap<SyntacticItem, SyntacticItem> copies = new IdentityHashMap<>();
+		IdentityHashMap<SyntacticItem, SyntacticItem> chunkCopies = new IdentityHashMap<>();
+		Name name = result.copy(file.getModule().getName(), copies);
+		Tuple<Decl> decls = file.getDeclarations();
+		ArrayList<Decl> declarations = new ArrayList<>();
+		ArrayList<Integer> updated = new ArrayList<>();
+		for (int i = 0; i != first; ++i) {
+			declarations.add(result.copy(decls.get(i), copies));
+			updated.add(starts.get(i));
+		}
+		for (int i = 0; i != chunkDecls.size(); ++i) {
+			declarations.add(result.copy(chunkDecls.get(i), chunkCopies));
+			updated.add(from + chunkStarts.get(i));
+		}
+		for (int i = next[0]; i < decls.size(); ++i) {
+			declarations.add(result.copy(decls.get(i), copies));
+			updated.add(starts.get(i) + shift);
+		}
+		// Copy the positions of the items copied, shifting those following the
+		// edit.
+		copySpans(file, result, copies, position, delta);
+		copySpans(chunk, result, chunkCopies, Integer.MAX_VALUE, 0);
+		result.allocate(new Decl.Module(name, new Tuple<>(declarations)));
+		starts = updated;
+		parsed = chunkDecls.size();
+		return result;
+	}
+
+	/**
+	 * Copy the position of each item in a file which has been copied into
+	 * another file.
+	 *
+	 * @param file
+	 *            The file whose positions are copied.
+	 * @param result
+	 *            The file into which items were copied.
+	 * @param copies
+	 *            Maps each item copied to its copy.
+	 * @param position
+	 *            The position from which spans are shifted.
+	 * @param delta
+	 *            The amount by which spans are shifted.
+	 */
+	private static void copySpans(WhileyFile file, WhileyFile result, Map<SyntacticItem, SyntacticItem> copies,
+			int position, int delta) {
+		for (int i = 0; i != file.size(); ++i) {
+			SyntacticItem item = file.getSyntacticItem(i);
+			if (item instanceof WhileyFile.Attribute.Span) {
+				WhileyFile.Attribute.Span span = (WhileyFile.Attribute.Span) item;
+				SyntacticItem copy = copies.get(span.getItem());
+				if (copy != null) {
+					int start = span.getStart().get().intValue();
+					int end = span.getEnd().get().intValue();
+					if (start >= position) {
+						start += delta;
+						end += delta;
+					}
+					result.allocate(new WhileyFile.Attribute.Span(copy, start, end));
+				}
+			}
+		}
+	}
+
+	private static boolean same(PackedTokens before, int i, PackedTokens after, int j, int delta) {
+		return before.getKind(i) == after.getKind(j) && before.getStart(i) + delta == after.getStart(j)
+				&& before.getEnd(i) + delta == after.getEnd(j) && before.equalText(i, after, j);
+	}
+}
@@ -13,51 +13,86 @@
 // limitations under the License.
 package wyc.io;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.RandomAccess;
 
-import wybs.lang.Attribute;
-import wybs.lang.SyntacticElement;
 import wybs.lang.SyntaxError;
 import wyc.lang.WhileyFile;
+import wyc.util.Interner;
 import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
 
 /**
+ * <p>
  * Split a source file into a list of tokens. These tokens can then be fed into
  * the parser in order to generate an Abstract Syntax Tree (AST).
+ * </p>
+ * <p>
+ * The lexer scans directly over a buffer of characters which, for source files
+ * on disk, is decoded straight from a memory-mapped view of the file. Thus,
+ * the bytes of a file are never copied onto the heap, though its characters
+ * are (since these are retained by the tokens, from which text is extracted
+ * on demand). Tokens are recorded as packed triples of integers giving their
+ * kind, start and end (see {@link PackedTokens}), with the text of a token
+ * being extracted only if it is needed. This avoids allocating an object and
+ * a string for every token scanned, which matters for large source files.
+ * </p>
  *
  * @author David J. Pearce
  *
  */
 public class WhileyFileLexer {
 	private final Path.Entry<WhileyFile> entry;
-	private StringBuilder input;
+	private final char[] input;
+	private final int length;
 	private int pos;
+	private Interner interner;
 
 	public WhileyFileLexer(Path.Entry<WhileyFile> entry) throws IOException {
-		this.entry = entry;
-		Reader reader = new InputStreamReader(entry.inputStream());
-		BufferedReader in = new BufferedReader(reader);
+		this(entry, read(entry));
+	}
+
+	public WhileyFileLexer(String input) {
+		this(null, CharBuffer.wrap(input.toCharArray()));
+	}
 
-        StringBuilder text = new StringBuilder();
-		int len = 0;
-		char[] buf = new char[1024];
-		while ((len = in.read(buf)) != -1) {
-			text.append(buf, 0, len);
+	public WhileyFileLexer(CharBuffer input) {
+		this(null, input);
+	}
+
+	public WhileyFileLexer(Path.Entry<WhileyFile> entry, CharBuffer buffer) {
+		this.entry = entry;
+		this.length = buffer.remaining();
+		if (buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0) {
+			this.input = buffer.array();
+		} else {
+			this.input = new char[length];
+			buffer.duplicate().get(input);
 		}
-        input = text;
 	}
 
-	public WhileyFileLexer(String input) {
-		this.entry = null;
-		this.input = new StringBuilder(input);
+	/**
+	 * Set the table used to share the encodings of identifiers between this
+	 * and other files (see {@link PackedTokens#getBytes(int)}). By default,
+	 * no encodings are shared.
+	 *
+	 * @param interner
+	 */
+	public void setInterner(Interner interner) {
+		this.interner = interner;
 	}
 
 	/**
@@ -67,32 +102,90 @@ public class WhileyFileLexer {
 	 * @return
 	 */
 	public List<Token> scan() {
-		ArrayList<Token> tokens = new ArrayList<>();
+		return new ArrayList<>(scanPacked());
+	}
+
+	/**
+	 * Scan all characters from the input stream and generate a corresponding
+	 * sequence of packed tokens. Unlike {@link #scan()}, no object is allocated
+	 * for a token unless it is subsequently accessed as such.
+	 *
+	 * @return
+	 */
+	public PackedTokens scanPacked() {
+		// NOTE: most tokens span several characters
+		PackedTokens tokens = new PackedTokens(input, interner, length / 4);
 		pos = 0;
+		while (pos < length) {
+			int start = pos;
+			tokens.add(scanToken(), start, pos);
+		}
+		return tokens;
+	}
 
-		while (pos < input.length()) {
-			char c = input.charAt(pos);
-
-			if (isDigit(c)) {
-				tokens.add(scanNumericLiteral());
-			} else if (c == '"') {
-				tokens.add(scanStringLiteral());
-			} else if (c == '\'') {
-				tokens.add(scanCharacterLiteral());
-			} else if (isOperatorStart(c)) {
-				tokens.add(scanOperator());
-			} else if (isLetter(c) || c == '_') {
-				tokens.add(scanIdentifier());
-			} else if (Character.isWhitespace(c)) {
-				scanWhiteSpace(tokens);
-			} else {
-				syntaxError("unknown token encountered",pos);
+	/**
+	 * Scan the input after an edit, given the tokens previously scanned from
+	 * the input before the edit. Only the characters affected by the edit are
+	 * scanned again. Specifically, scanning starts a little before the edit
+	 * (since an edit can extend the tokens before it) and stops at the first
+	 * token after the edit which starts where a previous token started, since
+	 * all tokens from that point are unchanged (though shifted).
+	 *
+	 * @param previous
+	 *            The tokens scanned from the input before the edit.
+	 * @param offset
+	 *            The position of the edit.
+	 * @param removed
+	 *            The number of characters removed by the edit.
+	 * @param inserted
+	 *            The number of characters inserted by the edit.
+	 * @return
+	 */
+	public PackedTokens scanPacked(PackedTokens previous, int offset, int removed, int inserted) {
+		int delta = inserted - removed;
+		// NOTE: an operator can look up to three characters ahead, hence
+		// can be extended by an edit up to two tokens after it.
+		int first = Math.max(0, previous.indexOf(offset) - 2);
+		PackedTokens tokens = new PackedTokens(input, interner, previous.size() + Math.max(delta, 0));
+		tokens.append(previous, 0, first, 0);
+		pos = first < previous.size() ? previous.getStart(first) : 0;
+		int next = first;
+		while (pos < length) {
+			if (pos >= offset + inserted) {
+				// Check whether a previous token started here
+				while (next < previous.size() && previous.getStart(next) + delta < pos) {
+					next = next + 1;
+				}
+				if (next < previous.size() && previous.getStart(next) + delta == pos) {
+					tokens.append(previous, next, previous.size(), delta);
+					break;
+				}
 			}
+			int start = pos;
+			tokens.add(scanToken(), start, pos);
 		}
-
 		return tokens;
 	}
 
+	private Token.Kind scanToken() {
+		char c = input[pos];
+		if (isDigit(c)) {
+			return scanNumericLiteral();
+		} else if (c == '"') {
+			return scanStringLiteral();
+		} else if (c == '\'') {
+			return scanCharacterLiteral();
+		} else if (isOperatorStart(c)) {
+			return scanOperator();
+		} else if (isLetter(c) || c == '_') {
+			return scanIdentifier();
+		} else if (Character.isWhitespace(c)) {
+			return scanWhiteSpace();
+		} else {
+			throw syntaxError("unknown token encountered", pos);
+		}
+	}
+
 	/**
 	 * Scan a numeric constant. That is a sequence of digits which constitutes an
 	 * integer literal (e.g. 12 or 1_000), a binary literal (e.g. 0b1001_0011) or a
@@ -100,14 +193,12 @@ public class WhileyFileLexer {
 	 *
 	 * @return
 	 */
-	public Token scanNumericLiteral() {
-		int start = pos;
-		int next = pos + 1;
+	private Token.Kind scanNumericLiteral() {
 		// Decide whether it's an integer, binary or hexadecimal literal
-		if (next < input.length() && input.charAt(pos) == '0' && input.charAt(next) == 'x') {
+		if (input[pos] == '0' && lookahead(1, 'x')) {
 			// Hexadecimal literal
 			return scanHexLiteral();
-		} else if (next < input.length() && input.charAt(pos) == '0' && input.charAt(next) == 'b') {
+		} else if (input[pos] == '0' && lookahead(1, 'b')) {
 			// Binary literal
 			return scanBinaryLiteral();
 		} else {
@@ -115,39 +206,27 @@ public class WhileyFileLexer {
 		}
 	}
 
-	public Token scanIntegerLiteral() {
-		int start = pos;
-		while (pos < input.length() && (input.charAt(pos) == '_' || isDigit(input.charAt(pos)))) {
+	private Token.Kind scanIntegerLiteral() {
+		while (pos < length && (input[pos] == '_' || isDigit(input[pos]))) {
 			pos = pos + 1;
 		}
-		// Extract literal characters
-		String literal = input.substring(start, pos);
-		// Done
-		return new Token(Token.Kind.IntegerLiteral, literal, start);
+		return Token.Kind.IntegerLiteral;
 	}
 
-	public Token scanHexLiteral() {
-		int start = pos;
+	private Token.Kind scanHexLiteral() {
 		pos = pos + 2; // skip "0x"
-		while (pos < input.length() && (input.charAt(pos) == '_' || isLetterOrDigit(input.charAt(pos)))) {
+		while (pos < length && (input[pos] == '_' || isLetterOrDigit(input[pos]))) {
 			pos = pos + 1;
 		}
-		// Extract literal characters
-		String literal = input.substring(start, pos);
-		// Done
-		return new Token(Token.Kind.HexLiteral, literal, start);
+		return Token.Kind.HexLiteral;
 	}
 
-	public Token scanBinaryLiteral() {
-		int start = pos;
+	private Token.Kind scanBinaryLiteral() {
 		pos = pos + 2; // skip "0b"
-		while (pos < input.length() && (input.charAt(pos) == '_' || isDigit(input.charAt(pos)))) {
+		while (pos < length && (input[pos] == '_' || isDigit(input[pos]))) {
 			pos = pos + 1;
 		}
-		// Extract literal characters
-		String literal = input.substring(start, pos);
-		// Done
-		return new Token(Token.Kind.BinaryLiteral, literal, start);
+		return Token.Kind.BinaryLiteral;
 	}
 
 	/**
@@ -158,58 +237,46 @@ public class WhileyFileLexer {
 	 *
 	 * @return
 	 */
-	public Token scanCharacterLiteral() {
-		int start = pos;
+	private Token.Kind scanCharacterLiteral() {
 		pos++;
-		char c = input.charAt(pos++);
+		if (pos >= length) {
+			throw syntaxError("unexpected end-of-character", pos - 1);
+		}
+		char c = input[pos++];
 		if (c == '\\') {
 			// escape code
-			switch (input.charAt(pos++)) {
+			if (pos >= length) {
+				throw syntaxError("unexpected end-of-character", pos - 1);
+			}
+			switch (input[pos++]) {
 			case 'b':
-				c = '\b';
-				break;
 			case 't':
-				c = '\t';
-				break;
 			case 'n':
-				c = '\n';
-				break;
 			case 'f':
-				c = '\f';
-				break;
 			case 'r':
-				c = '\r';
-				break;
 			case '"':
-				c = '\"';
-				break;
 			case '\'':
-				c = '\'';
-				break;
 			case '\\':
-				c = '\\';
 				break;
 			default:
-				syntaxError("unrecognised escape character", pos);
+				throw syntaxError("unrecognised escape character", pos);
 			}
 		}
-		if (input.charAt(pos) != '\'') {
-			syntaxError("unexpected end-of-character", pos);
+		if (pos >= length || input[pos] != '\'') {
+			throw syntaxError("unexpected end-of-character", pos);
 		}
 		pos = pos + 1;
-		return new Token(Token.Kind.CharLiteral, input.substring(start, pos),
-				start);
+		return Token.Kind.CharLiteral;
 	}
 
-	public Token scanStringLiteral() {
-		int start = pos;
+	private Token.Kind scanStringLiteral() {
 		boolean escaped = false;
 		pos++;
-		while (pos < input.length()) {
-			char c = input.charAt(pos);
+		while (pos < length) {
+			char c = input[pos];
 			if (c == '"' && !escaped) {
-				String v = input.substring(start, ++pos);
-				return new Token(Token.Kind.StringLiteral, v, start);
+				pos = pos + 1;
+				return Token.Kind.StringLiteral;
 			} else if(c == '\\' && !escaped) {
 				escaped = true;
 			} else {
@@ -217,8 +284,7 @@ public class WhileyFileLexer {
 			}
 			pos = pos + 1;
 		}
-		syntaxError("unexpected end-of-string", pos - 1);
-		return null;
+		throw syntaxError("unexpected end-of-string", pos - 1);
 	}
 
 	public static final char UC_FORALL = '\u2200';
@@ -263,204 +329,170 @@ public class WhileyFileLexer {
 		return false;
 	}
 
-	public Token scanOperator() {
-		char c = input.charAt(pos);
+	private Token.Kind scanOperator() {
+		char c = input[pos];
 
 		switch (c) {
 		case '.':
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '.') {
-				pos = pos + 2;
-				if (pos < input.length() && input.charAt(pos) == '.') {
-					return new Token(Token.Kind.DotDotDot, "..", pos++);
+			if (lookahead(1, '.')) {
+				if (lookahead(2, '.')) {
+					return advance(3, Token.Kind.DotDotDot);
 				} else {
-					return new Token(Token.Kind.DotDot, "..", pos);
+					return advance(2, Token.Kind.DotDot);
 				}
 			} else {
-				return new Token(Token.Kind.Dot, ".", pos++);
+				return advance(1, Token.Kind.Dot);
 			}
 		case ',':
-			return new Token(Token.Kind.Comma, ",", pos++);
+			return advance(1, Token.Kind.Comma);
 		case ';':
-			return new Token(Token.Kind.SemiColon, ";", pos++);
+			return advance(1, Token.Kind.SemiColon);
 		case ':':
-			if (pos + 1 < input.length() && input.charAt(pos + 1) == ':') {
-				pos += 2;
-				return new Token(Token.Kind.ColonColon, "::", pos - 2);
+			if (lookahead(1, ':')) {
+				return advance(2, Token.Kind.ColonColon);
 			} else {
-				return new Token(Token.Kind.Colon, ":", pos++);
+				return advance(1, Token.Kind.Colon);
 			}
 		case '|':
-			if (pos + 1 < input.length() && input.charAt(pos + 1) == '|') {
-				pos += 2;
-				return new Token(Token.Kind.LogicalOr, "||", pos - 2);
+			if (lookahead(1, '|')) {
+				return advance(2, Token.Kind.LogicalOr);
 			} else {
-				return new Token(Token.Kind.VerticalBar, "|", pos++);
+				return advance(1, Token.Kind.VerticalBar);
 			}
 		case '(':
-			return new Token(Token.Kind.LeftBrace, "(", pos++);
+			return advance(1, Token.Kind.LeftBrace);
 		case ')':
-			return new Token(Token.Kind.RightBrace, ")", pos++);
+			return advance(1, Token.Kind.RightBrace);
 		case '[':
-			return new Token(Token.Kind.LeftSquare, "[", pos++);
+			return advance(1, Token.Kind.LeftSquare);
 		case ']':
-			return new Token(Token.Kind.RightSquare, "]", pos++);
+			return advance(1, Token.Kind.RightSquare);
 		case '{':
-			return new Token(Token.Kind.LeftCurly, "{", pos++);
+			return advance(1, Token.Kind.LeftCurly);
 		case '}':
-			return new Token(Token.Kind.RightCurly, "}", pos++);
+			return advance(1, Token.Kind.RightCurly);
 		case '+':
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '+') {
-				pos = pos + 2;
-				return new Token(Token.Kind.PlusPlus, "++", pos);
+			if (lookahead(1, '+')) {
+				return advance(2, Token.Kind.PlusPlus);
 			} else {
-				return new Token(Token.Kind.Plus, "+", pos++);
+				return advance(1, Token.Kind.Plus);
 			}
 		case '-':
-			if (pos + 1 < input.length() && input.charAt(pos + 1) == '>') {
-				pos += 2;
-				return new Token(Token.Kind.MinusGreater, "->", pos - 2);
+			if (lookahead(1, '>')) {
+				return advance(2, Token.Kind.MinusGreater);
 			} else {
-				return new Token(Token.Kind.Minus, "-", pos++);
+				return advance(1, Token.Kind.Minus);
 			}
 		case '*':
-			return new Token(Token.Kind.Star, "*", pos++);
+			return advance(1, Token.Kind.Star);
 		case '&':
-			if (pos + 1 < input.length() && input.charAt(pos + 1) == '&') {
-				pos += 2;
-				return new Token(Token.Kind.LogicalAnd, "&&", pos - 2);
+			if (lookahead(1, '&')) {
+				return advance(2, Token.Kind.LogicalAnd);
 			} else {
-				return new Token(Token.Kind.Ampersand, "&", pos++);
+				return advance(1, Token.Kind.Ampersand);
 			}
 		case '/':
-			if((pos+1) < input.length() && input.charAt(pos+1) == '/') {
+			if (lookahead(1, '/')) {
 				return scanLineComment();
-			} else if((pos+1) < input.length() && input.charAt(pos+1) == '*') {
+			} else if (lookahead(1, '*')) {
 				return scanBlockComment();
 			} else {
-				return new Token(Token.Kind.RightSlash, "/", pos++);
+				return advance(1, Token.Kind.RightSlash);
 			}
 		case '%':
-			return new Token(Token.Kind.Percent, "%", pos++);
+			return advance(1, Token.Kind.Percent);
 		case '^':
-			return new Token(Token.Kind.Caret, "^", pos++);
+			return advance(1, Token.Kind.Caret);
 		case '~':
-			return new Token(Token.Kind.Tilde, "~", pos++);
+			return advance(1, Token.Kind.Tilde);
 		case '!':
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
-				pos += 2;
-				return new Token(Token.Kind.NotEquals, "!=", pos - 2);
+			if (lookahead(1, '=')) {
+				return advance(2, Token.Kind.NotEquals);
 			} else {
-				return new Token(Token.Kind.Shreak, "!", pos++);
+				return advance(1, Token.Kind.Shreak);
 			}
 		case '=':
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
-				pos += 2;
-				if (pos < input.length() && input.charAt(pos) == '>') {
-					pos++;
-					return new Token(Token.Kind.LogicalImplication, "==>", pos - 3);
+			if (lookahead(1, '=')) {
+				if (lookahead(2, '>')) {
+					return advance(3, Token.Kind.LogicalImplication);
 				} else {
-					return new Token(Token.Kind.EqualsEquals, "==", pos - 2);
+					return advance(2, Token.Kind.EqualsEquals);
 				}
-			} else if ((pos + 1) < input.length() && input.charAt(pos + 1) == '>') {
-				pos += 2;
-				return new Token(Token.Kind.EqualsGreater, "=>", pos - 2);
+			} else if (lookahead(1, '>')) {
+				return advance(2, Token.Kind.EqualsGreater);
 			} else {
-				return new Token(Token.Kind.Equals, "=", pos++);
+				return advance(1, Token.Kind.Equals);
 			}
 		case '<':
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
-				pos += 2;
-				if ((pos+1) < input.length() && input.charAt(pos) == '=' && input.charAt(pos+1) == '>') {
-					pos += 2;
-					return new Token(Token.Kind.LogicalIff, "<==>", pos - 4);
+			if (lookahead(1, '=')) {
+				if (lookahead(2, '=') && lookahead(3, '>')) {
+					return advance(4, Token.Kind.LogicalIff);
 				} else {
-					return new Token(Token.Kind.LessEquals, "<=", pos - 2);
+					return advance(2, Token.Kind.LessEquals);
 				}
-			} else if ((pos + 1) < input.length() && input.charAt(pos + 1) == '<') {
-				pos += 2;
-				return new Token(Token.Kind.LeftAngleLeftAngle, "<<", pos - 2);
+			} else if (lookahead(1, '<')) {
+				return advance(2, Token.Kind.LeftAngleLeftAngle);
 			} else{
-				return new Token(Token.Kind.LeftAngle, "<", pos++);
+				return advance(1, Token.Kind.LeftAngle);
 			}
 		case '>':
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
-				pos += 2;
-				return new Token(Token.Kind.GreaterEquals, ">=", pos - 2);
-			} else if ((pos + 1) < input.length() && input.charAt(pos + 1) == '>') {
-				pos += 2;
-				return new Token(Token.Kind.RightAngleRightAngle, ">>", pos - 2);
+			if (lookahead(1, '=')) {
+				return advance(2, Token.Kind.GreaterEquals);
+			} else if (lookahead(1, '>')) {
+				return advance(2, Token.Kind.RightAngleRightAngle);
 			} else {
-				return new Token(Token.Kind.RightAngle, ">", pos++);
+				return advance(1, Token.Kind.RightAngle);
 			}
 		// =================================================================
 		//
 		// =================================================================
 		case UC_LESSEQUALS:
-			return new Token(Token.Kind.LessEquals, "" + c, pos++);
+			return advance(1, Token.Kind.LessEquals);
 		case UC_GREATEREQUALS:
-			return new Token(Token.Kind.GreaterEquals, "" + c, pos++);
+			return advance(1, Token.Kind.GreaterEquals);
 		case UC_SETUNION:
-			return new Token(Token.Kind.SetUnion, "" + c, pos++);
+			return advance(1, Token.Kind.SetUnion);
 		case UC_SETINTERSECTION:
-			return new Token(Token.Kind.SetIntersection, "" + c, pos++);
+			return advance(1, Token.Kind.SetIntersection);
 		case UC_ELEMENTOF:
-			return new Token(Token.Kind.ElementOf, "" + c, pos++);
+			return advance(1, Token.Kind.ElementOf);
 		case UC_SUBSET:
-			return new Token(Token.Kind.Subset, "" + c, pos++);
+			return advance(1, Token.Kind.Subset);
 		case UC_SUBSETEQ:
-			return new Token(Token.Kind.SubsetEquals, "" + c, pos++);
+			return advance(1, Token.Kind.SubsetEquals);
 		case UC_SUPSET:
-			return new Token(Token.Kind.Superset, "" + c, pos++);
+			return advance(1, Token.Kind.Superset);
 		case UC_SUPSETEQ:
-			return new Token(Token.Kind.SupersetEquals, "" + c, pos++);
+			return advance(1, Token.Kind.SupersetEquals);
 		case UC_EMPTYSET:
-			return new Token(Token.Kind.EmptySet, "" + c, pos++);
+			return advance(1, Token.Kind.EmptySet);
 		case UC_LOGICALOR:
-			return new Token(Token.Kind.LogicalOr, "" + c, pos++);
+			return advance(1, Token.Kind.LogicalOr);
 		case UC_LOGICALAND:
-			return new Token(Token.Kind.LogicalAnd, "" + c, pos++);
+			return advance(1, Token.Kind.LogicalAnd);
 		}
 
-		syntaxError("unknown operator encountered: " + c, pos);
-		return null;
+		throw syntaxError("unknown operator encountered: " + c, pos);
 	}
 
-	public Token scanIdentifier() {
+	private Token.Kind scanIdentifier() {
 		int start = pos;
-		while (pos < input.length()
-				&& (input.charAt(pos) == '_' || isLetterOrDigit(input
-						.charAt(pos)))) {
+		while (pos < length && (input[pos] == '_' || isLetterOrDigit(input[pos]))) {
 			pos++;
 		}
-		String text = input.substring(start, pos);
-
 		// now, check for keywords
-		Token.Kind kind = keywords.get(text);
-		if (kind == null) {
-			// not a keyword, so just a regular identifier.
-			kind = Token.Kind.Identifier;
-		}
-		return new Token(kind, text, start);
-	}
-
-	public void scanWhiteSpace(List<Token> tokens) {
-		while (pos < input.length()
-				&& Character.isWhitespace(input.charAt(pos))) {
-			if (input.charAt(pos) == ' ' || input.charAt(pos) == '\t') {
-				tokens.add(scanIndent());
-			} else if (input.charAt(pos) == '\n') {
-				tokens.add(new Token(Token.Kind.NewLine, input.substring(pos,
-						pos + 1), pos));
-				pos = pos + 1;
-			} else if (input.charAt(pos) == '\r' && (pos + 1) < input.length()
-					&& input.charAt(pos + 1) == '\n') {
-				tokens.add(new Token(Token.Kind.NewLine, input.substring(pos,
-						pos + 2), pos));
-				pos = pos + 2;
-			} else {
-				syntaxError("unknown whitespace character encounterd: \""
-						+ input.charAt(pos), pos);
-			}
+		return keyword(input, start, pos);
+	}
+
+	private Token.Kind scanWhiteSpace() {
+		if (input[pos] == ' ' || input[pos] == '\t') {
+			return scanIndent();
+		} else if (input[pos] == '\n') {
+			return advance(1, Token.Kind.NewLine);
+		} else if (input[pos] == '\r' && lookahead(1, '\n')) {
+			return advance(2, Token.Kind.NewLine);
+		} else {
+			throw syntaxError("unknown whitespace character encounterd: \"" + input[pos], pos);
 		}
 	}
 
@@ -470,45 +502,50 @@ public class WhileyFileLexer {
 	 *
 	 * @return
 	 */
-	public Token scanIndent() {
-		int start = pos;
-		while (pos < input.length()
-				&& (input.charAt(pos) == ' ' || input.charAt(pos) == '\t')) {
+	private Token.Kind scanIndent() {
+		while (pos < length && (input[pos] == ' ' || input[pos] == '\t')) {
 			pos++;
 		}
-		return new Token(Token.Kind.Indent, input.substring(start, pos), start);
+		return Token.Kind.Indent;
 	}
 
-	public Token scanLineComment() {
-		int start = pos;
-		while (pos < input.length() && input.charAt(pos) != '\n') {
+	private Token.Kind scanLineComment() {
+		while (pos < length && input[pos] != '\n') {
 			pos++;
 		}
-		return new Token(Token.Kind.LineComment, input.substring(start, pos),
-				start);
+		return Token.Kind.LineComment;
 	}
 
-	public Token scanBlockComment() {
-		int start = pos;
-		while((pos+1) < input.length() && (input.charAt(pos) != '*' || input.charAt(pos+1) != '/')) {
+	private Token.Kind scanBlockComment() {
+		while ((pos + 1) < length && (input[pos] != '*' || input[pos + 1] != '/')) {
 			pos++;
 		}
-		pos++;
-		pos++;
-		return new Token(Token.Kind.BlockComment,input.substring(start,pos),start);
+		pos = Math.min(pos + 2, length);
+		return Token.Kind.BlockComment;
 	}
 
 	/**
-	 * Skip over any whitespace at the current index position in the input
-	 * string.
+	 * Check whether the character at a given offset from the current position
+	 * is a given character.
 	 *
-	 * @param tokens
+	 * @param offset
+	 * @param c
+	 * @return
 	 */
-	public void skipWhitespace(List<Token> tokens) {
-		while (pos < input.length()
-				&& (input.charAt(pos) == '\n' || input.charAt(pos) == '\t')) {
-			pos++;
-		}
+	private boolean lookahead(int offset, char c) {
+		return pos + offset < length && input[pos + offset] == c;
+	}
+
+	/**
+	 * Move past a token of a given kind and length at the current position.
+	 *
+	 * @param n
+	 * @param kind
+	 * @return
+	 */
+	private Token.Kind advance(int n, Token.Kind kind) {
+		pos += n;
+		return kind;
 	}
 
 	/**
@@ -545,17 +582,47 @@ public class WhileyFileLexer {
 	}
 
 	/**
-	 * Raise a syntax error with a given message at given index.
+	 * Construct a syntax error with a given message at given index.
 	 *
 	 * @param msg
 	 *            --- message to raise.
 	 * @param index
 	 *            --- index position to associate the error with.
 	 */
-	private void syntaxError(String msg, int index) {
+	private SyntaxError syntaxError(String msg, int index) {
 		// FIXME: this is clearly not a sensible approach
-		throw new SyntaxError(msg, entry, new WhileyFile.Attribute.Span(null,index,index));
+		return new SyntaxError(msg, entry, new WhileyFile.Attribute.Span(null,index,index));
+	}
 
+	/**
+	 * Read the contents of a source file. Where the file is on disk, this is
+	 * decoded directly from a memory-mapped view of it. Note that, whilst the
+	 * bytes of the file are not copied, its characters are decoded into a
+	 * single array on the heap.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	private static CharBuffer read(Path.Entry<WhileyFile> entry) throws IOException {
+		Charset charset = Charset.defaultCharset();
+		if (entry instanceof DirectoryRoot.Entry) {
+			java.nio.file.Path file = ((DirectoryRoot.Entry<?>) entry).file().toPath();
+			try (FileChannel channel = FileChannel.open(file)) {
+				MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				return charset.decode(bytes);
+			}
+		} else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (InputStream in = entry.inputStream()) {
+				byte[] buf = new byte[4096];
+				int len;
+				while ((len = in.read(buf)) != -1) {
+					bytes.write(buf, 0, len);
+				}
+			}
+			return charset.decode(ByteBuffer.wrap(bytes.toByteArray()));
+		}
 	}
 
 	/**
@@ -621,6 +688,54 @@ public class WhileyFileLexer {
 		}
 	};
 
+	/**
+	 * The keywords grouped by length, such that an identifier can be checked
+	 * against them without first extracting its text.
+	 */
+	private static final String[][] keywordsByLength = new String[16][0];
+
+	static {
+		for (String keyword : keywords.keySet()) {
+			String[] group = keywordsByLength[keyword.length()];
+			group = Arrays.copyOf(group, group.length + 1);
+			group[group.length - 1] = keyword;
+			keywordsByLength[keyword.length()] = group;
+		}
+	}
+
+	/**
+	 * Determine the kind of the identifier or keyword spanning a given region
+	 * of characters.
+	 *
+	 * @param input
+	 * @param start
+	 *            The index of the first character.
+	 * @param end
+	 *            The index one past the last character.
+	 * @return
+	 */
+	private static Token.Kind keyword(char[] input, int start, int end) {
+		int n = end - start;
+		if (n < keywordsByLength.length) {
+			for (String keyword : keywordsByLength[n]) {
+				if (matches(input, start, keyword)) {
+					return keywords.get(keyword);
+				}
+			}
+		}
+		// not a keyword, so just a regular identifier.
+		return Token.Kind.Identifier;
+	}
+
+	private static boolean matches(char[] input, int start, String text) {
+		for (int i = 0; i != text.length(); ++i) {
+			if (input[start + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * The base class for all tokens.
 	 *
@@ -774,4 +889,259 @@ public class WhileyFileLexer {
 			return start + text.length() - 1;
 		}
 	}
+
+	/**
+	 * <p>
+	 * A sequence of tokens packed into an array of integers, where each token
+	 * is represented by its kind, its start and its end. The text of a token is
+	 * extracted from the input only when requested, with keywords and operators
+	 * sharing their fixed text. The encoding of an identifier can also be
+	 * requested, which is interned across files when a table is given (see
+	 * {@link Interner}).
+	 * </p>
+	 * <p>
+	 * This can also be accessed as a list of tokens, in which case a token is
+	 * constructed each time it is accessed. Thus, to avoid constructing tokens
+	 * altogether, they should be accessed by index instead (as the parser
+	 * does). A sub-list of tokens is itself a sequence of packed tokens, which
+	 * shares its items with the original. Tokens may be accessed by several
+	 * threads at once.
+	 * </p>
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public static final class PackedTokens extends AbstractList<Token> implements RandomAccess {
+		private static final Token.Kind[] kinds = Token.Kind.values();
+
+		private final char[] input;
+		/**
+		 * The table in which identifiers are interned, or <code>null</code> if
+		 * none.
+		 */
+		private final Interner interner;
+		/**
+		 * The kind, start and (exclusive) end of each token in turn.
+		 */
+		private int[] items;
+		/**
+		 * The index in the items of the first token in this sequence, which is
+		 * non-zero only for a sub-list of another sequence.
+		 */
+		private final int offset;
+		private int size;
+
+		private PackedTokens(char[] input, Interner interner, int capacity) {
+			this.input = input;
+			this.interner = interner;
+			this.items = new int[3 * Math.max(capacity, 16)];
+			this.offset = 0;
+		}
+
+		private PackedTokens(PackedTokens tokens, int from, int to) {
+			this.input = tokens.input;
+			this.interner = tokens.interner;
+			this.items = tokens.items;
+			this.offset = tokens.offset + from;
+			this.size = to - from;
+		}
+
+		/**
+		 * Pack a list of tokens, such as that returned by
+		 * {@link WhileyFileLexer#scan()}.
+		 *
+		 * @param tokens
+		 * @return
+		 */
+		public static PackedTokens of(List<Token> tokens) {
+			if (tokens instanceof PackedTokens) {
+				return (PackedTokens) tokens;
+			}
+			int length = 0;
+			for (Token token : tokens) {
+				length = Math.max(length, token.start + token.text.length());
+			}
+			// Reconstruct the input from the text of each token
+			char[] input = new char[length];
+			Arrays.fill(input, ' ');
+			PackedTokens packed = new PackedTokens(input, null, tokens.size());
+			for (Token token : tokens) {
+				token.text.getChars(0, token.text.length(), input, token.start);
+				packed.add(token.kind, token.start, token.start + token.text.length());
+			}
+			return packed;
+		}
+
+		private void add(Token.Kind kind, int start, int end) {
+			int i = 3 * size;
+			if (i == items.length) {
+				items = Arrays.copyOf(items, items.length * 2);
+			}
+			items[i] = kind.ordinal();
+			items[i + 1] = start;
+			items[i + 2] = end;
+			size = size + 1;
+		}
+
+		/**
+		 * Append a range of tokens from another sequence, shifting their
+		 * positions by a given amount.
+		 *
+		 * @param other
+		 * @param from
+		 * @param to
+		 * @param shift
+		 */
+		private void append(PackedTokens other, int from, int to, int shift) {
+			int n = to - from;
+			if (3 * (size + n) > items.length) {
+				items = Arrays.copyOf(items, Math.max(items.length * 2, 3 * (size + n)));
+			}
+			System.arraycopy(other.items, 3 * (other.offset + from), items, 3 * size, 3 * n);
+			if (shift != 0) {
+				for (int i = 3 * size; i < 3 * (size + n); i += 3) {
+					items[i + 1] += shift;
+					items[i + 2] += shift;
+				}
+			}
+			size = size + n;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Get the index of the token containing a given position, or the number
+		 * of tokens if there is no such token.
+		 *
+		 * @param position
+		 * @return
+		 */
+		public int indexOf(int position) {
+			int lo = 0;
+			int hi = size;
+			// Find the first token which ends after the position
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (items[3 * (offset + mid) + 2] <= position) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		public Token.Kind getKind(int index) {
+			return kinds[items[3 * check(index)]];
+		}
+
+		public int getStart(int index) {
+			return items[3 * check(index) + 1];
+		}
+
+		/**
+		 * Get the index one past the last character of a given token.
+		 *
+		 * @param index
+		 * @return
+		 */
+		public int getEnd(int index) {
+			return items[3 * check(index) + 2];
+		}
+
+		/**
+		 * Extract the text of a given token from the input.
+		 *
+		 * @param index
+		 * @return
+		 */
+		public String getText(int index) {
+			Token.Kind kind = getKind(index);
+			int start = getStart(index);
+			int end = getEnd(index);
+			String fixed = kind.displayString;
+			// NOTE: the text of operators with unicode alternatives varies
+			if (fixed != null && fixed.length() == end - start && matches(input, start, fixed)) {
+				return fixed;
+			}
+			return new String(input, start, end - start);
+		}
+
+		/**
+		 * Get the UTF-8 encoding of the text of a given token, as held by an
+		 * identifier. This is shared with every equal token interned in the
+		 * same table, and hence must not be modified.
+		 *
+		 * @param index
+		 * @return
+		 */
+		public byte[] getBytes(int index) {
+			int start = getStart(index);
+			int end = getEnd(index);
+			if (interner != null) {
+				return interner.intern(input, start, end);
+			}
+			return new String(input, start, end - start).getBytes(StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Determine whether a given token has some given text, without
+		 * extracting its text.
+		 *
+		 * @param index
+		 * @param text
+		 * @return
+		 */
+		public boolean hasText(int index, String text) {
+			int start = getStart(index);
+			return getEnd(index) - start == text.length() && matches(input, start, text);
+		}
+
+		/**
+		 * Determine whether a given token has the same text as a token in
+		 * another sequence, without extracting the text of either.
+		 *
+		 * @param index
+		 * @param other
+		 * @param otherIndex
+		 * @return
+		 */
+		public boolean equalText(int index, PackedTokens other, int otherIndex) {
+			int start = getStart(index);
+			int length = getEnd(index) - start;
+			int otherStart = other.getStart(otherIndex);
+			if (other.getEnd(otherIndex) - otherStart != length) {
+				return false;
+			}
+			for (int i = 0; i != length; ++i) {
+				if (input[start + i] != other.input[otherStart + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Token get(int index) {
+			return new Token(getKind(index), getText(index), getStart(index));
+		}
+
+		@Override
+		public PackedTokens subList(int from, int to) {
+			if (from < 0 || to > size || from > to) {
+				throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", size: " + size);
+			}
+			return new PackedTokens(this, from, to);
+		}
+
+		private int check(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+			}
+			return offset + index;
+		}
+	}
 }
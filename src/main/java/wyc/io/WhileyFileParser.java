@@ -22,16 +22,21 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntPredicate;
 
 import wybs.lang.SyntacticItem;
 import wybs.lang.SyntaxError;
 import wybs.util.AbstractCompilationUnit.Identifier;
+import wyc.io.WhileyFileLexer.PackedTokens;
 import wyc.io.WhileyFileLexer.Token;
 import static wybs.lang.SyntaxError.*;
 import static wyc.io.WhileyFileLexer.Token.Kind.*;
 
 import wyc.lang.WhileyFile;
 import static wyc.lang.WhileyFile.*;
+import wyc.util.Interner;
 import wyfs.lang.Path;
 
 /**
@@ -39,18 +44,59 @@ import wyfs.lang.Path;
  * original source file in question. No effort is made to check whether or not
  * the generated tree is syntactically correct. Subsequent stages of the
  * compiler are responsible for doing this.
+ * <p>
+ * Large files can be parsed in parallel, by splitting their tokens into chunks
+ * at the start of top-level declarations. Since these always start in column
+ * zero, such a chunk can be parsed without knowing what precedes it. Each chunk
+ * is parsed into a separate file, and these are then appended to the file
+ * being parsed in order. The result is identical to parsing the file
+ * sequentially. Should any chunk contain a syntax error, the file is parsed
+ * again sequentially to ensure the error reported is also the same.
+ * </p>
  *
  * @author David J. Pearce
  *
  */
 public class WhileyFileParser {
+	/**
+	 * The minimum number of tokens in a chunk parsed in parallel with others.
+	 * Files with fewer tokens than twice this are always parsed sequentially.
+	 */
+	public static final int MIN_CHUNK_SIZE = 8192;
+
 	private final WhileyFile file;
-	private ArrayList<Token> tokens;
+	private final PackedTokens tokens;
 	private int index;
+	private ForkJoinPool pool;
+	private Interner interner;
 
 	public WhileyFileParser(WhileyFile wf, List<Token> tokens) {
 		this.file = wf;
-		this.tokens = new ArrayList<>(tokens);
+		// NOTE: tokens are accessed by index, hence are never constructed
+		// when packed.
+		this.tokens = PackedTokens.of(tokens);
+	}
+
+	/**
+	 * Set the pool in which chunks of a large file are parsed in parallel,
+	 * such that this is bounded by the parallelism of the pool. By default (or
+	 * if <code>null</code>), files are parsed sequentially.
+	 *
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Set the table used to share the encodings of identifiers added by the
+	 * parser (other than those taken from tokens) with those of other files.
+	 * By default, no encodings are shared.
+	 *
+	 * @param interner
+	 */
+	public void setInterner(Interner interner) {
+		this.interner = interner;
 	}
 
 	/**
@@ -61,26 +107,89 @@ public class WhileyFileParser {
 	 * @return
 	 */
 	public WhileyFile read() {
-		ArrayList<Decl> declarations = new ArrayList<>();
+		return read(null);
+	}
+
+	/**
+	 * Read a <code>WhileyFile</code> from the token stream, whilst recording
+	 * the index of the first token of each top-level declaration. When these
+	 * are recorded, the file is always parsed sequentially.
+	 *
+	 * @param starts
+	 *            The list to record the first token of each declaration in, or
+	 *            <code>null</code> if they are not needed.
+	 * @return
+	 */
+	WhileyFile read(List<Integer> starts) {
 		Name name = parseModuleName(file.getEntry());
+		List<Decl> declarations = pool != null && pool.getParallelism() > 1 && starts == null ? parseChunks()
+				: parseDeclarations(starts);
 
+		// Finally, construct the new file.
+		Tuple<Decl> decls = new Tuple<>(declarations);
+		Decl.Module module = new Decl.Module(name,decls);
+		file.allocate(module);
+		return file;
+	}
+
+	/**
+	 * Parse all declarations from the current position to the end of the
+	 * token stream.
+	 *
+	 * @return
+	 */
+	private List<Decl> parseDeclarations() {
+		return parseDeclarations(null);
+	}
+
+	/**
+	 * Parse all declarations from the current position to the end of the
+	 * token stream, recording the index of the first token of each.
+	 *
+	 * @param starts
+	 *            The list to record the first token of each declaration in, or
+	 *            <code>null</code> if they are not needed.
+	 * @return
+	 */
+	private List<Decl> parseDeclarations(List<Integer> starts) {
+		return parseDeclarations(starts, i -> false);
+	}
+
+	/**
+	 * Parse all declarations from the current position, recording the index of
+	 * the first token of each, until either the end of the token stream is
+	 * reached or the next declaration starts at a given boundary.
+	 *
+	 * @param starts
+	 *            The list to record the first token of each declaration in, or
+	 *            <code>null</code> if they are not needed.
+	 * @param boundary
+	 *            Determines whether a declaration starting at a given index
+	 *            should not be parsed.
+	 * @return
+	 */
+	List<Decl> parseDeclarations(List<Integer> starts, IntPredicate boundary) {
+		ArrayList<Decl> declarations = new ArrayList<>();
 		skipWhiteSpace();
-		while (index < tokens.size()) {
+		while (index < tokens.size() && !boundary.test(index)) {
 			Decl declaration;
-			Token lookahead = tokens.get(index);
-			if (lookahead.kind == Import) {
+			if (starts != null) {
+				starts.add(index);
+			}
+			int lookahead = index;
+			if (tokens.getKind(lookahead) == Import) {
 				declaration = parseImportDeclaration();
 			} else {
 				Tuple<Modifier> modifiers = parseModifiers(Public, Private, Native, Export, Final);
 				checkNotEof();
-				lookahead = tokens.get(index);
-				if (lookahead.text.equals("type")) {
+				lookahead = index;
+				if (tokens.hasText(lookahead, "type")) {
 					declaration = parseTypeDeclaration(modifiers);
-				} else if (lookahead.kind == Function) {
+				} else if (tokens.getKind(lookahead) == Function) {
 					declaration = parseFunctionOrMethodDeclaration(modifiers, true);
-				} else if (lookahead.kind == Method) {
+				} else if (tokens.getKind(lookahead) == Method) {
 					declaration = parseFunctionOrMethodDeclaration(modifiers, false);
-				} else if (lookahead.kind == Property) {
+				} else if (tokens.getKind(lookahead) == Property) {
 					declaration = parsePropertyDeclaration(modifiers);
 				} else {
 					// Fall back
@@ -90,21 +199,112 @@ public class WhileyFileParser {
 			declarations.add(declaration);
 			skipWhiteSpace();
 		}
+		return declarations;
+	}
 
-		// Finally, construct the new file.
-		Tuple<Decl> decls = new Tuple<>(declarations);
-		Decl.Module module = new Decl.Module(name,decls);
-		file.allocate(module);
-		return file;
+	/**
+	 * Parse all declarations from the current position to the end of the
+	 * token stream, splitting them into chunks which are parsed in parallel
+	 * in the given pool. Should a chunk contain a syntax error, the remaining
+	 * chunks are cancelled and the declarations are parsed again sequentially
+	 * to report the error which would have been reported first.
+	 *
+	 * @return
+	 */
+	private List<Decl> parseChunks() {
+		int start = index;
+		List<Integer> boundaries = split(start);
+		if (boundaries.size() <= 2) {
+			return parseDeclarations();
+		}
+		ArrayList<ForkJoinTask<wycc.util.Pair<WhileyFile, List<Decl>>>> tasks = new ArrayList<>();
+		for (int i = 1; i < boundaries.size(); ++i) {
+			PackedTokens chunk = tokens.subList(boundaries.get(i - 1), boundaries.get(i));
+			tasks.add(pool.submit(() -> {
+				WhileyFile wf = new WhileyFile(file.getEntry());
+				WhileyFileParser parser = new WhileyFileParser(wf, chunk);
+				parser.setInterner(interner);
+				return new wycc.util.Pair<>(wf, parser.parseDeclarations());
+			}));
+		}
+		// Append the chunks in order
+		ArrayList<Decl> declarations = new ArrayList<>();
+		for (int i = 0; i != tasks.size(); ++i) {
+			wycc.util.Pair<WhileyFile, List<Decl>> chunk;
+			try {
+				chunk = tasks.get(i).join();
+			} catch (SyntaxError e) {
+				for (int j = i + 1; j < tasks.size(); ++j) {
+					tasks.get(j).cancel(false);
+				}
+				// Reparse sequentially to determine which error would have been
+				// reported first.
+				index = start;
+				return parseDeclarations();
+			}
+			int offset = file.append(chunk.first());
+			for (Decl decl : chunk.second()) {
+				declarations.add((Decl) file.getSyntacticItem(offset + decl.getIndex()));
+			}
+		}
+		index = tokens.size();
+		return declarations;
+	}
+
+	/**
+	 * Split the tokens from a given position into chunks, each of which
+	 * starts with a top-level declaration. Only declarations which start in
+	 * column zero with an import, a modifier or a keyword introducing a
+	 * declaration are considered, since no such token can continue a
+	 * declaration. Chunks are no smaller than {@link #MIN_CHUNK_SIZE}, and
+	 * there are at most a few per thread.
+	 *
+	 * @param start
+	 * @return The index of the first token in each chunk, followed by the
+	 *         number of tokens.
+	 */
+	private List<Integer> split(int start) {
+		int size = Math.max(MIN_CHUNK_SIZE, (tokens.size() - start) / (4 * pool.getParallelism()));
+		ArrayList<Integer> boundaries = new ArrayList<>();
+		boundaries.add(start);
+		for (int i = start + size; i < tokens.size() - MIN_CHUNK_SIZE; ++i) {
+			Token.Kind previous = tokens.getKind(i - 1);
+			Token.Kind kind = tokens.getKind(i);
+			if (previous == NewLine && isDeclarationStart(kind, i)) {
+				boundaries.add(i);
+				i += size - 1;
+			}
+		}
+		boundaries.add(tokens.size());
+		return boundaries;
+	}
+
+	private boolean isDeclarationStart(Token.Kind kind, int i) {
+		switch (kind) {
+		case Import:
+		case Public:
+		case Private:
+		case Native:
+		case Export:
+		case Final:
+		case Function:
+		case Method:
+		case Property:
+			return true;
+		case Identifier:
+			return tokens.hasText(i, "type");
+		default:
+			return false;
+		}
 	}
 
 	private Name parseModuleName(Path.Entry<WhileyFile> entry) {
 		ArrayList<Identifier> components = new ArrayList<>();
-		if (tryAndMatch(true, Package) != null) {
+		if (tryAndMatch(true, Package) >= 0) {
 			// found a package keyword
 			components.add(parseIdentifier());
 
-			while (tryAndMatch(true, Dot) != null) {
+			while (tryAndMatch(true, Dot) >= 0) {
 				components.add(parseIdentifier());
 			}
 
@@ -112,7 +312,8 @@ public class WhileyFileParser {
 		}
 		Identifier[] bits = components.toArray(new Identifier[components.size()+1]);
 		// FIXME: this is so completely broken
-		bits[bits.length-1] = new Identifier(entry.id().last());
+		String last = entry.id().last();
+		bits[bits.length-1] = interner == null ? new Identifier(last) : new Identifier(interner.intern(last));
 		return new Name(bits);
 	}
 
@@ -144,10 +345,10 @@ public class WhileyFileParser {
 		int start = index;
 		Identifier from = parseIdentifier();
 		// Lookahead to see whether optional "from" component was specified or not.
-		Token lookahead = tryAndMatch(true, Identifier);
-		if (lookahead != null) {
+		int lookahead = tryAndMatch(true, Identifier);
+		if (lookahead >= 0) {
 			// Optional from identifier was given
-			if (!lookahead.text.equals("from")) {
+			if (!tokens.hasText(lookahead, "from")) {
 				syntaxError("expected \"from\" here", lookahead);
 			}
 			return from;
@@ -162,7 +363,7 @@ public class WhileyFileParser {
 		// Parse package filter string
 		ArrayList<Identifier> components = new ArrayList<>();
 		components.add(parseIdentifier());
-		while (tryAndMatch(true, ColonColon) != null) {
+		while (tryAndMatch(true, ColonColon) >= 0) {
 			Identifier component = parseStarOrIdentifier(scope);
 			components.add(component);
 		}
@@ -171,7 +372,7 @@ public class WhileyFileParser {
 	}
 
 	private Identifier parseStarOrIdentifier(EnclosingScope scope) {
-		if (tryAndMatch(true, Star) != null) {
+		if (tryAndMatch(true, Star) >= 0) {
 			// TODO: implement something sensible here
 			return null;
 		} else {
@@ -181,17 +382,17 @@ public class WhileyFileParser {
 
 	private Tuple<Modifier> parseModifiers(Token.Kind... kinds) {
 		ArrayList<Modifier> mods = new ArrayList<>();
-		Token lookahead;
+		int lookahead;
 		boolean visible = false;
-		while ((lookahead = tryAndMatch(true, kinds)) != null) {
-			switch (lookahead.kind) {
+		while ((lookahead = tryAndMatch(true, kinds)) >= 0) {
+			switch (tokens.getKind(lookahead)) {
 			case Public:
 			case Private:
 				if (visible) {
 					syntaxError("visibility modifier already given", lookahead);
 				}
 			}
-			switch (lookahead.kind) {
+			switch (tokens.getKind(lookahead)) {
 			case Public:
 				mods.add(annotateSourceLocation(new Modifier.Public(),index-1));
 				visible = true;
@@ -286,7 +487,7 @@ public class WhileyFileParser {
 		// Parse (optional) return type
 		Tuple<Decl.Variable> returns;
 		//
-		if (tryAndMatch(true, MinusGreater) != null) {
+		if (tryAndMatch(true, MinusGreater) >= 0) {
 			// Explicit return type is given, so parse it! We first clone the
 			// environent and create a special one only for use within ensures
 			// clauses, since these are the only expressions which may refer to
@@ -352,7 +553,7 @@ public class WhileyFileParser {
 		match(LeftBrace);
 		ArrayList<Decl.Variable> parameters = new ArrayList<>();
 		boolean firstTime = true;
-		while (eventuallyMatch(terminator) == null) {
+		while (eventuallyMatch(terminator) < 0) {
 			if (!firstTime) {
 				match(Comma);
 			}
@@ -372,7 +573,7 @@ public class WhileyFileParser {
 	public Tuple<Expr> parseInvariant(EnclosingScope scope, Token.Kind kind) {
 		ArrayList<Expr> invariant = new ArrayList<>();
 		// Check whether or not there are optional "where" clauses.
-		while (tryAndMatch(true, kind) != null) {
+		while (tryAndMatch(true, kind) >= 0) {
 			invariant.add(parseLogicalExpression(scope, false));
 		}
 		return new Tuple<>(invariant);
@@ -380,7 +581,7 @@ public class WhileyFileParser {
 
 	public Tuple<Decl.Variable> parseOptionalParameters(EnclosingScope scope) {
 		int next = skipWhiteSpace(index);
-		if (next < tokens.size() && tokens.get(next).kind == LeftBrace) {
+		if (next < tokens.size() && tokens.getKind(next) == LeftBrace) {
 			return parseParameters(scope,RightBrace);
 		} else {
 			return new Tuple<>(parseOptionalParameter(scope));
@@ -392,7 +593,7 @@ public class WhileyFileParser {
 		boolean braced = false;
 		Type type;
 		Identifier name;
-		if (tryAndMatch(true, LeftBrace) != null) {
+		if (tryAndMatch(true, LeftBrace) >= 0) {
 			Pair<Type, Identifier> p = parseMixedType(scope);
 			type = p.getFirst();
 			name = p.getSecond();
@@ -595,9 +796,8 @@ public class WhileyFileParser {
 	private Indent getIndent() {
 		skipEmptyLines();
 		if (index < tokens.size()) {
-			Token token = tokens.get(index);
-			if (token.kind == Indent) {
-				return new Indent(token.text, token.start);
+			if (tokens.getKind(index) == Indent) {
+				return new Indent(tokens.getText(index), tokens.getStart(index));
 			}
 			return null;
 		}
@@ -621,11 +821,11 @@ public class WhileyFileParser {
 	 */
 	private Stmt parseStatement(EnclosingScope scope) {
 		checkNotEof();
-		Token lookahead = tokens.get(index);
+		int lookahead = index;
 
 		// First, attempt to parse the easy statement forms.
 
-		switch (lookahead.kind) {
+		switch (tokens.getKind(lookahead)) {
 		case Assert:
 			return parseAssertStatement(scope);
 		case Assume:
@@ -683,7 +883,7 @@ public class WhileyFileParser {
 		// See if it is a named block
 		Identifier blockName = parseOptionalIdentifier(scope);
 		if (blockName != null) {
-			if (tryAndMatch(true, Colon) != null && isAtEOL()) {
+			if (tryAndMatch(true, Colon) >= 0 && isAtEOL()) {
 				int end = index;
 				matchEndLine();
 				scope = scope.newEnclosingScope();
@@ -697,7 +897,7 @@ public class WhileyFileParser {
 		// assignment   : Identifier | LeftBrace | Star
 		// variable decl: Identifier | LeftBrace | LeftCurly | Ampersand
 		// invoke       : Identifier | LeftBrace | Star
-		if (tryAndMatch(false, Final) != null || (skipType(scope) && tryAndMatch(false, Identifier) != null)) {
+		if (tryAndMatch(false, Final) >= 0 || (skipType(scope) && tryAndMatch(false, Identifier) >= 0)) {
 			// Must be a variable declaration as this is the only situation in which a type
 			// can be followed by an identifier.
 			index = start; // backtrack
@@ -757,7 +957,7 @@ public class WhileyFileParser {
 		// A variable declaration may optionally be assigned an initialiser
 		// expression.
 		Expr initialiser = null;
-		if (tryAndMatch(true, Token.Kind.Equals) != null) {
+		if (tryAndMatch(true, Token.Kind.Equals) >= 0) {
 			initialiser = parseExpression(scope, false);
 		}
 		// Now, a new line indicates the end-of-statement
@@ -810,7 +1010,7 @@ public class WhileyFileParser {
 		// means expressions must start on the same line as a return. Otherwise,
 		// a potentially cryptic error message will be given.
 		Tuple<Expr> returns;
-		if (next < tokens.size() && tokens.get(next).kind != NewLine) {
+		if (next < tokens.size() && tokens.getKind(next) != NewLine) {
 			returns = parseExpressions(scope, false);
 		} else {
 			returns = new Tuple<>();
@@ -899,7 +1099,7 @@ public class WhileyFileParser {
 	private Stmt.Break parseBreakStatement(EnclosingScope scope) {
 		int start = index;
 		// Match the break keyword
-		Token t = match(Break);
+		int t = match(Break);
 		int end = index;
 		matchEndLine();
 		// Check that break statement makes sense at this point.
@@ -928,7 +1128,7 @@ public class WhileyFileParser {
 	private Stmt.Continue parseContinueStatement(EnclosingScope scope) {
 		int start = index;
 		// Match the continue keyword
-		Token t = match(Continue);
+		int t = match(Continue);
 		int end = index;
 		matchEndLine();
 		// Check that continue statement makes sense at this point.
@@ -1063,9 +1263,9 @@ public class WhileyFileParser {
 
 		// Second, attempt to parse the false branch, which is optional.
 		Stmt.Block fblk = null;
-		if (tryAndMatchAtIndent(true, scope.getIndent(), Else) != null) {
+		if (tryAndMatchAtIndent(true, scope.getIndent(), Else) >= 0) {
 			int if_start = index;
-			if (tryAndMatch(true, If) != null) {
+			if (tryAndMatch(true, If) >= 0) {
 				// This is an if-chain, so backtrack and parse a complete If
 				index = if_start;
 				fblk = new Stmt.Block(parseIfStatement(scope));
@@ -1292,7 +1492,7 @@ public class WhileyFileParser {
 	private Stmt.Case parseCaseStatement(EnclosingScope scope) {
 		int start = index;
 		List<Expr> values;
-		if (tryAndMatch(true, Default) != null) {
+		if (tryAndMatch(true, Default) >= 0) {
 			values = Collections.EMPTY_LIST;
 		} else {
 			match(Case);
@@ -1301,7 +1501,7 @@ public class WhileyFileParser {
 			do {
 				// NOTE: expression terminated by ':'
 				values.add(parseExpression(scope, true));
-			} while (tryAndMatch(true, Comma) != null);
+			} while (tryAndMatch(true, Comma) >= 0);
 		}
 		match(Colon);
 		int end = index;
@@ -1374,7 +1574,7 @@ public class WhileyFileParser {
 		elements.add(parseLVal(index, scope));
 
 		// Check whether we have a multiple lvals or not
-		while (tryAndMatch(true, Comma) != null) {
+		while (tryAndMatch(true, Comma) >= 0) {
 			// Add all expressions separated by a comma
 			elements.add(parseLVal(index, scope));
 			// Done
@@ -1407,11 +1607,11 @@ public class WhileyFileParser {
 	 */
 	private LVal parseAccessLVal(int start, EnclosingScope scope) {
 		LVal lhs = parseLValTerm(start, scope);
-		Token token;
+		int token;
 
-		while ((token = tryAndMatchOnLine(LeftSquare)) != null
-				|| (token = tryAndMatch(true, Dot, MinusGreater)) != null) {
-			switch (token.kind) {
+		while ((token = tryAndMatchOnLine(LeftSquare)) >= 0
+				|| (token = tryAndMatch(true, Dot, MinusGreater)) >= 0) {
+			switch (tokens.getKind(token)) {
 			case LeftSquare:
 				// NOTE: expression is terminated by ']'
 				Expr rhs = parseAdditiveExpression(scope, true);
@@ -1451,8 +1651,8 @@ public class WhileyFileParser {
 		checkNotEof();
 		start = index;
 		// First, attempt to disambiguate the easy forms:
-		Token lookahead = tokens.get(index);
-		switch (lookahead.kind) {
+		int lookahead = index;
+		switch (tokens.getKind(lookahead)) {
 		case Identifier:
 			Identifier name = parseIdentifier();
 			LVal var;
@@ -1510,7 +1710,7 @@ public class WhileyFileParser {
 		// means expressions must start on the same line as a return. Otherwise,
 		// a potentially cryptic error message will be given.
 		returns.add(parseExpression(scope, terminated));
-		while (tryAndMatch(false, Comma) != null) {
+		while (tryAndMatch(false, Comma) >= 0) {
 			returns.add(parseExpression(scope, terminated));
 		}
 		return new Tuple<>(returns);
@@ -1587,9 +1787,9 @@ public class WhileyFileParser {
 		checkNotEof();
 		int start = index;
 		Expr lhs = parseAndOrExpression(scope, terminated);
-		Token lookahead = tryAndMatch(terminated, LogicalImplication, LogicalIff);
-		if (lookahead != null) {
-			switch (lookahead.kind) {
+		int lookahead = tryAndMatch(terminated, LogicalImplication, LogicalIff);
+		if (lookahead >= 0) {
+			switch (tokens.getKind(lookahead)) {
 			case LogicalImplication: {
 				Expr rhs = parseExpression(scope, terminated);
 				lhs = new Expr.LogicalImplication(lhs, rhs);
@@ -1637,9 +1837,9 @@ public class WhileyFileParser {
 		checkNotEof();
 		int start = index;
 		Expr lhs = parseBitwiseOrExpression(scope, terminated);
-		Token lookahead = tryAndMatch(terminated, LogicalAnd, LogicalOr);
-		if (lookahead != null) {
-			switch (lookahead.kind) {
+		int lookahead = tryAndMatch(terminated, LogicalAnd, LogicalOr);
+		if (lookahead >= 0) {
+			switch (tokens.getKind(lookahead)) {
 			case LogicalAnd: {
 				Expr rhs = parseExpression(scope, terminated);
 				lhs = annotateSourceLocation(new Expr.LogicalAnd(new Tuple<>(lhs, rhs)),start);
@@ -1682,7 +1882,7 @@ public class WhileyFileParser {
 		int start = index;
 		Expr lhs = parseBitwiseXorExpression(scope, terminated);
 
-		if (tryAndMatch(terminated, VerticalBar) != null) {
+		if (tryAndMatch(terminated, VerticalBar) >= 0) {
 			Expr rhs = parseExpression(scope, terminated);
 			return annotateSourceLocation(new Expr.BitwiseOr(Type.Byte, new Tuple<>(lhs, rhs)), start);
 		}
@@ -1715,7 +1915,7 @@ public class WhileyFileParser {
 		int start = index;
 		Expr lhs = parseBitwiseAndExpression(scope, terminated);
 
-		if (tryAndMatch(terminated, Caret) != null) {
+		if (tryAndMatch(terminated, Caret) >= 0) {
 			Expr rhs = parseExpression(scope, terminated);
 			return annotateSourceLocation(new Expr.BitwiseXor(Type.Byte, new Tuple<>(lhs, rhs)), start);
 		}
@@ -1748,7 +1948,7 @@ public class WhileyFileParser {
 		int start = index;
 		Expr lhs = parseConditionExpression(scope, terminated);
 
-		if (tryAndMatch(terminated, Ampersand) != null) {
+		if (tryAndMatch(terminated, Ampersand) >= 0) {
 			Expr rhs = parseExpression(scope, terminated);
 			return annotateSourceLocation(new Expr.BitwiseAnd(Type.Byte, new Tuple<>(lhs, rhs)), start);
 		}
@@ -1779,10 +1979,10 @@ public class WhileyFileParser {
 	 */
 	private Expr parseConditionExpression(EnclosingScope scope, boolean terminated) {
 		int start = index;
-		Token lookahead;
+		int lookahead;
 
 		// First, attempt to parse quantifiers (e.g. some, all, no, etc)
-		if ((lookahead = tryAndMatch(terminated, Some, All)) != null) {
+		if ((lookahead = tryAndMatch(terminated, Some, All)) >= 0) {
 			return parseQuantifierExpression(lookahead, scope, terminated);
 		}
 
@@ -1791,13 +1991,13 @@ public class WhileyFileParser {
 		lookahead = tryAndMatch(terminated, LessEquals, LeftAngle, GreaterEquals, RightAngle, EqualsEquals, NotEquals,
 				Is, Subset, SubsetEquals, Superset, SupersetEquals);
 
-		if (lookahead != null && lookahead.kind == Is) {
+		if (lookahead >= 0 && tokens.getKind(lookahead) == Is) {
 			Type type = parseType(scope);
 			lhs = annotateSourceLocation(new Expr.Is(lhs, type), start);
-		} else if (lookahead != null) {
+		} else if (lookahead >= 0) {
 			Expr rhs = parseShiftExpression(scope, terminated);
 			//
-			switch (lookahead.kind) {
+			switch (tokens.getKind(lookahead)) {
 			case LessEquals:
 				lhs = new Expr.IntegerLessThanOrEqual(lhs, rhs);
 				break;
@@ -1853,7 +2053,7 @@ public class WhileyFileParser {
 	 *            we know the right-brace will always terminate this expression.
 	 * @return
 	 */
-	private Expr parseQuantifierExpression(Token lookahead, EnclosingScope scope, boolean terminated) {
+	private Expr parseQuantifierExpression(int lookahead, EnclosingScope scope, boolean terminated) {
 		int start = index - 1;
 		scope = scope.newEnclosingScope();
 		match(LeftCurly);
@@ -1865,7 +2065,7 @@ public class WhileyFileParser {
 		match(RightCurly);
 		//
 		Expr.Quantifier qf;
-		if (lookahead.kind == All) {
+		if (tokens.getKind(lookahead) == All) {
 			qf = new Expr.UniversalQuantifier(parameters, condition);
 		} else {
 			qf = new Expr.ExistentialQuantifier(parameters, condition);
@@ -1891,7 +2091,7 @@ public class WhileyFileParser {
 			decl = annotateSourceLocation(decl, start);
 			parameters.add(decl);
 			scope.declareVariable(decl);
-		} while (eventuallyMatch(VerticalBar) == null);
+		} while (eventuallyMatch(VerticalBar) < 0);
 
 		return new Tuple<>(parameters);
 	}
@@ -1959,10 +2159,10 @@ public class WhileyFileParser {
 		int start = index;
 		Expr lhs = parseAdditiveExpression(scope, terminated);
 
-		Token lookahead;
-		while ((lookahead = tryAndMatch(terminated, LeftAngleLeftAngle, RightAngleRightAngle)) != null) {
+		int lookahead;
+		while ((lookahead = tryAndMatch(terminated, LeftAngleLeftAngle, RightAngleRightAngle)) >= 0) {
 			Expr rhs = parseAdditiveExpression(scope, terminated);
-			switch (lookahead.kind) {
+			switch (tokens.getKind(lookahead)) {
 			case LeftAngleLeftAngle:
 				lhs = new Expr.BitwiseShiftLeft(Type.Byte, lhs, rhs);
 				break;
@@ -2001,10 +2201,10 @@ public class WhileyFileParser {
 		int start = index;
 		Expr lhs = parseMultiplicativeExpression(scope, terminated);
 
-		Token lookahead;
-		while ((lookahead = tryAndMatch(terminated, Plus, Minus)) != null) {
+		int lookahead;
+		while ((lookahead = tryAndMatch(terminated, Plus, Minus)) >= 0) {
 			Expr rhs = parseMultiplicativeExpression(scope, terminated);
-			switch (lookahead.kind) {
+			switch (tokens.getKind(lookahead)) {
 			case Plus:
 				lhs = new Expr.IntegerAddition(Type.Void, lhs, rhs);
 				break;
@@ -2044,10 +2244,10 @@ public class WhileyFileParser {
 		int start = index;
 		Expr lhs = parseAccessExpression(scope, terminated);
 
-		Token lookahead = tryAndMatch(terminated, Star, RightSlash, Percent);
-		if (lookahead != null) {
+		int lookahead = tryAndMatch(terminated, Star, RightSlash, Percent);
+		if (lookahead >= 0) {
 			Expr rhs = parseAccessExpression(scope, terminated);
-			switch (lookahead.kind) {
+			switch (tokens.getKind(lookahead)) {
 			case Star:
 				lhs = new Expr.IntegerMultiplication(Type.Void, lhs, rhs);
 				break;
@@ -2118,11 +2318,11 @@ public class WhileyFileParser {
 	private Expr parseAccessExpression(EnclosingScope scope, boolean terminated) {
 		int start = index;
 		Expr lhs = parseTermExpression(scope, terminated);
-		Token token;
+		int token;
 
-		while ((token = tryAndMatchOnLine(LeftSquare)) != null
-				|| (token = tryAndMatch(terminated, Dot, MinusGreater, ColonColon)) != null) {
-			switch (token.kind) {
+		while ((token = tryAndMatchOnLine(LeftSquare)) >= 0
+				|| (token = tryAndMatch(terminated, Dot, MinusGreater, ColonColon)) >= 0) {
+			switch (tokens.getKind(token)) {
 			case LeftSquare:
 				// NOTE: expression guaranteed to be terminated by ']'.
 				Expr rhs = parseAdditiveExpression(scope, true);
@@ -2160,7 +2360,7 @@ public class WhileyFileParser {
 		// have optional lifetime arguments in angle brackets.
 		boolean isInvocation = false;
 		Tuple<Identifier> lifetimes = null;
-		if (tryAndMatch(terminated, LeftBrace) != null) {
+		if (tryAndMatch(terminated, LeftBrace) >= 0) {
 			isInvocation = true;
 			lifetimes = new Tuple<>();
 		} else if (lookaheadSequence(terminated, LeftAngle)) {
@@ -2198,7 +2398,7 @@ public class WhileyFileParser {
 		Name name = parseName(scope);
 		// Decide what we've got
 		Expr expr;
-		if (tryAndMatch(terminated, LeftBrace) != null) {
+		if (tryAndMatch(terminated, LeftBrace) >= 0) {
 			// This indicates a direct invocation. First,
 			// parse arguments to invocation
 			Tuple<Expr> arguments = parseInvocationArguments(scope);
@@ -2235,9 +2435,9 @@ public class WhileyFileParser {
 		checkNotEof();
 
 		int start = index;
-		Token token = tokens.get(index);
+		int token = index;
 
-		switch (token.kind) {
+		switch (tokens.getKind(token)) {
 		case LeftBrace:
 			return parseBracketedOrCastExpression(scope, terminated);
 		case New:
@@ -2246,7 +2446,7 @@ public class WhileyFileParser {
 		case Identifier: {
 			Identifier name = parseIdentifier();
 			Expr term;
-			if (tryAndMatch(terminated, LeftBrace) != null) {
+			if (tryAndMatch(terminated, LeftBrace) >= 0) {
 				return parseInvokeExpression(scope, start, name, terminated, new Tuple<>());
 			} else if (lookaheadSequence(terminated, Colon, New)) {
 				// Identifier is lifetime name in "new" expression
@@ -2259,9 +2459,9 @@ public class WhileyFileParser {
 				// boolean expression!
 				int oldindex = index;
 				match(LeftAngle);
-				Token lifetime = tryAndMatch(terminated, Identifier, This, Star);
-				if (lifetime != null
-						&& (lifetime.kind != Identifier || scope.isLifetime(new Identifier(lifetime.text)))) {
+				int lifetime = tryAndMatch(terminated, Identifier, This, Star);
+				if (lifetime >= 0
+						&& (tokens.getKind(lifetime) != Identifier || scope.isLifetime(new Identifier(tokens.getText(lifetime))))) {
 					// then it's definitely a lifetime
 					index--; // don't forget the first argument!
 					Tuple<Identifier> lifetimes = parseLifetimeArguments(scope);
@@ -2305,7 +2505,7 @@ public class WhileyFileParser {
 			return annotateSourceLocation(new Expr.Constant(Type.Void, new Value.Byte(val)), index++);
 		}
 		case CharLiteral: {
-			BigInteger val = parseCharacter(token.text);
+			BigInteger val = parseCharacter(tokens.getText(token));
 			return annotateSourceLocation(new Expr.Constant(Type.Void, new Value.Int(val)), index++);
 		}
 		case IntegerLiteral: {
@@ -2426,7 +2626,7 @@ public class WhileyFileParser {
 		// cannot be clearly distinguished from expressions at this stage (e.g.
 		// "(nat,nat)" could either be a tuple type (if "nat" is a type) or a
 		// tuple expression (if "nat" is a variable or constant).
-		if (skipType(scope) && tryAndMatch(true, RightBrace) != null) {
+		if (skipType(scope) && tryAndMatch(true, RightBrace) >= 0) {
 			// must be a cast expression
 			index = start; // backtrack
 			return parseCastExpression(scope, terminated);
@@ -2484,14 +2684,14 @@ public class WhileyFileParser {
 	private Expr parseArrayInitialiserOrGeneratorExpression(EnclosingScope scope, boolean terminated) {
 		int start = index;
 		match(LeftSquare);
-		if (tryAndMatch(true, RightSquare) != null) {
+		if (tryAndMatch(true, RightSquare) >= 0) {
 			// this is an empty array initialiser
 			index = start;
 			return parseArrayInitialiserExpression(scope, terminated);
 		} else {
 			Expr expr = parseExpression(scope, true);
 			// Finally, disambiguate
-			if (tryAndMatch(true, SemiColon) != null) {
+			if (tryAndMatch(true, SemiColon) >= 0) {
 				// this is an array generator
 				index = start;
 				return parseArrayGeneratorExpression(scope, terminated);
@@ -2533,7 +2733,7 @@ public class WhileyFileParser {
 		match(LeftSquare);
 		ArrayList<Expr> exprs = new ArrayList<>();
 		boolean firstTime = true;
-		while (eventuallyMatch(RightSquare) == null) {
+		while (eventuallyMatch(RightSquare) < 0) {
 			if (!firstTime) {
 				match(Comma);
 			}
@@ -2625,7 +2825,7 @@ public class WhileyFileParser {
 		ArrayList<Expr> operands = new ArrayList<>();
 
 		boolean firstTime = true;
-		while (eventuallyMatch(RightCurly) == null) {
+		while (eventuallyMatch(RightCurly) < 0) {
 			if (!firstTime) {
 				match(Comma);
 			}
@@ -2855,7 +3055,7 @@ public class WhileyFileParser {
 	private Tuple<Expr> parseInvocationArguments(EnclosingScope scope) {
 		boolean firstTime = true;
 		ArrayList<Expr> args = new ArrayList<>();
-		while (eventuallyMatch(RightBrace) == null) {
+		while (eventuallyMatch(RightBrace) < 0) {
 			if (!firstTime) {
 				match(Comma);
 			} else {
@@ -2967,7 +3167,7 @@ public class WhileyFileParser {
 	private Expr parseLambdaExpression(EnclosingScope scope, boolean terminated) {
 		int start = index;
 		match(Ampersand);
-		if (tryAndMatch(terminated, LeftBrace, LeftSquare, LeftAngle) != null) {
+		if (tryAndMatch(terminated, LeftBrace, LeftSquare, LeftAngle) >= 0) {
 			index = start; // backtrack
 			return parseLambdaInitialiser(scope, terminated);
 		} else {
@@ -3056,11 +3256,11 @@ public class WhileyFileParser {
 		Name name = parseName(scope);
 		Tuple<Type> parameters;
 		// Check whether or not parameters are supplied
-		if (tryAndMatch(terminated, LeftBrace) != null) {
+		if (tryAndMatch(terminated, LeftBrace) >= 0) {
 			// Yes, parameters are supplied!
 			ArrayList<Type> tmp = new ArrayList<>();
 			boolean firstTime = true;
-			while (eventuallyMatch(RightBrace) == null) {
+			while (eventuallyMatch(RightBrace) < 0) {
 				int p_start = index;
 				if (!firstTime) {
 					match(Comma);
@@ -3198,7 +3398,7 @@ public class WhileyFileParser {
 
 	public boolean skipType(EnclosingScope scope) {
 		if (skipTypeArray(scope)) {
-			while (tryAndMatch(false, Ampersand, VerticalBar) != null) {
+			while (tryAndMatch(false, Ampersand, VerticalBar) >= 0) {
 				if (!skipTypeArray(scope)) {
 					return false;
 				}
@@ -3210,8 +3410,8 @@ public class WhileyFileParser {
 
 	public boolean skipTypeArray(EnclosingScope scope) {
 		if (skipTypeTerm(scope)) {
-			while(tryAndMatch(false,LeftSquare) != null) {
-				if(tryAndMatch(false,RightSquare) == null) {
+			while(tryAndMatch(false,LeftSquare) >= 0) {
+				if(tryAndMatch(false,RightSquare) < 0) {
 					return false;
 				}
 			}
@@ -3222,14 +3422,14 @@ public class WhileyFileParser {
 
 	public boolean skipTypeTerm(EnclosingScope scope) {
 		skipWhiteSpace();
-		Token token = tokens.get(index);
-		switch (token.kind) {
+		int token = index;
+		switch (tokens.getKind(token)) {
 		case Void:
 		case Null:
 		case Bool:
 		case Byte:
 		case Int:
-			match(token.kind);
+			match(tokens.getKind(token));
 			return true;
 		case LeftBrace:
 			return skipBracketedType(scope);
@@ -3250,7 +3450,7 @@ public class WhileyFileParser {
 
 	public boolean skipBracketedType(EnclosingScope scope) {
 		match(LeftBrace);
-		return skipType(scope) && tryAndMatch(false, RightBrace) != null;
+		return skipType(scope) && tryAndMatch(false, RightBrace) >= 0;
 	}
 
 	public boolean skipReferenceType(EnclosingScope scope) {
@@ -3260,8 +3460,8 @@ public class WhileyFileParser {
 
 	public boolean skipOptionalLifetimeIdentifier(EnclosingScope scope) {
 		int start = index;
-		if(tryAndMatch(false,Identifier,Star,This) != null) {
-			if(tryAndMatch(false,Colon) != null) {
+		if(tryAndMatch(false,Identifier,Star,This) >= 0) {
+			if(tryAndMatch(false,Colon) >= 0) {
 				return true;
 			}
 		}
@@ -3271,11 +3471,11 @@ public class WhileyFileParser {
 
 	public boolean skipNominalType(EnclosingScope scope) {
 		boolean definite = false;
-		Token token = match(Identifier);
-		Identifier id = new Identifier(token.text);
+		int token = match(Identifier);
+		Identifier id = new Identifier(tokens.getText(token));
 		// Pass all path components
-		while(tryAndMatch(false, ColonColon) != null) {
-			if(tryAndMatch(false, Identifier) == null) {
+		while(tryAndMatch(false, ColonColon) >= 0) {
+			if(tryAndMatch(false, Identifier) < 0) {
 				// Something when properly wrong.
 				return false;
 			} else {
@@ -3294,15 +3494,15 @@ public class WhileyFileParser {
 	public boolean skipRecordType(EnclosingScope scope) {
 		match(LeftCurly);
 		boolean firstTime = true;
-		while (eventuallyMatch(RightCurly) == null) {
-			if (!firstTime && tryAndMatch(false, Comma) == null) {
+		while (eventuallyMatch(RightCurly) < 0) {
+			if (!firstTime && tryAndMatch(false, Comma) < 0) {
 				return false;
-			} else if (tryAndMatch(false, DotDotDot) != null) {
+			} else if (tryAndMatch(false, DotDotDot) >= 0) {
 				// this signals an "open" record type
-				return tryAndMatch(false, RightCurly) != null;
+				return tryAndMatch(false, RightCurly) >= 0;
 			} else if (!skipType(scope)) {
 				return false;
-			} else if (tryAndMatch(false, Identifier) == null) {
+			} else if (tryAndMatch(false, Identifier) < 0) {
 				return false;
 			}
 			firstTime = false;
@@ -3312,25 +3512,25 @@ public class WhileyFileParser {
 
 	public boolean skipFunctionType(EnclosingScope scope) {
 		match(Function);
-		return skipParameterTypes(scope) && (tryAndMatch(false, MinusGreater) != null) && skipParameterTypes(scope);
+		return skipParameterTypes(scope) && (tryAndMatch(false, MinusGreater) >= 0) && skipParameterTypes(scope);
 	}
 
 	public boolean skipMethodType(EnclosingScope scope) {
 		match(Method);
-		return skipOptionalLifetimes(scope) && skipParameterTypes(scope) && (tryAndMatch(false, MinusGreater) != null)
+		return skipOptionalLifetimes(scope) && skipParameterTypes(scope) && (tryAndMatch(false, MinusGreater) >= 0)
 				&& skipParameterTypes(scope);
 	}
 
 	public boolean skipOptionalLifetimes(EnclosingScope scope) {
-		if (tryAndMatch(false, LeftAngle) == null) {
+		if (tryAndMatch(false, LeftAngle) < 0) {
 			// no lifetimes is OK
 			return true;
 		} else {
 			boolean firstTime = true;
-			while (eventuallyMatch(RightAngle) == null) {
-				if (!firstTime && tryAndMatch(false, Comma) == null) {
+			while (eventuallyMatch(RightAngle) < 0) {
+				if (!firstTime && tryAndMatch(false, Comma) < 0) {
 					return false;
-				} else if (tryAndMatch(false, Identifier) == null) {
+				} else if (tryAndMatch(false, Identifier) < 0) {
 					return false;
 				}
 				firstTime = false;
@@ -3340,10 +3540,10 @@ public class WhileyFileParser {
 	}
 
 	public boolean skipParameterTypes(EnclosingScope scope) {
-		if(tryAndMatch(false,LeftBrace) != null) {
+		if(tryAndMatch(false,LeftBrace) >= 0) {
 			boolean firstTime = true;
-			while(eventuallyMatch(RightBrace) == null) {
-				if (!firstTime && tryAndMatch(false, Comma) == null) {
+			while(eventuallyMatch(RightBrace) < 0) {
+				if (!firstTime && tryAndMatch(false, Comma) < 0) {
 					return false;
 				} else if(!skipType(scope)) {
 					return false;
@@ -3381,13 +3581,13 @@ public class WhileyFileParser {
 		int start = index;
 		Type t = parseIntersectionType(scope);
 		// Now, attempt to look for union and/or intersection types
-		if (tryAndMatch(true, VerticalBar) != null) {
+		if (tryAndMatch(true, VerticalBar) >= 0) {
 			// This is a union type
 			ArrayList<Type> types = new ArrayList<>();
 			types.add(t);
 			do {
 				types.add(parseIntersectionType(scope));
-			} while (tryAndMatch(true, VerticalBar) != null);
+			} while (tryAndMatch(true, VerticalBar) >= 0);
 			//
 			Type[] bounds = types.toArray(new Type[types.size()]);
 			t = annotateSourceLocation(new Type.Union(bounds), start);
@@ -3414,13 +3614,13 @@ public class WhileyFileParser {
 // FIXME: this is commented out in connection with RFC#20. The intention is that
 // it should be restored at some point in the future.
 // =============================================================================
-//		if (tryAndMatch(true, Ampersand) != null) {
+//		if (tryAndMatch(true, Ampersand) >= 0) {
 //			// This is a union type
 //			ArrayList<Type> types = new ArrayList<>();
 //			types.add(t);
 //			do {
 //				types.add(parseArrayType(scope));
-//			} while (tryAndMatch(true, Ampersand) != null);
+//			} while (tryAndMatch(true, Ampersand) >= 0);
 //			//
 //			Type[] bounds = types.toArray(new Type[types.size()]);
 //			t = annotateSourceLocation(new Type.Intersection(bounds),start);
@@ -3441,7 +3641,7 @@ public class WhileyFileParser {
 		int start = index;
 		Type element = parseBaseType(scope);
 
-		while (tryAndMatch(true, LeftSquare) != null) {
+		while (tryAndMatch(true, LeftSquare) >= 0) {
 			match(RightSquare);
 			element = annotateSourceLocation(new Type.Array(element),start);
 		}
@@ -3452,10 +3652,10 @@ public class WhileyFileParser {
 	private Type parseBaseType(EnclosingScope scope) {
 		checkNotEof();
 		int start = index;
-		Token token = tokens.get(index);
+		int token = index;
 		Type t;
 
-		switch (token.kind) {
+		switch (tokens.getKind(token)) {
 		case Void:
 			t = new Type.Void();
 			break;
@@ -3487,7 +3687,7 @@ public class WhileyFileParser {
 			syntaxError("unknown type encountered", token);
 			return null;
 		}
-		match(token.kind);
+		match(tokens.getKind(token));
 		return annotateSourceLocation(t,start);
 	}
 
@@ -3514,7 +3714,7 @@ public class WhileyFileParser {
 			// unintentionally match a return type that happens to be reference
 			// type without lifetime annotation (return type in method signature
 			// is always followed by colon and newline).
-			if (tryAndMatch(true, Colon) != null && !isAtEOL()) {
+			if (tryAndMatch(true, Colon) >= 0 && !isAtEOL()) {
 				// Now we know that there is an annotated lifetime
 				scope.mustBeLifetime(lifetimeIdentifier);
 				Type element = parseArrayType(scope);
@@ -3573,9 +3773,9 @@ public class WhileyFileParser {
 		names.add(p.getSecond());
 		// Now, we continue to parse any remaining fields.
 		boolean isOpen = false;
-		while (eventuallyMatch(RightCurly) == null) {
+		while (eventuallyMatch(RightCurly) < 0) {
 			match(Comma);
-			if (tryAndMatch(true, DotDotDot) != null) {
+			if (tryAndMatch(true, DotDotDot) >= 0) {
 				// this signals an "open" record type
 				match(RightCurly);
 				isOpen = true;
@@ -3650,7 +3850,7 @@ public class WhileyFileParser {
 			match(MinusGreater);
 			// Third, parse the return types.
 			returnTypes = parseOptionalParameterTypes(scope);
-		} else if (tryAndMatch(true, MinusGreater) != null) {
+		} else if (tryAndMatch(true, MinusGreater) >= 0) {
 			// Methods have an optional return type
 			// Third, parse the return type
 			returnTypes = parseOptionalParameterTypes(scope);
@@ -3678,10 +3878,10 @@ public class WhileyFileParser {
 	 * @return
 	 */
 	private Pair<Type, Identifier> parseMixedType(EnclosingScope scope) {
-		Token lookahead;
+		int lookahead;
 		int start = index;
 
-		if ((lookahead = tryAndMatch(true, Function, Method)) != null) {
+		if ((lookahead = tryAndMatch(true, Function, Method)) >= 0) {
 			// At this point, we *might* have a mixed function / method type
 			// definition. To disambiguate, we need to see whether an identifier
 			// follows or not.
@@ -3689,7 +3889,7 @@ public class WhileyFileParser {
 			// go before the method name. We do not allow to have captured
 			// lifetimes for mixed method types.
 			Tuple<Identifier> lifetimes = new Tuple<>();
-			if (lookahead.kind == Method && tryAndMatch(true, LeftAngle) != null) {
+			if (tokens.getKind(lookahead) == Method && tryAndMatch(true, LeftAngle) >= 0) {
 				// mixed method type with lifetime parameters
 				scope = scope.newEnclosingScope();
 				lifetimes = parseLifetimeParameters(scope);
@@ -3703,13 +3903,13 @@ public class WhileyFileParser {
 				Tuple<Type> paramTypes = parseParameterTypes(scope);
 				Tuple<Type> returnTypes = new Tuple<>();
 
-				if (lookahead.kind == Function) {
+				if (tokens.getKind(lookahead) == Function) {
 					// Functions require a return type (since otherwise they are
 					// just nops)
 					match(MinusGreater);
 					// Third, parse the return type
 					returnTypes = parseOptionalParameterTypes(scope);
-				} else if (tryAndMatch(true, MinusGreater) != null) {
+				} else if (tryAndMatch(true, MinusGreater) >= 0) {
 					// Third, parse the (optional) return type. Observe that
 					// this is forced to be a
 					// unit type. This means that any tuple return types must be
@@ -3722,7 +3922,7 @@ public class WhileyFileParser {
 
 				// Done
 				Type type;
-				if (lookahead.kind == Token.Kind.Function) {
+				if (tokens.getKind(lookahead) == Token.Kind.Function) {
 					type = new Type.Function(paramTypes, returnTypes);
 				} else {
 					type = new Type.Method(paramTypes, returnTypes, new Tuple<>(),
@@ -3746,7 +3946,7 @@ public class WhileyFileParser {
 
 	public Tuple<Type> parseOptionalParameterTypes(EnclosingScope scope) {
 		int next = skipWhiteSpace(index);
-		if (next < tokens.size() && tokens.get(next).kind == LeftBrace) {
+		if (next < tokens.size() && tokens.getKind(next) == LeftBrace) {
 			return parseParameterTypes(scope);
 		} else {
 			Type t = parseType(scope);
@@ -3759,7 +3959,7 @@ public class WhileyFileParser {
 		match(LeftBrace);
 
 		boolean firstTime = true;
-		while (eventuallyMatch(RightBrace) == null) {
+		while (eventuallyMatch(RightBrace) < 0) {
 			if (!firstTime) {
 				match(Comma);
 			}
@@ -3774,7 +3974,7 @@ public class WhileyFileParser {
 		int start = index;
 		List<Identifier> components = new ArrayList<>();
 		components.add(parseIdentifier());
-		while (tryAndMatch(false, ColonColon) != null) {
+		while (tryAndMatch(false, ColonColon) >= 0) {
 			components.add(parseIdentifier());
 		}
 		Identifier[] ids = components.toArray(new Identifier[components.size()]);
@@ -3789,7 +3989,7 @@ public class WhileyFileParser {
 	 * @return
 	 */
 	public Tuple<Identifier> parseOptionalLifetimeParameters(EnclosingScope scope) {
-		if (tryAndMatch(true, LeftAngle) != null && tryAndMatch(true, RightAngle) == null) {
+		if (tryAndMatch(true, LeftAngle) >= 0 && tryAndMatch(true, RightAngle) < 0) {
 			// The if above skips an empty list of identifiers "<>"!
 			return parseLifetimeParameters(scope);
 		}
@@ -3804,8 +4004,8 @@ public class WhileyFileParser {
 		int start = index;
 		Tuple<Identifier> lifetimeArguments = null;
 		match(LeftAngle);
-		Token lifetime = tryAndMatch(terminated, Identifier, This, Star);
-		if (lifetime != null && (lifetime.kind != Identifier || scope.isLifetime(new Identifier(lifetime.text)))) {
+		int lifetime = tryAndMatch(terminated, Identifier, This, Star);
+		if (lifetime >= 0 && (tokens.getKind(lifetime) != Identifier || scope.isLifetime(new Identifier(tokens.getText(lifetime))))) {
 			// then it's definitely a lifetime
 			index--; // don't forget the first argument!
 			lifetimeArguments = parseLifetimeArguments(scope);
@@ -3833,7 +4033,7 @@ public class WhileyFileParser {
 	private Tuple<Identifier> parseLifetimeArguments(EnclosingScope scope) {
 		boolean firstTime = true;
 		ArrayList<Identifier> lifetimeArgs = new ArrayList<>();
-		while (eventuallyMatch(RightAngle) == null) {
+		while (eventuallyMatch(RightAngle) < 0) {
 			if (!firstTime) {
 				match(Comma);
 			} else {
@@ -3859,7 +4059,7 @@ public class WhileyFileParser {
 			Identifier lifetimeIdentifier = parseIdentifier();
 			scope.declareLifetime(lifetimeIdentifier);
 			lifetimeParameters.add(lifetimeIdentifier);
-		} while (tryAndMatch(true, Comma) != null);
+		} while (tryAndMatch(true, Comma) >= 0);
 		match(RightAngle);
 		return new Tuple<>(lifetimeParameters);
 	}
@@ -3869,12 +4069,12 @@ public class WhileyFileParser {
 	 * @return
 	 */
 	public Tuple<Identifier> parseOptionalCapturedLifetimes(EnclosingScope scope) {
-		if (tryAndMatch(true, LeftSquare) != null && tryAndMatch(true, RightSquare) == null) {
+		if (tryAndMatch(true, LeftSquare) >= 0 && tryAndMatch(true, RightSquare) < 0) {
 			// The if above skips an empty list of identifiers "[]"!
 			List<Identifier> captures = new ArrayList<>();
 			do {
 				captures.add(parseLifetime(scope, true));
-			} while (tryAndMatch(true, Comma) != null);
+			} while (tryAndMatch(true, Comma) >= 0);
 			match(RightSquare);
 			return new Tuple<>(captures);
 		}
@@ -3883,9 +4083,9 @@ public class WhileyFileParser {
 
 	private Identifier parseOptionalLifetimeIdentifier(EnclosingScope scope, boolean terminated) {
 		int start = index;
-		Token token = tryAndMatch(terminated, Identifier, This, Star);
-		if (token != null) {
-			Identifier id = new Identifier(token.text);
+		int token = tryAndMatch(terminated, Identifier, This, Star);
+		if (token >= 0) {
+			Identifier id = new Identifier(tokens.getBytes(token));
 			return annotateSourceLocation(id, start);
 		} else {
 			return null;
@@ -3902,16 +4102,16 @@ public class WhileyFileParser {
 		if (id != null) {
 			return id;
 		} else {
-			syntaxError("expecting lifetime identifier", tokens.get(index));
+			syntaxError("expecting lifetime identifier", index);
 		}
 		throw new RuntimeException("deadcode"); // dead-code
 	}
 
 	private Identifier parseOptionalIdentifier(EnclosingScope scope) {
 		int start = index;
-		Token token = tryAndMatch(false, Identifier);
-		if (token != null) {
-			Identifier id = new Identifier(token.text);
+		int token = tryAndMatch(false, Identifier);
+		if (token >= 0) {
+			Identifier id = new Identifier(tokens.getBytes(token));
 			return annotateSourceLocation(id,start);
 		} else {
 			return null;
@@ -3920,14 +4120,14 @@ public class WhileyFileParser {
 
 	private Identifier parseIdentifier() {
 		int start = skipWhiteSpace(index);
-		Token token = match(Identifier);
-		Identifier id = new Identifier(token.text);
+		int token = match(Identifier);
+		Identifier id = new Identifier(tokens.getBytes(token));
 		return annotateSourceLocation(id, start);
 	}
 
 	public boolean mustParseAsMixedType() {
 		int start = index;
-		if (tryAndMatch(true, Function, Method) != null && tryAndMatch(true, Identifier) != null) {
+		if (tryAndMatch(true, Function, Method) >= 0 && tryAndMatch(true, Identifier) >= 0) {
 			// Yes, this is a mixed type
 			index = start;
 			return true;
@@ -3946,10 +4146,10 @@ public class WhileyFileParser {
 	 * @param kind
 	 * @return
 	 */
-	private Token match(Token.Kind kind) {
+	private int match(Token.Kind kind) {
 		checkNotEof();
-		Token token = tokens.get(index++);
-		if (token.kind != kind) {
+		int token = index++;
+		if (tokens.getKind(token) != kind) {
 			syntaxError("expecting \"" + kind + "\" here", token);
 		}
 		return token;
@@ -3964,12 +4164,12 @@ public class WhileyFileParser {
 	 * @param operator
 	 * @return
 	 */
-	private Token[] match(Token.Kind... kinds) {
-		Token[] result = new Token[kinds.length];
+	private int[] match(Token.Kind... kinds) {
+		int[] result = new int[kinds.length];
 		for (int i = 0; i != result.length; ++i) {
 			checkNotEof();
-			Token token = tokens.get(index++);
-			if (token.kind == kinds[i]) {
+			int token = index++;
+			if (tokens.getKind(token) == kinds[i]) {
 				result[i] = token;
 			} else {
 				syntaxError("Expected \"" + kinds[i] + "\" here", token);
@@ -3988,11 +4188,11 @@ public class WhileyFileParser {
 	 * @param kind
 	 * @return
 	 */
-	private Token eventuallyMatch(Token.Kind kind) {
+	private int eventuallyMatch(Token.Kind kind) {
 		checkNotEof();
-		Token token = tokens.get(index);
-		if (token.kind != kind) {
-			return null;
+		int token = index;
+		if (tokens.getKind(token) != kind) {
+			return -1;
 		} else {
 			index = index + 1;
 			return token;
@@ -4019,18 +4219,18 @@ public class WhileyFileParser {
 	 *
 	 * @return
 	 */
-	private Token tryAndMatchAtIndent(boolean terminated, Indent indent, Token.Kind... kinds) {
+	private int tryAndMatchAtIndent(boolean terminated, Indent indent, Token.Kind... kinds) {
 		int start = index;
 		Indent r = getIndent();
 		if (r != null && r.equivalent(indent)) {
-			Token t = tryAndMatch(terminated, kinds);
-			if (t != null) {
-				return r;
+			int t = tryAndMatch(terminated, kinds);
+			if (t >= 0) {
+				return t;
 			}
 		}
 		// backtrack in all failing cases.
 		index = start;
-		return null;
+		return -1;
 	}
 
 	/**
@@ -4051,22 +4251,22 @@ public class WhileyFileParser {
 	 *
 	 * @return
 	 */
-	private Token tryAndMatch(boolean terminated, Token.Kind... kinds) {
+	private int tryAndMatch(boolean terminated, Token.Kind... kinds) {
 		// If the construct being parsed is know to be terminated, then we can
 		// skip all whitespace. Otherwise, we can't skip newlines as these are
 		// significant.
 		int next = terminated ? skipWhiteSpace(index) : skipLineSpace(index);
 
 		if (next < tokens.size()) {
-			Token t = tokens.get(next);
+			Token.Kind kind = tokens.getKind(next);
 			for (int i = 0; i != kinds.length; ++i) {
-				if (t.kind == kinds[i]) {
+				if (kind == kinds[i]) {
 					index = next + 1;
-					return t;
+					return next;
 				}
 			}
 		}
-		return null;
+		return -1;
 	}
 
 	/**
@@ -4089,7 +4289,7 @@ public class WhileyFileParser {
 		int next = index;
 		for (Token.Kind k : kinds) {
 			next = terminated ? skipWhiteSpace(next) : skipLineSpace(next);
-			if (next >= tokens.size() || tokens.get(next++).kind != k) {
+			if (next >= tokens.size() || tokens.getKind(next++) != k) {
 				return false;
 			}
 		}
@@ -4104,7 +4304,7 @@ public class WhileyFileParser {
 	 */
 	private boolean isAtEOL() {
 		int next = skipLineSpace(index);
-		return next >= tokens.size() || tokens.get(next).kind == NewLine;
+		return next >= tokens.size() || tokens.getKind(next) == NewLine;
 	}
 
 	/**
@@ -4116,16 +4316,13 @@ public class WhileyFileParser {
 	 * @param kind
 	 * @return
 	 */
-	private Token tryAndMatchOnLine(Token.Kind kind) {
+	private int tryAndMatchOnLine(Token.Kind kind) {
 		int next = skipLineSpace(index);
-		if (next < tokens.size()) {
-			Token t = tokens.get(next);
-			if (t.kind == kind) {
-				index = next + 1;
-				return t;
-			}
+		if (next < tokens.size() && tokens.getKind(next) == kind) {
+			index = next + 1;
+			return next;
 		}
-		return null;
+		return -1;
 	}
 
 	/**
@@ -4141,8 +4338,8 @@ public class WhileyFileParser {
 		// newline.
 		if (index >= tokens.size()) {
 			return; // EOF
-		} else if (tokens.get(index).kind != NewLine) {
-			syntaxError("expected end-of-line", tokens.get(index));
+		} else if (tokens.getKind(index) != NewLine) {
+			syntaxError("expected end-of-line", index);
 		} else {
 			index = index + 1;
 		}
@@ -4156,7 +4353,7 @@ public class WhileyFileParser {
 		skipWhiteSpace();
 		if (index >= tokens.size()) {
 			if (index > 0) {
-				syntaxError("unexpected end-of-file", tokens.get(index - 1));
+				syntaxError("unexpected end-of-file", index - 1);
 			} else {
 				// I believe this is actually dead-code, since checkNotEof()
 				// won't be called before at least one token is matched.
@@ -4177,7 +4374,7 @@ public class WhileyFileParser {
 	 * returning the first index passed any whitespace encountered.
 	 */
 	private int skipWhiteSpace(int index) {
-		while (index < tokens.size() && isWhiteSpace(tokens.get(index))) {
+		while (index < tokens.size() && isWhiteSpace(index)) {
 			index++;
 		}
 		return index;
@@ -4189,7 +4386,7 @@ public class WhileyFileParser {
 	 * first index passed any whitespace encountered.
 	 */
 	private int skipLineSpace(int index) {
-		while (index < tokens.size() && isLineSpace(tokens.get(index))) {
+		while (index < tokens.size() && isLineSpace(index)) {
 			index++;
 		}
 		return index;
@@ -4203,7 +4400,7 @@ public class WhileyFileParser {
 		int tmp = index;
 		do {
 			tmp = skipLineSpace(tmp);
-			if (tmp < tokens.size() && tokens.get(tmp).kind != Token.Kind.NewLine) {
+			if (tmp < tokens.size() && tokens.getKind(tmp) != Token.Kind.NewLine) {
 				return; // done
 			} else if (tmp >= tokens.size()) {
 				index = tmp;
@@ -4222,8 +4419,8 @@ public class WhileyFileParser {
 	 * @param token
 	 * @return
 	 */
-	private boolean isWhiteSpace(Token token) {
-		return token.kind == Token.Kind.NewLine || isLineSpace(token);
+	private boolean isWhiteSpace(int token) {
+		return tokens.getKind(token) == Token.Kind.NewLine || isLineSpace(token);
 	}
 
 	/**
@@ -4232,9 +4429,9 @@ public class WhileyFileParser {
 	 * @param token
 	 * @return
 	 */
-	private boolean isLineSpace(Token token) {
-		return token.kind == Token.Kind.Indent || token.kind == Token.Kind.LineComment
-				|| token.kind == Token.Kind.BlockComment;
+	private boolean isLineSpace(int token) {
+		Token.Kind kind = tokens.getKind(token);
+		return kind == Token.Kind.Indent || kind == Token.Kind.LineComment || kind == Token.Kind.BlockComment;
 	}
 
 	/**
@@ -4286,8 +4483,8 @@ public class WhileyFileParser {
 	 * @param v
 	 * @return
 	 */
-	protected byte[] parseUnicodeString(Token token) {
-		String v = token.text;
+	protected byte[] parseUnicodeString(int token) {
+		String v = tokens.getText(token);
 		/*
 		 * Parsing a string requires several steps to be taken. First, we need
 		 * to strip quotes from the ends of the string.
@@ -4362,8 +4559,8 @@ public class WhileyFileParser {
 	 *            The token representing the integer value.
 	 * @return
 	 */
-	private BigInteger parseIntegerLiteral(Token input) {
-		return new BigInteger(input.text.replace("_", ""));
+	private BigInteger parseIntegerLiteral(int input) {
+		return new BigInteger(tokens.getText(input).replace("_", ""));
 	}
 
 	/**
@@ -4374,8 +4571,8 @@ public class WhileyFileParser {
 	 *            The token representing the byte value.
 	 * @return
 	 */
-	private byte parseBinaryLiteral(Token input) {
-		String text = input.text;
+	private byte parseBinaryLiteral(int input) {
+		String text = tokens.getText(input);
 		if (text.length() > 11) {
 			// FIXME: this will be deprecated!
 			syntaxError("invalid binary literal (too long)", input);
@@ -4405,8 +4602,8 @@ public class WhileyFileParser {
 	 *            The token representing the byte value.
 	 * @return
 	 */
-	private BigInteger parseHexLiteral(Token input) {
-		String text = input.text;
+	private BigInteger parseHexLiteral(int input) {
+		String text = tokens.getText(input);
 		// Start past 0x
 		for (int i = 2; i != text.length(); ++i) {
 			char c = text.charAt(i);
@@ -4415,7 +4612,7 @@ public class WhileyFileParser {
 			}
 		}
 		// Remove "0x" and "_"
-		text = input.text.substring(2).replace("_", "");
+		text = tokens.getText(input).substring(2).replace("_", "");
 		return new BigInteger(text,16);
 	}
 
@@ -4435,8 +4632,13 @@ public class WhileyFileParser {
 		throw new SyntaxError(msg, file.getEntry(), e);
 	}
 
-	private void syntaxError(String msg, Token t) {
-		throw new SyntaxError(msg, file.getEntry(), new Attribute.Span(null,t.start,t.end()));
+	private void syntaxError(String msg, int token) {
+		throw new SyntaxError(msg, file.getEntry(),
+				new Attribute.Span(null, tokens.getStart(token), tokens.getEnd(token) - 1));
+	}
+
+	private void syntaxError(String msg, Indent indent) {
+		throw new SyntaxError(msg, file.getEntry(), new Attribute.Span(null, indent.start, indent.end));
 	}
 
 	private <T extends SyntacticItem> T annotateSourceLocation(T item, int start) {
@@ -4447,10 +4649,8 @@ public class WhileyFileParser {
 		// Allocate item to enclosing WhileyFile. This is necessary so that the
 		// annotations can then be correctly allocated as well.
 		item = file.allocate(item);
-		// Determine the first and last token representing this span.
-		Token first = tokens.get(start);
-		Token last = tokens.get(end);
-		file.allocate(new Attribute.Span(item,first.start,last.end()));
+		// Determine the first and last character of this span.
+		file.allocate(new Attribute.Span(item, tokens.getStart(start), tokens.getEnd(end) - 1));
 		return item;
 	}
 
@@ -4462,12 +4662,15 @@ public class WhileyFileParser {
 	 * @author David J. Pearce
 	 *
 	 */
-	private static class Indent extends Token {
+	private static class Indent {
+		private final int start;
+		private final int end;
 		private final int countOfSpaces;
 		private final int countOfTabs;
 
-		public Indent(String text, int pos) {
-			super(Token.Kind.Indent, text, pos);
+		public Indent(String text, int start) {
+			this.start = start;
+			this.end = start + text.length() - 1;
 			// Count the number of spaces and tabs
 			int nSpaces = 0;
 			int nTabs = 0;
@@ -15,6 +15,7 @@ package wyc.lang;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import wybs.lang.CompilationUnit;
 import wybs.lang.NameResolver;
@@ -30,6 +31,7 @@ import wyc.io.WhileyFileLexer;
 import wyc.io.WhileyFileParser;
 import wyc.lang.WhileyFile.Type;
 import wyc.util.AbstractConsumer;
+import wyc.util.Interner;
 import wycc.util.ArrayUtils;
 import wyfs.lang.Content;
 import wyfs.lang.Path;
@@ -90,7 +92,9 @@ public class WhileyFile extends AbstractCompilationUnit<WhileyFile> {
 		 * This method simply parses a whiley file into an abstract syntax tree. It
 		 * makes little effort to check whether or not the file is syntactically
 		 * correct. In particular, it does not determine the correct type of all
-		 * declarations, expressions, etc.
+		 * declarations, expressions, etc. The file is parsed sequentially, since
+		 * callers which read several files at once (e.g. the compile pipeline)
+		 * control their own parallelism.
 		 *
 		 * @param file
 		 * @return
@@ -98,9 +102,7 @@ public class WhileyFile extends AbstractCompilationUnit<WhileyFile> {
 		 */
 		@Override
 		public WhileyFile read(Path.Entry<WhileyFile> e, InputStream inputstream) throws IOException {
-			WhileyFileLexer wlexer = new WhileyFileLexer(e);
-			WhileyFileParser wfr = new WhileyFileParser(new WhileyFile(e), wlexer.scan());
-			return wfr.read();
+			return parse(e, null, null);
 		}
 
 		@Override
@@ -120,6 +122,31 @@ public class WhileyFile extends AbstractCompilationUnit<WhileyFile> {
 		}
 	};
 
+	/**
+	 * Parse a whiley source file into an abstract syntax tree, as for
+	 * {@link #ContentType}.
+	 *
+	 * @param e
+	 *            The source file.
+	 * @param interner
+	 *            The table used to share the encodings of identifiers with
+	 *            other files, or <code>null</code> if none.
+	 * @param pool
+	 *            The pool in which chunks of a large file are parsed in
+	 *            parallel, or <code>null</code> to parse it sequentially.
+	 * @return
+	 * @throws IOException
+	 */
+	public static WhileyFile parse(Path.Entry<WhileyFile> e, Interner interner, ForkJoinPool pool) throws IOException {
+		WhileyFileLexer wlexer = new WhileyFileLexer(e);
+		wlexer.setInterner(interner);
+		WhileyFileParser wfr = new WhileyFileParser(new WhileyFile(e), wlexer.scanPacked());
+		wfr.setInterner(interner);
+		// NOTE: only large files are split into chunks for parsing
+		wfr.setPool(pool);
+		return wfr.read();
+	}
+
 	// =========================================================================
 	// Binary Content Type
 	// =========================================================================
@@ -288,6 +315,12 @@ public class WhileyFile extends AbstractCompilationUnit<WhileyFile> {
 	public static final int EXPR_arrayinitialiser = EXPR_mask + 61;
 	public static final int EXPR_arrayrange = EXPR_mask + 62;
 
+	/**
+	 * The number of times this file has been modified other than by allocating
+	 * a new item at its end (see {@link #getModifications()}).
+	 */
+	private volatile int modifications;
+
 	// =========================================================================
 	// Constructors
 	// =========================================================================
@@ -304,6 +337,146 @@ public class WhileyFile extends AbstractCompilationUnit<WhileyFile> {
 		}
 	}
 
+	/**
+	 * Allocate an item in this file, along with the items it refers to
+	 * (directly or indirectly), as for {@link AbstractSyntacticHeap}. The only
+	 * difference is that an allocated identifier shares the encoding of the
+	 * given identifier, rather than a copy of it.
+	 */
+	@Override
+	public <T extends SyntacticItem> T allocate(T item) {
+		return allocate(item, new IdentityHashMap<>());
+	}
+
+	private <T extends SyntacticItem> T allocate(T item, Map<SyntacticItem, SyntacticItem> allocated) {
+		SyntacticItem copy = allocated.get(item);
+		if (copy != null) {
+			return (T) copy;
+		} else if (item.getHeap() == this) {
+			return item;
+		}
+		copy = clone(item, new SyntacticItem[item.size()]);
+		copy.allocate(this, syntacticItems.size());
+		syntacticItems.add(copy);
+		allocated.put(item, copy);
+		for (int i = 0; i != item.size(); ++i) {
+			SyntacticItem operand = item.get(i);
+			if (operand != null) {
+				copy.setOperand(i, allocate(operand, allocated));
+			}
+		}
+		return (T) copy;
+	}
+
+	/**
+	 * Append copies of every item in another file to this file, preserving
+	 * their order. Thus, an item at a given index in the other file is copied
+	 * to that index plus the returned offset in this file.
+	 *
+	 * @param other
+	 * @return The index in this file of the first item copied.
+	 */
+	public int append(WhileyFile other) {
+		modifications = modifications + 1;
+		int offset = syntacticItems.size();
+		for (int i = 0; i != other.size(); ++i) {
+			SyntacticItem item = other.getSyntacticItem(i);
+			SyntacticItem copy = clone(item, new SyntacticItem[item.size()]);
+			syntacticItems.add(copy);
+			copy.allocate(this, offset + i);
+		}
+		// Operands may refer to items copied after them
+		for (int i = 0; i != other.size(); ++i) {
+			SyntacticItem item = other.getSyntacticItem(i);
+			SyntacticItem copy = syntacticItems.get(offset + i);
+			for (int j = 0; j != item.size(); ++j) {
+				SyntacticItem operand = item.get(j);
+				if (operand != null) {
+					copy.setOperand(j, syntacticItems.get(offset + operand.getIndex()));
+				}
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Allocate a copy of an item from another file in this file, along with
+	 * copies of the items it refers to (directly or indirectly). Items which
+	 * have already been copied are not copied again, such that items referred
+	 * to by several others remain shared.
+	 *
+	 * @param item
+	 *            The item to copy, which must not belong to this file.
+	 * @param copies
+	 *            Maps each item which has already been copied to its copy.
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends SyntacticItem> T copy(T item, Map<SyntacticItem, SyntacticItem> copies) {
+		SyntacticItem copy = copies.get(item);
+		if (copy == null) {
+			SyntacticItem[] operands = new SyntacticItem[item.size()];
+			for (int i = 0; i != operands.length; ++i) {
+				SyntacticItem operand = item.get(i);
+				operands[i] = operand == null ? null : copy(operand, copies);
+			}
+			copy = clone(item, operands);
+			copy.allocate(this, syntacticItems.size());
+			syntacticItems.add(copy);
+			copies.put(item, copy);
+		}
+		return (T) copy;
+	}
+
+	/**
+	 * Clone an item with a given set of operands. An identifier shares the
+	 * encoding of the original, since this may be shared with other files
+	 * (see {@link wyc.util.Interner}).
+	 *
+	 * @param item
+	 * @param operands
+	 * @return
+	 */
+	private static SyntacticItem clone(SyntacticItem item, SyntacticItem[] operands) {
+		if (item instanceof Identifier) {
+			return new Identifier(item.getData());
+		}
+		return item.clone(operands);
+	}
+
+	/**
+	 * Replace the item at a given index in this file with a new item, which
+	 * has no operands and is not already allocated. Items which refer to the
+	 * original item must be updated separately.
+	 *
+	 * @param index
+	 * @param item
+	 * @return
+	 */
+	public <T extends SyntacticItem> T replace(int index, T item) {
+		if (item.size() != 0 || item.getHeap() != null) {
+			throw new IllegalArgumentException("invalid replacement item");
+		}
+		modifications = modifications + 1;
+		syntacticItems.set(index, item);
+		item.allocate(this, index);
+		return item;
+	}
+
+	/**
+	 * Get the number of times this file has been modified other than by
+	 * allocating a new item at its end, such as by appending or replacing
+	 * items. Anything derived from the items of this file (e.g. an index of its
+	 * declarations) can be brought up to date by examining only the items
+	 * allocated since, provided this is unchanged. Otherwise, it must be
+	 * derived again from scratch.
+	 *
+	 * @return
+	 */
+	public int getModifications() {
+		return modifications;
+	}
+
 	// =========================================================================
 	// Accessors
 	// =========================================================================
@@ -17,12 +17,18 @@ import static wyc.util.ErrorMessages.RESOLUTION_ERROR;
 import static wyc.util.ErrorMessages.errorMessage;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 import wyal.lang.WyalFile;
 import wyfs.lang.Content;
 import wyfs.lang.Path;
-import wyfs.util.Trie;
 import wyil.stage.MoveAnalysis;
 import wyil.stage.RecursiveTypeAnalysis;
 import wybs.lang.*;
@@ -35,7 +41,16 @@ import wyc.check.FlowTypeCheck;
 import wyc.check.FunctionalCheck;
 import wyc.check.StaticVariableCheck;
 import wyc.lang.*;
+import wyc.lang.WhileyFile.Decl;
+import wyc.util.BinaryCache;
+import wyc.util.Budget;
+import wyc.util.Fingerprint;
+import wyc.util.Interner;
+import wyc.util.Profiler;
 import wyc.util.WhileyFileResolver;
+import wyil.type.subtyping.RelaxedTypeEmptinessTest;
+import wyil.type.subtyping.StrictTypeEmptinessTest;
+import wyil.type.subtyping.SubtypeOperator;
 import wycc.cfg.Configuration;
 import wycc.util.ArrayUtils;
 import wycc.util.Logger;
@@ -99,7 +114,17 @@ public final class CompileTask implements Build.Task {
 	 * and performing subtype tests, etc. This object may cache results to
 	 * improve performance of some operations.
 	 */
-	private final NameResolver resolver;
+	private final WhileyFileResolver resolver;
+
+	/**
+	 * Provides the subtype operators shared by all passes within a build. Since
+	 * these cache the results of their queries, a query answered for one pass
+	 * need not be recomputed for another. The strict operator corresponds to the
+	 * <code>StrictTypeEmptinessTest</code>, whilst the relaxed operator
+	 * corresponds to the <code>RelaxedTypeEmptinessTest</code>.
+	 */
+	private final SubtypeOperator strictSubtypeOperator;
+	private final SubtypeOperator relaxedSubtypeOperator;
 
 	/**
 	 * The logger used for logging system events
@@ -107,22 +132,60 @@ public final class CompileTask implements Build.Task {
 	private Logger logger;
 
 	/**
-	 * A map of the source files currently being compiled.
+	 * The number of worker threads used for those stages of the pipeline which
+	 * operate on each file independently (i.e. parsing and the checking passes
+	 * which follow type checking). When this is one, every stage is run on the
+	 * calling thread.
+	 * NOTE: recursive type analysis is always applied sequentially, since it
+	 * modifies type declarations in the heaps of other files.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Records the time and memory consumed by each phase, file and
+	 * declaration compiled.
+	 */
+	private Profiler profiler = Profiler.NULL;
+
+	/**
+	 * Shares the text of identifiers and literals between the files parsed in
+	 * a build. This is cleared at the end of each build, such that strings are
+	 * retained only by the files which use them.
+	 */
+	private final Interner interner = new Interner();
+
+	/**
+	 * Records, for each module successfully compiled by this task, what it was
+	 * compiled from and against. This allows subsequent builds to skip modules
+	 * which are unaffected by the changes made since.
 	 */
-	private final HashMap<Path.ID, Path.Entry<WhileyFile>> srcFiles = new HashMap<>();
+	private final HashMap<Path.ID, Record> records = new HashMap<>();
 
 	/**
-	 * The import cache caches specific import queries to their result sets.
-	 * This is extremely important to avoid recomputing these result sets every
-	 * time. For example, the statement <code>import whiley.lang.*</code>
-	 * corresponds to the triple <code>("whiley.lang",*,null)</code>.
+	 * Holds binaries compiled by previous builds (including those by other
+	 * tasks), from which modules can be restored rather than compiled. This is
+	 * <code>null</code> if no cache is used.
 	 */
-	private final HashMap<Trie, ArrayList<Path.ID>> importCache = new HashMap<>();
+	private BinaryCache cache;
+
+	/**
+	 * Determines whether each module is written out and released from memory
+	 * as soon as it has been compiled, rather than at the end of the build.
+	 */
+	private boolean lowMemory;
+
+	/**
+	 * Limits the time spent type checking, or applying the checking passes
+	 * to, any one declaration.
+	 */
+	private Budget budget = Budget.UNLIMITED;
 
 	public CompileTask(Build.Project project) {
 		this.logger = Logger.NULL;
 		this.project = project;
 		this.resolver = new WhileyFileResolver(project);
+		this.strictSubtypeOperator = new SubtypeOperator(resolver, new StrictTypeEmptinessTest(resolver));
+		this.relaxedSubtypeOperator = new SubtypeOperator(resolver, new RelaxedTypeEmptinessTest(resolver));
 	}
 
 	public String id() {
@@ -143,10 +206,133 @@ public final class CompileTask implements Build.Task {
 		return resolver;
 	}
 
+	/**
+	 * Indicate that the roots of the project have changed other than through
+	 * this task (e.g. because they were refreshed from disk), such that any
+	 * modules added or removed are picked up by the next build.
+	 */
+	public void refresh() {
+		resolver.refresh();
+	}
+
+	/**
+	 * Access the strict subtype operator shared by all passes of this task.
+	 *
+	 * @return
+	 */
+	public SubtypeOperator getStrictSubtypeOperator() {
+		return strictSubtypeOperator;
+	}
+
+	/**
+	 * Access the relaxed subtype operator shared by all passes of this task.
+	 *
+	 * @return
+	 */
+	public SubtypeOperator getRelaxedSubtypeOperator() {
+		return relaxedSubtypeOperator;
+	}
+
 	public void setLogger(Logger logger) {
 		this.logger = logger;
 	}
 
+	/**
+	 * Set the profiler used to record the time and memory consumed by each
+	 * phase of compilation. By default, nothing is recorded.
+	 *
+	 * @param profiler
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+
+	public Profiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Set the cache from which compiled binaries are restored, and into which
+	 * they are stored. By default, no cache is used.
+	 *
+	 * @param cache
+	 */
+	public void setBinaryCache(BinaryCache cache) {
+		this.cache = cache;
+	}
+
+	public BinaryCache getBinaryCache() {
+		return cache;
+	}
+
+	/**
+	 * Access the table of strings shared between files parsed by this task.
+	 *
+	 * @return
+	 */
+	public Interner getInterner() {
+		return interner;
+	}
+
+	/**
+	 * Enable or disable low-memory mode. In this mode, the checking passes are
+	 * applied to each module as soon as it has been type checked, after which
+	 * its binary is written out and the module is released from memory. Any
+	 * module subsequently needed to compile another is reread from its binary,
+	 * and released again once that module has been compiled. Thus, only those
+	 * modules being compiled (or waiting to be) and those they depend upon
+	 * are held in memory at any one time. This trades compilation time for
+	 * memory, since released modules may be reread many times and less is
+	 * cached between modules. Furthermore, where several modules contain
+	 * errors, the error reported may differ from that reported otherwise.
+	 * NOTE: a module needed to compile another is reread in its entirety,
+	 * including the bodies of its functions and methods, since binaries do not
+	 * provide a separate summary of their interface. Thus, a module with many
+	 * dependents, or large dependencies, may still require considerable
+	 * memory.
+	 *
+	 * @param lowMemory
+	 */
+	public void setLowMemory(boolean lowMemory) {
+		this.lowMemory = lowMemory;
+	}
+
+	public boolean isLowMemory() {
+		return lowMemory;
+	}
+
+	/**
+	 * Set the budget limiting the time spent on any one declaration in each
+	 * phase, beyond which an error is reported for that declaration. By
+	 * default, no limit is imposed.
+	 *
+	 * @param budget
+	 */
+	public void setBudget(Budget budget) {
+		this.budget = budget;
+	}
+
+	public Budget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Set the number of worker threads to use for the per-file stages of the
+	 * pipeline. By default, this is the number of available processors.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("invalid parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public Set<Path.Entry<?>> build(Collection<Pair<Path.Entry<?>, Path.Root>> delta, Build.Graph graph)
@@ -156,51 +342,156 @@ public final class CompileTask implements Build.Task {
 		long startMemory = runtime.freeMemory();
 		long tmpTime = startTime;
 		long tmpMemory = startMemory;
+		// Retain only the profile of this build
+		profiler.reset();
+		Profiler.Timer timer = profiler.start();
+		resetPeakHeap();
 
 		// ========================================================================
-		// Parse source files
+		// Parse and type check source files
 		// ========================================================================
 
-		int count = 0;
-
-		ArrayList<WhileyFile> binaryFiles = new ArrayList<>();
-		Set<Path.Entry<?>> generatedFiles = new HashSet<>();
+		ArrayList<Path.Entry<WhileyFile>> sources = new ArrayList<>();
+		ArrayList<Path.Root> bindirs = new ArrayList<>();
 		for (Pair<Path.Entry<?>, Path.Root> p : delta) {
 			Path.Entry<?> entry = p.first();
 			if (entry.contentType() == WhileyFile.ContentType) {
-				Path.Entry<WhileyFile> source = (Path.Entry<WhileyFile>) entry;
-				Path.Root bindir = p.second();
-				// Parse Whiley source file. This may produce errors at this
-				// stage, which means compilation of this file cannot proceed
-				WhileyFile wf = source.read();
-				Path.Entry<WhileyFile> target = bindir.create(entry.id(), WhileyFile.BinaryContentType);
-				target.write(wf);
-				binaryFiles.add(wf);
+				sources.add((Path.Entry<WhileyFile>) entry);
+				bindirs.add(p.second());
+			}
+		}
+		// Determine which modules must be rebuilt. A module is rebuilt if its
+		// source has changed, its binary is missing, or the interface of some
+		// module it depends upon (directly or indirectly) has changed since it
+		// was last compiled. The latter can only be determined by parsing those modules being rebuilt,
+		// hence this continues until no further modules are affected. Modules
+		// being rebuilt are restored from the binary cache where possible,
+		// provided they were compiled against the same interfaces.
+		long[] fingerprints = new long[sources.size()];
+		boolean[] rebuild = new boolean[sources.size()];
+		BinaryCache.Entry[] cached = new BinaryCache.Entry[sources.size()];
+		HashMap<Path.ID, Long> interfaces = new HashMap<>();
+		ArrayList<Integer> pending = new ArrayList<>();
+		for (int i = 0; i != sources.size(); ++i) {
+			Path.Entry<WhileyFile> source = sources.get(i);
+			Record record = records.get(source.id());
+			fingerprints[i] = fingerprint(source);
+			if (record == null || record.source != fingerprints[i]
+					|| bindirs.get(i).get(source.id(), WhileyFile.BinaryContentType) == null) {
+				rebuild[i] = true;
+				cached[i] = cache == null ? null : cache.get(source.id(), fingerprints[i]);
+				if (cached[i] != null) {
+					interfaces.put(source.id(), cached[i].getSignature());
+				} else {
+					pending.add(i);
+				}
+			}
+		}
+		// Restore modules from the binary cache before any are type checked,
+		// since those being rebuilt may depend upon them. Should a restored
+		// module subsequently turn out to be affected by changes, its binary is
+		// replaced when it is parsed. Since its source is unchanged, so is its
+		// interface and, hence, modules checked against it are unaffected.
+		Set<Path.Entry<?>> generatedFiles = new HashSet<>();
+		for (int i = 0; i != sources.size(); ++i) {
+			if (cached[i] != null) {
+				Path.Entry<WhileyFile> source = sources.get(i);
+				resolver.invalidate(source.id());
+				Path.Entry<WhileyFile> target = bindirs.get(i).create(source.id(), WhileyFile.BinaryContentType);
+				try (OutputStream output = target.outputStream()) {
+					output.write(cached[i].getBinary());
+				}
+				// Discard any contents previously read, such that the restored
+				// binary is read when next needed.
+				target.refresh();
 				generatedFiles.add(target);
-				// Register the derivation in the build graph. This is important
-				// to understand what a particular intermediate file was
-				// derived from.
-				graph.registerDerivation(source, target);
-				count++;
 			}
 		}
+		// Parse Whiley source files and type check them. Parsing may produce
+		// errors, which means compilation of the file cannot proceed. Since
+		// each file is parsed independently, this can be done in parallel and
+		// overlapped with type checking files already parsed.
+		// NOTE: type checking remains sequential because it allocates inferred
+		// types into the heaps of the files being checked, whilst at the same
+		// time resolving names against those heaps.
+		ArrayList<Integer> rebuilt = new ArrayList<>();
+		List<WhileyFile> binaryFiles = new ArrayList<>();
+		// The binaries written out and released from memory in low-memory mode
+		HashMap<Path.ID, Path.Entry<WhileyFile>> released = new HashMap<>();
+		Profiler.Timer typeTimer = profiler.start();
+		try (Pipeline pipeline = new Pipeline(new FlowTypeCheck(this), profiler, interner, parallelism)) {
+			do {
+				ArrayList<Path.Entry<WhileyFile>> batch = new ArrayList<>();
+				for (int i : pending) {
+					Path.Entry<WhileyFile> source = sources.get(i);
+					// Discard any cached name resolutions which depend on this
+					// module, since its contents may have changed.
+					resolver.invalidate(source.id());
+					// Discard any contents read by a previous build, including
+					// one which failed before this module's record was made.
+					source.refresh();
+					batch.add(source);
+				}
+				pipeline.apply(batch, new Pipeline.Handler() {
+					@Override
+					public void parsed(int j, WhileyFile wf) throws IOException {
+						int i = pending.get(j);
+						Path.Entry<WhileyFile> source = sources.get(i);
+						interfaces.put(source.id(), Fingerprint.ofInterface(wf));
+						Path.Entry<WhileyFile> target = bindirs.get(i).create(source.id(),
+								WhileyFile.BinaryContentType);
+						target.write(wf);
+						generatedFiles.add(target);
+						rebuilt.add(i);
+						// Discard the record of this module, such that it is
+						// rebuilt again should this build fail.
+						records.remove(source.id());
+					}
 
-		logger.logTimedMessage("Parsed " + count + " source file(s).", System.currentTimeMillis() - tmpTime,
-				tmpMemory - runtime.freeMemory());
-
-		// ========================================================================
-		// Flow Type source files
-		// ========================================================================
-
-		runtime = Runtime.getRuntime();
-		tmpTime = System.currentTimeMillis();
-		tmpMemory = runtime.freeMemory();
-
-		FlowTypeCheck flowChecker = new FlowTypeCheck(this);
-		flowChecker.check(binaryFiles);
+					@Override
+					public void typed(int j, WhileyFile wf) throws IOException {
+						if (lowMemory) {
+							int i = pending.get(j);
+							check(wf);
+							release(sources.get(i), bindirs.get(i), released);
+						} else {
+							binaryFiles.add(wf);
+						}
+					}
+				});
+				pending.clear();
+				for (int i = 0; i != sources.size(); ++i) {
+					if (!rebuild[i] && isAffected(records.get(sources.get(i).id()).dependencies, interfaces)) {
+						rebuild[i] = true;
+						pending.add(i);
+					} else if (cached[i] != null && isAffected(cached[i].getDependencies(), interfaces)) {
+						cached[i] = null;
+						pending.add(i);
+					}
+				}
+			} while (!pending.isEmpty());
+			logger.logTimedMessage("Pipeline: " + pipeline + ".", System.currentTimeMillis() - tmpTime,
+					tmpMemory - runtime.freeMemory());
+		}
+		int restored = 0;
+		for (int i = 0; i != sources.size(); ++i) {
+			Path.Entry<WhileyFile> source = sources.get(i);
+			// Register the derivation in the build graph. This is important
+			// to understand what a particular intermediate file was
+			// derived from.
+			graph.registerDerivation(source, bindirs.get(i).get(source.id(), WhileyFile.BinaryContentType));
+			if (cached[i] != null) {
+				restored = restored + 1;
+			}
+		}
+		int count = rebuilt.size();
+		int skipped = sources.size() - count - restored;
 
-		logger.logTimedMessage("Typed " + count + " source file(s).", System.currentTimeMillis() - tmpTime,
+		logger.logTimedMessage("Parsed and typed " + count + " source file(s), restored " + restored
+				+ " from cache, skipped " + skipped + " unchanged.", System.currentTimeMillis() - tmpTime,
 				tmpMemory - runtime.freeMemory());
+		profiler.record("parse", timer);
+		profiler.record("type", typeTimer);
 
 		// ========================================================================
 		// Code Generation
@@ -209,29 +500,343 @@ public final class CompileTask implements Build.Task {
 		runtime = Runtime.getRuntime();
 		tmpTime = System.currentTimeMillis();
 		tmpMemory = runtime.freeMemory();
+		timer = profiler.start();
 
-		for (WhileyFile wf : binaryFiles) {
-			new DefiniteAssignmentCheck().check(wf);
-			new DefiniteUnassignmentCheck(this).check(wf);
-			new FunctionalCheck(this).check(wf);
-			new StaticVariableCheck(this).check(wf);
-			new AmbiguousCoercionCheck(this).check(wf);
-			new MoveAnalysis(this).apply(wf);
-			new RecursiveTypeAnalysis(this).apply(wf);
-			// new CoercionCheck(this);
-		}
+		// NOTE: in low-memory mode, each file has already been checked
+		check(binaryFiles);
 
 		logger.logTimedMessage("Generated code for " + count + " source file(s).", System.currentTimeMillis() - tmpTime,
 				tmpMemory - runtime.freeMemory());
+		profiler.record("check", timer);
 
 		// ========================================================================
 		// Done
 		// ========================================================================
 
 		long endTime = System.currentTimeMillis();
-		logger.logTimedMessage("Whiley => Wyil: compiled " + delta.size() + " file(s)", endTime - startTime,
+		logger.logTimedMessage("Whiley => Wyil: compiled " + delta.size() + " file(s) (subtype cache: strict "
+				+ strictSubtypeOperator.getCache() + ", relaxed " + relaxedSubtypeOperator.getCache()
+				+ "; import cache: " + resolver.getImportCache() + "; interned: " + interner
+				+ (cache == null ? "" : "; binary cache: " + cache)
+				+ "; peak heap: " + getPeakHeap() / (1024 * 1024) + "MB)", endTime - startTime,
 				startMemory - runtime.freeMemory());
+		// Record what each module was compiled against. Restored modules are
+		// recorded first, since their dependencies may be needed to determine
+		// those of rebuilt modules.
+		for (int i = 0; i != sources.size(); ++i) {
+			if (cached[i] != null) {
+				records.put(sources.get(i).id(), new Record(fingerprints[i], cached[i].getSignature(),
+						new HashMap<>(cached[i].getDependencies())));
+			}
+		}
+		for (int i : rebuilt) {
+			Path.ID id = sources.get(i).id();
+			HashMap<Path.ID, Long> dependencies = new HashMap<>();
+			for (Path.ID dependency : getTransitiveDependencies(id)) {
+				Long signature = getInterface(dependency, interfaces);
+				if (signature != null) {
+					dependencies.put(dependency, signature);
+				}
+			}
+			records.put(id, new Record(fingerprints[i], interfaces.get(id), dependencies));
+		}
+		if (cache != null) {
+			// Store what each rebuilt module was compiled into
+			for (int j = 0; j != rebuilt.size(); ++j) {
+				int i = rebuilt.get(j);
+				Record record = records.get(sources.get(i).id());
+				ByteArrayOutputStream binary = new ByteArrayOutputStream();
+				if (lowMemory) {
+					// Copy the binary already written out
+					Path.Entry<WhileyFile> target = bindirs.get(i).get(sources.get(i).id(),
+							WhileyFile.BinaryContentType);
+					try (InputStream input = target.inputStream()) {
+						byte[] buffer = new byte[4096];
+						int n;
+						while ((n = input.read(buffer)) != -1) {
+							binary.write(buffer, 0, n);
+						}
+					}
+				} else {
+					WhileyFile.BinaryContentType.write(binary, binaryFiles.get(j));
+				}
+				cache.put(sources.get(i).id(), record.source,
+						new BinaryCache.Entry(record.signature, record.dependencies, binary.toByteArray()));
+			}
+		}
+		// Cached results refer to the files compiled in this build, hence must
+		// not be retained beyond it.
+		strictSubtypeOperator.getCache().clear();
+		relaxedSubtypeOperator.getCache().clear();
+		interner.clear();
+		profiler.flush();
 
 		return generatedFiles;
 	}
+
+	/**
+	 * Apply the checking passes to a file which has been type checked.
+	 *
+	 * @param wf
+	 */
+	private void check(WhileyFile wf) {
+		Profiler.Timer t = profiler.start();
+		applyPasses(wf);
+		new RecursiveTypeAnalysis(this).apply(wf);
+		profiler.record("check", wf.getEntry().id(), t);
+	}
+
+	/**
+	 * Apply the checking passes to several files which have been type checked.
+	 * Every module which names in these files have been resolved to is loaded
+	 * first, after which the passes other than recursive type analysis are
+	 * applied to each file concurrently. This is safe because these passes
+	 * only modify the file they are applied to. Errors are still merged in the
+	 * original order. Thus, the first error reported is always the same as it
+	 * would be when checking the files sequentially. Finally, recursive type
+	 * analysis is applied to each file in turn.
+	 *
+	 * @param files
+	 * @throws IOException
+	 */
+	private void check(List<WhileyFile> files) throws IOException {
+		if (parallelism == 1 || files.size() <= 1) {
+			for (WhileyFile wf : files) {
+				check(wf);
+			}
+			return;
+		}
+		for (WhileyFile wf : files) {
+			for (Path.ID dependency : getTransitiveDependencies(wf.getEntry().id())) {
+				resolver.preload(dependency);
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, files.size()));
+		try {
+			ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+			for (WhileyFile wf : files) {
+				tasks.add(pool.submit(() -> {
+					Profiler.Timer t = profiler.start();
+					applyPasses(wf);
+					profiler.record("check", wf.getEntry().id(), t);
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		for (WhileyFile wf : files) {
+			new RecursiveTypeAnalysis(this).apply(wf);
+		}
+	}
+
+	/**
+	 * Apply the checking passes, other than recursive type analysis, to a file
+	 * which has been type checked. These only modify the file they are applied
+	 * to.
+	 *
+	 * @param wf
+	 */
+	private void applyPasses(WhileyFile wf) {
+		check(wf, new DefiniteAssignmentCheck()::check);
+		check(wf, new DefiniteUnassignmentCheck(this)::check);
+		check(wf, new FunctionalCheck(this)::check);
+		check(wf, new StaticVariableCheck(this)::check);
+		check(wf, new AmbiguousCoercionCheck(this)::check);
+		check(wf, new MoveAnalysis(this)::apply);
+		// check(wf, new CoercionCheck(this)::check);
+	}
+
+	/**
+	 * Apply a checking pass to each declaration of a file in turn. The time
+	 * spent on each declaration is recorded by the profiler, and is limited
+	 * by the budget.
+	 *
+	 * @param wf
+	 * @param pass
+	 */
+	private void check(WhileyFile wf, Consumer<Decl> pass) {
+		for (Decl decl : wf.getDeclarations()) {
+			Profiler.Timer t = profiler.start();
+			budget.apply(wf, decl, () -> pass.accept(decl));
+			if (profiler.isEnabled() && decl instanceof Decl.Named) {
+				profiler.record("check", wf.getEntry().id(), Profiler.describe((Decl.Named) decl), t);
+			}
+		}
+	}
+
+	/**
+	 * Write out the binary of a module which has been compiled, and release
+	 * it from memory. Any released modules which were reread in compiling this
+	 * one are released again.
+	 *
+	 * @param source
+	 *            The source file of the module.
+	 * @param bindir
+	 *            The root containing the module's binary.
+	 * @param released
+	 *            The binaries of modules released so far.
+	 * @throws IOException
+	 */
+	private void release(Path.Entry<WhileyFile> source, Path.Root bindir,
+			Map<Path.ID, Path.Entry<WhileyFile>> released) throws IOException {
+		Path.Entry<WhileyFile> target = bindir.get(source.id(), WhileyFile.BinaryContentType);
+		target.flush();
+		target.refresh();
+		source.refresh();
+		released.put(source.id(), target);
+		for (Path.ID dependency : resolver.getDependencies(source.id())) {
+			Path.Entry<WhileyFile> entry = released.get(dependency);
+			if (entry != null) {
+				entry.refresh();
+			}
+		}
+		// Cached subtype queries refer to the types of released modules
+		strictSubtypeOperator.getCache().clear();
+		relaxedSubtypeOperator.getCache().clear();
+	}
+
+	/**
+	 * Reset the peak usage recorded for each memory pool of the heap.
+	 */
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Determine the peak heap usage since last reset, as the sum of the peak
+	 * usage of each memory pool of the heap. Since pools may peak at different
+	 * times, this is an upper bound.
+	 *
+	 * @return
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Determine whether a previously compiled module is affected by changes to
+	 * the interfaces of the modules it depends upon.
+	 *
+	 * @param dependencies
+	 *            The interfaces the module was last compiled against.
+	 * @param interfaces
+	 *            The interfaces of modules rebuilt in the current build.
+	 * @return
+	 */
+	private boolean isAffected(Map<Path.ID, Long> dependencies, Map<Path.ID, Long> interfaces) {
+		for (Map.Entry<Path.ID, Long> e : dependencies.entrySet()) {
+			Long signature = getInterface(e.getKey(), interfaces);
+			// NOTE: a dependency with no known interface has failed to compile
+			// since, hence is conservatively assumed to have changed.
+			if (signature == null || signature.longValue() != e.getValue().longValue()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determine every module which a given module depends upon, either
+	 * directly or through other modules. Indirect dependencies matter because
+	 * the meaning of an interface can change without its syntax changing. For
+	 * example, if <code>A</code> uses type <code>B.T</code> which is defined as
+	 * <code>C.U</code>, then changing <code>C.U</code> affects the typing of
+	 * <code>A</code> but not the interface fingerprint of <code>B</code>.
+	 *
+	 * @param module
+	 * @return
+	 */
+	private Set<Path.ID> getTransitiveDependencies(Path.ID module) {
+		HashSet<Path.ID> visited = new HashSet<>();
+		ArrayDeque<Path.ID> worklist = new ArrayDeque<>();
+		visited.add(module);
+		worklist.add(module);
+		while (!worklist.isEmpty()) {
+			Path.ID m = worklist.poll();
+			// The dependencies of modules not type checked in this build are
+			// known only from their records.
+			HashSet<Path.ID> dependencies = new HashSet<>(resolver.getDependencies(m));
+			Record record = records.get(m);
+			if (record != null) {
+				dependencies.addAll(record.dependencies.keySet());
+			}
+			for (Path.ID dependency : dependencies) {
+				if (visited.add(dependency)) {
+					worklist.add(dependency);
+				}
+			}
+		}
+		visited.remove(module);
+		return visited;
+	}
+
+	/**
+	 * Get the fingerprint of the interface of a given module, or
+	 * <code>null</code> if this is unknown (e.g. because the module was not
+	 * compiled by this task).
+	 *
+	 * @param module
+	 * @param interfaces
+	 *            The interfaces of modules rebuilt in the current build.
+	 * @return
+	 */
+	private Long getInterface(Path.ID module, Map<Path.ID, Long> interfaces) {
+		Long signature = interfaces.get(module);
+		if (signature == null) {
+			Record record = records.get(module);
+			signature = record == null ? null : record.signature;
+		}
+		return signature;
+	}
+
+	private static long fingerprint(Path.Entry<?> entry) throws IOException {
+		try (InputStream input = entry.inputStream()) {
+			return Fingerprint.of(input);
+		}
+	}
+
+	/**
+	 * Records the fingerprints of a module's source and interface when it was
+	 * last compiled, along with the fingerprints of the interfaces of those
+	 * modules it depended upon (directly or indirectly) at the time.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class Record {
+		private final long source;
+		private final long signature;
+		private final Map<Path.ID, Long> dependencies;
+
+		public Record(long source, long signature, Map<Path.ID, Long> dependencies) {
+			this.source = source;
+			this.signature = signature;
+			this.dependencies = dependencies;
+		}
+	}
 }
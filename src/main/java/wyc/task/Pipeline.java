@@ -0,0 +1,291 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.task;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import wybs.lang.CompilationUnit.Identifier;
+import wybs.lang.CompilationUnit.Name;
+import wybs.lang.SyntacticItem;
+import wybs.lang.SyntaxError;
+import wyc.check.FlowTypeCheck;
+import wyc.lang.WhileyFile;
+import wyc.lang.WhileyFile.Decl;
+import wyc.util.Interner;
+import wyc.util.Profiler;
+import wyfs.lang.Path;
+import wyfs.util.Trie;
+
+/**
+ * <p>
+ * Overlaps the parsing of source files with the type checking of those already
+ * parsed. Files are parsed by a pool of worker threads, and handed over to
+ * type checking (which remains sequential) as soon as they, and every module
+ * they refer to, have been parsed. Thus, the time spent reading and parsing
+ * one file is hidden behind the time spent type checking others.
+ * </p>
+ * <p>
+ * Files are handed over in the order given, with at most a fixed number being
+ * parsed ahead of the file next to be handed over. Should a worker not yet
+ * have started parsing the file next to be handed over, then it is parsed on
+ * the calling thread instead. Files are type checked in the same order, such
+ * that the first error reported is the same as if every file were parsed
+ * before any were type checked. For the same reason, a type error is reported
+ * only once every file has been parsed, since a syntax error in any file takes
+ * precedence.
+ * </p>
+ * <p>
+ * The occupancy of each stage (i.e. the proportion of time each spent working)
+ * is recorded, along with the time type checking stalled waiting for files to
+ * be parsed. These are reported by {@link #toString()}.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+final class Pipeline implements AutoCloseable {
+	private static final Set<Path.ID> UNKNOWN = Collections.unmodifiableSet(new HashSet<>());
+
+	private final FlowTypeCheck checker;
+	private final Profiler profiler;
+	private final Interner interner;
+	private final int parallelism;
+	private final ForkJoinPool pool;
+	/**
+	 * The files handed over which are yet to be type checked, in order.
+	 * Files are not retained once type checked.
+	 */
+	private final ArrayDeque<WhileyFile> files = new ArrayDeque<>();
+	/**
+	 * The index within its batch of each file yet to be type checked.
+	 */
+	private final ArrayDeque<Integer> indices = new ArrayDeque<>();
+	/**
+	 * The modules referred to by each file yet to be type checked, or
+	 * {@link #UNKNOWN} where these cannot be determined.
+	 */
+	private final ArrayDeque<Set<Path.ID>> references = new ArrayDeque<>();
+	/**
+	 * The first type error reported, if any.
+	 */
+	private SyntaxError error;
+	// Occupancy statistics
+	private final long start = System.nanoTime();
+	private final AtomicLong parsing = new AtomicLong();
+	private long typing;
+	private long stalled;
+	private int backlog;
+
+	public Pipeline(FlowTypeCheck checker, Profiler profiler, Interner interner, int parallelism) {
+		this.checker = checker;
+		this.profiler = profiler;
+		this.interner = interner;
+		this.parallelism = parallelism;
+		this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Parse a batch of source files, handing each over to a given handler and
+	 * then to type checking. Every file parsed in this batch is type checked
+	 * before this returns.
+	 *
+	 * @param sources
+	 *            The source files to parse.
+	 * @param handler
+	 *            Invoked on the calling thread for each file parsed, and each
+	 *            file type checked, in order.
+	 * @throws IOException
+	 */
+	public void apply(List<Path.Entry<WhileyFile>> sources, Handler handler) throws IOException {
+		HashSet<Path.ID> unparsed = new HashSet<>();
+		ArrayList<FutureTask<WhileyFile>> tasks = new ArrayList<>();
+		for (Path.Entry<WhileyFile> source : sources) {
+			unparsed.add(source.id());
+			tasks.add(new FutureTask<>(() -> parse(source)));
+		}
+		int window = 2 * parallelism;
+		int submitted = 0;
+		for (int i = 0; i != tasks.size(); ++i) {
+			// Keep up to a fixed number of files being parsed ahead
+			for (; pool != null && submitted < tasks.size() && submitted < i + window; ++submitted) {
+				pool.execute(tasks.get(submitted));
+			}
+			WhileyFile file = take(tasks.get(i));
+			// Don't retain the file once handed over
+			tasks.set(i, null);
+			handler.parsed(i, file);
+			unparsed.remove(sources.get(i).id());
+			files.add(file);
+			indices.add(i);
+			references.add(getReferences(file));
+			check(unparsed, handler);
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Override
+	public String toString() {
+		long wall = Math.max(1, System.nanoTime() - start);
+		return "parse occupancy " + percent(parsing.get(), wall * parallelism) + " (" + parallelism
+				+ " worker(s)), type occupancy " + percent(typing, wall) + ", type stalled " + stalled / 1000000
+				+ "ms waiting for parsing, peak backlog " + backlog + " file(s)";
+	}
+
+	private WhileyFile parse(Path.Entry<WhileyFile> source) throws IOException {
+		long time = System.nanoTime();
+		Profiler.Timer timer = profiler.start();
+		// NOTE: large files are split into chunks which are submitted to the
+		// worker pool, hence are bounded by the same parallelism
+		WhileyFile file = WhileyFile.parse(source, interner, pool);
+		profiler.record("parse", source.id(), timer);
+		parsing.addAndGet(System.nanoTime() - time);
+		return file;
+	}
+
+	/**
+	 * Wait for a given file to be parsed. If no worker has yet started parsing
+	 * it, then it is parsed on the calling thread.
+	 *
+	 * @param task
+	 * @return
+	 * @throws IOException
+	 */
+	private WhileyFile take(FutureTask<WhileyFile> task) throws IOException {
+		// NOTE: this does nothing if the task has already been started
+		task.run();
+		long time = System.nanoTime();
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		} finally {
+			stalled += System.nanoTime() - time;
+		}
+	}
+
+	/**
+	 * Type check, in order, those files handed over which are ready.
+	 *
+	 * @param unparsed
+	 *            The modules of the current batch yet to be parsed.
+	 * @param handler
+	 * @throws IOException
+	 */
+	private void check(Set<Path.ID> unparsed, Handler handler) throws IOException {
+		backlog = Math.max(backlog, files.size());
+		while (error == null && !files.isEmpty() && isReady(references.peek(), unparsed)) {
+			long time = System.nanoTime();
+			try {
+				checker.check(files.peek());
+				typing += System.nanoTime() - time;
+				references.poll();
+				handler.typed(indices.poll(), files.poll());
+			} catch (SyntaxError e) {
+				error = e;
+			}
+		}
+	}
+
+	private static boolean isReady(Set<Path.ID> references, Set<Path.ID> unparsed) {
+		if (references == UNKNOWN) {
+			return unparsed.isEmpty();
+		}
+		for (Path.ID id : references) {
+			if (unparsed.contains(id)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determine the modules which a given file may refer to, either through
+	 * its imports or through qualified names. This errs on the side of
+	 * including modules which are not referred to.
+	 *
+	 * @param file
+	 * @return The modules referred to, or {@link #UNKNOWN} if these cannot be
+	 *         determined (e.g. because of a wildcard import).
+	 */
+	private static Set<Path.ID> getReferences(WhileyFile file) {
+		HashSet<Path.ID> modules = new HashSet<>();
+		for (int i = 0; i != file.size(); ++i) {
+			SyntacticItem item = file.getSyntacticItem(i);
+			if (item instanceof Decl.Import) {
+				Trie id = Trie.ROOT;
+				for (Identifier component : ((Decl.Import) item).getPath()) {
+					if (component.get().equals("*")) {
+						return UNKNOWN;
+					}
+					id = id.append(component.get());
+				}
+				// The last component may name a declaration, rather than a
+				// module.
+				modules.add(id);
+				modules.add(id.parent());
+			} else if (item instanceof Name && item.size() > 1) {
+				modules.add(((Name) item).toNameID().module());
+			}
+		}
+		return modules;
+	}
+
+	private static String percent(long numerator, long denominator) {
+		return (100 * numerator / denominator) + "%";
+	}
+
+	/**
+	 * Receives each file once parsed, and again once type checked.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public interface Handler {
+		public void parsed(int index, WhileyFile file) throws IOException;
+
+		public void typed(int index, WhileyFile file) throws IOException;
+	}
+}
@@ -20,6 +20,8 @@ import wyal.lang.WyalFile;
 import wybs.lang.Build;
 import wybs.lang.NameResolver;
 import wyc.lang.WhileyFile;
+import wyc.util.Budget;
+import wyc.util.Profiler;
 import wyc.util.WhileyFileResolver;
 import wycc.util.Logger;
 import wycc.util.Pair;
@@ -47,6 +49,16 @@ public class Wyil2WyalBuilder implements Build.Task {
 	 */
 	protected Logger logger = Logger.NULL;
 
+	/**
+	 * For recording the time and memory consumed by each file translated.
+	 */
+	protected Profiler profiler = Profiler.NULL;
+
+	/**
+	 * Limits the time spent translating any one declaration.
+	 */
+	protected Budget budget = Budget.UNLIMITED;
+
 	public Wyil2WyalBuilder(Build.Project project) {
 		this.project = project;
 	}
@@ -60,6 +72,29 @@ public class Wyil2WyalBuilder implements Build.Task {
 		this.logger = logger;
 	}
 
+	/**
+	 * Set the profiler used to record the time and memory consumed in
+	 * generating verification conditions for each file and declaration. By
+	 * default, nothing is recorded. Since the profiler is reset at the start of
+	 * each build, it should not be shared with other tasks.
+	 *
+	 * @param profiler
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Set the budget limiting the time spent generating verification
+	 * conditions for any one declaration, beyond which an error is reported
+	 * for that declaration. By default, no limit is imposed.
+	 *
+	 * @param budget
+	 */
+	public void setBudget(Budget budget) {
+		this.budget = budget;
+	}
+
 	public String id() {
 		return null;
 	}
@@ -72,6 +107,9 @@ public class Wyil2WyalBuilder implements Build.Task {
 		Runtime runtime = Runtime.getRuntime();
 		long start = System.currentTimeMillis();
 		long memory = runtime.freeMemory();
+		// Retain only the profile of this build
+		profiler.reset();
+		Profiler.Timer timer = profiler.start();
 
 		// ========================================================================
 		// Translate files
@@ -84,8 +122,9 @@ public class Wyil2WyalBuilder implements Build.Task {
 			Path.Entry<WyalFile> target = (Path.Entry<WyalFile>) dst.create(source.id(), WyalFile.ContentType);
 			graph.registerDerivation(source, target);
 			generatedFiles.add(target);
-			WyalFile contents = new VerificationConditionGenerator(new WyalFile(target),
-					resolver).translate(source.read());
+			Profiler.Timer t = profiler.start();
+			WyalFile contents = new VerificationConditionGenerator(new WyalFile(target), resolver, profiler,
+					budget).translate(source.read());
 			// Write the file into its destination
 			target.write(contents);
 
@@ -93,7 +132,10 @@ public class Wyil2WyalBuilder implements Build.Task {
 			// error later. In principle, this should be unnecessary when
 			// syntax errors are no longer implemented as exceptions.
 			target.flush();
+			profiler.record("vcg", source.id(), t);
 		}
+		profiler.record("vcg", timer);
+		profiler.flush();
 
 		// ========================================================================
 		// Done
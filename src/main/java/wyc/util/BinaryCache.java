@@ -0,0 +1,311 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import wyc.task.CompileTask;
+import wyfs.lang.Path;
+import wyfs.util.Trie;
+
+/**
+ * <p>
+ * A directory of previously compiled WyIL binaries, addressed by the contents
+ * of the source files they were compiled from. This allows a module to be
+ * restored without being compiled, even when no binary for it exists in the
+ * target directory (e.g. on a clean checkout or a fresh build machine). The
+ * cache directory can be shared between projects and between builds.
+ * </p>
+ * <p>
+ * Each binary is stored under a key determined from the module's identifier,
+ * its source text and the version of the compiler. Alongside it are stored the
+ * module's identifier (such that colliding keys are detected), the fingerprint
+ * of the module's interface, and the interfaces of the modules it was compiled
+ * against (see {@link Fingerprint}). A cached binary can only be used if the
+ * modules it depends upon currently have the same interfaces; otherwise, the
+ * module must be compiled as normal. For example, a module whose source is
+ * unchanged but which imports a function whose signature has changed will not
+ * be restored.
+ * </p>
+ * <p>
+ * Entries are written atomically, so that several builds can share a cache
+ * directory at the same time. Any entry which cannot be read is treated as
+ * missing.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class BinaryCache {
+	private static final int MAGIC = 0x57594332; // "WYC2"
+
+	private final File directory;
+	private final long version;
+	private int hits;
+	private int misses;
+
+	/**
+	 * Construct a cache in a given directory (which is created if necessary).
+	 * Entries written by other versions of the compiler are never used.
+	 *
+	 * @param directory
+	 * @param version
+	 *            The version of the compiler (see
+	 *            {@link #getCompilerVersion()}).
+	 */
+	public BinaryCache(File directory, String version) {
+		this.directory = directory;
+		this.version = fingerprint(version);
+	}
+
+	/**
+	 * Determine the key under which the binary compiled from a given source
+	 * file is stored. Since modules with identical source text may compile to
+	 * different binaries (e.g. because they import modules relative to their
+	 * own package), the module's identifier is included.
+	 *
+	 * @param module
+	 *            The identifier of the module.
+	 * @param source
+	 *            The fingerprint of the source file's contents.
+	 * @return
+	 */
+	private long key(Path.ID module, long source) {
+		long hash = (version ^ fingerprint(module.toString())) * 0x100000001b3L;
+		return (hash ^ source) * 0x100000001b3L + source;
+	}
+
+	/**
+	 * Get the entry for a given module compiled from a given source file.
+	 *
+	 * @param module
+	 *            The identifier of the module.
+	 * @param source
+	 *            The fingerprint of the source file's contents.
+	 * @return The entry, or <code>null</code> if there is none.
+	 */
+	public Entry get(Path.ID module, long source) {
+		File file = getFile(key(module, source));
+		if (!file.exists()) {
+			misses = misses + 1;
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+			// Check this entry is for the given module, rather than one whose
+			// key happens to collide.
+			if (input.readInt() != MAGIC || !input.readUTF().equals(module.toString())) {
+				misses = misses + 1;
+				return null;
+			}
+			long signature = input.readLong();
+			int n = input.readInt();
+			HashMap<Path.ID, Long> dependencies = new HashMap<>();
+			for (int i = 0; i != n; ++i) {
+				Path.ID id = Trie.fromString(input.readUTF());
+				dependencies.put(id, input.readLong());
+			}
+			byte[] binary = new byte[input.readInt()];
+			input.readFully(binary);
+			hits = hits + 1;
+			return new Entry(signature, dependencies, binary);
+		} catch (IOException e) {
+			// Treat truncated or unreadable entries as missing
+			misses = misses + 1;
+			return null;
+		}
+	}
+
+	/**
+	 * Store the entry for a given module compiled from a given source file,
+	 * replacing any already stored.
+	 *
+	 * @param module
+	 *            The identifier of the module.
+	 * @param source
+	 *            The fingerprint of the source file's contents.
+	 * @param entry
+	 * @throws IOException
+	 */
+	public void put(Path.ID module, long source, Entry entry) throws IOException {
+		File file = getFile(key(module, source));
+		File parent = file.getParentFile();
+		parent.mkdirs();
+		File tmp = File.createTempFile("entry", ".tmp", parent);
+		try {
+			try (DataOutputStream output = new DataOutputStream(new FileOutputStream(tmp))) {
+				output.writeInt(MAGIC);
+				output.writeUTF(module.toString());
+				output.writeLong(entry.signature);
+				output.writeInt(entry.dependencies.size());
+				for (Map.Entry<Path.ID, Long> e : entry.dependencies.entrySet()) {
+					output.writeUTF(e.getKey().toString());
+					output.writeLong(e.getValue());
+				}
+				output.writeInt(entry.binary.length);
+				output.write(entry.binary);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	@Override
+	public String toString() {
+		return hits + " hit(s), " + misses + " miss(es)";
+	}
+
+	private File getFile(long key) {
+		String name = String.format("%016x", key);
+		return new File(new File(directory, name.substring(0, 2)), name.substring(2) + ".wyc");
+	}
+
+	/**
+	 * Determine a version string for the compiler currently running. Where the
+	 * compiler was loaded from a jar file, this includes the fingerprint of
+	 * that file. Likewise, where it was loaded from a directory of class files
+	 * (e.g. during development), this includes the fingerprint of those class
+	 * files. Thus, any change to the compiler invalidates existing cache
+	 * entries, even without a change of version number.
+	 *
+	 * @return
+	 */
+	public static String getCompilerVersion() {
+		String version = CompileTask.class.getPackage().getImplementationVersion();
+		if (version == null) {
+			version = "unknown";
+		}
+		CodeSource source = CompileTask.class.getProtectionDomain().getCodeSource();
+		if (source != null) {
+			try {
+				File location = new File(source.getLocation().toURI());
+				if (location.isFile()) {
+					try (InputStream input = new FileInputStream(location)) {
+						version = version + ":" + Long.toHexString(Fingerprint.of(input));
+					}
+				} else if (location.isDirectory()) {
+					version = version + ":" + Long.toHexString(fingerprintClasses(location));
+				}
+			} catch (URISyntaxException | IOException e) {
+				// Fall back on the version number alone
+			}
+		}
+		return version;
+	}
+
+	/**
+	 * Compute a fingerprint of the class files within a given directory,
+	 * covering both their names and their contents.
+	 *
+	 * @param directory
+	 * @return
+	 * @throws IOException
+	 */
+	private static long fingerprintClasses(File directory) throws IOException {
+		java.nio.file.Path root = directory.toPath();
+		ArrayList<java.nio.file.Path> files;
+		try (Stream<java.nio.file.Path> paths = Files.walk(root)) {
+			files = paths.filter(p -> p.toString().endsWith(".class")).sorted()
+					.collect(Collectors.toCollection(ArrayList::new));
+		}
+		ByteArrayOutputStream summary = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(summary)) {
+			for (java.nio.file.Path file : files) {
+				output.writeUTF(root.relativize(file).toString());
+				try (InputStream input = Files.newInputStream(file)) {
+					output.writeLong(Fingerprint.of(input));
+				}
+			}
+		}
+		return Fingerprint.of(new ByteArrayInputStream(summary.toByteArray()));
+	}
+
+	private static long fingerprint(String text) {
+		try {
+			return Fingerprint.of(new ByteArrayInputStream(text.getBytes("UTF-8")));
+		} catch (IOException e) {
+			// Cannot happen for an in-memory stream
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * A cached binary, along with the interface fingerprints needed to decide
+	 * whether it can be used.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public static final class Entry {
+		private final long signature;
+		private final Map<Path.ID, Long> dependencies;
+		private final byte[] binary;
+
+		public Entry(long signature, Map<Path.ID, Long> dependencies, byte[] binary) {
+			this.signature = signature;
+			this.dependencies = Collections.unmodifiableMap(dependencies);
+			this.binary = binary;
+		}
+
+		/**
+		 * Get the fingerprint of the cached module's interface.
+		 *
+		 * @return
+		 */
+		public long getSignature() {
+			return signature;
+		}
+
+		/**
+		 * Get the interface fingerprints of the modules the cached module was
+		 * compiled against.
+		 *
+		 * @return
+		 */
+		public Map<Path.ID, Long> getDependencies() {
+			return dependencies;
+		}
+
+		public byte[] getBinary() {
+			return binary;
+		}
+	}
+}
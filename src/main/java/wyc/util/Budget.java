@@ -0,0 +1,145 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import static wyc.util.ErrorMessages.BUDGET_EXCEEDED;
+import static wyc.util.ErrorMessages.errorMessage;
+
+import wybs.lang.SyntacticItem;
+import wybs.lang.SyntaxError;
+import wyc.lang.WhileyFile;
+import wyc.lang.WhileyFile.Decl;
+
+/**
+ * <p>
+ * Limits the time which may be spent compiling any one declaration within any
+ * one phase of compilation. This protects against declarations which are
+ * pathologically expensive to compile (e.g. because of an exponential blowup
+ * in subtype testing, or in the number of verification conditions generated).
+ * Rather than compilation appearing to hang, such a declaration is reported as
+ * an error. For example:
+ * </p>
+ *
+ * <pre>
+ * budget.apply(file, decl, () -> check(decl));
+ * </pre>
+ *
+ * <p>
+ * Since the work is not interrupted, it must regularly call {@link #check()}
+ * to determine whether its budget has been exceeded. This is done at those
+ * points where blowups are known to occur, namely the emptiness tests
+ * underlying subtyping and the translation of statements into verification
+ * conditions. A budget which imposes no limit is provided by
+ * {@link #UNLIMITED}.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class Budget {
+	/**
+	 * A budget which imposes no limit.
+	 */
+	public static final Budget UNLIMITED = new Budget(0);
+
+	/**
+	 * The number of checks between successive readings of the clock.
+	 */
+	private static final int CHECK_INTERVAL = 256;
+
+	/**
+	 * The deadline (as given by <code>System.nanoTime()</code>) of the work
+	 * currently being done on each thread, if it has a budget, along with the
+	 * number of checks made since.
+	 */
+	private static final ThreadLocal<long[]> deadline = new ThreadLocal<>();
+
+	private final long millis;
+
+	/**
+	 * Construct a budget which limits the time spent on each declaration to a
+	 * given number of milliseconds. A limit of zero imposes no limit.
+	 *
+	 * @param millis
+	 */
+	public Budget(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("invalid budget: " + millis);
+		}
+		this.millis = millis;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * Perform some work on a given declaration within this budget, on the
+	 * current thread.
+	 *
+	 * @param file
+	 *            The file containing the declaration.
+	 * @param decl
+	 *            The declaration being worked on.
+	 * @param work
+	 * @throws SyntaxError
+	 *             If the work exceeds this budget.
+	 */
+	public void apply(WhileyFile file, Decl decl, Runnable work) {
+		if (millis == 0) {
+			work.run();
+			return;
+		}
+		long[] previous = deadline.get();
+		deadline.set(new long[] { System.nanoTime() + millis * 1000000, 0 });
+		try {
+			work.run();
+		} catch (Exceeded e) {
+			SyntacticItem element = decl instanceof Decl.Named ? ((Decl.Named) decl).getName() : decl;
+			throw new SyntaxError(errorMessage(BUDGET_EXCEEDED, millis + "ms"), file.getEntry(), element);
+		} finally {
+			deadline.set(previous);
+		}
+	}
+
+	/**
+	 * Check whether the work being done on the current thread has exceeded its
+	 * budget. Since this may be called very often, the clock is only read
+	 * periodically.
+	 *
+	 * @throws Exceeded
+	 *             If the budget has been exceeded.
+	 */
+	public static void check() {
+		long[] d = deadline.get();
+		if (d != null && ++d[1] % CHECK_INTERVAL == 0 && System.nanoTime() > d[0]) {
+			throw new Exceeded();
+		}
+	}
+
+	/**
+	 * Signals that the work being done on the current thread has exceeded its
+	 * budget.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public static final class Exceeded extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private Exceeded() {
+			super(null, null, false, false);
+		}
+	}
+}
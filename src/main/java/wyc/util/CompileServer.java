@@ -0,0 +1,299 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import wybs.lang.SyntaxError;
+import wybs.util.StdBuildGraph;
+import wybs.util.StdProject;
+import wyc.Activator;
+import wyc.lang.WhileyFile;
+import wyc.task.CompileTask;
+import wycc.util.Logger;
+import wycc.util.Pair;
+import wyfs.lang.Content;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * <p>
+ * A long-lived compiler process which accepts build requests from a client.
+ * Since the same project and compile task are used for every request, the
+ * modules resolved by previous builds and the caches held by the compiler
+ * (e.g. of resolved imports) remain available to subsequent builds. Furthermore,
+ * only those modules affected by changes made since the previous build are
+ * recompiled. Thus, the cost of starting the JVM, loading the compiler and
+ * compiling unchanged modules is paid only once.
+ * </p>
+ * <p>
+ * Requests are read one per line, and the response to each is terminated by a
+ * line beginning with either <code>ok</code> or <code>failed</code>. The
+ * following requests are supported:
+ * </p>
+ * <ul>
+ * <li><b><code>build [module...]</code></b>. Build the given modules, or every
+ * source file if none are given. Any errors are reported in full before the
+ * terminating line.</li>
+ * <li><b><code>stats</code></b>. Report the number of builds performed and the
+ * heap currently in use.</li>
+ * <li><b><code>shutdown</code></b>. Stop the server.</li>
+ * </ul>
+ * <p>
+ * Requests are read either from standard input, or from connections to a
+ * socket bound to the loopback address (see {@link #main(String[])}). For
+ * example, the following starts a server and performs two builds, the second
+ * of which compiles nothing:
+ * </p>
+ *
+ * <pre>
+ * $ printf 'build\nbuild\nshutdown\n' | java wyc.util.CompileServer src bin
+ * ok rebuilt 12 file(s) in 2310ms
+ * ok rebuilt 0 file(s) in 4ms
+ * ok
+ * </pre>
+ *
+ * <p>
+ * Alternatively, the server can watch the source directory and rebuild
+ * whenever a source file changes (see {@link #watch(SourceWatcher, PrintStream, long)}).
+ * This is intended for use alongside an editor, such that errors are reported
+ * shortly after each save.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class CompileServer {
+	/**
+	 * The period in milliseconds for which no further changes must be seen
+	 * before a batch of changes is rebuilt in watch mode. This should be long
+	 * enough to span the writes made by a single save in an editor.
+	 */
+	private static final long WATCH_QUIET_PERIOD = 50;
+
+	private final DirectoryRoot source;
+	private final DirectoryRoot target;
+	private final CompileTask task;
+	private int builds;
+	private int rebuilt;
+
+	/**
+	 * Construct a server which compiles the Whiley source files in a given
+	 * directory, writing the binary files generated into another.
+	 *
+	 * @param srcdir
+	 * @param bindir
+	 * @throws IOException
+	 */
+	public CompileServer(File srcdir, File bindir) throws IOException {
+		Content.Registry registry = new Activator.Registry();
+		this.source = new DirectoryRoot(srcdir, registry);
+		this.target = new DirectoryRoot(bindir, registry);
+		this.task = new CompileTask(new StdProject(Arrays.asList(source, target)));
+	}
+
+	/**
+	 * Access the compile task used for every build, e.g. to configure it.
+	 *
+	 * @return
+	 */
+	public CompileTask getTask() {
+		return task;
+	}
+
+	/**
+	 * Build the given modules, or every source file if none are given. Source
+	 * files added or changed since the last build are always picked up.
+	 *
+	 * @param modules
+	 *            The identifiers of the modules to build (e.g.
+	 *            <code>std/math</code>).
+	 * @return The binary files generated.
+	 * @throws IOException
+	 */
+	public Set<Path.Entry<?>> build(List<String> modules) throws IOException {
+		// Discard the listing of the source directory, but not the binary
+		// files previously loaded from the target directory. The table of
+		// modules is then rebuilt from the refreshed listing.
+		source.refresh();
+		task.refresh();
+		ArrayList<Pair<Path.Entry<?>, Path.Root>> delta = new ArrayList<>();
+		if (modules.isEmpty()) {
+			for (Path.Entry<WhileyFile> entry : source.get(Content.filter("**", WhileyFile.ContentType))) {
+				delta.add(new Pair<>(entry, target));
+			}
+		} else {
+			for (String module : modules) {
+				Path.Entry<WhileyFile> entry = source.get(Trie.fromString(module), WhileyFile.ContentType);
+				if (entry == null) {
+					throw new IllegalArgumentException("unknown module: " + module);
+				}
+				delta.add(new Pair<>(entry, target));
+			}
+		}
+		builds = builds + 1;
+		Set<Path.Entry<?>> generated = task.build(delta, new StdBuildGraph());
+		target.flush();
+		rebuilt = rebuilt + generated.size();
+		return generated;
+	}
+
+	/**
+	 * Respond to requests read from a given input until either it is exhausted
+	 * or a <code>shutdown</code> request is received.
+	 *
+	 * @param input
+	 * @param output
+	 * @return True if a <code>shutdown</code> request was received.
+	 * @throws IOException
+	 */
+	public boolean serve(BufferedReader input, PrintStream output) throws IOException {
+		String line;
+		while ((line = input.readLine()) != null) {
+			String[] words = line.trim().split("\\s+");
+			List<String> arguments = Arrays.asList(words).subList(1, words.length);
+			switch (words[0]) {
+			case "":
+				continue;
+			case "build":
+				build(arguments, output);
+				break;
+			case "stats":
+				Runtime runtime = Runtime.getRuntime();
+				output.println("builds " + builds + ", rebuilt " + rebuilt + " file(s), heap "
+						+ (runtime.totalMemory() - runtime.freeMemory()) / 1024 + "KB");
+				output.println("ok");
+				break;
+			case "shutdown":
+				output.println("ok");
+				output.flush();
+				return true;
+			default:
+				output.println("failed: unknown request \"" + words[0] + "\"");
+			}
+			output.flush();
+		}
+		return false;
+	}
+
+	/**
+	 * Rebuild whenever a batch of source files changes, until interrupted. Each
+	 * rebuild considers every source file, such that modules which depend upon
+	 * those changed are also rebuilt where necessary.
+	 *
+	 * @param watcher
+	 *            Watches the source directory of this server.
+	 * @param output
+	 * @param quiet
+	 *            The period in milliseconds without further changes after
+	 *            which a batch of changes is rebuilt.
+	 * @throws IOException
+	 */
+	public void watch(SourceWatcher watcher, PrintStream output, long quiet) throws IOException {
+		try {
+			while (true) {
+				Set<String> changed = watcher.await(quiet);
+				if (!changed.isEmpty()) {
+					output.println("changed " + String.join(", ", changed));
+					build(Collections.<String>emptyList(), output);
+					output.flush();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void build(List<String> modules, PrintStream output) {
+		long start = System.currentTimeMillis();
+		try {
+			int count = build(modules).size();
+			output.println("ok rebuilt " + count + " file(s) in " + (System.currentTimeMillis() - start) + "ms");
+		} catch (SyntaxError e) {
+			e.outputSourceError(output, false);
+			output.println("failed");
+		} catch (IOException | RuntimeException e) {
+			// Report the failure, but keep the server running
+			output.println("failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Start a compile server. The usage is:
+	 *
+	 * <pre>
+	 * CompileServer [-verbose] [-watch | -port N] srcdir bindir
+	 * </pre>
+	 *
+	 * When watching, the source directory is built once and then rebuilt after
+	 * each batch of changes. Without a port, requests are read from standard
+	 * input. Otherwise, connections are accepted one at a time on the given
+	 * port of the loopback address until a <code>shutdown</code> request is
+	 * received.
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		boolean verbose = arguments.remove("-verbose");
+		boolean watch = arguments.remove("-watch");
+		int port = -1;
+		int index = arguments.indexOf("-port");
+		if (index >= 0 && index + 1 < arguments.size()) {
+			port = Integer.parseInt(arguments.get(index + 1));
+			arguments.subList(index, index + 2).clear();
+		}
+		if (arguments.size() != 2) {
+			System.err.println("usage: CompileServer [-verbose] [-watch | -port N] srcdir bindir");
+			System.exit(1);
+		}
+		CompileServer server = new CompileServer(new File(arguments.get(0)), new File(arguments.get(1)));
+		if (verbose) {
+			server.getTask().setLogger(new Logger.Default(System.err));
+		}
+		if (watch) {
+			try (SourceWatcher watcher = new SourceWatcher(new File(arguments.get(0)))) {
+				server.build(Collections.<String>emptyList(), System.out);
+				server.watch(watcher, System.out, WATCH_QUIET_PERIOD);
+			}
+			return;
+		} else if (port < 0) {
+			server.serve(new BufferedReader(new InputStreamReader(System.in)), System.out);
+			return;
+		}
+		try (ServerSocket socket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+			boolean shutdown = false;
+			while (!shutdown) {
+				try (Socket client = socket.accept()) {
+					BufferedReader input = new BufferedReader(new InputStreamReader(client.getInputStream()));
+					shutdown = server.serve(input, new PrintStream(client.getOutputStream(), true));
+				}
+			}
+		}
+	}
+}
@@ -107,6 +107,7 @@ public class ErrorMessages {
 	public static final MsgWithNoParams MISSING_RETURN_VALUE = new MsgWithNoParams("missing return value");
 	public static final MsgWithNoParams BRANCH_ALWAYS_TAKEN = new MsgWithNoParams("branch always taken");
 	public static final MsgWithTypeParams AMBIGUOUS_COERCION = new MsgWithTypeParams("ambiguous coercion (from $0 to $1)");
+	public static final MsgWithStringParam BUDGET_EXCEEDED = new MsgWithStringParam("compilation budget exceeded ($0)");
 
 	/**
 	 * Return the error message for an error with no parameters.
@@ -0,0 +1,168 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+
+import wybs.lang.SyntacticItem;
+import wyc.lang.WhileyFile;
+import wyc.lang.WhileyFile.Decl;
+
+/**
+ * <p>
+ * Computes 64-bit fingerprints used to determine whether a module must be
+ * recompiled. Two kinds of fingerprint are supported: that of the raw contents
+ * of a source file, and that of the <i>interface</i> exported by a parsed
+ * module. The interface of a module consists of everything which other modules
+ * can depend upon, namely its imports and the declarations it contains minus
+ * the bodies of functions and methods, and the initialisers of static
+ * variables. For example, consider this module:
+ * </p>
+ *
+ * <pre>
+ * type nat is (int x) where x >= 0
+ *
+ * function inc(nat x) -> (nat y):
+ *     return x + 1
+ * </pre>
+ *
+ * <p>
+ * Changing the body of <code>inc</code> does not change the fingerprint of this
+ * module's interface, whilst changing the invariant of <code>nat</code> or the
+ * signature of <code>inc</code> does. Private declarations are included since
+ * name resolution does not currently distinguish them.
+ * </p>
+ * <p>
+ * The interface fingerprint is determined from the structure of the abstract
+ * syntax tree produced by the parser, rather than the source text. Thus,
+ * changes to whitespace and comments do not affect it. Fingerprints are
+ * computed using FNV-1a.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class Fingerprint {
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	/**
+	 * Compute the fingerprint of everything remaining in a given input stream.
+	 * The stream is not closed.
+	 *
+	 * @param input
+	 * @return
+	 * @throws IOException
+	 */
+	public static long of(InputStream input) throws IOException {
+		long hash = OFFSET_BASIS;
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = input.read(buffer)) != -1) {
+			for (int i = 0; i != n; ++i) {
+				hash = (hash ^ (buffer[i] & 0xFF)) * PRIME;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Compute the fingerprint of the interface exported by a given module. This
+	 * should be applied to a module which has been parsed but not yet type
+	 * checked, since type checking allocates additional items within it.
+	 *
+	 * @param file
+	 * @return
+	 */
+	public static long ofInterface(WhileyFile file) {
+		Hasher hasher = new Hasher();
+		for (Decl decl : file.getDeclarations()) {
+			hasher.add(decl);
+		}
+		return hasher.hash;
+	}
+
+	/**
+	 * Accumulates the fingerprint of a set of syntactic items. Each item is
+	 * hashed at most once, with subsequent occurrences being hashed according
+	 * to the order in which they were first encountered. This ensures that
+	 * shared items (and cycles) are handled correctly, without making the
+	 * fingerprint depend upon the position of items in the heap.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class Hasher {
+		private final IdentityHashMap<SyntacticItem, Integer> visited = new IdentityHashMap<>();
+		private long hash = OFFSET_BASIS;
+
+		public void add(SyntacticItem item) {
+			if (item == null) {
+				mix(-1);
+				return;
+			}
+			Integer ordinal = visited.get(item);
+			if (ordinal != null) {
+				mix(-2);
+				mix(ordinal);
+				return;
+			}
+			visited.put(item, visited.size());
+			mix(item.getOpcode());
+			byte[] data = item.getData();
+			if (data != null) {
+				mix(data.length);
+				for (int i = 0; i != data.length; ++i) {
+					hash = (hash ^ (data[i] & 0xFF)) * PRIME;
+				}
+			}
+			SyntacticItem skip = getImplementation(item);
+			mix(item.size());
+			for (int i = 0; i != item.size(); ++i) {
+				SyntacticItem child = item.get(i);
+				if (child != null && child == skip) {
+					mix(-3);
+				} else {
+					add(child);
+				}
+			}
+		}
+
+		private void mix(int value) {
+			for (int i = 0; i != 4; ++i) {
+				hash = (hash ^ (value & 0xFF)) * PRIME;
+				value >>>= 8;
+			}
+		}
+
+		/**
+		 * Identify that part of a given item which is not part of its interface,
+		 * or <code>null</code> if there is none.
+		 *
+		 * @param item
+		 * @return
+		 */
+		private static SyntacticItem getImplementation(SyntacticItem item) {
+			if (item instanceof Decl.FunctionOrMethod) {
+				return ((Decl.FunctionOrMethod) item).getBody();
+			} else if (item instanceof Decl.StaticVariable) {
+				return ((Decl.StaticVariable) item).getInitialiser();
+			} else {
+				return null;
+			}
+		}
+	}
+}
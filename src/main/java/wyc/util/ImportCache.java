@@ -0,0 +1,202 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import wybs.lang.NameID;
+import wyc.lang.WhileyFile;
+import wycc.util.Pair;
+import wyfs.lang.Path;
+import wyfs.util.Trie;
+
+/**
+ * <p>
+ * Caches the results of resolving non-local names, along with the expansions
+ * of import statements used to do this. For example, the statement
+ * <code>import whiley.lang.*</code> corresponds to the filter
+ * <code>whiley/lang/*</code>, which is expanded into the list of modules it
+ * matches only once. Likewise, the name <code>Test.f</code> occurring in module
+ * <code>main</code> is resolved only once, until something it depends upon
+ * changes.
+ * </p>
+ * <p>
+ * Every resolution records the modules which were examined in determining it
+ * (including the module in which the name occurs), along with the import
+ * filters which were expanded. When a module is invalidated, every resolution
+ * which examined it, or which expanded a filter matching it, is discarded.
+ * Likewise, any expansion matching it is discarded. This ensures that adding,
+ * removing or changing a module is correctly reflected in subsequent
+ * resolutions.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public class ImportCache {
+	private final HashMap<Pair<Path.ID, NameID>, Resolution> resolutions = new HashMap<>();
+	private final HashMap<Trie, List<Path.Entry<WhileyFile>>> expansions = new HashMap<>();
+	private long hits;
+	private long misses;
+	private long invalidations;
+
+	/**
+	 * Get the cached resolution of a given name occurring within a given module,
+	 * or <code>null</code> if none exists.
+	 *
+	 * @param module
+	 *            The module in which the name occurs.
+	 * @param name
+	 *            The (possibly partially qualified) name being resolved.
+	 * @return
+	 */
+	public synchronized NameID get(Path.ID module, NameID name) {
+		Resolution r = resolutions.get(new Pair<>(module, name));
+		if (r != null) {
+			hits = hits + 1;
+			return r.result;
+		} else {
+			misses = misses + 1;
+			return null;
+		}
+	}
+
+	/**
+	 * Record the resolution of a given name occurring within a given module.
+	 *
+	 * @param module
+	 *            The module in which the name occurs.
+	 * @param name
+	 *            The (possibly partially qualified) name being resolved.
+	 * @param result
+	 *            The fully qualified name it resolved to.
+	 * @param dependencies
+	 *            The modules and filters examined during resolution.
+	 */
+	public synchronized void put(Path.ID module, NameID name, NameID result, Dependencies dependencies) {
+		resolutions.put(new Pair<>(module, name), new Resolution(result, dependencies));
+	}
+
+	/**
+	 * Get the cached expansion of a given import filter, or <code>null</code> if
+	 * none exists.
+	 *
+	 * @param filter
+	 * @return
+	 */
+	public synchronized List<Path.Entry<WhileyFile>> getExpansion(Trie filter) {
+		return expansions.get(filter);
+	}
+
+	public synchronized void putExpansion(Trie filter, List<Path.Entry<WhileyFile>> modules) {
+		expansions.put(filter, modules);
+	}
+
+	/**
+	 * Invalidate all cached information which depends upon a given module. This
+	 * should be called whenever that module is added, removed or changed.
+	 *
+	 * @param module
+	 */
+	public synchronized void invalidate(Path.ID module) {
+		Iterator<Resolution> i = resolutions.values().iterator();
+		while (i.hasNext()) {
+			if (i.next().dependencies.dependsOn(module)) {
+				i.remove();
+				invalidations = invalidations + 1;
+			}
+		}
+		Iterator<Trie> j = expansions.keySet().iterator();
+		while (j.hasNext()) {
+			if (j.next().matches(module)) {
+				j.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove everything from this cache and reset its counters.
+	 */
+	public synchronized void clear() {
+		resolutions.clear();
+		expansions.clear();
+		hits = 0;
+		misses = 0;
+		invalidations = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "{hits=" + hits + ", misses=" + misses + ", invalidated=" + invalidations + ", size="
+				+ resolutions.size() + "}";
+	}
+
+	/**
+	 * Records the modules examined, and the import filters expanded, whilst
+	 * resolving a given name.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public static final class Dependencies {
+		private final HashSet<Path.ID> modules = new HashSet<>();
+		private final ArrayList<Trie> filters = new ArrayList<>();
+
+		public void addModule(Path.ID module) {
+			modules.add(module);
+		}
+
+		public void addFilter(Trie filter) {
+			filters.add(filter);
+		}
+
+		public boolean dependsOn(Path.ID module) {
+			if (modules.contains(module)) {
+				return true;
+			}
+			for (int i = 0; i != filters.size(); ++i) {
+				if (filters.get(i).matches(module)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class Resolution {
+		private final NameID result;
+		private final Dependencies dependencies;
+
+		public Resolution(NameID result, Dependencies dependencies) {
+			this.result = result;
+			this.dependencies = dependencies;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A table of identifiers which ensures that equal identifiers encountered by
+ * the front end (e.g. names of variables, functions, types and module path
+ * components) share the same UTF-8 encoding, across all files being compiled.
+ * Since an identifier item holds its encoding directly, an identifier
+ * constructed from an interned encoding occupies no space beyond the item
+ * itself. Each compile task holds its own table, which is given to the lexer
+ * and parser of every file it parses and cleared at the end of each build.
+ * Since the same identifiers are used again and again throughout a large
+ * project, this substantially reduces the memory held by parsed files. For
+ * example:
+ * </p>
+ *
+ * <pre>
+ * Identifier name = new Identifier(interner.intern(chars, start, end));
+ * </pre>
+ *
+ * <p>
+ * An identifier can be interned directly from a region of characters, in
+ * which case nothing is allocated unless an equal identifier has not been
+ * interned before. The table is safe for use by multiple threads, being split
+ * into segments which are locked independently. The number of duplicates
+ * found and the bytes saved by sharing their encodings are recorded, and
+ * reported by {@link #toString()}.
+ * </p>
+ * <p>
+ * <b>NOTE:</b> encodings are retained until the table is cleared. Since the
+ * number of distinct identifiers in a project is small compared with the
+ * number of times they occur, this is rarely a concern within a build. Other
+ * text, such as that of literals, is not interned since this is not retained
+ * by a parsed file in the form of an identifier.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class Interner {
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final LongAdder duplicates = new LongAdder();
+	private final LongAdder saved = new LongAdder();
+
+	public Interner() {
+		for (int i = 0; i != SEGMENTS; ++i) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Intern the identifier made up from a given region of characters.
+	 *
+	 * @param chars
+	 * @param start
+	 *            The index of the first character.
+	 * @param end
+	 *            The index one past the last character.
+	 * @return The UTF-8 encoding of the identifier, which must not be modified.
+	 */
+	public byte[] intern(char[] chars, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; ++i) {
+			hash = 31 * hash + chars[i];
+		}
+		Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+		synchronized (segment) {
+			byte[] bytes = segment.get(hash, chars, start, end);
+			if (bytes == null) {
+				bytes = encode(chars, start, end);
+				segment.add(hash, bytes);
+			} else {
+				record(bytes);
+			}
+			return bytes;
+		}
+	}
+
+	/**
+	 * Intern a given identifier.
+	 *
+	 * @param string
+	 * @return The UTF-8 encoding of the identifier, which must not be modified.
+	 */
+	public byte[] intern(String string) {
+		char[] chars = string.toCharArray();
+		return intern(chars, 0, chars.length);
+	}
+
+	/**
+	 * Get the number of distinct identifiers interned.
+	 *
+	 * @return
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Get the number of times an identifier was interned which was equal to
+	 * one interned before.
+	 *
+	 * @return
+	 */
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	/**
+	 * Get an estimate of the number of bytes saved by sharing the encodings of
+	 * duplicate identifiers, rather than allocating an encoding for each.
+	 *
+	 * @return
+	 */
+	public long getBytesSaved() {
+		return saved.sum();
+	}
+
+	/**
+	 * Remove all identifiers from this table, and reset its statistics.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+		duplicates.reset();
+		saved.reset();
+	}
+
+	@Override
+	public String toString() {
+		return size() + " identifiers, " + getDuplicates() + " duplicates, saved " + getBytesSaved() / 1024 + "KB";
+	}
+
+	private void record(byte[] duplicate) {
+		duplicates.increment();
+		saved.add(sizeOf(duplicate));
+	}
+
+	/**
+	 * Estimate the space occupied by an array of bytes, assuming compressed
+	 * references and 8-byte alignment.
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	private static long sizeOf(byte[] bytes) {
+		return (16 + bytes.length + 7) & ~7;
+	}
+
+	private static byte[] encode(char[] chars, int start, int end) {
+		return new String(chars, start, end - start).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * An open-addressed hash table of encodings, accessed only whilst holding
+	 * its lock. The hash of each encoding is that of the string it encodes.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class Segment {
+		private byte[][] entries = new byte[64][];
+		private int[] hashes = new int[64];
+		private int size;
+
+		public byte[] get(int hash, char[] chars, int start, int end) {
+			int mask = entries.length - 1;
+			for (int i = hash & mask;; i = (i + 1) & mask) {
+				byte[] bytes = entries[i];
+				if (bytes == null || (hashes[i] == hash && matches(bytes, chars, start, end))) {
+					return bytes;
+				}
+			}
+		}
+
+		public void add(int hash, byte[] bytes) {
+			if (2 * (size + 1) > entries.length) {
+				byte[][] oldEntries = entries;
+				int[] oldHashes = hashes;
+				entries = new byte[oldEntries.length * 2][];
+				hashes = new int[oldEntries.length * 2];
+				for (int i = 0; i != oldEntries.length; ++i) {
+					if (oldEntries[i] != null) {
+						insert(oldHashes[i], oldEntries[i]);
+					}
+				}
+			}
+			insert(hash, bytes);
+			size = size + 1;
+		}
+
+		public void clear() {
+			entries = new byte[64][];
+			hashes = new int[64];
+			size = 0;
+		}
+
+		private void insert(int hash, byte[] bytes) {
+			int mask = entries.length - 1;
+			int i = hash & mask;
+			while (entries[i] != null) {
+				i = (i + 1) & mask;
+			}
+			entries[i] = bytes;
+			hashes[i] = hash;
+		}
+
+		/**
+		 * Check whether a given encoding is that of a region of characters.
+		 * This is done without encoding the characters, unless some are not
+		 * ASCII.
+		 */
+		private static boolean matches(byte[] bytes, char[] chars, int start, int end) {
+			for (int i = 0; i != end - start; ++i) {
+				char c = chars[start + i];
+				if (c >= 0x80) {
+					return Arrays.equals(bytes, encode(chars, start, end));
+				} else if (i >= bytes.length || bytes[i] != c) {
+					return false;
+				}
+			}
+			return bytes.length == end - start;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import wybs.lang.Build;
+import wybs.util.AbstractCompilationUnit.Value;
+import wyc.Activator;
+import wyc.lang.WhileyFile;
+import wycc.cfg.Configuration;
+import wyfs.lang.Content;
+import wyfs.lang.Path;
+import wyfs.util.Trie;
+
+/**
+ * <p>
+ * Maps the ID of every module available to a project to the entry holding its
+ * binary. The roots of the project are searched before its package
+ * dependencies, such that a module in the project hides any module with the
+ * same ID in a package. The table is constructed by listing every root and
+ * package once, when first needed, after which looking up a module is a single
+ * hash probe rather than a search of every root and package.
+ * </p>
+ * <p>
+ * Each resolver holds its own table (see
+ * {@link WhileyFileResolver#getModuleTable()}), which must be told when the
+ * roots change. When a module is invalidated, it is looked up again in the roots and packages
+ * until it is found, since its binary may not be written until after it was
+ * invalidated. Other changes to the roots (e.g. after they are refreshed from
+ * disk) require the table to be refreshed. The table is safe for use by
+ * several threads at once.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class ModuleTable {
+	private final Build.Project project;
+	/**
+	 * The entry for each module, or <code>null</code> if not yet constructed.
+	 */
+	private HashMap<Path.ID, Path.Entry<WhileyFile>> modules;
+	/**
+	 * The roots of every package, or <code>null</code> if not yet determined.
+	 */
+	private List<Path.Root> packages;
+	/**
+	 * The modules invalidated and not found since. These are looked up again
+	 * whenever they are not in the table.
+	 */
+	private final HashSet<Path.ID> stale = new HashSet<>();
+
+	public ModuleTable(Build.Project project) {
+		this.project = project;
+	}
+
+	/**
+	 * Get the entry holding the binary of a given module.
+	 *
+	 * @param id
+	 * @return The entry, or <code>null</code> if no such module exists.
+	 * @throws IOException
+	 */
+	public synchronized Path.Entry<WhileyFile> get(Path.ID id) throws IOException {
+		if (modules == null) {
+			modules = construct();
+		}
+		Path.Entry<WhileyFile> entry = modules.get(id);
+		if (entry == null && stale.contains(id)) {
+			entry = lookup(id);
+			if (entry != null) {
+				modules.put(id, entry);
+				stale.remove(id);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Indicate that a given module has been added, removed or otherwise
+	 * changed.
+	 *
+	 * @param id
+	 */
+	public synchronized void invalidate(Path.ID id) {
+		if (modules != null) {
+			modules.remove(id);
+		}
+		stale.add(id);
+	}
+
+	/**
+	 * Discard the table, such that it is constructed again when next needed.
+	 * This should be called whenever the roots of the project, or its
+	 * packages, have changed other than by modules being invalidated.
+	 */
+	public synchronized void refresh() {
+		modules = null;
+		packages = null;
+	}
+
+	/**
+	 * Get the number of modules in the table.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized int size() throws IOException {
+		if (modules == null) {
+			modules = construct();
+		}
+		return modules.size();
+	}
+
+	private HashMap<Path.ID, Path.Entry<WhileyFile>> construct() throws IOException {
+		HashMap<Path.ID, Path.Entry<WhileyFile>> modules = new HashMap<>();
+		Content.Filter<WhileyFile> filter = Content.filter("**", WhileyFile.BinaryContentType);
+		for (Path.Root root : project.getRoots()) {
+			for (Path.Entry<WhileyFile> entry : root.get(filter)) {
+				modules.putIfAbsent(entry.id(), entry);
+			}
+		}
+		for (Path.Root root : getPackageRoots()) {
+			for (Path.Entry<WhileyFile> entry : root.get(filter)) {
+				modules.putIfAbsent(entry.id(), entry);
+			}
+		}
+		return modules;
+	}
+
+	/**
+	 * Search every root and package for a given module.
+	 *
+	 * @param id
+	 * @return
+	 * @throws IOException
+	 */
+	private Path.Entry<WhileyFile> lookup(Path.ID id) throws IOException {
+		for (Path.Root root : project.getRoots()) {
+			Path.Entry<WhileyFile> e = root.get(id, WhileyFile.BinaryContentType);
+			if (e != null) {
+				return e;
+			}
+		}
+		for (Path.Root root : getPackageRoots()) {
+			Path.Entry<WhileyFile> e = root.get(id, WhileyFile.BinaryContentType);
+			if (e != null) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	private List<Path.Root> getPackageRoots() throws IOException {
+		if (packages == null) {
+			ArrayList<Path.Root> roots = new ArrayList<>();
+			for (Build.Package pkg : project.getPackages()) {
+				roots.add(getPlatformBinaryRoot(pkg));
+			}
+			packages = roots;
+		}
+		return packages;
+	}
+
+	/**
+	 * Determine the root containing the binaries of the "whiley" platform
+	 * within a given package.
+	 *
+	 * @param pkg
+	 * @return
+	 * @throws IOException
+	 */
+	public static Path.Root getPlatformBinaryRoot(Build.Package pkg) throws IOException {
+		// Extract package configuration. This tells us where the binary root for the
+		// "whiley" platform is.
+		Configuration configuration = pkg.getConfiguration();
+		// Extract the path for the binary root of the Whiley platform.
+		Path.ID binroot = Trie.fromString(configuration.get(Value.UTF8.class, Activator.TARGET_CONFIG_OPTION).unwrap());
+		// Create relative root from pkg root.
+		return pkg.getRoot().createRelativeRoot(binroot);
+	}
+}
@@ -0,0 +1,526 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import wyc.lang.WhileyFile.Decl;
+import wyfs.lang.Path;
+
+/**
+ * <p>
+ * Records the time and memory consumed by each phase of compilation, by each
+ * file within a phase and, optionally, by each declaration within a file. For
+ * each, three measurements are taken:
+ * </p>
+ * <ul>
+ * <li><b>Wall time</b>. The elapsed time in nanoseconds.</li>
+ * <li><b>CPU time</b>. The CPU time in nanoseconds consumed by the thread(s)
+ * doing the work.</li>
+ * <li><b>Allocated bytes</b>. The number of bytes allocated on the heap by the
+ * thread(s) doing the work. Unlike the difference in free memory before and
+ * after, this is unaffected by garbage collection.</li>
+ * </ul>
+ * <p>
+ * CPU time and allocated bytes are measured per thread using the platform's
+ * <code>ThreadMXBean</code>, and are reported as <code>-1</code> where this is
+ * not supported. Where the files of a phase are processed by multiple worker
+ * threads, the measurements for the phase include those of the workers.
+ * </p>
+ * <p>
+ * The samples recorded can be written out in either JSON or CSV format for
+ * subsequent analysis. Alternatively, the declarations which took longest to
+ * compile (across all phases) can be summarised in a table, which is useful
+ * for identifying those responsible for slow builds. A profiler which records
+ * nothing is provided by {@link #NULL}.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class Profiler {
+	/**
+	 * A profiler which records nothing.
+	 */
+	public static final Profiler NULL = new Profiler(false, null, null, 0);
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final boolean enabled;
+	private final File output;
+	private final PrintStream report;
+	private final int slowest;
+	private final ArrayList<Sample> samples = new ArrayList<>();
+
+	/**
+	 * Construct a profiler which retains samples in memory only.
+	 */
+	public Profiler() {
+		this(true, null, null, 0);
+	}
+
+	/**
+	 * Construct a profiler which writes its samples to a given file whenever
+	 * flushed. The format used is determined by the file's suffix, which
+	 * should be either <code>json</code> or <code>csv</code>.
+	 *
+	 * @param output
+	 */
+	public Profiler(File output) {
+		this(true, output, null, 0);
+	}
+
+	/**
+	 * Construct a profiler which, whenever flushed, writes its samples to a
+	 * given file (if not <code>null</code>) and a table of the slowest
+	 * declarations to a given stream.
+	 *
+	 * @param output
+	 *            The file to which samples are written, or <code>null</code>.
+	 * @param report
+	 *            The stream to which the slowest declarations are reported.
+	 * @param slowest
+	 *            The number of declarations reported.
+	 */
+	public Profiler(File output, PrintStream report, int slowest) {
+		this(true, output, report, slowest);
+	}
+
+	private Profiler(boolean enabled, File output, PrintStream report, int slowest) {
+		this.enabled = enabled;
+		this.output = output;
+		this.report = report;
+		this.slowest = slowest;
+		if (enabled && threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Start timing some work on the current thread. The work must be completed
+	 * on the same thread.
+	 *
+	 * @return The timer, or <code>null</code> if this profiler is disabled.
+	 */
+	public Timer start() {
+		if (!enabled) {
+			return null;
+		}
+		synchronized (samples) {
+			return new Timer(samples.size());
+		}
+	}
+
+	/**
+	 * Record the completion of a phase started with a given timer. Any samples
+	 * recorded for files in this phase by other threads since the timer was
+	 * started are included in its CPU time and allocated bytes.
+	 *
+	 * @param phase
+	 * @param timer
+	 */
+	public void record(String phase, Timer timer) {
+		if (enabled) {
+			Sample sample = timer.stop(phase, null, null);
+			synchronized (samples) {
+				for (int i = timer.mark; i < samples.size(); ++i) {
+					Sample s = samples.get(i);
+					if (s.thread != sample.thread && s.phase.equals(phase) && s.file != null
+							&& s.declaration == null) {
+						sample.cpu = add(sample.cpu, s.cpu);
+						sample.allocated = add(sample.allocated, s.allocated);
+					}
+				}
+				samples.add(sample);
+			}
+		}
+	}
+
+	/**
+	 * Record the completion of work on a given file within a phase.
+	 *
+	 * @param phase
+	 * @param file
+	 * @param timer
+	 */
+	public void record(String phase, Path.ID file, Timer timer) {
+		record(phase, file, null, timer);
+	}
+
+	/**
+	 * Record the completion of work on a given declaration within a file.
+	 *
+	 * @param phase
+	 * @param file
+	 * @param declaration
+	 * @param timer
+	 */
+	public void record(String phase, Path.ID file, String declaration, Timer timer) {
+		if (enabled) {
+			Sample sample = timer.stop(phase, file.toString(), declaration);
+			synchronized (samples) {
+				samples.add(sample);
+			}
+		}
+	}
+
+	/**
+	 * Get a snapshot of the samples recorded so far, in the order they were
+	 * recorded.
+	 *
+	 * @return
+	 */
+	public List<Sample> getSamples() {
+		synchronized (samples) {
+			return new ArrayList<>(samples);
+		}
+	}
+
+	/**
+	 * Discard all samples recorded so far. This is called at the start of each
+	 * build, such that only the samples of the most recent build are retained
+	 * (and written out when flushed).
+	 */
+	public void reset() {
+		synchronized (samples) {
+			samples.clear();
+		}
+	}
+
+	/**
+	 * Determine the declarations which have taken longest to compile so far,
+	 * across all phases.
+	 *
+	 * @param n
+	 *            The maximum number of declarations to return.
+	 * @return The slowest declarations, slowest first.
+	 */
+	public List<Total> getSlowest(int n) {
+		HashMap<String, Total> totals = new HashMap<>();
+		for (Sample s : getSamples()) {
+			if (s.declaration != null) {
+				String key = s.file + "\0" + s.declaration;
+				Total total = totals.get(key);
+				if (total == null) {
+					total = new Total(s.file, s.declaration);
+					totals.put(key, total);
+				}
+				total.add(s.phase, s.wall);
+			}
+		}
+		ArrayList<Total> slowest = new ArrayList<>(totals.values());
+		slowest.sort((l, r) -> Long.compare(r.wall, l.wall));
+		return slowest.subList(0, Math.min(n, slowest.size()));
+	}
+
+	/**
+	 * Write all samples recorded so far to the output file given when this
+	 * profiler was constructed (if any), and report the slowest declarations
+	 * (if requested).
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (output != null) {
+			try (Writer writer = new FileWriter(output)) {
+				if (output.getName().endsWith(".csv")) {
+					writeCSV(writer);
+				} else {
+					writeJSON(writer);
+				}
+			}
+		}
+		if (report != null && slowest > 0) {
+			PrintWriter writer = new PrintWriter(report);
+			writeSlowest(writer, slowest);
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Write a table of the slowest declarations, giving the wall time spent on
+	 * each in every phase.
+	 *
+	 * @param writer
+	 * @param n
+	 *            The maximum number of declarations to write.
+	 * @throws IOException
+	 */
+	public void writeSlowest(Writer writer, int n) throws IOException {
+		List<Total> slowest = getSlowest(n);
+		LinkedHashSet<String> phases = new LinkedHashSet<>();
+		for (Total t : slowest) {
+			phases.addAll(t.phases.keySet());
+		}
+		writer.write(String.format("%10s", "total(ms)"));
+		for (String phase : phases) {
+			writer.write(String.format(" %10s", phase + "(ms)"));
+		}
+		writer.write("  declaration\n");
+		for (Total t : slowest) {
+			writer.write(String.format("%10.1f", t.wall / 1e6));
+			for (String phase : phases) {
+				writer.write(String.format(" %10.1f", t.getWallTime(phase) / 1e6));
+			}
+			writer.write("  " + t.file + " " + t.declaration + "\n");
+		}
+	}
+
+	public void writeCSV(Writer writer) throws IOException {
+		writer.write("kind,phase,file,declaration,wall_ns,cpu_ns,allocated_bytes\n");
+		for (Sample s : getSamples()) {
+			writer.write(s.getKind() + "," + s.phase + "," + csv(s.file) + "," + csv(s.declaration) + ","
+					+ s.wall + "," + s.cpu + "," + s.allocated + "\n");
+		}
+	}
+
+	public void writeJSON(Writer writer) throws IOException {
+		writer.write("{\"samples\": [");
+		boolean firstTime = true;
+		for (Sample s : getSamples()) {
+			if (!firstTime) {
+				writer.write(",");
+			}
+			firstTime = false;
+			writer.write("\n  {\"kind\": " + json(s.getKind()) + ", \"phase\": " + json(s.phase) + ", \"file\": "
+					+ json(s.file) + ", \"declaration\": " + json(s.declaration) + ", \"wall_ns\": " + s.wall
+					+ ", \"cpu_ns\": " + s.cpu + ", \"allocated_bytes\": " + s.allocated + "}");
+		}
+		writer.write("\n]}\n");
+	}
+
+	/**
+	 * Describe a given declaration for the purposes of profiling. The types of
+	 * callables are included, since these can be overloaded.
+	 *
+	 * @param decl
+	 * @return
+	 */
+	public static String describe(Decl.Named decl) {
+		if (decl instanceof Decl.Callable) {
+			return decl.getName() + ":" + decl.getType();
+		} else {
+			return decl.getName().toString();
+		}
+	}
+
+	private static long add(long lhs, long rhs) {
+		return lhs < 0 || rhs < 0 ? -1 : lhs + rhs;
+	}
+
+	private static String csv(String s) {
+		if (s == null) {
+			return "";
+		} else if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0) {
+			return "\"" + s.replace("\"", "\"\"") + "\"";
+		} else {
+			return s;
+		}
+	}
+
+	private static String json(String s) {
+		if (s == null) {
+			return "null";
+		}
+		StringBuilder r = new StringBuilder("\"");
+		for (int i = 0; i != s.length(); ++i) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				r.append('\\').append(c);
+			} else if (c < 0x20) {
+				r.append(String.format("\\u%04x", (int) c));
+			} else {
+				r.append(c);
+			}
+		}
+		return r.append('"').toString();
+	}
+
+	private static long cpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+			if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+				return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Captures the state of the current thread at the start of some work.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public static final class Timer {
+		private final long thread = Thread.currentThread().getId();
+		private final long wall = System.nanoTime();
+		private final long cpu = cpuTime();
+		private final long allocated = allocatedBytes();
+		/**
+		 * The number of samples recorded when this timer was started.
+		 */
+		private final int mark;
+
+		private Timer(int mark) {
+			this.mark = mark;
+		}
+
+		private Sample stop(String phase, String file, String declaration) {
+			long cpu = cpuTime();
+			long allocated = allocatedBytes();
+			return new Sample(thread, phase, file, declaration, System.nanoTime() - wall,
+					this.cpu < 0 ? -1 : cpu - this.cpu, this.allocated < 0 ? -1 : allocated - this.allocated);
+		}
+	}
+
+	/**
+	 * The measurements taken for a phase, file or declaration.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public static final class Sample {
+		private final long thread;
+		private final String phase;
+		private final String file;
+		private final String declaration;
+		private final long wall;
+		private long cpu;
+		private long allocated;
+
+		private Sample(long thread, String phase, String file, String declaration, long wall, long cpu,
+				long allocated) {
+			this.thread = thread;
+			this.phase = phase;
+			this.file = file;
+			this.declaration = declaration;
+			this.wall = wall;
+			this.cpu = cpu;
+			this.allocated = allocated;
+		}
+
+		/**
+		 * Determine whether this is a sample of a phase, a file or a
+		 * declaration.
+		 *
+		 * @return
+		 */
+		public String getKind() {
+			return file == null ? "phase" : declaration == null ? "file" : "declaration";
+		}
+
+		public String getPhase() {
+			return phase;
+		}
+
+		/**
+		 * Get the file sampled, or <code>null</code> if this samples a phase.
+		 *
+		 * @return
+		 */
+		public String getFile() {
+			return file;
+		}
+
+		/**
+		 * Get the declaration sampled, or <code>null</code> if this samples a
+		 * phase or file.
+		 *
+		 * @return
+		 */
+		public String getDeclaration() {
+			return declaration;
+		}
+
+		public long getWallTime() {
+			return wall;
+		}
+
+		public long getCpuTime() {
+			return cpu;
+		}
+
+		public long getAllocatedBytes() {
+			return allocated;
+		}
+	}
+
+	/**
+	 * The total wall time spent on a given declaration, both overall and in
+	 * each phase.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public static final class Total {
+		private final String file;
+		private final String declaration;
+		private final Map<String, Long> phases = new LinkedHashMap<>();
+		private long wall;
+
+		private Total(String file, String declaration) {
+			this.file = file;
+			this.declaration = declaration;
+		}
+
+		private void add(String phase, long wall) {
+			phases.merge(phase, wall, Long::sum);
+			this.wall += wall;
+		}
+
+		public String getFile() {
+			return file;
+		}
+
+		public String getDeclaration() {
+			return declaration;
+		}
+
+		public long getWallTime() {
+			return wall;
+		}
+
+		/**
+		 * Get the wall time spent on this declaration in a given phase.
+		 *
+		 * @param phase
+		 * @return
+		 */
+		public long getWallTime(String phase) {
+			return phases.getOrDefault(phase, 0L);
+		}
+	}
+}
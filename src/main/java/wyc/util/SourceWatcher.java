@@ -0,0 +1,149 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.util;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Watches a source directory (and all directories within it) for changes to
+ * Whiley source files. Changes are reported in batches: once a change is
+ * noticed, further changes are collected until none have been seen for a given
+ * quiet period. Thus, a burst of changes (e.g. an editor saving several files,
+ * or writing a file in several steps) results in a single batch, and hence a
+ * single rebuild. For example:
+ * </p>
+ *
+ * <pre>
+ * try (SourceWatcher watcher = new SourceWatcher(srcdir)) {
+ * 	while (true) {
+ * 		Set&lt;String&gt; changed = watcher.await(100);
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * Modules are identified by their path relative to the source directory,
+ * without the <code>.whiley</code> suffix (e.g. <code>std/math</code>).
+ * Directories created after the watcher are watched as well.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class SourceWatcher implements Closeable {
+	private static final String SUFFIX = ".whiley";
+
+	private final Path root;
+	private final WatchService service;
+	private final HashMap<WatchKey, Path> directories = new HashMap<>();
+
+	public SourceWatcher(File srcdir) throws IOException {
+		this.root = srcdir.toPath().toAbsolutePath();
+		this.service = FileSystems.getDefault().newWatchService();
+		register(root, null);
+	}
+
+	/**
+	 * Wait for a batch of changes to be made. This blocks until at least one
+	 * change has been noticed, and then until no further changes have been
+	 * noticed for the given quiet period.
+	 *
+	 * @param quiet
+	 *            The quiet period in milliseconds.
+	 * @return The modules created, modified or deleted.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public Set<String> await(long quiet) throws IOException, InterruptedException {
+		TreeSet<String> changed = new TreeSet<>();
+		WatchKey key = service.take();
+		while (key != null) {
+			Path directory = directories.get(key);
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == OVERFLOW || directory == null) {
+					continue;
+				}
+				Path file = directory.resolve((Path) event.context());
+				if (event.kind() == ENTRY_CREATE && Files.isDirectory(file)) {
+					register(file, changed);
+				} else if (file.getFileName().toString().endsWith(SUFFIX)) {
+					changed.add(toModule(file));
+				}
+			}
+			if (!key.reset()) {
+				directories.remove(key);
+			}
+			key = service.poll(quiet, TimeUnit.MILLISECONDS);
+		}
+		return changed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		service.close();
+	}
+
+	/**
+	 * Watch a given directory and all directories within it. Any source files
+	 * already within a newly created directory are treated as changes, since
+	 * these may have been written before the directory was watched.
+	 *
+	 * @param directory
+	 * @param changed
+	 *            The set of changes to which existing source files are added,
+	 *            or <code>null</code> if they should be ignored.
+	 * @throws IOException
+	 */
+	private void register(Path directory, Set<String> changed) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				directories.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (changed != null && file.getFileName().toString().endsWith(SUFFIX)) {
+					changed.add(toModule(file));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private String toModule(Path file) {
+		String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+		return name.substring(0, name.length() - SUFFIX.length());
+	}
+}
@@ -148,6 +148,26 @@ public class TestUtils {
 	 * @throws IOException
 	 */
 	public static Pair<Boolean, String> compile(File whileydir, boolean verify, String... args) throws IOException {
+		return compile(whileydir, verify, Budget.UNLIMITED, Profiler.NULL, args);
+	}
+
+	/**
+	 * Run the Whiley Compiler with the given list of arguments, limiting the
+	 * time spent on each declaration in each phase to a given budget.
+	 *
+	 * @param whileydir
+	 * @param verify
+	 * @param budget
+	 *            The budget for each declaration.
+	 * @param profiler
+	 *            Records the time spent generating verification conditions.
+	 * @param args
+	 *            --- list of tests to compile.
+	 * @return
+	 * @throws IOException
+	 */
+	public static Pair<Boolean, String> compile(File whileydir, boolean verify, Budget budget, Profiler profiler,
+			String... args) throws IOException {
 		ByteArrayOutputStream syserr = new ByteArrayOutputStream();
 		ByteArrayOutputStream sysout = new ByteArrayOutputStream();
 		//
@@ -158,7 +178,7 @@ public class TestUtils {
 			DirectoryRoot root = new DirectoryRoot(whileydir, registry);
 			StdProject project = new StdProject(Arrays.asList(root));
 			// Add build rules
-			addCompilationRules(project,root,verify);
+			addCompilationRules(project,root,verify,budget,profiler);
 			// Identify source files and build project
 			project.build(findSourceFiles(root,args));
 			// Flush any created resources (e.g. wyil files)
@@ -186,14 +206,20 @@ public class TestUtils {
 	 * @param project
 	 * @param root
 	 * @param verify
+	 * @param budget
+	 * @param profiler
 	 */
-	private static void addCompilationRules(StdProject project, Path.Root root, boolean verify) {
+	private static void addCompilationRules(StdProject project, Path.Root root, boolean verify, Budget budget,
+			Profiler profiler) {
 		CompileTask task = new CompileTask(project);
+		task.setBudget(budget);
 		// Add compilation rule(s) (whiley => wyil)
 		project.add(new StdBuildRule(task, root, whileyIncludes, null, root));
 		// Rule for compiling WyIL to WyAL. This will force generation of WyAL files
 		// regardless of whether verification is enabled or not.
 		Wyil2WyalBuilder wyalBuilder = new Wyil2WyalBuilder(project);
+		wyalBuilder.setBudget(budget);
+		wyalBuilder.setProfiler(profiler);
 		project.add(new StdBuildRule(wyalBuilder, root, wyilIncludes, null, root));
 		//
 		if(verify) {
@@ -237,12 +263,46 @@ public class TestUtils {
 	 * @throws IOException
 	 */
 	public static void execWyil(File wyildir, Path.ID id) throws IOException {
+		execWyil(wyildir, id, Interpreter.Engine.CLOSURE);
+	}
+
+	/**
+	 * Execute a given WyIL file using a given execution engine.
+	 *
+	 * @param wyilDir
+	 *            The root directory to look for the WyIL file.
+	 * @param id
+	 *            The name of the WyIL file
+	 * @param engine
+	 *            The engine used to execute the WyIL file
+	 * @throws IOException
+	 */
+	public static void execWyil(File wyildir, Path.ID id, Interpreter.Engine engine) throws IOException {
+		execWyil(wyildir, id, engine, System.out);
+	}
+
+	/**
+	 * Execute a given WyIL file using a given execution engine, writing any
+	 * output produced to a given stream.
+	 *
+	 * @param wyilDir
+	 *            The root directory to look for the WyIL file.
+	 * @param id
+	 *            The name of the WyIL file
+	 * @param engine
+	 *            The engine used to execute the WyIL file
+	 * @param output
+	 *            The stream to which debug output and return values are written
+	 * @throws IOException
+	 */
+	public static void execWyil(File wyildir, Path.ID id, Interpreter.Engine engine, PrintStream output)
+			throws IOException {
 		StdProject project = new StdProject();
 		project.getRoots().add(new DirectoryRoot(wyildir, registry));
 		// Empty signature
 		Type.Method sig = new Type.Method(new Tuple<>(new Type[0]), new Tuple<>(), new Tuple<>(), new Tuple<>());
 		NameID name = new NameID(id, "test");
-		executeFunctionOrMethod(name, sig, project);
+		executeFunctionOrMethod(name, sig, project, engine, output);
 	}
 
 	/**
@@ -251,23 +311,25 @@ public class TestUtils {
 	 * @param id
 	 * @param signature
 	 * @param project
+	 * @param engine
+	 * @param output
 	 * @throws IOException
 	 */
-	private static void executeFunctionOrMethod(NameID id, Type.Callable signature, Build.Project project)
-			throws IOException {
+	private static void executeFunctionOrMethod(NameID id, Type.Callable signature, Build.Project project,
+			Interpreter.Engine engine, PrintStream output) throws IOException {
 		// Try to run the given function or method
-		Interpreter interpreter = new Interpreter(project, System.out);
+		Interpreter interpreter = Interpreter.create(engine, project, output);
 		RValue[] returns = interpreter.execute(id, signature, interpreter.new CallStack());
 		// Print out any return values produced
 		if (returns != null) {
 			for (int i = 0; i != returns.length; ++i) {
 				if (i != 0) {
-					System.out.println(", ");
+					output.println(", ");
 				}
-				System.out.println(returns[i]);
+				output.println(returns[i]);
 			}
 		}
-}
+	}
 
 	/**
 	 * Compare the output of executing java on the test case with a reference
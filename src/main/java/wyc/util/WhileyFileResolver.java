@@ -15,12 +15,16 @@ package wyc.util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
-import wyc.Activator;
 import wyc.lang.WhileyFile;
-import wycc.cfg.Configuration;
 
 import static wyc.lang.WhileyFile.*;
 
@@ -31,7 +35,6 @@ import wybs.lang.NameResolver;
 import wybs.lang.SyntacticElement;
 import wybs.lang.SyntacticHeap;
 import wybs.lang.SyntacticItem;
-import wybs.util.AbstractCompilationUnit.Value;
 import wyfs.lang.Content;
 import wyfs.lang.Path;
 import wyfs.util.Trie;
@@ -56,14 +59,107 @@ import wyfs.util.Trie;
  * <code>test.g</code>. However, it could well be declared in a compilation unit
  * matching the import <code>wyal.lang.*</code>.
  *
+ * <p>
+ * A resolver may be used by several threads at once, provided the heaps being
+ * resolved against are not modified meanwhile. In particular, a module is
+ * only ever loaded once, even when it is first needed by several threads at
+ * the same time.
+ * </p>
+ *
  * @author David J. Pearce
  *
  */
 public final class WhileyFileResolver implements NameResolver {
 	private final Build.Project project;
 
+	/**
+	 * Maps each heap examined by this resolver to an index of the named
+	 * declarations it contains. This avoids scanning every item in the heap on
+	 * every name lookup. Heaps are held weakly and indices record only the
+	 * positions of declarations within their heap (rather than the declarations
+	 * themselves, which refer back to the heap), so this does not prevent heaps
+	 * from being garbage collected.
+	 */
+	private final Map<SyntacticHeap, SymbolIndex> indices = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * Caches the resolution of non-local names and the expansion of imports.
+	 * This persists across compiler passes, and is invalidated on a per-module
+	 * basis as modules are changed.
+	 */
+	private final ImportCache imports = new ImportCache();
+
+	/**
+	 * Maps each module to the set of other modules which names occurring within
+	 * it have been resolved to. This is maintained alongside the cache of
+	 * non-local name resolutions, hence is discarded for a module whenever that
+	 * module is invalidated.
+	 */
+	private final HashMap<Path.ID, Set<Path.ID>> resolvedModules = new HashMap<>();
+
+	/**
+	 * The entry for each module available to the project.
+	 */
+	private final ModuleTable modules;
+
 	public WhileyFileResolver(Build.Project project) {
 		this.project = project;
+		this.modules = new ModuleTable(project);
+	}
+
+	/**
+	 * Get the cache of non-local name resolutions used by this resolver.
+	 *
+	 * @return
+	 */
+	public ImportCache getImportCache() {
+		return imports;
+	}
+
+	/**
+	 * Get the table of modules available to the project used by this resolver.
+	 *
+	 * @return
+	 */
+	public ModuleTable getModuleTable() {
+		return modules;
+	}
+
+	/**
+	 * Indicate that the roots of the project, or its packages, have changed
+	 * other than by modules being invalidated (e.g. because they were refreshed
+	 * from disk).
+	 */
+	public void refresh() {
+		modules.refresh();
+	}
+
+	/**
+	 * Indicate that a given module has been added, removed or otherwise changed.
+	 * Any cached name resolutions depending on that module are discarded.
+	 *
+	 * @param module
+	 */
+	public void invalidate(Path.ID module) {
+		imports.invalidate(module);
+		modules.invalidate(module);
+		synchronized (resolvedModules) {
+			resolvedModules.remove(module);
+		}
+	}
+
+	/**
+	 * Get the set of other modules which names occurring in a given module have
+	 * been resolved to since that module was last invalidated.
+	 *
+	 * @param module
+	 * @return
+	 */
+	public Set<Path.ID> getDependencies(Path.ID module) {
+		synchronized (resolvedModules) {
+			Set<Path.ID> r = resolvedModules.get(module);
+			return r == null ? Collections.<Path.ID>emptySet() : new HashSet<>(r);
+		}
 	}
 
 	@Override
@@ -102,13 +198,10 @@ public final class WhileyFileResolver implements NameResolver {
 			WhileyFile enclosing = loadModule(nid,name);
 			ArrayList<T> result = new ArrayList<>();
 			// Look through the enclosing file first!
-			for (int i = 0; i != enclosing.size(); ++i) {
-				SyntacticItem item = enclosing.getSyntacticItem(i);
-				if (item instanceof WhileyFile.Decl.Named) {
-					WhileyFile.Decl.Named nd = (WhileyFile.Decl.Named) item;
-					if (nd.getName().get().equals(nid.name()) && kind.isInstance(nd)) {
-						result.add((T) nd);
-					}
+			for (int index : getIndex(enclosing).get(nid.name())) {
+				SyntacticItem nd = enclosing.getSyntacticItem(index);
+				if (kind.isInstance(nd)) {
+					result.add((T) nd);
 				}
 			}
 			//
@@ -126,7 +219,8 @@ public final class WhileyFileResolver implements NameResolver {
 
 	/**
 	 * Load a given WyIL file from this project. This will search through local
-	 * roots and package dependencies in search of a matching file.
+	 * roots and package dependencies in search of a matching file, using the
+	 * table of modules shared by all resolvers for this project.
 	 *
 	 * @param id
 	 *            The module ID of the file to load.
@@ -134,24 +228,39 @@ public final class WhileyFileResolver implements NameResolver {
 	 * @throws IOException
 	 */
 	public Path.Entry<WhileyFile> load(Path.ID id) throws IOException {
-		// Check within this project
-		for(Path.Root root : project.getRoots()) {
-			Path.Entry<WhileyFile> e = root.get(id, WhileyFile.BinaryContentType);
-			if(e != null) {
-				return e;
-			}
+		return modules.get(id);
+	}
+
+	/**
+	 * Load a given WyIL file from this project, and read its contents. Thus,
+	 * names subsequently resolved to declarations in that module do not need
+	 * to read it.
+	 *
+	 * @param id
+	 *            The module ID of the file to load.
+	 * @throws IOException
+	 */
+	public void preload(Path.ID id) throws IOException {
+		Path.Entry<WhileyFile> entry = load(id);
+		if (entry != null) {
+			read(entry);
 		}
-		// Check within dependencies
-		for(Build.Package pkg : project.getPackages()) {
-			Path.Root root = getPlatformBinaryRoot(pkg);
-			//
-			Path.Entry<WhileyFile> e = root.get(id, WhileyFile.BinaryContentType);
-			if(e != null) {
-				return e;
-			}
+	}
+
+	/**
+	 * Read the contents of a given entry. Since entries read their contents
+	 * lazily without synchronisation, concurrent reads of the same entry are
+	 * serialised here. Otherwise, two threads could each read a separate copy
+	 * of the same module.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	private static WhileyFile read(Path.Entry<WhileyFile> entry) throws IOException {
+		synchronized (entry) {
+			return entry.read();
 		}
-		//
-		return null;
 	}
 
 
@@ -169,7 +278,7 @@ public final class WhileyFileResolver implements NameResolver {
 			// This is a non-local lookup.
 			Path.Entry<WhileyFile> entry = load(nid.module());
 			if (entry != null) {
-				return entry.read();
+				return read(entry);
 			} else {
 				throw new NameResolver.NameNotFoundError(name);
 			}
@@ -187,24 +296,28 @@ public final class WhileyFileResolver implements NameResolver {
 	 * @throws NameNotFoundError
 	 */
 	private <T extends Decl.Named> boolean localNameLookup(String name, SyntacticHeap heap) {
-		int count = 0;
-		// Look through the enclosing file first!
-		for (int i = 0; i != heap.size(); ++i) {
-			SyntacticItem item = heap.getSyntacticItem(i);
-			if (item instanceof WhileyFile.Decl.Named) {
-				WhileyFile.Decl.Named nd = (WhileyFile.Decl.Named) item;
-				if (nd.getName().get().equals(name)) {
-					count = count + 1;
-				}
+		return getIndex(heap).get(name).length != 0;
+	}
+
+	/**
+	 * Get the index of named declarations for a given heap. This is constructed
+	 * on first use and subsequently brought up to date with any items allocated
+	 * since.
+	 *
+	 * @param heap
+	 * @return
+	 */
+	private SymbolIndex getIndex(SyntacticHeap heap) {
+		SymbolIndex index;
+		synchronized (indices) {
+			index = indices.get(heap);
+			if (index == null) {
+				index = new SymbolIndex();
+				indices.put(heap, index);
 			}
 		}
-		//
-		if (count == 0) {
-			return false;
-		} else {
-			//
-			return true;
-		}
+		index.update(heap);
+		return index;
 	}
 
 	/**
@@ -214,12 +327,44 @@ public final class WhileyFileResolver implements NameResolver {
 	 * @throws NameNotFoundError
 	 */
 	private NameID nonLocalNameLookup(CompilationUnit.Name name) throws NameResolver.ResolutionError {
+		WhileyFile enclosing = (WhileyFile) getWhileyFile(name.getHeap());
+		Path.ID module = enclosing.getEntry().id();
+		NameID key = name.toNameID();
+		NameID nid = imports.get(module, key);
+		if (nid == null) {
+			ImportCache.Dependencies dependencies = new ImportCache.Dependencies();
+			// The enclosing module determines which imports are examined
+			dependencies.addModule(module);
+			nid = nonLocalNameLookup(name, enclosing, dependencies);
+			imports.put(module, key, nid, dependencies);
+			// NOTE: it is sufficient to record dependencies on a miss, since
+			// invalidating a module discards all resolutions occurring within
+			// it.
+			if (!nid.module().equals(module)) {
+				addDependency(module, nid.module());
+			}
+		}
+		return nid;
+	}
+
+	private void addDependency(Path.ID module, Path.ID dependency) {
+		synchronized (resolvedModules) {
+			Set<Path.ID> deps = resolvedModules.get(module);
+			if (deps == null) {
+				deps = new HashSet<>();
+				resolvedModules.put(module, deps);
+			}
+			deps.add(dependency);
+		}
+	}
+
+	private NameID nonLocalNameLookup(CompilationUnit.Name name, WhileyFile enclosing,
+			ImportCache.Dependencies dependencies) throws NameResolver.ResolutionError {
 		try {
-			WhileyFile enclosing = (WhileyFile) getWhileyFile(name.getHeap());
 			List<WhileyFile.Decl.Import> imports = getImportsInReverseOrder(enclosing);
 			// Check name against import statements
 			for (WhileyFile.Decl.Import imp : imports) {
-				NameID nid = matchImport(imp, name);
+				NameID nid = matchImport(imp, name, dependencies);
 				if (nid != null) {
 					return nid;
 				}
@@ -228,10 +373,11 @@ public final class WhileyFileResolver implements NameResolver {
 			NameID nid = name.toNameID();
 			if (name.size() > 1) {
 				// Could be fully or partially qualified name
+				dependencies.addModule(nid.module());
 				Path.Entry<WhileyFile> e = load(nid.module());
 				if (e != null) {
 					// Look inside to see whether a matching item is found
-					if (localNameLookup(nid.name(), e.read())) {
+					if (localNameLookup(nid.name(), read(e))) {
 						return nid;
 					}
 				} else {
@@ -285,7 +431,8 @@ public final class WhileyFileResolver implements NameResolver {
 	 * @return
 	 * @throws IOException
 	 */
-	private NameID matchImport(WhileyFile.Decl.Import imp, CompilationUnit.Name name) throws IOException {
+	private NameID matchImport(WhileyFile.Decl.Import imp, CompilationUnit.Name name,
+			ImportCache.Dependencies dependencies) throws IOException {
 		NameID nid = name.toNameID();
 		if(imp.hasFrom()) {
 			if(name.size() == 1 && name.get(0).equals(imp.getFrom())) {
@@ -299,9 +446,10 @@ public final class WhileyFileResolver implements NameResolver {
 			}
 		} else if(name.size() > 1) {
 			//
-			for (Path.Entry<WhileyFile> e : expandImport(imp)) {
-				WhileyFile module = e.read();
+			for (Path.Entry<WhileyFile> e : expandImport(imp, dependencies)) {
+				WhileyFile module = read(e);
 				Path.ID id = toPathID(module.getModule().getName());
+				dependencies.addModule(e.id());
 				// Determine whether this concrete module path matches the partial
 				// module path or not.
 				if (matchPartialModulePath(nid.module(), id)) {
@@ -356,10 +504,13 @@ public final class WhileyFileResolver implements NameResolver {
 	 * <code>wyal.lang</code>
 	 *
 	 * @param imp
+	 * @param dependencies
+	 *            Records the import filter being expanded.
 	 * @return
 	 * @throws IOException
 	 */
-	private List<Path.Entry<WhileyFile>> expandImport(WhileyFile.Decl.Import imp) throws IOException {
+	private List<Path.Entry<WhileyFile>> expandImport(WhileyFile.Decl.Import imp,
+			ImportCache.Dependencies dependencies) throws IOException {
 		Trie filter = Trie.ROOT;
 		Tuple<Identifier> path = imp.getPath();
 		//
@@ -371,6 +522,11 @@ public final class WhileyFileResolver implements NameResolver {
 				filter = filter.append(component.get());
 			}
 		}
+		dependencies.addFilter(filter);
+		List<Path.Entry<WhileyFile>> cached = imports.getExpansion(filter);
+		if (cached != null) {
+			return cached;
+		}
 		//
 		Content.Filter<WhileyFile> cf = Content.filter(filter, WhileyFile.BinaryContentType);
 		//
@@ -381,22 +537,13 @@ public final class WhileyFileResolver implements NameResolver {
 		}
 		// Check within dependencies
 		for(Build.Package pkg : project.getPackages()) {
-			Path.Root root = getPlatformBinaryRoot(pkg);
+			Path.Root root = ModuleTable.getPlatformBinaryRoot(pkg);
 			matches.addAll(root.get(cf));
 		}
+		imports.putExpansion(filter, matches);
 		return matches;
 	}
 
-	private Path.Root getPlatformBinaryRoot(Build.Package pkg) throws IOException {
-		// Extract package configuration. This tells us where the binary root for the
-		// "whiley" platform is.
-		Configuration configuration = pkg.getConfiguration();
-		// Extract the path for the binary root of the Whiley platform.
-		Path.ID binroot = Trie.fromString(configuration.get(Value.UTF8.class, Activator.TARGET_CONFIG_OPTION).unwrap());
-		// Create relative root from pkg root.
-		return pkg.getRoot().createRelativeRoot(binroot);
-	}
-
 	public WhileyFile getWhileyFile(SyntacticHeap heap) {
 		if(heap instanceof WhileyFile) {
 			return (WhileyFile) heap;
@@ -412,4 +559,70 @@ public final class WhileyFileResolver implements NameResolver {
 		}
 		return r;
 	}
+
+	/**
+	 * An index of the named declarations within a given heap, arranged by name.
+	 * Whilst a heap only changes by allocating new items at the end, the index
+	 * is kept up to date by examining only those items allocated since it was
+	 * last updated. Should a file be modified otherwise (see
+	 * {@link WhileyFile#getModifications()}), the index is rebuilt. Declarations are recorded by their position in the heap,
+	 * since declarations themselves refer to their heap and would prevent it
+	 * from being collected. Declarations with the same name are held in the
+	 * order they occur in the heap. Arrays returned from the index are never
+	 * subsequently modified, hence can be safely traversed whilst the index is
+	 * updated.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class SymbolIndex {
+		private static final int[] EMPTY = new int[0];
+
+		private final HashMap<String, int[]> declarations = new HashMap<>();
+		/**
+		 * The number of heap items which have been indexed so far.
+		 */
+		private int size;
+		/**
+		 * The number of modifications made to the heap when last indexed.
+		 */
+		private int modifications;
+
+		/**
+		 * Get the positions of all named declarations with a given name.
+		 *
+		 * @param name
+		 * @return
+		 */
+		public synchronized int[] get(String name) {
+			int[] r = declarations.get(name);
+			return r == null ? EMPTY : r;
+		}
+
+		/**
+		 * Bring this index up to date with its heap. The heap is not retained by
+		 * the index, since it is used as a weak key for the index.
+		 *
+		 * @param heap
+		 */
+		public synchronized void update(SyntacticHeap heap) {
+			int n = heap.size();
+			int m = heap instanceof WhileyFile ? ((WhileyFile) heap).getModifications() : 0;
+			if (n < size || m != modifications) {
+				declarations.clear();
+				size = 0;
+				modifications = m;
+			}
+			for (; size < n; ++size) {
+				SyntacticItem item = heap.getSyntacticItem(size);
+				if (item instanceof WhileyFile.Decl.Named) {
+					String name = ((WhileyFile.Decl.Named) item).getName().get();
+					int[] decls = declarations.get(name);
+					int[] ndecls = (decls == null) ? new int[1] : Arrays.copyOf(decls, decls.length + 1);
+					ndecls[ndecls.length - 1] = size;
+					declarations.put(name, ndecls);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,872 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyil.interpreter;
+
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
+
+import wybs.lang.Build;
+import wybs.lang.NameID;
+import wybs.lang.NameResolver.ResolutionError;
+import wyc.lang.WhileyFile;
+
+import static wyc.lang.WhileyFile.*;
+import static wyil.interpreter.ConcreteSemantics.LValue;
+import static wyil.interpreter.ConcreteSemantics.RValue;
+
+/**
+ * <p>
+ * An interpreter which, rather than walking the syntax tree of a function or
+ * method body every time it is executed, first compiles it into a tree of
+ * closures. Each closure is specialised to the kind of statement or expression
+ * it represents, and is linked directly to the closures for its operands. For
+ * example, the expression <code>x + 1</code> becomes a closure which reads the
+ * slot of <code>x</code>, and adds the (precomputed) constant <code>1</code>.
+ * Thus, statements and expressions are dispatched only once (during
+ * compilation), rather than on every evaluation. Likewise, name resolution is
+ * performed only once for each invocation.
+ * </p>
+ * <p>
+ * The semantics of this interpreter are identical to those of the
+ * <code>Interpreter</code>, upon which it is built. In particular, it uses the
+ * same values (i.e. <code>ConcreteSemantics</code>) and stack frames, and
+ * delegates to the <code>Interpreter</code> for the semantics of statements
+ * and expressions beyond simply evaluating their operands (e.g. loops,
+ * quantifiers and assertions). Bodies
+ * are compiled lazily the first time they are executed, and names are resolved
+ * the first time an invocation is executed, such that errors arise at the same
+ * points as for the <code>Interpreter</code>.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public class ClosureInterpreter extends Interpreter {
+	/**
+	 * Caches the compiled form of every function, method or lambda body
+	 * executed.
+	 */
+	private final IdentityHashMap<Stmt.Block, StmtCode> bodies = new IdentityHashMap<>();
+
+	/**
+	 * Caches the compiled form of every expression executed outside of a
+	 * function or method body (e.g. preconditions and type invariants).
+	 */
+	private final IdentityHashMap<Expr, ExprCode> expressions = new IdentityHashMap<>();
+
+	public ClosureInterpreter(Build.Project project, PrintStream debug) {
+		super(project, debug);
+	}
+
+	@Override
+	protected void executeBody(Stmt.Block body, Decl.Callable context, CallStack frame) {
+		StmtCode code = bodies.get(body);
+		if (code == null) {
+			code = compileBlock(body, context);
+			bodies.put(body, code);
+		}
+		code.execute(frame);
+	}
+
+	@Override
+	public <T extends RValue> T executeExpression(Class<T> expected, Expr expr, CallStack frame) {
+		ExprCode code = expressions.get(expr);
+		if (code == null) {
+			code = compileExpression(expr);
+			expressions.put(expr, code);
+		}
+		return checkType(code.evaluate(frame), expr, expected);
+	}
+
+	// =============================================================
+	// Statements
+	// =============================================================
+
+	/**
+	 * Compile a block of statements.
+	 *
+	 * @param block
+	 *            The block being compiled.
+	 * @param context
+	 *            The enclosing function, method or lambda.
+	 * @return
+	 */
+	private StmtCode compileBlock(Stmt.Block block, Decl.Callable context) {
+		final StmtCode[] stmts = new StmtCode[block.size()];
+		for (int i = 0; i != stmts.length; ++i) {
+			stmts[i] = compileStatement(block.get(i), context);
+		}
+		if (stmts.length == 1) {
+			return stmts[0];
+		}
+		return frame -> {
+			for (int i = 0; i != stmts.length; ++i) {
+				Status r = stmts[i].execute(frame);
+				// Now, see whether we are continuing or not
+				if (r != Status.NEXT) {
+					return r;
+				}
+			}
+			return Status.NEXT;
+		};
+	}
+
+	private StmtCode compileStatement(Stmt stmt, Decl.Callable context) {
+		switch (stmt.getOpcode()) {
+		case WhileyFile.STMT_assert:
+			return compileAssert(((Stmt.Assert) stmt).getCondition());
+		case WhileyFile.STMT_assume:
+			return compileAssert(((Stmt.Assume) stmt).getCondition());
+		case WhileyFile.STMT_assign:
+			return compileAssign((Stmt.Assign) stmt);
+		case WhileyFile.STMT_break:
+			return frame -> Status.BREAK;
+		case WhileyFile.STMT_continue:
+			return frame -> Status.CONTINUE;
+		case WhileyFile.STMT_debug:
+			return compileDebug((Stmt.Debug) stmt);
+		case WhileyFile.STMT_dowhile:
+			return compileDoWhile((Stmt.DoWhile) stmt, context);
+		case WhileyFile.STMT_fail:
+			return frame -> fail();
+		case WhileyFile.STMT_if:
+		case WhileyFile.STMT_ifelse:
+			return compileIf((Stmt.IfElse) stmt, context);
+		case WhileyFile.EXPR_indirectinvoke: {
+			MultiExprCode invoke = compileIndirectInvoke((Expr.IndirectInvoke) stmt);
+			return frame -> {
+				invoke.evaluate(frame);
+				return Status.NEXT;
+			};
+		}
+		case WhileyFile.EXPR_invoke: {
+			MultiExprCode invoke = compileInvoke((Expr.Invoke) stmt);
+			return frame -> {
+				invoke.evaluate(frame);
+				return Status.NEXT;
+			};
+		}
+		case WhileyFile.STMT_namedblock:
+			return compileBlock(((Stmt.NamedBlock) stmt).getBlock(), context);
+		case WhileyFile.STMT_while:
+			return compileWhile((Stmt.While) stmt, context);
+		case WhileyFile.STMT_return:
+			return compileReturn((Stmt.Return) stmt, context);
+		case WhileyFile.STMT_skip:
+			return frame -> Status.NEXT;
+		case WhileyFile.STMT_switch:
+			return compileSwitch((Stmt.Switch) stmt, context);
+		case WhileyFile.DECL_variableinitialiser:
+		case WhileyFile.DECL_variable:
+			return compileVariableDeclaration((Decl.Variable) stmt);
+		}
+		return deadCode(stmt);
+	}
+
+	private StmtCode compileAssert(Expr condition) {
+		ExprCode operand = compileExpression(condition);
+		return frame -> {
+			checkAssertion(checkType(operand.evaluate(frame), condition, BOOL_T));
+			return Status.NEXT;
+		};
+	}
+
+	private StmtCode compileAssign(Stmt.Assign stmt) {
+		Tuple<WhileyFile.LVal> lhs = stmt.getLeftHandSide();
+		MultiExprCode rhs = compileExpressions(stmt.getRightHandSide());
+		LValCode[] lvals = new LValCode[lhs.size()];
+		for (int i = 0; i != lvals.length; ++i) {
+			lvals[i] = compileLVal(lhs.get(i));
+		}
+		return frame -> {
+			assign(lvals, rhs.evaluate(frame), frame);
+			return Status.NEXT;
+		};
+	}
+
+	private StmtCode compileDebug(Stmt.Debug stmt) {
+		Expr expr = stmt.getOperand();
+		ExprCode operand = compileExpression(expr);
+		return frame -> {
+			printDebug(checkType(operand.evaluate(frame), expr, ARRAY_T));
+			return Status.NEXT;
+		};
+	}
+
+	private StmtCode compileDoWhile(Stmt.DoWhile stmt, Decl.Callable context) {
+		Expr expr = stmt.getCondition();
+		ExprCode condition = compileExpression(expr);
+		StmtCode body = compileBlock(stmt.getBody(), context);
+		return frame -> executeDoWhile(condition, expr, body, frame);
+	}
+
+	private StmtCode compileIf(Stmt.IfElse stmt, Decl.Callable context) {
+		Expr expr = stmt.getCondition();
+		ExprCode condition = compileExpression(expr);
+		StmtCode trueBranch = compileBlock(stmt.getTrueBranch(), context);
+		if (stmt.hasFalseBranch()) {
+			StmtCode falseBranch = compileBlock(stmt.getFalseBranch(), context);
+			return frame -> {
+				RValue.Bool operand = checkType(condition.evaluate(frame), expr, BOOL_T);
+				if (operand == RValue.True) {
+					return trueBranch.execute(frame);
+				} else {
+					return falseBranch.execute(frame);
+				}
+			};
+		} else {
+			return frame -> {
+				RValue.Bool operand = checkType(condition.evaluate(frame), expr, BOOL_T);
+				if (operand == RValue.True) {
+					return trueBranch.execute(frame);
+				} else {
+					return Status.NEXT;
+				}
+			};
+		}
+	}
+
+	private StmtCode compileWhile(Stmt.While stmt, Decl.Callable context) {
+		Expr expr = stmt.getCondition();
+		ExprCode condition = compileExpression(expr);
+		StmtCode body = compileBlock(stmt.getBody(), context);
+		return frame -> executeWhile(condition, expr, body, frame);
+	}
+
+	private StmtCode compileReturn(Stmt.Return stmt, Decl.Callable context) {
+		// We know that a return statement can only appear in either a function,
+		// method or lambda. Therefore, the enclosing declaration is known.
+		MultiExprCode operands = compileExpressions(stmt.getReturns());
+		return frame -> writeReturns(context, operands.evaluate(frame), frame);
+	}
+
+	private StmtCode compileSwitch(Stmt.Switch stmt, Decl.Callable context) {
+		Tuple<Stmt.Case> cases = stmt.getCases();
+		ExprCode condition = compileAnyExpression(stmt.getCondition());
+		MultiExprCode[] conditions = new MultiExprCode[cases.size()];
+		StmtCode[] bodies = new StmtCode[cases.size()];
+		for (int i = 0; i != bodies.length; ++i) {
+			Stmt.Case c = cases.get(i);
+			if (!c.isDefault()) {
+				conditions[i] = compileExpressions(c.getConditions());
+			}
+			bodies[i] = compileBlock(c.getBlock(), context);
+		}
+		return frame -> {
+			Object value = condition.evaluate(frame);
+			for (int i = 0; i != bodies.length; ++i) {
+				if (conditions[i] == null || matchesCase(value, conditions[i].evaluate(frame))) {
+					return bodies[i].execute(frame);
+				}
+			}
+			return Status.NEXT;
+		};
+	}
+
+	private StmtCode compileVariableDeclaration(Decl.Variable stmt) {
+		// We only need to do something if this has an initialiser
+		if (stmt.hasInitialiser()) {
+			ExprCode initialiser = compileAnyExpression(stmt.getInitialiser());
+			return frame -> {
+				frame.putLocal(stmt, initialiser.evaluate(frame));
+				return Status.NEXT;
+			};
+		} else {
+			return frame -> Status.NEXT;
+		}
+	}
+
+	// =============================================================
+	// LVals
+	// =============================================================
+
+	private LValCode compileLVal(Expr expr) {
+		switch (expr.getOpcode()) {
+		case EXPR_arrayborrow:
+		case EXPR_arrayaccess: {
+			Expr.ArrayAccess e = (Expr.ArrayAccess) expr;
+			LValCode src = compileLVal(e.getFirstOperand());
+			Expr i = e.getSecondOperand();
+			ExprCode index = compileExpression(i);
+			return frame -> {
+				LValue lval = src.evaluate(frame);
+				return new LValue.Array(lval, checkType(index.evaluate(frame), i, INT_T));
+			};
+		}
+		case EXPR_dereference: {
+			Expr.Dereference e = (Expr.Dereference) expr;
+			LValCode src = compileLVal(e.getOperand());
+			return frame -> new LValue.Dereference(src.evaluate(frame));
+		}
+		case EXPR_recordaccess:
+		case EXPR_recordborrow: {
+			Expr.RecordAccess e = (Expr.RecordAccess) expr;
+			LValCode src = compileLVal(e.getOperand());
+			Identifier field = e.getField();
+			return frame -> new LValue.Record(src.evaluate(frame), field);
+		}
+		case EXPR_variablemove:
+		case EXPR_variablecopy: {
+			Expr.VariableAccess e = (Expr.VariableAccess) expr;
+			// NOTE: variable lvals are immutable, hence can be shared.
+			LValue lval = new LValue.Variable(e.getVariableDeclaration());
+			return frame -> lval;
+		}
+		}
+		return deadCode(expr);
+	}
+
+	// =============================================================
+	// Expressions
+	// =============================================================
+
+	/**
+	 * Compile an expression whose value can be of any type, as for
+	 * <code>executeExpression(ANY_T,...)</code>.
+	 *
+	 * @param expr
+	 * @return
+	 */
+	private ExprCode compileAnyExpression(Expr expr) {
+		ExprCode code = compileExpression(expr);
+		return frame -> checkType(code.evaluate(frame), expr, ANY_T);
+	}
+
+	/**
+	 * Compile an expression which is expected to return a single result. As for
+	 * <code>executeExpression()</code>, the type of the result is not checked.
+	 * Instead, the enclosing closure checks the result has the type it expects.
+	 *
+	 * @param expr
+	 * @return
+	 */
+	private ExprCode compileExpression(Expr expr) {
+		switch (expr.getOpcode()) {
+		case WhileyFile.EXPR_constant:
+			return compileConstant((Expr.Constant) expr);
+		case WhileyFile.EXPR_cast: {
+			Expr.Cast e = (Expr.Cast) expr;
+			ExprCode operand = compileAnyExpression(e.getOperand());
+			Type type = e.getType();
+			return frame -> operand.evaluate(frame).convert(type);
+		}
+		case WhileyFile.EXPR_recordinitialiser:
+			return compileRecordInitialiser((Expr.RecordInitialiser) expr);
+		case WhileyFile.EXPR_recordaccess:
+		case WhileyFile.EXPR_recordborrow: {
+			Expr.RecordAccess e = (Expr.RecordAccess) expr;
+			Expr src = e.getOperand();
+			ExprCode operand = compileExpression(src);
+			Identifier field = e.getField();
+			return frame -> checkType(operand.evaluate(frame), src, RECORD_T).read(field);
+		}
+		case WhileyFile.EXPR_indirectinvoke: {
+			MultiExprCode invoke = compileIndirectInvoke((Expr.IndirectInvoke) expr);
+			return frame -> invoke.evaluate(frame)[0];
+		}
+		case WhileyFile.EXPR_invoke: {
+			MultiExprCode invoke = compileInvoke((Expr.Invoke) expr);
+			return frame -> invoke.evaluate(frame)[0];
+		}
+		case WhileyFile.EXPR_variablemove:
+		case WhileyFile.EXPR_variablecopy: {
+			Decl.Variable decl = ((Expr.VariableAccess) expr).getVariableDeclaration();
+			return frame -> frame.getLocal(decl);
+		}
+		case WhileyFile.EXPR_staticvariable:
+			return compileStaticVariableAccess((Expr.StaticVariableAccess) expr);
+		case WhileyFile.EXPR_is: {
+			Expr.Is e = (Expr.Is) expr;
+			ExprCode operand = compileAnyExpression(e.getOperand());
+			Type type = e.getTestType();
+			return frame -> {
+				try {
+					return operand.evaluate(frame).is(type, this);
+				} catch (ResolutionError err) {
+					return (RValue) error(err.getMessage(), expr);
+				}
+			};
+		}
+		case WhileyFile.EXPR_logicalnot: {
+			Expr e = ((Expr.LogicalNot) expr).getOperand();
+			ExprCode operand = compileExpression(e);
+			return frame -> checkType(operand.evaluate(frame), e, BOOL_T).not();
+		}
+		case WhileyFile.EXPR_logicaland:
+			return compileLogicalAnd((Expr.LogicalAnd) expr);
+		case WhileyFile.EXPR_logicalor:
+			return compileLogicalOr((Expr.LogicalOr) expr);
+		case WhileyFile.EXPR_logiaclimplication:
+			return compileLogicalImplication((Expr.LogicalImplication) expr);
+		case WhileyFile.EXPR_logicaliff: {
+			Expr.LogicalIff e = (Expr.LogicalIff) expr;
+			Expr l = e.getFirstOperand();
+			Expr r = e.getSecondOperand();
+			ExprCode lhs = compileExpression(l);
+			ExprCode rhs = compileExpression(r);
+			return frame -> {
+				RValue.Bool lv = checkType(lhs.evaluate(frame), l, BOOL_T);
+				RValue.Bool rv = checkType(rhs.evaluate(frame), r, BOOL_T);
+				return lv.equal(rv);
+			};
+		}
+		case WhileyFile.EXPR_logicalexistential:
+		case WhileyFile.EXPR_logicaluniversal:
+			return compileQuantifier((Expr.Quantifier) expr);
+		case WhileyFile.EXPR_equal: {
+			Expr.Equal e = (Expr.Equal) expr;
+			ExprCode lhs = compileAnyExpression(e.getFirstOperand());
+			ExprCode rhs = compileAnyExpression(e.getSecondOperand());
+			return frame -> {
+				RValue lv = lhs.evaluate(frame);
+				return lv.equal(rhs.evaluate(frame));
+			};
+		}
+		case WhileyFile.EXPR_notequal: {
+			Expr.NotEqual e = (Expr.NotEqual) expr;
+			ExprCode lhs = compileAnyExpression(e.getFirstOperand());
+			ExprCode rhs = compileAnyExpression(e.getSecondOperand());
+			return frame -> {
+				RValue lv = lhs.evaluate(frame);
+				return lv.notEqual(rhs.evaluate(frame));
+			};
+		}
+		case WhileyFile.EXPR_integernegation: {
+			Expr e = ((Expr.IntegerNegation) expr).getOperand();
+			ExprCode operand = compileExpression(e);
+			return frame -> checkType(operand.evaluate(frame), e, INT_T).negate();
+		}
+		case WhileyFile.EXPR_integeraddition:
+		case WhileyFile.EXPR_integersubtraction:
+		case WhileyFile.EXPR_integermultiplication:
+		case WhileyFile.EXPR_integerdivision:
+		case WhileyFile.EXPR_integerremainder:
+		case WhileyFile.EXPR_integerlessthan:
+		case WhileyFile.EXPR_integerlessequal:
+		case WhileyFile.EXPR_integergreaterthan:
+		case WhileyFile.EXPR_integergreaterequal:
+			return compileIntegerOperator((Expr.BinaryOperator) expr);
+		case WhileyFile.EXPR_bitwisenot: {
+			Expr e = ((Expr.BitwiseComplement) expr).getOperand();
+			ExprCode operand = compileExpression(e);
+			return frame -> checkType(operand.evaluate(frame), e, BYTE_T).invert();
+		}
+		case WhileyFile.EXPR_bitwiseor:
+		case WhileyFile.EXPR_bitwisexor:
+		case WhileyFile.EXPR_bitwiseand:
+			return compileBitwiseOperator((Expr.NaryOperator) expr);
+		case WhileyFile.EXPR_bitwiseshl:
+		case WhileyFile.EXPR_bitwiseshr:
+			return compileBitwiseShift((Expr.BinaryOperator) expr);
+		case WhileyFile.EXPR_arrayborrow:
+		case WhileyFile.EXPR_arrayaccess: {
+			Expr.ArrayAccess e = (Expr.ArrayAccess) expr;
+			Expr s = e.getFirstOperand();
+			Expr i = e.getSecondOperand();
+			ExprCode src = compileExpression(s);
+			ExprCode index = compileExpression(i);
+			return frame -> {
+				RValue.Array array = checkType(src.evaluate(frame), s, ARRAY_T);
+				return array.read(checkType(index.evaluate(frame), i, INT_T));
+			};
+		}
+		case WhileyFile.EXPR_arraygenerator:
+			return compileArrayGenerator((Expr.ArrayGenerator) expr);
+		case WhileyFile.EXPR_arraylength: {
+			Expr e = ((Expr.ArrayLength) expr).getOperand();
+			ExprCode operand = compileExpression(e);
+			return frame -> checkType(operand.evaluate(frame), e, ARRAY_T).length();
+		}
+		case WhileyFile.EXPR_arrayinitialiser:
+			return compileArrayInitialiser((Expr.ArrayInitialiser) expr);
+		case WhileyFile.EXPR_arrayrange:
+			return compileArrayRange((Expr.ArrayRange) expr);
+		case WhileyFile.EXPR_new: {
+			ExprCode operand = compileAnyExpression(((Expr.New) expr).getOperand());
+			return frame -> semantics.Reference(semantics.Cell(operand.evaluate(frame)));
+		}
+		case WhileyFile.EXPR_dereference: {
+			Expr e = ((Expr.Dereference) expr).getOperand();
+			ExprCode operand = compileExpression(e);
+			return frame -> checkType(operand.evaluate(frame), e, REF_T).deref().read();
+		}
+		case WhileyFile.EXPR_lambdaaccess:
+			return compileLambdaAccess((Expr.LambdaAccess) expr);
+		case WhileyFile.DECL_lambda: {
+			Decl.Lambda decl = (Decl.Lambda) expr;
+			Stmt body = decl.getBody();
+			// NOTE: the lambda body is compiled when it is first executed.
+			return frame -> semantics.Lambda(decl, frame.clone(), body);
+		}
+		}
+		return deadCode(expr);
+	}
+
+	private ExprCode compileConstant(Expr.Constant expr) {
+		Value v = expr.getValue();
+		if (v.getOpcode() == ITEM_utf8) {
+			// NOTE: a fresh array is constructed on each evaluation, since array
+			// values are updated in place by writes.
+			return frame -> constant(v, expr);
+		} else {
+			// NOTE: all other constants are immutable, hence can be evaluated
+			// once and shared.
+			RValue value = constant(v, expr);
+			return frame -> value;
+		}
+	}
+
+	private ExprCode compileRecordInitialiser(Expr.RecordInitialiser expr) {
+		Tuple<Identifier> fields = expr.getFields();
+		Tuple<Expr> operands = expr.getOperands();
+		ExprCode[] values = new ExprCode[operands.size()];
+		for (int i = 0; i != values.length; ++i) {
+			values[i] = compileAnyExpression(operands.get(i));
+		}
+		return frame -> {
+			RValue.Field[] rs = new RValue.Field[values.length];
+			for (int i = 0; i != values.length; ++i) {
+				rs[i] = semantics.Field(fields.get(i), values[i].evaluate(frame));
+			}
+			return semantics.Record(rs);
+		};
+	}
+
+	private ExprCode compileStaticVariableAccess(Expr.StaticVariableAccess expr) {
+		return new ExprCode() {
+			private NameID name;
+
+			@Override
+			public RValue evaluate(CallStack frame) {
+				if (name == null) {
+					try {
+						name = getStaticName(expr);
+					} catch (ResolutionError e) {
+						return (RValue) error(e.getMessage(), expr);
+					}
+				}
+				return frame.getStatic(name);
+			}
+		};
+	}
+
+	private ExprCode compileLogicalAnd(Expr.LogicalAnd expr) {
+		// This is a short-circuiting operator. Therefore, we fail as soon as one
+		// argument fails.
+		Tuple<Expr> operands = expr.getOperands();
+		ExprCode[] codes = compileExpressionArray(operands);
+		return frame -> {
+			for (int i = 0; i != codes.length; ++i) {
+				RValue.Bool b = checkType(codes[i].evaluate(frame), operands.get(i), BOOL_T);
+				if (b == RValue.False) {
+					return b;
+				}
+			}
+			return RValue.True;
+		};
+	}
+
+	private ExprCode compileLogicalOr(Expr.LogicalOr expr) {
+		// This is a short-circuiting operator. Therefore, we succeed as soon as one
+		// argument succeeds.
+		Tuple<Expr> operands = expr.getOperands();
+		ExprCode[] codes = compileExpressionArray(operands);
+		return frame -> {
+			for (int i = 0; i != codes.length; ++i) {
+				RValue.Bool b = checkType(codes[i].evaluate(frame), operands.get(i), BOOL_T);
+				if (b == RValue.True) {
+					return b;
+				}
+			}
+			return RValue.False;
+		};
+	}
+
+	private ExprCode compileLogicalImplication(Expr.LogicalImplication expr) {
+		Expr l = expr.getFirstOperand();
+		Expr r = expr.getSecondOperand();
+		ExprCode lhs = compileExpression(l);
+		ExprCode rhs = compileExpression(r);
+		return frame -> {
+			RValue.Bool lv = checkType(lhs.evaluate(frame), l, BOOL_T);
+			if (lv == RValue.False) {
+				return RValue.True;
+			} else {
+				RValue.Bool rv = checkType(rhs.evaluate(frame), r, BOOL_T);
+				return lv.equal(rv);
+			}
+		};
+	}
+
+	private ExprCode compileQuantifier(Expr.Quantifier expr) {
+		Tuple<Decl.Variable> vars = expr.getParameters();
+		Decl.Variable[] variables = new Decl.Variable[vars.size()];
+		ExprCode[] ranges = new ExprCode[vars.size()];
+		for (int i = 0; i != variables.length; ++i) {
+			variables[i] = vars.get(i);
+			ranges[i] = compileExpression(variables[i].getInitialiser());
+		}
+		ExprCode body = compileExpression(expr.getOperand());
+		return frame -> executeQuantifier(expr, variables, ranges, body, frame);
+	}
+
+	private ExprCode compileIntegerOperator(Expr.BinaryOperator expr) {
+		Expr l = expr.getFirstOperand();
+		Expr r = expr.getSecondOperand();
+		ExprCode lhs = compileExpression(l);
+		ExprCode rhs = compileExpression(r);
+		switch (expr.getOpcode()) {
+		case WhileyFile.EXPR_integeraddition:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return lv.add(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		case WhileyFile.EXPR_integersubtraction:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return lv.subtract(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		case WhileyFile.EXPR_integermultiplication:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return lv.multiply(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		case WhileyFile.EXPR_integerdivision:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return lv.divide(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		case WhileyFile.EXPR_integerremainder:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return lv.remainder(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		case WhileyFile.EXPR_integerlessthan:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return lv.lessThan(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		case WhileyFile.EXPR_integerlessequal:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return lv.lessThanOrEqual(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		case WhileyFile.EXPR_integergreaterthan:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return checkType(rhs.evaluate(frame), r, INT_T).lessThan(lv);
+			};
+		default:
+			return frame -> {
+				RValue.Int lv = checkType(lhs.evaluate(frame), l, INT_T);
+				return checkType(rhs.evaluate(frame), r, INT_T).lessThanOrEqual(lv);
+			};
+		}
+	}
+
+	private ExprCode compileBitwiseOperator(Expr.NaryOperator expr) {
+		Tuple<Expr> operands = expr.getOperands();
+		ExprCode[] codes = compileExpressionArray(operands);
+		int opcode = expr.getOpcode();
+		return frame -> {
+			RValue.Byte val = checkType(codes[0].evaluate(frame), operands.get(0), BYTE_T);
+			for (int i = 1; i != codes.length; ++i) {
+				RValue.Byte rhs = checkType(codes[i].evaluate(frame), operands.get(i), BYTE_T);
+				switch (opcode) {
+				case WhileyFile.EXPR_bitwiseor:
+					val = val.or(rhs);
+					break;
+				case WhileyFile.EXPR_bitwisexor:
+					val = val.xor(rhs);
+					break;
+				default:
+					val = val.and(rhs);
+				}
+			}
+			return val;
+		};
+	}
+
+	private ExprCode compileBitwiseShift(Expr.BinaryOperator expr) {
+		Expr l = expr.getFirstOperand();
+		Expr r = expr.getSecondOperand();
+		ExprCode lhs = compileExpression(l);
+		ExprCode rhs = compileExpression(r);
+		if (expr.getOpcode() == WhileyFile.EXPR_bitwiseshl) {
+			return frame -> {
+				RValue.Byte lv = checkType(lhs.evaluate(frame), l, BYTE_T);
+				return lv.shl(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		} else {
+			return frame -> {
+				RValue.Byte lv = checkType(lhs.evaluate(frame), l, BYTE_T);
+				return lv.shr(checkType(rhs.evaluate(frame), r, INT_T));
+			};
+		}
+	}
+
+	private ExprCode compileArrayGenerator(Expr.ArrayGenerator expr) {
+		ExprCode element = compileAnyExpression(expr.getFirstOperand());
+		Expr c = expr.getSecondOperand();
+		ExprCode count = compileExpression(c);
+		return frame -> {
+			RValue value = element.evaluate(frame);
+			return arrayGenerator(value, checkType(count.evaluate(frame), c, INT_T));
+		};
+	}
+
+	private ExprCode compileArrayInitialiser(Expr.ArrayInitialiser expr) {
+		Tuple<Expr> operands = expr.getOperands();
+		ExprCode[] codes = new ExprCode[operands.size()];
+		for (int i = 0; i != codes.length; ++i) {
+			codes[i] = compileAnyExpression(operands.get(i));
+		}
+		return frame -> {
+			RValue[] elements = new RValue[codes.length];
+			for (int i = 0; i != elements.length; ++i) {
+				elements[i] = codes[i].evaluate(frame);
+			}
+			return semantics.Array(elements);
+		};
+	}
+
+	private ExprCode compileArrayRange(Expr.ArrayRange expr) {
+		Expr s = expr.getFirstOperand();
+		Expr e = expr.getSecondOperand();
+		ExprCode first = compileExpression(s);
+		ExprCode second = compileExpression(e);
+		return frame -> {
+			RValue.Int start = checkType(first.evaluate(frame), s, INT_T);
+			return arrayRange(start, checkType(second.evaluate(frame), e, INT_T));
+		};
+	}
+
+	private ExprCode compileLambdaAccess(Expr.LambdaAccess expr) {
+		return new ExprCode() {
+			private Decl.FunctionOrMethod decl;
+
+			@Override
+			public RValue evaluate(CallStack frame) {
+				if (decl == null) {
+					// Locate the function or method body in order to execute it
+					try {
+						decl = resolveExactly(expr.getName(), expr.getSignature(), Decl.FunctionOrMethod.class);
+					} catch (ResolutionError e) {
+						return (RValue) error(e.getMessage(), expr);
+					}
+				}
+				// Clone frame to ensure it executes in this exact environment.
+				return semantics.Lambda(decl, frame.clone(), decl.getBody());
+			}
+		};
+	}
+
+	// =============================================================
+	// Invocations
+	// =============================================================
+
+	private MultiExprCode compileInvoke(Expr.Invoke expr) {
+		MultiExprCode operands = compileExpressions(expr.getOperands());
+		return new MultiExprCode() {
+			private CallSite target;
+
+			@Override
+			public RValue[] evaluate(CallStack frame) {
+				if (target == null) {
+					// Resolve function or method being invoked to a concrete
+					// declaration. This is done only once.
+					try {
+						target = getCallSite(expr);
+					} catch (ResolutionError e) {
+						return (RValue[]) error(e.getMessage(), expr);
+					}
+				}
+				RValue[] arguments = operands.evaluate(frame);
+				return execute(target, frame, arguments);
+			}
+		};
+	}
+
+	private MultiExprCode compileIndirectInvoke(Expr.IndirectInvoke expr) {
+		Expr s = expr.getSource();
+		ExprCode source = compileExpression(s);
+		MultiExprCode operands = compileExpressions(expr.getArguments());
+		return frame -> {
+			RValue.Lambda src = checkType(source.evaluate(frame), s, LAMBDA_T);
+			RValue[] arguments = operands.evaluate(frame);
+			return execute(src, arguments);
+		};
+	}
+
+	// =============================================================
+	// Multiple expressions
+	// =============================================================
+
+	private ExprCode[] compileExpressionArray(Tuple<Expr> expressions) {
+		ExprCode[] codes = new ExprCode[expressions.size()];
+		for (int i = 0; i != codes.length; ++i) {
+			codes[i] = compileExpression(expressions.get(i));
+		}
+		return codes;
+	}
+
+	/**
+	 * Compile one or more expressions. As for <code>executeExpressions()</code>,
+	 * this must accommodate invocations which return more than one value. When
+	 * there are none of these, the results can be constructed directly.
+	 *
+	 * @param expressions
+	 * @return
+	 */
+	private MultiExprCode compileExpressions(Tuple<Expr> expressions) {
+		MultiExprCode[] multis = new MultiExprCode[expressions.size()];
+		ExprCode[] singles = new ExprCode[expressions.size()];
+		boolean multi = false;
+		for (int i = 0; i != multis.length; ++i) {
+			Expr expr = expressions.get(i);
+			switch (expr.getOpcode()) {
+			case WhileyFile.EXPR_indirectinvoke:
+				multis[i] = compileIndirectInvoke((Expr.IndirectInvoke) expr);
+				multi = true;
+				break;
+			case WhileyFile.EXPR_invoke:
+				multis[i] = compileInvoke((Expr.Invoke) expr);
+				multi = true;
+				break;
+			default:
+				singles[i] = compileAnyExpression(expr);
+				final ExprCode single = singles[i];
+				multis[i] = frame -> new RValue[] { single.evaluate(frame) };
+			}
+		}
+		if (!multi) {
+			return frame -> {
+				RValue[] rs = new RValue[singles.length];
+				for (int i = 0; i != rs.length; ++i) {
+					rs[i] = singles[i].evaluate(frame);
+				}
+				return rs;
+			};
+		} else if (multis.length == 1) {
+			return multis[0];
+		}
+		return frame -> {
+			RValue[][] results = new RValue[multis.length][];
+			for (int i = 0; i != multis.length; ++i) {
+				results[i] = multis[i].evaluate(frame);
+			}
+			return concatenate(results);
+		};
+	}
+}
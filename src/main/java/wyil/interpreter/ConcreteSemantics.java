@@ -14,6 +14,7 @@
 package wyil.interpreter;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -44,7 +45,12 @@ public class ConcreteSemantics implements AbstractSemantics {
 
 	@Override
 	public RValue.Int Int(BigInteger value) {
-		return new RValue.Int(value);
+		return RValue.Int.valueOf(value);
+	}
+
+	@Override
+	public RValue.Int Int(long value) {
+		return RValue.Int.valueOf(value);
 	}
 
 	@Override
@@ -163,7 +169,7 @@ public class ConcreteSemantics implements AbstractSemantics {
 				// to execute the invariant and determine whether or not it
 				// returns true.
 				Interpreter.CallStack frame = instance.new CallStack();
-				frame.putLocal(var.getName(), this);
+				frame.putLocal(var, this);
 				for (int i = 0; i != invariant.size(); ++i) {
 					RValue.Bool b = instance.executeExpression(Bool.class, invariant.get(i), frame);
 					if (b == False) {
@@ -339,12 +345,80 @@ public class ConcreteSemantics implements AbstractSemantics {
 			}
 		}
 
+		/**
+		 * <p>
+		 * An arbitrary precision integer value. Since the vast majority of
+		 * integers encountered in practice fit within a <code>long</code>, values
+		 * are represented using a <code>long</code> where possible and only
+		 * promoted to a <code>BigInteger</code> when an operation overflows. Such
+		 * values are always normalised, meaning a value is represented using a
+		 * <code>BigInteger</code> if and only if it does not fit within a
+		 * <code>long</code>.
+		 * </p>
+		 * <p>
+		 * Small values (e.g. loop counters and array indices) are cached, so that
+		 * typical integer arithmetic does not allocate.
+		 * </p>
+		 *
+		 * @author David J. Pearce
+		 *
+		 */
 		public final static class Int extends RValue implements AbstractSemantics.RValue.Int {
-			private final BigInteger value;
+			private static final int CACHE_LOW = -128;
+			private static final int CACHE_HIGH = 1024;
+			private static final Int[] CACHE = new Int[CACHE_HIGH - CACHE_LOW + 1];
 
-			private Int(BigInteger value) {
+			static {
+				for (int i = 0; i != CACHE.length; ++i) {
+					CACHE[i] = new Int(i + CACHE_LOW, null);
+				}
+			}
+
+			/**
+			 * The value of this integer, when it fits within a <code>long</code>.
+			 */
+			private final long value;
+			/**
+			 * The value of this integer when it does not fit within a
+			 * <code>long</code>, or <code>null</code> otherwise.
+			 */
+			private final BigInteger big;
+
+			private Int(long value, BigInteger big) {
 				this.value = value;
+				this.big = big;
+			}
+
+			/**
+			 * Construct an integer value from a given <code>long</code>, reusing a
+			 * cached instance where possible.
+			 *
+			 * @param value
+			 * @return
+			 */
+			public static Int valueOf(long value) {
+				if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+					return CACHE[(int) value - CACHE_LOW];
+				} else {
+					return new Int(value, null);
+				}
 			}
+
+			/**
+			 * Construct an integer value from a given <code>BigInteger</code>,
+			 * demoting it to a <code>long</code> where possible.
+			 *
+			 * @param value
+			 * @return
+			 */
+			public static Int valueOf(BigInteger value) {
+				if (value.bitLength() < 64) {
+					return valueOf(value.longValue());
+				} else {
+					return new Int(0, value);
+				}
+			}
+
 			@Override
 			public Bool is(Type type, Interpreter instance) throws ResolutionError {
 				if(type instanceof Type.Int) {
@@ -364,84 +438,188 @@ public class ConcreteSemantics implements AbstractSemantics {
 
 			@Override
 			public Int negate() {
-				return new Int(value.negate());
+				if (big == null && value != Long.MIN_VALUE) {
+					return valueOf(-value);
+				}
+				return valueOf(bigValue().negate());
 			}
 
 			@Override
 			public Int add(AbstractSemantics.RValue.Int _rhs) {
 				RValue.Int rhs = (RValue.Int) _rhs;
-				return new Int(value.add(rhs.value));
+				if (big == null && rhs.big == null) {
+					long r = value + rhs.value;
+					// Overflow occurs iff both operands have the same sign, and the
+					// result has a different sign.
+					if (((value ^ r) & (rhs.value ^ r)) >= 0) {
+						return valueOf(r);
+					}
+				}
+				return valueOf(bigValue().add(rhs.bigValue()));
 			}
 
 			@Override
 			public Int subtract(AbstractSemantics.RValue.Int _rhs)  {
 				RValue.Int rhs = (RValue.Int) _rhs;
-				return new Int(value.subtract(rhs.value));
+				if (big == null && rhs.big == null) {
+					long r = value - rhs.value;
+					// Overflow occurs iff the operands have different signs, and the
+					// result has a different sign from the first.
+					if (((value ^ rhs.value) & (value ^ r)) >= 0) {
+						return valueOf(r);
+					}
+				}
+				return valueOf(bigValue().subtract(rhs.bigValue()));
 			}
 
 			@Override
 			public Int multiply(AbstractSemantics.RValue.Int _rhs) {
 				RValue.Int rhs = (RValue.Int) _rhs;
-				return new Int(value.multiply(rhs.value));
+				if (big == null && rhs.big == null) {
+					long hi = Math.abs(value) | Math.abs(rhs.value);
+					if ((hi >>> 31) == 0) {
+						// Both operands fit within 31 bits, hence no overflow.
+						return valueOf(value * rhs.value);
+					}
+				}
+				return valueOf(bigValue().multiply(rhs.bigValue()));
 			}
 
 			@Override
 			public Int divide(AbstractSemantics.RValue.Int _rhs) {
 				RValue.Int rhs = (RValue.Int) _rhs;
-				return new Int(value.divide(rhs.value));
+				if (big == null && rhs.big == null && rhs.value != -1) {
+					return valueOf(value / rhs.value);
+				}
+				return valueOf(bigValue().divide(rhs.bigValue()));
 			}
 
 			@Override
 			public Int remainder(AbstractSemantics.RValue.Int _rhs) {
 				RValue.Int rhs = (RValue.Int) _rhs;
-				return new Int(value.remainder(rhs.value));
+				if (big == null && rhs.big == null) {
+					return valueOf(value % rhs.value);
+				}
+				return valueOf(bigValue().remainder(rhs.bigValue()));
 			}
 
 			@Override
 			public Bool lessThan(AbstractSemantics.RValue.Int _rhs) {
 				RValue.Int rhs = (RValue.Int) _rhs;
-				return (value.compareTo(rhs.value) < 0) ? True : False;
+				return (compareTo(rhs) < 0) ? True : False;
 			}
 
 			@Override
 			public Bool lessThanOrEqual(AbstractSemantics.RValue.Int _rhs) {
 				RValue.Int rhs = (RValue.Int) _rhs;
-				return (value.compareTo(rhs.value) <= 0) ? True : False;
+				return (compareTo(rhs) <= 0) ? True : False;
 			}
 
 			@Override
 			public int intValue() {
-				return value.intValue();
+				return big == null ? (int) value : big.intValue();
+			}
+
+			/**
+			 * Get the value of this integer as a <code>BigInteger</code>.
+			 *
+			 * @return
+			 */
+			public BigInteger bigValue() {
+				return big == null ? BigInteger.valueOf(value) : big;
+			}
+
+			private int compareTo(RValue.Int rhs) {
+				if (big == null && rhs.big == null) {
+					return Long.compare(value, rhs.value);
+				} else {
+					return bigValue().compareTo(rhs.bigValue());
+				}
 			}
 
 			@Override
 			public boolean equals(Object o) {
-				return (o instanceof Int) && value.equals(((Int)o).value);
+				if (o instanceof Int) {
+					Int i = (Int) o;
+					// NOTE: since values are normalised, values of different
+					// representations cannot be equal.
+					return big == null ? (i.big == null && value == i.value) : big.equals(i.big);
+				}
+				return false;
 			}
 
 			@Override
 			public int hashCode() {
-				return value.hashCode();
+				return big == null ? Long.hashCode(value) : big.hashCode();
 			}
 
 			@Override
 			public String toString() {
-				return value.toString();
+				return big == null ? Long.toString(value) : big.toString();
 			}
 		}
 
+		/**
+		 * <p>
+		 * An array value. Array values are immutable from the perspective of the
+		 * interpreter, meaning that writing an element produces a new array value
+		 * whilst leaving the original unchanged. To avoid copying the entire array
+		 * on every write, arrays are implemented as <i>persistent arrays</i> (see
+		 * "A Persistent Union-Find Data Structure", Conchon and Filliatre, 2007).
+		 * </p>
+		 * <p>
+		 * The idea is that only the most recent version of an array holds the
+		 * underlying elements. A write updates the elements in place, and turns
+		 * the version being written into a <i>diff</i> recording the element it
+		 * previously held at that position. Thus, writing to the most recent
+		 * version takes constant time. Accessing an older version first
+		 * <i>reroots</i> it by reversing the diffs between it and the most recent
+		 * version, such that it becomes the version holding the elements. This
+		 * takes time proportional to the number of intervening writes. Since an
+		 * older version is rarely accessed after an array is updated (e.g. for
+		 * <code>xs[i] = v</code> the old value of <code>xs</code> is dead), this
+		 * is rarely necessary.
+		 * </p>
+		 * <p>
+		 * <b>NOTE:</b> since reading an array may reroot it, array values are not
+		 * thread safe.
+		 * </p>
+		 *
+		 * @author David J. Pearce
+		 *
+		 */
 		public final static class Array extends RValue implements AbstractSemantics.RValue.Array {
-			private final RValue[] elements;
+			private final int length;
+			/**
+			 * The elements of this array, or <code>null</code> if this version is a
+			 * diff.
+			 */
+			private RValue[] elements;
+			/**
+			 * For a diff, the next (more recent) version of this array.
+			 */
+			private RValue.Array next;
+			/**
+			 * For a diff, the position at which this version differs from the next.
+			 */
+			private int index;
+			/**
+			 * For a diff, the element held by this version at the given position.
+			 */
+			private RValue value;
 
 			private Array(RValue... elements) {
+				this.length = elements.length;
 				this.elements = elements;
 			}
 			@Override
 			public RValue.Bool is(Type type, Interpreter instance) throws ResolutionError {
 				if(type instanceof Type.Array) {
 					Type.Array t = (Type.Array) type;
-					for (int i = 0; i != elements.length; ++i) {
-						if (elements[i].is(t.getElement(), instance) == False) {
+					for (int i = 0; i != length; ++i) {
+						// NOTE: must not retain the elements across checks, since
+						// these could execute code which updates this array.
+						if (get(i).is(t.getElement(), instance) == False) {
 							return False;
 						}
 					}
@@ -455,9 +633,9 @@ public class ConcreteSemantics implements AbstractSemantics {
 			public RValue convert(Type type) {
 				if (type instanceof Type.Array) {
 					Type.Array t = (Type.Array) type;
-					RValue[] values = new RValue[elements.length];
+					RValue[] values = new RValue[length];
 					for (int i = 0; i != values.length; ++i) {
-						values[i] = elements[i].convert(t.getElement());
+						values[i] = get(i).convert(t.getElement());
 					}
 					return new RValue.Array(values);
 				} else {
@@ -467,44 +645,119 @@ public class ConcreteSemantics implements AbstractSemantics {
 			@Override
 			public RValue read(AbstractSemantics.RValue.Int _index) {
 				RValue.Int index = (RValue.Int) _index;
-				int idx = index.value.intValue();
-				if(idx < 0 || idx >= elements.length) {
+				int idx = index.intValue();
+				if(idx < 0 || idx >= length) {
 					throw new AssertionError("out-of-bounds array access");
 				}
-				return elements[idx];
+				return get(idx);
 			}
 
 			@Override
 			public RValue.Array write(AbstractSemantics.RValue.Int _index, AbstractSemantics.RValue value) {
 				RValue.Int index = (RValue.Int)_index;
-				int idx = index.value.intValue();
-				RValue[] values = Arrays.copyOf(this.elements, this.elements.length);
+				int idx = index.intValue();
+				RValue[] values = reroot();
+				RValue old = values[idx];
 				values[idx] = (RValue) value;
-				return new RValue.Array(values);
+				RValue.Array result = new RValue.Array(values);
+				// Turn this version into a diff against the result
+				this.elements = null;
+				this.next = result;
+				this.index = idx;
+				this.value = old;
+				return result;
+			}
+
+			/**
+			 * Get the element at a given position in this array.
+			 *
+			 * @param index
+			 * @return
+			 */
+			public RValue get(int index) {
+				return reroot()[index];
 			}
 
+			/**
+			 * Get a copy of the elements held in this array. A copy is necessary
+			 * since the underlying elements may be updated by a subsequent write.
+			 *
+			 * @return
+			 */
 			public RValue[] getElements() {
-				return elements;
+				return reroot().clone();
 			}
 
 			@Override
 			public RValue.Int length() {
-				return new RValue.Int(BigInteger.valueOf(elements.length));
+				return RValue.Int.valueOf(length);
 			}
 
 			@Override
 			public boolean equals(Object o) {
-				return (o instanceof RValue.Array) && (Arrays.equals(elements, ((RValue.Array) o).elements));
+				if (o instanceof RValue.Array) {
+					RValue.Array a = (RValue.Array) o;
+					if (this == a) {
+						return true;
+					} else if (length != a.length) {
+						return false;
+					}
+					RValue[] lhs = reroot();
+					RValue[] rhs = a.reroot();
+					if (lhs == rhs) {
+						// Both are versions of the same array, and rerooting the
+						// other has displaced this version. Hence, we need a copy.
+						lhs = getElements();
+						rhs = a.reroot();
+					}
+					return Arrays.equals(lhs, rhs);
+				}
+				return false;
 			}
 
 			@Override
 			public int hashCode() {
-				return Arrays.hashCode(elements);
+				return Arrays.hashCode(reroot());
 			}
 
 			@Override
 			public String toString() {
-				return Arrays.toString(elements);
+				return Arrays.toString(reroot());
+			}
+
+			/**
+			 * Make this version the one holding the underlying elements, by reversing
+			 * the diffs between it and the most recent version.
+			 *
+			 * @return The underlying elements.
+			 */
+			private RValue[] reroot() {
+				if (elements == null) {
+					// Find the chain of diffs leading to the version holding the
+					// elements.
+					ArrayList<RValue.Array> chain = new ArrayList<>();
+					RValue.Array v = this;
+					while (v.elements == null) {
+						chain.add(v);
+						v = v.next;
+					}
+					// Reverse the diffs, starting from the end of the chain
+					for (int i = chain.size() - 1; i >= 0; --i) {
+						RValue.Array d = chain.get(i);
+						RValue.Array n = d.next;
+						RValue[] values = n.elements;
+						RValue old = values[d.index];
+						values[d.index] = d.value;
+						d.elements = values;
+						d.next = null;
+						d.value = null;
+						n.elements = null;
+						n.next = d;
+						n.value = old;
+						n.index = d.index;
+					}
+				}
+				return elements;
 			}
 		}
 
@@ -783,20 +1036,20 @@ public class ConcreteSemantics implements AbstractSemantics {
 		abstract public void write(CallStack frame, RValue rhs);
 
 		public static final class Variable extends LValue {
-			private final Identifier name;
+			private final Decl.Variable var;
 
-			public Variable(Identifier name) {
-				this.name = name;
+			public Variable(Decl.Variable var) {
+				this.var = var;
 			}
 
 			@Override
 			public RValue read(CallStack frame) {
-				return frame.getLocal(name);
+				return frame.getLocal(var);
 			}
 
 			@Override
 			public void write(CallStack frame, RValue rhs) {
-				frame.putLocal(name, rhs);
+				frame.putLocal(var, rhs);
 			}
 		}
 
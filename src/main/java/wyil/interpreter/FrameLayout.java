@@ -0,0 +1,152 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyil.interpreter;
+
+import java.util.Arrays;
+
+import wybs.lang.SyntacticHeap;
+import wybs.lang.SyntacticItem;
+import wyc.lang.WhileyFile;
+import wyc.lang.WhileyFile.Decl;
+
+/**
+ * <p>
+ * Assigns every variable declared within a given WhileyFile a <i>slot</i> in
+ * the stack frame of its enclosing declaration. Slots are dense within each
+ * top-level declaration, starting from zero. For example, consider this
+ * function:
+ * </p>
+ *
+ * <pre>
+ * function sum(int[] xs) -> (int r):
+ *     int i = 0
+ *     r = 0
+ *     while i < |xs|:
+ *        ...
+ * </pre>
+ *
+ * <p>
+ * Here, <code>xs</code> is assigned slot <code>0</code>, <code>r</code> slot
+ * <code>1</code> and <code>i</code> slot <code>2</code>. Thus, a frame for
+ * <code>sum</code> consists of exactly three slots. Variables declared in
+ * lambdas and quantifiers nested within a declaration are assigned slots in
+ * the frame of that declaration, since they execute within it.
+ * </p>
+ * <p>
+ * Slots are indexed by the position of each variable in the heap, meaning
+ * the slot of a variable can be determined without hashing it.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public final class FrameLayout {
+	private final SyntacticHeap heap;
+	/**
+	 * Maps the heap index of every variable to its slot, or <code>-1</code> for
+	 * items which are not variables.
+	 */
+	private final int[] slots;
+	/**
+	 * Maps the heap index of every top-level declaration to the size of its
+	 * frame, or <code>0</code> for items which are not top-level declarations.
+	 */
+	private final int[] sizes;
+
+	public FrameLayout(WhileyFile file) {
+		int n = file.size();
+		this.heap = file;
+		this.slots = new int[n];
+		this.sizes = new int[n];
+		Arrays.fill(slots, -1);
+		boolean[] visited = new boolean[n];
+		for (Decl d : file.getDeclarations()) {
+			if (!(d instanceof Decl.Import)) {
+				sizes[d.getIndex()] = allocate(d, d, 0, visited);
+			}
+		}
+	}
+
+	/**
+	 * Get the heap for which this layout was constructed.
+	 *
+	 * @return
+	 */
+	public SyntacticHeap getHeap() {
+		return heap;
+	}
+
+	/**
+	 * Get the slot assigned to a given variable, or <code>-1</code> if it was
+	 * not allocated one (e.g. because the heap has grown since this layout was
+	 * constructed).
+	 *
+	 * @param var
+	 * @return
+	 */
+	public int getSlot(Decl.Variable var) {
+		int index = var.getIndex();
+		return index < slots.length ? slots[index] : -1;
+	}
+
+	/**
+	 * Get the number of slots required for a frame of a given top-level
+	 * declaration.
+	 *
+	 * @param decl
+	 * @return
+	 */
+	public int getFrameSize(Decl decl) {
+		int index = decl.getIndex();
+		return index < sizes.length ? sizes[index] : 0;
+	}
+
+	/**
+	 * Allocate slots for all variables reachable from a given item, skipping
+	 * over any nested declarations (other than variables and lambdas) as these
+	 * have frames of their own.
+	 *
+	 * @param root
+	 *            The top-level declaration whose frame is being laid out.
+	 * @param item
+	 *            The item being traversed.
+	 * @param next
+	 *            The next available slot.
+	 * @param visited
+	 *            Identifies items already traversed. This prevents shared
+	 *            items being traversed more than once, and infinite recursion
+	 *            through the back links of recursive types.
+	 * @return The next available slot after traversing the item.
+	 */
+	private int allocate(Decl root, SyntacticItem item, int next, boolean[] visited) {
+		int index = item.getIndex();
+		if (visited[index]) {
+			return next;
+		} else if (item != root && item instanceof Decl && !(item instanceof Decl.Variable)
+				&& !(item instanceof Decl.Lambda)) {
+			return next;
+		}
+		visited[index] = true;
+		if (item instanceof Decl.Variable) {
+			slots[index] = next++;
+		}
+		for (int i = 0; i != item.size(); ++i) {
+			SyntacticItem child = item.get(i);
+			if (child != null && child.getHeap() == heap) {
+				next = allocate(root, child, next, visited);
+			}
+		}
+		return next;
+	}
+}
@@ -15,7 +15,6 @@ package wyil.interpreter;
 
 import java.io.IOException;
 import java.io.PrintStream;
-import java.math.BigInteger;
 import java.util.*;
 
 import wybs.lang.Build;
@@ -23,6 +22,7 @@ import wybs.lang.NameID;
 import wybs.lang.NameResolver;
 import wybs.lang.NameResolver.ResolutionError;
 import wybs.lang.SyntacticElement;
+import wybs.lang.SyntacticHeap;
 import wyfs.lang.Path;
 import wyc.util.WhileyFileResolver;
 
@@ -62,13 +62,40 @@ public class Interpreter {
 	/**
 	 * Determines the underlying semantics used for this interpreter.
 	 */
-	private final ConcreteSemantics semantics;
+	protected final ConcreteSemantics semantics;
 
 	/**
 	 * The debug stream provides an I/O stream through which debug bytecodes can
 	 * write their messages.
 	 */
-	private final PrintStream debug;
+	protected final PrintStream debug;
+
+	/**
+	 * Determines how local variables are stored in stack frames.
+	 */
+	private FrameModel frameModel = FrameModel.SLOTTED;
+
+	/**
+	 * Caches the frame layout constructed for each WhileyFile encountered.
+	 */
+	private final IdentityHashMap<SyntacticHeap, FrameLayout> layouts = new IdentityHashMap<>();
+
+	/**
+	 * Caches the target of each invocation encountered, such that names are
+	 * resolved only once per call site rather than once per call.
+	 */
+	private final IdentityHashMap<Expr.Invoke, CallSite> callSites = new IdentityHashMap<>();
+
+	/**
+	 * Caches the qualified name of each static variable access encountered.
+	 */
+	private final IdentityHashMap<Expr.StaticVariableAccess, NameID> staticSites = new IdentityHashMap<>();
+
+	/**
+	 * Caches the WhileyFiles loaded by this interpreter, such that these are
+	 * located and read only once.
+	 */
+	private final HashMap<Path.ID, WhileyFile> wyilFiles = new HashMap<>();
 
 	public Interpreter(Build.Project project, PrintStream debug) {
 		this.project = project;
@@ -77,17 +104,105 @@ public class Interpreter {
 		this.semantics = new ConcreteSemantics();
 	}
 
-	private enum Status {
+	/**
+	 * Identifies the different ways in which local variables can be stored in a
+	 * stack frame.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public enum FrameModel {
+		/**
+		 * Local variables are stored in a map from their names to their values.
+		 */
+		NAMED,
+		/**
+		 * Local variables are stored in an array, where each is assigned a fixed
+		 * slot by a <code>FrameLayout</code>. This avoids hashing variables on
+		 * every access.
+		 */
+		SLOTTED
+	}
+
+	protected enum Status {
 		RETURN,
 		BREAK,
 		CONTINUE,
 		NEXT
 	}
 
+	/**
+	 * Identifies the different engines available for executing WyIL files.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	public enum Engine {
+		/**
+		 * Execute by walking the syntax tree directly (i.e. the
+		 * <code>Interpreter</code>).
+		 */
+		TREE,
+		/**
+		 * Execute by first compiling each function or method body into a tree of
+		 * closures (i.e. the <code>ClosureInterpreter</code>).
+		 */
+		CLOSURE
+	}
+
+	/**
+	 * Construct an interpreter using a given execution engine.
+	 *
+	 * @param engine
+	 * @param project
+	 * @param debug
+	 * @return
+	 */
+	public static Interpreter create(Engine engine, Build.Project project, PrintStream debug) {
+		switch (engine) {
+		case CLOSURE:
+			return new ClosureInterpreter(project, debug);
+		default:
+			return new Interpreter(project, debug);
+		}
+	}
+
 	public NameResolver getNameResolver() {
 		return resolver;
 	}
 
+	public FrameModel getFrameModel() {
+		return frameModel;
+	}
+
+	/**
+	 * Set the model used for storing local variables in stack frames. This
+	 * affects only those frames created after this point.
+	 *
+	 * @param model
+	 */
+	public void setFrameModel(FrameModel model) {
+		this.frameModel = model;
+	}
+
+	/**
+	 * Get the frame layout for a given WhileyFile, constructing it if it does
+	 * not already exist.
+	 *
+	 * @param heap
+	 * @return
+	 */
+	private FrameLayout getFrameLayout(SyntacticHeap heap) {
+		FrameLayout layout = layouts.get(heap);
+		if (layout == null || layout.getHeap().size() != heap.size()) {
+			// NOTE: a heap which has grown since its layout was constructed must
+			// be laid out again, as it may contain new variables.
+			layout = new FrameLayout((WhileyFile) heap);
+			layouts.put(heap, layout);
+		}
+		return layout;
+	}
+
 	/**
 	 * Execute a function or method identified by a name and type signature with
 	 * the given arguments, producing a return value or null (if none). If the
@@ -103,64 +218,115 @@ public class Interpreter {
 	 * @return
 	 */
 	public RValue[] execute(NameID nid, Type.Callable sig, CallStack frame, RValue... args) {
+		// FIXME: NameID needs to be deprecated
+		Identifier name = new Identifier(nid.name());
 		// First, find the enclosing WyilFile
-		try {
-			// FIXME: NameID needs to be deprecated
-			Identifier name = new Identifier(nid.name());
-			// NOTE: need to read WyilFile here as, otherwose, it forces a
-			// rereading of the Whiley source file and a loss of all generation
-			// information.
-			Path.Entry<WhileyFile> entry = resolver.load(nid.module());
-			if (entry == null) {
-				throw new IllegalArgumentException("no WyIL file found: " + nid.module());
-			}
-			// Second, find the given function or method
-			WhileyFile wyilFile = entry.read();
-			Decl.Callable fmp = wyilFile.getDeclaration(name, sig,
-					Decl.Callable.class);
-			if (fmp == null) {
-				throw new IllegalArgumentException("no function or method found: " + nid + ", " + sig);
-			} else if (sig.getParameters().size() != args.length) {
-				throw new IllegalArgumentException("incorrect number of arguments: " + nid + ", " + sig);
+		WhileyFile wyilFile = getModule(nid.module());
+		if (wyilFile == null) {
+			throw new IllegalArgumentException("no WyIL file found: " + nid.module());
+		}
+		// Second, find the given function or method
+		Decl.Callable fmp = wyilFile.getDeclaration(name, sig,
+				Decl.Callable.class);
+		if (fmp == null) {
+			throw new IllegalArgumentException("no function or method found: " + nid + ", " + sig);
+		} else if (sig.getParameters().size() != args.length) {
+			throw new IllegalArgumentException("incorrect number of arguments: " + nid + ", " + sig);
+		}
+		return execute(new CallSite(fmp, nid.module()), frame, args);
+	}
+
+	/**
+	 * Execute a function or method which has already been resolved with the
+	 * given arguments, producing a return value or null (if none).
+	 *
+	 * @param target
+	 *            The resolved function or method, along with its enclosing
+	 *            module.
+	 * @param frame
+	 *            The calling frame.
+	 * @param args
+	 *            The supplied arguments
+	 * @return
+	 */
+	protected RValue[] execute(CallSite target, CallStack frame, RValue... args) {
+		Decl.Callable fmp = target.decl;
+		// Construct the stack frame for execution
+		frame = frame.enter(fmp, target.module);
+		extractParameters(frame,args,fmp);
+		// Check the precondition
+		if(fmp instanceof Decl.FunctionOrMethod) {
+			Decl.FunctionOrMethod fm = (Decl.FunctionOrMethod) fmp;
+			checkInvariants(frame,fm.getRequires());
+			// check function or method body exists
+			if (fm.getBody() == null) {
+				// FIXME: Add support for native functions or methods. That is,
+				// allow native functions to be implemented and called from the
+				// interpreter.
+				throw new IllegalArgumentException(
+						"no function or method body found: " + fmp.getQualifiedName() + ", " + fmp.getType());
 			}
-			// Fourth, construct the stack frame for execution
-			frame = frame.enter(fmp);
+			// Execute the method or function body
+			executeBody(fm.getBody(), fm, frame);
+			// Extra the return values
+			RValue[] returns = packReturns(frame,fmp);
+			// Restore original parameter values
 			extractParameters(frame,args,fmp);
-			// Check the precondition
-			if(fmp instanceof Decl.FunctionOrMethod) {
-				Decl.FunctionOrMethod fm = (Decl.FunctionOrMethod) fmp;
-				checkInvariants(frame,fm.getRequires());
-				// check function or method body exists
-				if (fm.getBody() == null) {
-					// FIXME: Add support for native functions or methods. That is,
-					// allow native functions to be implemented and called from the
-					// interpreter.
-					throw new IllegalArgumentException("no function or method body found: " + nid + ", " + sig);
+			// Check the postcondition holds
+			checkInvariants(frame, fm.getEnsures());
+			return returns;
+		} else {
+			// Properties always return true (provided their preconditions hold)
+			return new RValue[]{RValue.True};
+		}
+	}
+
+	/**
+	 * Get the WhileyFile for a given module, or <code>null</code> if no such
+	 * module exists.
+	 *
+	 * @param mid
+	 * @return
+	 */
+	private WhileyFile getModule(Path.ID mid) {
+		WhileyFile module = wyilFiles.get(mid);
+		if (module == null) {
+			try {
+				// NOTE: need to read WyilFile here as, otherwose, it forces a
+				// rereading of the Whiley source file and a loss of all generation
+				// information.
+				Path.Entry<WhileyFile> entry = resolver.load(mid);
+				if (entry != null) {
+					module = entry.read();
+					wyilFiles.put(mid, module);
 				}
-				// Execute the method or function body
-				executeBlock(fm.getBody(), frame, new FunctionOrMethodScope(fm));
-				// Extra the return values
-				RValue[] returns = packReturns(frame,fmp);
-				// Restore original parameter values
-				extractParameters(frame,args,fmp);
-				// Check the postcondition holds
-				checkInvariants(frame, fm.getEnsures());
-				return returns;
-			} else {
-				// Properties always return true (provided their preconditions hold)
-				return new RValue[]{RValue.True};
+			} catch (IOException e) {
+				throw new RuntimeException(e.getMessage(), e);
 			}
-			//
-		} catch (IOException e) {
-			throw new RuntimeException(e.getMessage(), e);
 		}
+		return module;
+	}
+
+	/**
+	 * Execute the body of a given function, method or lambda in a given frame.
+	 * Any return values are stored in the frame.
+	 *
+	 * @param body
+	 *            The body to execute
+	 * @param context
+	 *            The enclosing function, method or lambda
+	 * @param frame
+	 *            The frame for the enclosing function, method or lambda
+	 */
+	protected void executeBody(Stmt.Block body, Decl.Callable context, CallStack frame) {
+		executeBlock(body, frame, new FunctionOrMethodScope(context));
 	}
 
 	private void extractParameters(CallStack frame, RValue[] args, Decl.Callable decl) {
 		Tuple<Decl.Variable> parameters = decl.getParameters();
 		for(int i=0;i!=parameters.size();++i) {
 			Decl.Variable parameter = parameters.get(i);
-			frame.putLocal(parameter.getName(), args[i]);
+			frame.putLocal(parameter, args[i]);
 		}
 	}
 
@@ -180,7 +346,7 @@ public class Interpreter {
 			Tuple<Decl.Variable> returns = decl.getReturns();
 			RValue[] values = new RValue[returns.size()];
 			for (int i = 0; i != values.length; ++i) {
-				values[i] = frame.getLocal(returns.get(i).getName());
+				values[i] = frame.getLocal(returns.get(i));
 			}
 			return values;
 		}
@@ -272,13 +438,14 @@ public class Interpreter {
 	}
 
 	private Status executeAssign(Stmt.Assign stmt, CallStack frame, EnclosingScope scope) {
-		// FIXME: handle multi-assignments properly
 		Tuple<WhileyFile.LVal> lhs = stmt.getLeftHandSide();
-		RValue[] rhs = executeExpressions(stmt.getRightHandSide(), frame);
-		for (int i = 0; i != lhs.size(); ++i) {
-			LValue lval = constructLVal(lhs.get(i), frame);
-			lval.write(frame, rhs[i]);
+		LValCode[] lvals = new LValCode[lhs.size()];
+		for (int i = 0; i != lvals.length; ++i) {
+			WhileyFile.LVal lval = lhs.get(i);
+			lvals[i] = f -> constructLVal(lval, f);
 		}
+		RValue[] rhs = executeExpressions(stmt.getRightHandSide(), frame);
+		assign(lvals, rhs, frame);
 		return Status.NEXT;
 	}
 
@@ -355,15 +522,7 @@ public class Interpreter {
 	 * @return
 	 */
 	private Status executeDebug(Stmt.Debug stmt, CallStack frame, EnclosingScope scope) {
-		//
-		// FIXME: need to do something with this
-		RValue.Array arr = executeExpression(ARRAY_T, stmt.getOperand(), frame);
-		for (RValue item : arr.getElements()) {
-			RValue.Int i = (RValue.Int) item;
-			char c = (char) i.intValue();
-			debug.print(c);
-		}
-		//
+		printDebug(executeExpression(ARRAY_T, stmt.getOperand(), frame));
 		return Status.NEXT;
 	}
 
@@ -378,24 +537,9 @@ public class Interpreter {
 	 * @return
 	 */
 	private Status executeDoWhile(Stmt.DoWhile stmt, CallStack frame, EnclosingScope scope) {
-		Status r = Status.NEXT;
-		while (r == Status.NEXT || r == Status.CONTINUE) {
-			r = executeBlock(stmt.getBody(), frame, scope);
-			if (r == Status.NEXT) {
-				RValue.Bool operand = executeExpression(BOOL_T, stmt.getCondition(), frame);
-				if (operand == RValue.False) {
-					return Status.NEXT;
-				}
-			}
-		}
-
-		// If we get here, then we have exited the loop body without falling
-		// through to the next bytecode.
-		if (r == Status.BREAK) {
-			return Status.NEXT;
-		} else {
-			return r;
-		}
+		Expr condition = stmt.getCondition();
+		return executeDoWhile(f -> executeExpression(ANY_T, condition, f), condition,
+				f -> executeBlock(stmt.getBody(), f, scope), frame);
 	}
 
 	/**
@@ -409,7 +553,7 @@ public class Interpreter {
 	 * @return
 	 */
 	private Status executeFail(Stmt.Fail stmt, CallStack frame, EnclosingScope scope) {
-		throw new AssertionError("Runtime fault occurred");
+		return fail();
 	}
 
 	/**
@@ -459,22 +603,9 @@ public class Interpreter {
 	 * @return
 	 */
 	private Status executeWhile(Stmt.While stmt, CallStack frame, EnclosingScope scope) {
-		Status r;
-		do {
-			RValue.Bool operand = executeExpression(BOOL_T, stmt.getCondition(), frame);
-			if (operand == RValue.False) {
-				return Status.NEXT;
-			}
-			// Keep executing the loop body until we exit it somehow.
-			r = executeBlock(stmt.getBody(), frame, scope);
-		} while (r == Status.NEXT || r == Status.CONTINUE);
-		// If we get here, then we have exited the loop body without falling
-		// through to the next bytecode.
-		if (r == Status.BREAK) {
-			return Status.NEXT;
-		} else {
-			return r;
-		}
+		Expr condition = stmt.getCondition();
+		return executeWhile(f -> executeExpression(ANY_T, condition, f), condition,
+				f -> executeBlock(stmt.getBody(), f, scope), frame);
 	}
 
 	/**
@@ -493,12 +624,7 @@ public class Interpreter {
 		// declaration. Therefore, the enclosing declaration is a function or
 		// method.
 		Decl.Callable context = scope.getEnclosingScope(FunctionOrMethodScope.class).getContext();
-		Tuple<Decl.Variable> returns = context.getReturns();
-		RValue[] values = executeExpressions(stmt.getReturns(), frame);
-		for (int i = 0; i != returns.size(); ++i) {
-			frame.putLocal(returns.get(i).getName(), values[i]);
-		}
-		return Status.RETURN;
+		return writeReturns(context, executeExpressions(stmt.getReturns(), frame), frame);
 	}
 
 	/**
@@ -535,15 +661,8 @@ public class Interpreter {
 			Stmt.Block body = c.getBlock();
 			if (c.isDefault()) {
 				return executeBlock(body, frame, scope);
-			} else {
-				// FIXME: this is a temporary hack until a proper notion of
-				// ConstantExpr is introduced.
-				RValue[] values = executeExpressions(c.getConditions(), frame);
-				for (RValue v : values) {
-					if (v.equals(value)) {
-						return executeBlock(body, frame, scope);
-					}
-				}
+			} else if (matchesCase(value, executeExpressions(c.getConditions(), frame))) {
+				return executeBlock(body, frame, scope);
 			}
 		}
 		return Status.NEXT;
@@ -563,7 +682,7 @@ public class Interpreter {
 		// We only need to do something if this has an initialiser
 		if(stmt.hasInitialiser()) {
 			RValue value = executeExpression(ANY_T, stmt.getInitialiser(), frame);
-			frame.putLocal(stmt.getName(),value);
+			frame.putLocal(stmt, value);
 		}
 		return Status.NEXT;
 	}
@@ -741,7 +860,20 @@ public class Interpreter {
 	 * @return
 	 */
 	private RValue executeConst(Expr.Constant expr, CallStack frame) {
-		Value v = expr.getValue();
+		return constant(expr.getValue(), expr);
+	}
+
+	/**
+	 * Construct the value of a given constant. Since array values can be
+	 * updated in place, a fresh value is constructed on each call.
+	 *
+	 * @param v
+	 *            --- The constant
+	 * @param context
+	 *            --- The expression in which the constant occurs
+	 * @return
+	 */
+	protected RValue constant(Value v, Expr context) {
 		switch (v.getOpcode()) {
 		case ITEM_null:
 			return RValue.Null;
@@ -768,12 +900,12 @@ public class Interpreter {
 			for (int i = 0; i != elements.length; ++i) {
 				// FIXME: something tells me this is wrong for signed byte
 				// values?
-				elements[i] = semantics.Int(BigInteger.valueOf(bytes[i]));
+				elements[i] = semantics.Int(bytes[i]);
 			}
 			return semantics.Array(elements);
 		}
 		default:
-			throw new RuntimeException("unknown value encountered (" + expr + ")");
+			throw new RuntimeException("unknown value encountered (" + context + ")");
 		}
 	}
 
@@ -810,43 +942,16 @@ public class Interpreter {
 	}
 
 	private RValue executeQuantifier(Expr.Quantifier expr, CallStack frame) {
-		boolean r = executeQuantifier(0, expr, frame);
-		boolean q = (expr instanceof Expr.UniversalQuantifier);
-		return r == q ? RValue.True : RValue.False;
-	}
-
-	/**
-	 * Execute one range of the quantifier, or the body if no ranges remain.
-	 *
-	 * @param index
-	 * @param expr
-	 * @param frame
-	 * @param context
-	 * @return
-	 */
-	private boolean executeQuantifier(int index, Expr.Quantifier expr, CallStack frame) {
 		Tuple<Decl.Variable> vars = expr.getParameters();
-		if (index == vars.size()) {
-			// This is the base case where we evaluate the condition itself.
-			RValue.Bool r = executeExpression(BOOL_T, expr.getOperand(), frame);
-			boolean q = (expr instanceof Expr.UniversalQuantifier);
-			// If this evaluates to true, then we will continue executing the
-			// quantifier.
-			return r.boolValue() == q;
-		} else {
-			Decl.Variable var = vars.get(index);
-			RValue.Array range = executeExpression(ARRAY_T, var.getInitialiser(), frame);
-			RValue[] elements = range.getElements();
-			for (int i = 0; i != elements.length; ++i) {
-				frame.putLocal(var.getName(), elements[i]);
-				boolean r = executeQuantifier(index + 1, expr, frame);
-				if (!r) {
-					// early termination
-					return r;
-				}
-			}
-			return true;
+		Decl.Variable[] variables = new Decl.Variable[vars.size()];
+		ExprCode[] ranges = new ExprCode[vars.size()];
+		for (int i = 0; i != variables.length; ++i) {
+			Expr range = vars.get(i).getInitialiser();
+			variables[i] = vars.get(i);
+			ranges[i] = f -> executeExpression(ANY_T, range, f);
 		}
+		Expr body = expr.getOperand();
+		return executeQuantifier(expr, variables, ranges, f -> executeExpression(ANY_T, body, f), frame);
 	}
 
 	/**
@@ -862,13 +967,11 @@ public class Interpreter {
 	 */
 	private RValue executeVariableAccess(Expr.VariableAccess expr, CallStack frame) {
 		Decl.Variable decl = expr.getVariableDeclaration();
-		return frame.getLocal(decl.getName());
+		return frame.getLocal(decl);
 	}
 
 	private RValue executeStaticVariableAccess(Expr.StaticVariableAccess expr, CallStack frame) throws ResolutionError {
-		Decl.StaticVariable decl = resolver.resolveExactly(expr.getName(), Decl.StaticVariable.class);
-		NameID nid = decl.getQualifiedName().toNameID();
-		return frame.getStatic(nid);
+		return frame.getStatic(getStaticName(expr));
 	}
 
 	private RValue executeIs(Expr.Is expr, CallStack frame) throws ResolutionError {
@@ -1051,15 +1154,7 @@ public class Interpreter {
 	public RValue executeArrayGenerator(Expr.ArrayGenerator expr, CallStack frame) {
 		RValue element = executeExpression(ANY_T, expr.getFirstOperand(), frame);
 		RValue.Int count = executeExpression(INT_T, expr.getSecondOperand(), frame);
-		int n = count.intValue();
-		if (n < 0) {
-			throw new AssertionError("negative array length");
-		}
-		RValue[] values = new RValue[n];
-		for (int i = 0; i != n; ++i) {
-			values[i] = element;
-		}
-		return semantics.Array(values);
+		return arrayGenerator(element, count);
 	}
 
 	public RValue executeArrayInitialiser(Expr.ArrayInitialiser expr, CallStack frame) {
@@ -1072,13 +1167,9 @@ public class Interpreter {
 	}
 
 	public RValue executeArrayRange(Expr.ArrayRange expr, CallStack frame) {
-		int start = executeExpression(INT_T, expr.getFirstOperand(), frame).intValue();
-		int end = executeExpression(INT_T, expr.getSecondOperand(), frame).intValue();
-		RValue[] elements = new RValue[end - start];
-		for (int i = start; i < end; ++i) {
-			elements[i - start] = semantics.Int(BigInteger.valueOf(i));
-		}
-		return semantics.Array(elements);
+		RValue.Int start = executeExpression(INT_T, expr.getFirstOperand(), frame);
+		RValue.Int end = executeExpression(INT_T, expr.getSecondOperand(), frame);
+		return arrayRange(start, end);
 	}
 
 	public RValue executeNew(Expr.New expr, CallStack frame) {
@@ -1123,19 +1214,10 @@ public class Interpreter {
 	 */
 	private RValue[] executeExpressions(Tuple<Expr> expressions, CallStack frame) {
 		RValue[][] results = new RValue[expressions.size()][];
-		int count = 0;
 		for(int i=0;i!=expressions.size();++i) {
 			results[i] = executeMultiReturnExpression(expressions.get(i),frame);
-			count += results[i].length;
 		}
-		RValue[] rs = new RValue[count];
-		int j = 0;
-		for(int i=0;i!=expressions.size();++i) {
-			Object[] r = results[i];
-			System.arraycopy(r, 0, rs, j, r.length);
-			j += r.length;
-		}
-		return rs;
+		return concatenate(results);
 	}
 
 	/**
@@ -1189,15 +1271,28 @@ public class Interpreter {
 	private RValue[] executeIndirectInvoke(Expr.IndirectInvoke expr, CallStack frame) {
 		RValue.Lambda src = executeExpression(LAMBDA_T, expr.getSource(),frame);
 		RValue[] arguments = executeExpressions(expr.getArguments(), frame);
+		return execute(src, arguments);
+	}
+
+	/**
+	 * Execute a given lambda with the given arguments.
+	 *
+	 * @param src
+	 *            The lambda to execute
+	 * @param arguments
+	 *            The supplied arguments
+	 * @return
+	 */
+	protected RValue[] execute(RValue.Lambda src, RValue... arguments) {
 		// Here we have to use the enclosing frame when the lambda was created.
 		// The reason for this is that the lambda may try to access enclosing
 		// variables in the scope it was created.
-		frame = src.getFrame();
+		CallStack frame = src.getFrame();
 		extractParameters(frame,arguments,src.getContext());
 		// Execute the method or function body
 		Stmt body = src.getBody();
 		if(body instanceof Stmt.Block) {
-			executeBlock((Stmt.Block) body, frame, new FunctionOrMethodScope(src.getContext()));
+			executeBody((Stmt.Block) body, src.getContext(), frame);
 			// Extra the return values
 			return packReturns(frame,src.getContext());
 		} else {
@@ -1221,12 +1316,48 @@ public class Interpreter {
 	 */
 	private RValue[] executeInvoke(Expr.Invoke expr, CallStack frame) throws ResolutionError {
 		// Resolve function or method being invoked to a concrete declaration
-		Decl.Callable decl = resolveExactly(expr.getName(), expr.getSignature(),
-				Decl.Callable.class);
+		CallSite target = getCallSite(expr);
 		// Evaluate argument expressions
 		RValue[] arguments = executeExpressions(expr.getOperands(), frame);
 		// Invoke the function or method in question
-		return execute(decl.getQualifiedName().toNameID(), decl.getType(), frame, arguments);
+		return execute(target, frame, arguments);
+	}
+
+	/**
+	 * Get the resolved target of a given invocation, resolving it if this has
+	 * not already been done.
+	 *
+	 * @param expr
+	 * @return
+	 * @throws ResolutionError
+	 */
+	protected CallSite getCallSite(Expr.Invoke expr) throws ResolutionError {
+		CallSite target = callSites.get(expr);
+		if (target == null) {
+			Decl.Callable decl = resolveExactly(expr.getName(), expr.getSignature(),
+					Decl.Callable.class);
+			target = new CallSite(decl, decl.getQualifiedName().toNameID().module());
+			callSites.put(expr, target);
+		}
+		return target;
+	}
+
+	/**
+	 * Get the qualified name of the static variable accessed by a given
+	 * expression, resolving it if this has not already been done.
+	 *
+	 * @param expr
+	 * @return
+	 * @throws ResolutionError
+	 */
+	protected NameID getStaticName(Expr.StaticVariableAccess expr) throws ResolutionError {
+		NameID nid = staticSites.get(expr);
+		if (nid == null) {
+			Decl.StaticVariable decl = resolver.resolveExactly(expr.getName(), Decl.StaticVariable.class);
+			nid = decl.getQualifiedName().toNameID();
+			staticSites.put(expr, nid);
+		}
+		return nid;
 	}
 
 	// =============================================================
@@ -1267,7 +1398,7 @@ public class Interpreter {
 		case EXPR_variablecopy: {
 			Expr.VariableAccess e = (Expr.VariableAccess) expr;
 			Decl.Variable decl = e.getVariableDeclaration();
-			return new LValue.Variable(decl.getName());
+			return new LValue.Variable(decl);
 		}
 		}
 		deadCode(expr);
@@ -1285,10 +1416,7 @@ public class Interpreter {
 	public void checkInvariants(CallStack frame, Tuple<Expr> invariants) {
 		for (int i = 0; i != invariants.size(); ++i) {
 			RValue.Bool b = executeExpression(BOOL_T, invariants.get(i), frame);
-			if (b == RValue.False) {
-				// FIXME: need to do more here
-				throw new AssertionError();
-			}
+			checkAssertion(b);
 		}
 	}
 
@@ -1303,13 +1431,316 @@ public class Interpreter {
 	public void checkInvariants(CallStack frame, Expr... invariants) {
 		for (int i = 0; i != invariants.length; ++i) {
 			RValue.Bool b = executeExpression(BOOL_T, invariants[i], frame);
-			if (b == RValue.False) {
-				// FIXME: need to do more here
-				throw new AssertionError();
+			checkAssertion(b);
+		}
+	}
+
+	// =============================================================
+	// Shared semantics
+	// =============================================================
+
+	// The following define those parts of the semantics which are shared by
+	// every execution engine, such that they are defined in one place only.
+	// Operands are supplied as values where they are always evaluated, and
+	// otherwise as code which evaluates them on demand (e.g. the condition and
+	// body of a loop).
+
+	/**
+	 * Executes a statement in a given frame.
+	 */
+	protected interface StmtCode {
+		public Status execute(CallStack frame);
+	}
+
+	/**
+	 * Evaluates an expression which produces exactly one value in a given
+	 * frame.
+	 */
+	protected interface ExprCode {
+		public RValue evaluate(CallStack frame);
+	}
+
+	/**
+	 * Evaluates an expression, or sequence of expressions, which produces zero
+	 * or more values in a given frame.
+	 */
+	protected interface MultiExprCode {
+		public RValue[] evaluate(CallStack frame);
+	}
+
+	/**
+	 * Constructs the "mutable" representation of an lval in a given frame.
+	 */
+	protected interface LValCode {
+		public LValue evaluate(CallStack frame);
+	}
+
+	/**
+	 * Assign the values produced by the right-hand side of an assignment to
+	 * its left-hand side.
+	 *
+	 * @param lhs
+	 *            --- The lvals being assigned
+	 * @param rhs
+	 *            --- The values being assigned
+	 * @param frame
+	 *            --- The current stack frame
+	 */
+	protected void assign(LValCode[] lhs, RValue[] rhs, CallStack frame) {
+		// FIXME: handle multi-assignments properly
+		for (int i = 0; i != lhs.length; ++i) {
+			lhs[i].evaluate(frame).write(frame, rhs[i]);
+		}
+	}
+
+	/**
+	 * Check the result of evaluating an assertion, assumption or invariant. If
+	 * this is false, raise an exception indicating a runtime fault.
+	 *
+	 * @param b
+	 */
+	protected void checkAssertion(RValue.Bool b) {
+		if (b == RValue.False) {
+			// FIXME: need to do more here
+			throw new AssertionError();
+		}
+	}
+
+	/**
+	 * Raise an exception indicating a runtime fault, as for a fail statement.
+	 *
+	 * @return
+	 */
+	protected Status fail() {
+		throw new AssertionError("Runtime fault occurred");
+	}
+
+	/**
+	 * Write a given string out to the debug stream.
+	 *
+	 * @param arr
+	 */
+	protected void printDebug(RValue.Array arr) {
+		// FIXME: need to do something with this
+		for (RValue item : arr.getElements()) {
+			RValue.Int i = (RValue.Int) item;
+			char c = (char) i.intValue();
+			debug.print(c);
+		}
+	}
+
+	/**
+	 * Execute a while loop, which executes its body zero or more times.
+	 *
+	 * @param condition
+	 *            --- Evaluates the loop condition
+	 * @param expr
+	 *            --- The loop condition
+	 * @param body
+	 *            --- Executes the loop body
+	 * @param frame
+	 *            --- The current stack frame
+	 * @return
+	 */
+	protected Status executeWhile(ExprCode condition, Expr expr, StmtCode body, CallStack frame) {
+		Status r;
+		do {
+			RValue.Bool operand = checkType(condition.evaluate(frame), expr, BOOL_T);
+			if (operand == RValue.False) {
+				return Status.NEXT;
 			}
+			// Keep executing the loop body until we exit it somehow.
+			r = body.execute(frame);
+		} while (r == Status.NEXT || r == Status.CONTINUE);
+		// If we get here, then we have exited the loop body without falling
+		// through to the next bytecode.
+		if (r == Status.BREAK) {
+			return Status.NEXT;
+		} else {
+			return r;
 		}
 	}
 
+	/**
+	 * Execute a do-while loop, which executes its body one or more times.
+	 *
+	 * @param condition
+	 *            --- Evaluates the loop condition
+	 * @param expr
+	 *            --- The loop condition
+	 * @param body
+	 *            --- Executes the loop body
+	 * @param frame
+	 *            --- The current stack frame
+	 * @return
+	 */
+	protected Status executeDoWhile(ExprCode condition, Expr expr, StmtCode body, CallStack frame) {
+		Status r = Status.NEXT;
+		while (r == Status.NEXT || r == Status.CONTINUE) {
+			r = body.execute(frame);
+			if (r == Status.NEXT) {
+				RValue.Bool operand = checkType(condition.evaluate(frame), expr, BOOL_T);
+				if (operand == RValue.False) {
+					return Status.NEXT;
+				}
+			}
+		}
+		// If we get here, then we have exited the loop body without falling
+		// through to the next bytecode.
+		if (r == Status.BREAK) {
+			return Status.NEXT;
+		} else {
+			return r;
+		}
+	}
+
+	/**
+	 * Store the values returned by a return statement in the frame of the
+	 * enclosing function, method or lambda.
+	 *
+	 * @param context
+	 *            --- The enclosing function, method or lambda
+	 * @param values
+	 *            --- The values returned
+	 * @param frame
+	 *            --- The current stack frame
+	 * @return
+	 */
+	protected Status writeReturns(Decl.Callable context, RValue[] values, CallStack frame) {
+		Tuple<Decl.Variable> returns = context.getReturns();
+		for (int i = 0; i != returns.size(); ++i) {
+			frame.putLocal(returns.get(i), values[i]);
+		}
+		return Status.RETURN;
+	}
+
+	/**
+	 * Determine whether the value of a switch condition matches the values of
+	 * a given case.
+	 *
+	 * @param value
+	 * @param conditions
+	 * @return
+	 */
+	protected static boolean matchesCase(Object value, RValue[] conditions) {
+		// FIXME: this is a temporary hack until a proper notion of
+		// ConstantExpr is introduced.
+		for (RValue v : conditions) {
+			if (v.equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Execute a universal or existential quantifier.
+	 *
+	 * @param expr
+	 *            --- The quantifier
+	 * @param variables
+	 *            --- The quantified variables
+	 * @param ranges
+	 *            --- Evaluates the range of each quantified variable
+	 * @param body
+	 *            --- Evaluates the body of the quantifier
+	 * @param frame
+	 *            --- The current stack frame
+	 * @return
+	 */
+	protected RValue executeQuantifier(Expr.Quantifier expr, Decl.Variable[] variables, ExprCode[] ranges,
+			ExprCode body, CallStack frame) {
+		boolean q = (expr instanceof Expr.UniversalQuantifier);
+		boolean r = executeQuantifier(0, expr, variables, ranges, body, q, frame);
+		return r == q ? RValue.True : RValue.False;
+	}
+
+	/**
+	 * Execute one range of the quantifier, or the body if no ranges remain.
+	 */
+	private boolean executeQuantifier(int index, Expr.Quantifier expr, Decl.Variable[] variables,
+			ExprCode[] ranges, ExprCode body, boolean q, CallStack frame) {
+		if (index == variables.length) {
+			// This is the base case where we evaluate the condition itself.
+			RValue.Bool r = checkType(body.evaluate(frame), expr.getOperand(), BOOL_T);
+			// If this evaluates to true, then we will continue executing the
+			// quantifier.
+			return r.boolValue() == q;
+		} else {
+			Decl.Variable var = variables[index];
+			RValue.Array range = checkType(ranges[index].evaluate(frame), var.getInitialiser(), ARRAY_T);
+			int length = range.length().intValue();
+			for (int i = 0; i != length; ++i) {
+				frame.putLocal(var, range.get(i));
+				boolean r = executeQuantifier(index + 1, expr, variables, ranges, body, q, frame);
+				if (!r) {
+					// early termination
+					return r;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Construct an array containing a given number of copies of an element.
+	 *
+	 * @param element
+	 * @param count
+	 * @return
+	 */
+	protected RValue arrayGenerator(RValue element, RValue.Int count) {
+		int n = count.intValue();
+		if (n < 0) {
+			throw new AssertionError("negative array length");
+		}
+		RValue[] values = new RValue[n];
+		for (int i = 0; i != n; ++i) {
+			values[i] = element;
+		}
+		return semantics.Array(values);
+	}
+
+	/**
+	 * Construct an array containing the integers from start (inclusive) to end
+	 * (exclusive).
+	 *
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	protected RValue arrayRange(RValue.Int start, RValue.Int end) {
+		int s = start.intValue();
+		int e = end.intValue();
+		RValue[] elements = new RValue[e - s];
+		for (int i = s; i < e; ++i) {
+			elements[i - s] = semantics.Int(i);
+		}
+		return semantics.Array(elements);
+	}
+
+	/**
+	 * Concatenate the values produced by a sequence of expressions, each of
+	 * which may produce zero or more values (e.g. invocations).
+	 *
+	 * @param results
+	 * @return
+	 */
+	protected static RValue[] concatenate(RValue[][] results) {
+		int count = 0;
+		for (int i = 0; i != results.length; ++i) {
+			count += results[i].length;
+		}
+		RValue[] rs = new RValue[count];
+		int j = 0;
+		for (int i = 0; i != results.length; ++i) {
+			RValue[] r = results[i];
+			System.arraycopy(r, 0, rs, j, r.length);
+			j += r.length;
+		}
+		return rs;
+	}
+
 	/**
 	 * Check that a given operand value matches an expected type.
 	 *
@@ -1360,46 +1791,50 @@ public class Interpreter {
 	 * @param context
 	 *            --- Context in which bytecodes are executed
 	 */
-	private <T> T deadCode(SyntacticElement element) {
+	protected static <T> T deadCode(SyntacticElement element) {
 		// FIXME: do more here
 		throw new RuntimeException("internal failure --- dead code reached");
 	}
 
-	private static final Class<RValue> ANY_T = RValue.class;
-	private static final Class<RValue.Bool> BOOL_T = RValue.Bool.class;
-	private static final Class<RValue.Byte> BYTE_T = RValue.Byte.class;
-	private static final Class<RValue.Int> INT_T = RValue.Int.class;
-	private static final Class<RValue.Reference> REF_T = RValue.Reference.class;
-	private static final Class<RValue.Array> ARRAY_T = RValue.Array.class;
-	private static final Class<RValue.Record> RECORD_T = RValue.Record.class;
-	private static final Class<RValue.Lambda> LAMBDA_T = RValue.Lambda.class;
+	protected static final Class<RValue> ANY_T = RValue.class;
+	protected static final Class<RValue.Bool> BOOL_T = RValue.Bool.class;
+	protected static final Class<RValue.Byte> BYTE_T = RValue.Byte.class;
+	protected static final Class<RValue.Int> INT_T = RValue.Int.class;
+	protected static final Class<RValue.Reference> REF_T = RValue.Reference.class;
+	protected static final Class<RValue.Array> ARRAY_T = RValue.Array.class;
+	protected static final Class<RValue.Record> RECORD_T = RValue.Record.class;
+	protected static final Class<RValue.Lambda> LAMBDA_T = RValue.Lambda.class;
 
 	public final class CallStack {
 		private final Set<Path.ID> modules;
 		private final Decl.Callable context;
-		private final Map<Identifier, RValue> locals;
+		private final Locals locals;
 		private final Map<NameID, RValue> globals;
 
 		public CallStack() {
-			this.locals = new HashMap<>();
+			this.locals = createLocals(null);
 			this.globals = new HashMap<>();
 			this.modules = new HashSet<>();
 			this.context = null;
 		}
 
 		private CallStack(CallStack parent, Decl.Callable context) {
+			this(parent, context, createLocals(context));
+		}
+
+		private CallStack(CallStack parent, Decl.Callable context, Locals locals) {
 			this.context = context;
-			this.locals = new HashMap<>();
+			this.locals = locals;
 			this.globals = parent.globals;
 			this.modules = parent.modules;
 		}
 
-		public RValue getLocal(Identifier name) {
-			return locals.get(name);
+		public RValue getLocal(Decl.Variable var) {
+			return locals.get(var);
 		}
 
-		public void putLocal(Identifier name, RValue value) {
-			locals.put(name, value);
+		public void putLocal(Decl.Variable var, RValue value) {
+			locals.put(var, value);
 		}
 
 		public RValue getStatic(NameID name) {
@@ -1417,15 +1852,25 @@ public class Interpreter {
 		}
 
 		public CallStack enter(Decl.Callable context) {
-			load(context.getQualifiedName().toNameID().module());
+			return enter(context, context.getQualifiedName().toNameID().module());
+		}
+
+		/**
+		 * Enter a given function, method or property whose enclosing module is
+		 * already known. This avoids the cost of determining it again.
+		 *
+		 * @param context
+		 * @param mid
+		 * @return
+		 */
+		private CallStack enter(Decl.Callable context, Path.ID mid) {
+			load(mid);
 			return new CallStack(this, context);
 		}
 
 		@Override
 		public CallStack clone() {
-			CallStack frame = new CallStack(this, this.context);
-			frame.locals.putAll(locals);
-			return frame;
+			return new CallStack(this, this.context, locals.clone());
 		}
 
 		/**
@@ -1441,23 +1886,157 @@ public class Interpreter {
 				// Otherwise, static initialisers it contains will force itself
 				// to be loaded.
 				modules.add(mid);
-				try {
-					WhileyFile module = resolver.load(mid).read();
-					for (WhileyFile.Decl d : module.getDeclarations()) {
-						if (d instanceof Decl.StaticVariable) {
-							Decl.StaticVariable decl = (Decl.StaticVariable) d;
-							RValue value = executeExpression(ANY_T, decl.getInitialiser(), this);
-							globals.put(new NameID(mid, decl.getName().toString()), value);
-						}
+				WhileyFile module = getModule(mid);
+				// NOTE: static initialisers are executed in a frame of their own,
+				// since any local variables they declare (e.g. within
+				// quantifiers) are not part of the current frame.
+				CallStack frame = new CallStack(this, null);
+				for (WhileyFile.Decl d : module.getDeclarations()) {
+					if (d instanceof Decl.StaticVariable) {
+						Decl.StaticVariable decl = (Decl.StaticVariable) d;
+						RValue value = executeExpression(ANY_T, decl.getInitialiser(), frame);
+						globals.put(new NameID(mid, decl.getName().toString()), value);
 					}
-					//
-				} catch (IOException e) {
-					throw new RuntimeException(e.getMessage(), e);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Represents the resolved target of an invocation.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	protected static final class CallSite {
+		private final Decl.Callable decl;
+		private final Path.ID module;
+
+		public CallSite(Decl.Callable decl, Path.ID module) {
+			this.decl = decl;
+			this.module = module;
+		}
+	}
+
+	/**
+	 * Create an empty set of local variables for a frame of a given function,
+	 * method or property according to the current frame model.
+	 *
+	 * @param context
+	 *            The callable for which the frame is being created, or
+	 *            <code>null</code> if there is none.
+	 * @return
+	 */
+	private Locals createLocals(Decl.Callable context) {
+		if (frameModel == FrameModel.NAMED) {
+			return new NamedLocals(new HashMap<>());
+		} else if (context == null) {
+			return new SlottedLocals(null, new RValue[0]);
+		} else {
+			FrameLayout layout = getFrameLayout(context.getHeap());
+			return new SlottedLocals(layout, new RValue[layout.getFrameSize(context)]);
+		}
+	}
+
+	/**
+	 * Represents the local variables stored in a given stack frame.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private interface Locals {
+		public RValue get(Decl.Variable var);
+
+		public void put(Decl.Variable var, RValue value);
+
+		public Locals clone();
+	}
+
+	/**
+	 * Stores local variables in a map from their names to their values. This is
+	 * used for the <code>NAMED</code> frame model.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class NamedLocals implements Locals {
+		private final HashMap<Identifier, RValue> values;
+
+		public NamedLocals(HashMap<Identifier, RValue> values) {
+			this.values = values;
+		}
+
+		@Override
+		public RValue get(Decl.Variable var) {
+			return values.get(var.getName());
+		}
+
+		@Override
+		public void put(Decl.Variable var, RValue value) {
+			values.put(var.getName(), value);
+		}
+
+		@Override
+		public Locals clone() {
+			return new NamedLocals(new HashMap<>(values));
+		}
+	}
+
+	/**
+	 * Stores local variables in an array, using the slots determined by the
+	 * frame layout of the enclosing WhileyFile. This is used for the
+	 * <code>SLOTTED</code> frame model. The array grows as necessary, since a
+	 * frame can (occasionally) be used to execute code from a different
+	 * declaration than it was created for (e.g. for lambda accesses or type
+	 * invariants).
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private final class SlottedLocals implements Locals {
+		private FrameLayout layout;
+		private RValue[] values;
+
+		public SlottedLocals(FrameLayout layout, RValue[] values) {
+			this.layout = layout;
+			this.values = values;
+		}
+
+		@Override
+		public RValue get(Decl.Variable var) {
+			int slot = getSlot(var);
+			return slot < values.length ? values[slot] : null;
+		}
+
+		@Override
+		public void put(Decl.Variable var, RValue value) {
+			int slot = getSlot(var);
+			if (slot >= values.length) {
+				values = Arrays.copyOf(values, slot + 1);
+			}
+			values[slot] = value;
+		}
+
+		@Override
+		public Locals clone() {
+			return new SlottedLocals(layout, Arrays.copyOf(values, values.length));
+		}
+
+		private int getSlot(Decl.Variable var) {
+			SyntacticHeap heap = var.getHeap();
+			if (layout == null || layout.getHeap() != heap) {
+				layout = getFrameLayout(heap);
+			}
+			int slot = layout.getSlot(var);
+			if (slot < 0) {
+				// Heap has grown since layout was constructed
+				layout = getFrameLayout(heap);
+				slot = layout.getSlot(var);
+			}
+			return slot;
+		}
+	}
+
 	/**
 	 * An enclosing scope captures the nested of declarations, blocks and other
 	 * staments (e.g. loops). It is used to store information associated with
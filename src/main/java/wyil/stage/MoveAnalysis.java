@@ -75,6 +75,10 @@ public class MoveAnalysis extends AbstractConsumer<Boolean> implements Build.Sta
 		visitWhileyFile(module,null);
 	}
 
+	public void apply(Decl decl) {
+		visitDeclaration(decl, null);
+	}
+
 	// ===========================================================================
 	// DECLARATIONS
 	// ===========================================================================
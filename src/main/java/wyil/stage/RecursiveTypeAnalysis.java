@@ -66,6 +66,10 @@ public class RecursiveTypeAnalysis extends AbstractConsumer<Set<Name>> implement
 		visitWhileyFile(module, new HashSet<>());
 	}
 
+	public void apply(Decl decl) {
+		visitDeclaration(decl, new HashSet<>());
+	}
+
 	// ===========================================================================
 	// DECLARATIONS
 	// ===========================================================================
@@ -39,6 +39,8 @@ import wyfs.util.Trie;
 import wyc.lang.WhileyFile;
 import wyc.task.Wyil2WyalBuilder;
 import wyc.util.AbstractConsumer;
+import wyc.util.Budget;
+import wyc.util.Profiler;
 
 import static wyc.lang.WhileyFile.*;
 
@@ -114,10 +116,28 @@ import static wyc.lang.WhileyFile.*;
 public class VerificationConditionGenerator {
 	private final NameResolver resolver;
 	private final WyalFile wyalFile;
+	private final Profiler profiler;
+	private final Budget budget;
 
 	public VerificationConditionGenerator(WyalFile wyalFile, NameResolver resolver) {
+		this(wyalFile, resolver, Profiler.NULL, Budget.UNLIMITED);
+	}
+
+	/**
+	 * Construct a generator which records the time spent translating each
+	 * declaration with a given profiler, and limits it to a given budget.
+	 *
+	 * @param wyalFile
+	 * @param resolver
+	 * @param profiler
+	 * @param budget
+	 */
+	public VerificationConditionGenerator(WyalFile wyalFile, NameResolver resolver, Profiler profiler,
+			Budget budget) {
 		this.resolver = resolver;
 		this.wyalFile = wyalFile;
+		this.profiler = profiler;
+		this.budget = budget;
 	}
 
 	// ===============================================================================
@@ -136,23 +156,31 @@ public class VerificationConditionGenerator {
 	 */
 	public WyalFile translate(WhileyFile wyilFile) {
 		for(WhileyFile.Decl decl : wyilFile.getDeclarations()) {
-			if(decl instanceof WhileyFile.Decl.Import) {
-				translateImportDeclaration((WhileyFile.Decl.Import) decl);
-			} else if (decl instanceof WhileyFile.Decl.StaticVariable) {
-				translateConstantDeclaration((WhileyFile.Decl.StaticVariable) decl);
-			} else if (decl instanceof WhileyFile.Decl.Type) {
-				translateTypeDeclaration((WhileyFile.Decl.Type) decl);
-			} else if (decl instanceof WhileyFile.Decl.Property) {
-				translatePropertyDeclaration((WhileyFile.Decl.Property) decl);
-			} else if (decl instanceof WhileyFile.Decl.FunctionOrMethod) {
-				WhileyFile.Decl.FunctionOrMethod method = (WhileyFile.Decl.FunctionOrMethod) decl;
-				translateFunctionOrMethodDeclaration(method);
+			Profiler.Timer t = profiler.start();
+			budget.apply(wyilFile, decl, () -> translate(decl));
+			if (profiler.isEnabled() && decl instanceof WhileyFile.Decl.Named) {
+				profiler.record("vcg", wyilFile.getEntry().id(), Profiler.describe((WhileyFile.Decl.Named) decl), t);
 			}
 		}
 
 		return wyalFile;
 	}
 
+	private void translate(WhileyFile.Decl decl) {
+		if(decl instanceof WhileyFile.Decl.Import) {
+			translateImportDeclaration((WhileyFile.Decl.Import) decl);
+		} else if (decl instanceof WhileyFile.Decl.StaticVariable) {
+			translateConstantDeclaration((WhileyFile.Decl.StaticVariable) decl);
+		} else if (decl instanceof WhileyFile.Decl.Type) {
+			translateTypeDeclaration((WhileyFile.Decl.Type) decl);
+		} else if (decl instanceof WhileyFile.Decl.Property) {
+			translatePropertyDeclaration((WhileyFile.Decl.Property) decl);
+		} else if (decl instanceof WhileyFile.Decl.FunctionOrMethod) {
+			WhileyFile.Decl.FunctionOrMethod method = (WhileyFile.Decl.FunctionOrMethod) decl;
+			translateFunctionOrMethodDeclaration(method);
+		}
+	}
+
 	private void translateImportDeclaration(WhileyFile.Decl.Import decl) {
 		WyalFile.Declaration.Import imprt = new WyalFile.Declaration.Import(decl.getPath().toArray(Identifier.class));
 		allocate(imprt, getSpan(decl));
@@ -429,7 +457,7 @@ public class VerificationConditionGenerator {
 
 	@SuppressWarnings("unchecked")
 	private Context translateStatement(WhileyFile.Stmt stmt, Context context) {
-		//
+		Budget.check();
 		try {
 			switch (stmt.getOpcode()) {
 			case WhileyFile.STMT_assert:
@@ -474,7 +502,7 @@ public class VerificationConditionGenerator {
 				throw new InternalFailure("unknown statement encountered (" + stmt + ")",
 						((WhileyFile) stmt.getHeap()).getEntry(), stmt);
 			}
-		} catch (InternalFailure e) {
+		} catch (InternalFailure | Budget.Exceeded e) {
 			throw e;
 		} catch (Throwable e) {
 			throw new InternalFailure(e.getMessage(), ((WhileyFile) stmt.getHeap()).getEntry(), stmt, e);
@@ -1285,7 +1313,7 @@ public class VerificationConditionGenerator {
 				break;
 			}
 			return context;
-		} catch (InternalFailure e) {
+		} catch (InternalFailure | Budget.Exceeded e) {
 			throw e;
 		} catch (Throwable e) {
 			throw new InternalFailure(e.getMessage(), ((WhileyFile) expr.getHeap()).getEntry(), expr, e);
@@ -1462,7 +1490,7 @@ public class VerificationConditionGenerator {
 			default:
 				throw new RuntimeException("Deadcode reached (" + expr.getClass().getName() +")");
 			}
-		} catch (InternalFailure e) {
+		} catch (InternalFailure | Budget.Exceeded e) {
 			throw e;
 		} catch (Throwable e) {
 			throw new InternalFailure(e.getMessage(), ((WhileyFile) expr.getHeap()).getEntry(), expr, e);
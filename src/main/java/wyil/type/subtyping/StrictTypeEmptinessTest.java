@@ -25,6 +25,7 @@ import wybs.lang.NameID;
 import wybs.lang.NameResolver;
 import wybs.lang.NameResolver.ResolutionError;
 import wyc.lang.WhileyFile;
+import wyc.util.Budget;
 
 import static wyc.lang.WhileyFile.*;
 import static wyc.lang.WhileyFile.Name;
@@ -198,7 +199,9 @@ public class StrictTypeEmptinessTest implements EmptinessTest<SemanticType> {
 
 	protected boolean isVoidTerm(Term<?> lhs, Term<?> rhs, BinaryRelation<Term<?>> assumptions, LifetimeRelation lifetimes)
 			throws ResolutionError {
-		//
+		// NOTE: the number of terms explored can be exponential in the size of
+		// the types involved.
+		Budget.check();
 		if (assumptions.get(lhs, rhs)) {
 			// This represents the "coinductive" case. That is, we have
 			// encountered a pair of recursive types whose "voidness" depends
@@ -0,0 +1,300 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyil.type.subtyping;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import wybs.lang.NameResolver.ResolutionError;
+import wybs.lang.SyntacticHeap;
+import wybs.lang.SyntacticItem;
+import wybs.util.AbstractCompilationUnit.Ref;
+import wyc.lang.WhileyFile.SemanticType;
+import wyc.lang.WhileyFile.Type;
+import wyil.type.subtyping.EmptinessTest.LifetimeRelation;
+
+/**
+ * <p>
+ * A bounded cache of emptiness queries, as used by the
+ * <code>SubtypeOperator</code> to answer repeated subtype and void queries
+ * without rerunning the emptiness test. Queries are keyed structurally on the
+ * types involved. However, two complications arise:
+ * </p>
+ * <ul>
+ * <li><b>Nominal Types.</b> The meaning of a nominal type depends upon the
+ * module in which its name occurs. For example, <code>T</code> in one module
+ * may be an entirely different type from <code>T</code> in another. Therefore,
+ * the heap of every nominal name in a query forms part of its key.</li>
+ * <li><b>Lifetimes.</b> The result of a query may depend on the within
+ * relation between lifetimes, but only when references are encountered. Rather
+ * than making the relation part of the key, every <code>isWithin</code> query
+ * asked during the emptiness test is recorded alongside the result. A cached
+ * result is then only reused when the given relation gives the same answers
+ * to those queries.</li>
+ * </ul>
+ * <p>
+ * When the cache is full the least recently used entry is evicted. All
+ * operations are thread safe, so a single cache can be shared across compiler
+ * passes running concurrently.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public class SubtypeCache {
+	/**
+	 * The default maximum number of entries held in a cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 65536;
+
+	private final LinkedHashMap<Key, Entry> entries;
+	private long hits;
+	private long misses;
+
+	public SubtypeCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public SubtypeCache(final int capacity) {
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Determine whether the intersection of two types is void using a given
+	 * emptiness test, reusing a previously computed result where possible.
+	 *
+	 * @param test
+	 *            The emptiness test used to answer the query on a cache miss.
+	 * @param lhs
+	 * @param lhsState
+	 * @param rhs
+	 * @param rhsState
+	 * @param lifetimes
+	 * @return
+	 * @throws ResolutionError
+	 */
+	public boolean isVoid(EmptinessTest<SemanticType> test, SemanticType lhs, EmptinessTest.State lhsState,
+			SemanticType rhs, EmptinessTest.State rhsState, LifetimeRelation lifetimes) throws ResolutionError {
+		Key key = new Key(lhs, lhsState, rhs, rhsState);
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry != null && entry.isValid(lifetimes)) {
+			synchronized (this) {
+				hits = hits + 1;
+			}
+			return entry.result;
+		}
+		// NOTE: the emptiness test is run outside of the lock, since it can be
+		// expensive and may itself resolve names.
+		RecordingLifetimeRelation recorder = new RecordingLifetimeRelation(lifetimes);
+		boolean result = test.isVoid(lhs, lhsState, rhs, rhsState, recorder);
+		synchronized (this) {
+			misses = misses + 1;
+			entries.put(key, new Entry(result, recorder));
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of queries answered from this cache.
+	 *
+	 * @return
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of queries which could not be answered from this cache.
+	 *
+	 * @return
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Remove all entries from this cache and reset its counters.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "{hits=" + hits + ", misses=" + misses + ", size=" + entries.size() + "}";
+	}
+
+	/**
+	 * Identifies a given query using the structure of its types, along with the
+	 * heaps of any nominal names they contain.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class Key {
+		private final SemanticType lhs;
+		private final SemanticType rhs;
+		private final boolean lhsSign;
+		private final boolean lhsMaximise;
+		private final boolean rhsSign;
+		private final boolean rhsMaximise;
+		private final SyntacticHeap[] contexts;
+		private final int hashCode;
+
+		public Key(SemanticType lhs, EmptinessTest.State lhsState, SemanticType rhs, EmptinessTest.State rhsState) {
+			this.lhs = lhs;
+			this.rhs = rhs;
+			this.lhsSign = lhsState.sign;
+			this.lhsMaximise = lhsState.maximise;
+			this.rhsSign = rhsState.sign;
+			this.rhsMaximise = rhsState.maximise;
+			ArrayList<SyntacticHeap> heaps = new ArrayList<>();
+			extractContexts(lhs, heaps);
+			extractContexts(rhs, heaps);
+			this.contexts = heaps.toArray(new SyntacticHeap[heaps.size()]);
+			this.hashCode = lhs.hashCode() ^ (31 * rhs.hashCode()) ^ (lhsSign ? 1 : 0) ^ (rhsSign ? 2 : 0)
+					^ (lhsMaximise ? 4 : 0) ^ (rhsMaximise ? 8 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				if (hashCode != k.hashCode || lhsSign != k.lhsSign || lhsMaximise != k.lhsMaximise
+						|| rhsSign != k.rhsSign || rhsMaximise != k.rhsMaximise
+						|| contexts.length != k.contexts.length) {
+					return false;
+				}
+				for (int i = 0; i != contexts.length; ++i) {
+					if (contexts[i] != k.contexts[i]) {
+						return false;
+					}
+				}
+				return lhs.equals(k.lhs) && rhs.equals(k.rhs);
+			}
+			return false;
+		}
+
+		/**
+		 * Extract the heap of every nominal name occurring within a given item, in
+		 * the order they are encountered.
+		 *
+		 * @param item
+		 * @param heaps
+		 */
+		private static void extractContexts(SyntacticItem item, ArrayList<SyntacticHeap> heaps) {
+			if (item instanceof Type.Nominal) {
+				heaps.add(((Type.Nominal) item).getName().getHeap());
+			} else if (item instanceof Ref) {
+				// NOTE: references are compared by identity, and represent back links
+				// within the type itself. Hence, there is nothing to extract here.
+			} else {
+				for (int i = 0; i != item.size(); ++i) {
+					SyntacticItem child = item.get(i);
+					if (child != null) {
+						extractContexts(child, heaps);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The result of a given query, along with the lifetime queries on which it
+	 * depends.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class Entry {
+		private final boolean result;
+		private final String[] inners;
+		private final String[] outers;
+		private final boolean[] answers;
+
+		public Entry(boolean result, RecordingLifetimeRelation recorder) {
+			int n = recorder.answers.size();
+			this.result = result;
+			this.inners = recorder.inners.toArray(new String[n]);
+			this.outers = recorder.outers.toArray(new String[n]);
+			this.answers = new boolean[n];
+			for (int i = 0; i != n; ++i) {
+				answers[i] = recorder.answers.get(i);
+			}
+		}
+
+		/**
+		 * Check whether this entry remains valid for a given lifetime relation.
+		 * That is, whether or not the relation gives the same answers as the one
+		 * used to compute this entry.
+		 *
+		 * @param lifetimes
+		 * @return
+		 */
+		public boolean isValid(LifetimeRelation lifetimes) {
+			for (int i = 0; i != answers.length; ++i) {
+				if (lifetimes.isWithin(inners[i], outers[i]) != answers[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A lifetime relation which records every query made of it.
+	 *
+	 * @author David J. Pearce
+	 *
+	 */
+	private static final class RecordingLifetimeRelation implements LifetimeRelation {
+		private final LifetimeRelation lifetimes;
+		private final ArrayList<String> inners = new ArrayList<>();
+		private final ArrayList<String> outers = new ArrayList<>();
+		private final ArrayList<Boolean> answers = new ArrayList<>();
+
+		public RecordingLifetimeRelation(LifetimeRelation lifetimes) {
+			this.lifetimes = lifetimes;
+		}
+
+		@Override
+		public boolean isWithin(String inner, String outer) {
+			boolean answer = lifetimes.isWithin(inner, outer);
+			inners.add(inner);
+			outers.add(outer);
+			answers.add(answer);
+			return answer;
+		}
+	}
+}
@@ -40,14 +40,39 @@ import wyil.type.subtyping.EmptinessTest.LifetimeRelation;
 public class SubtypeOperator {
 	private final NameResolver resolver;
 	private final EmptinessTest<SemanticType> emptinessTest;
+	private final SubtypeCache cache;
 
 	enum Result {
 		True, False, Unknown
 	}
 
 	public SubtypeOperator(NameResolver resolver, EmptinessTest<SemanticType> emptinessTest) {
+		this(resolver, emptinessTest, new SubtypeCache());
+	}
+
+	/**
+	 * Construct a subtype operator which records the results of its queries in
+	 * a given cache. This allows results to be shared between operators using
+	 * the same emptiness test (e.g. across different compiler passes).
+	 *
+	 * @param resolver
+	 * @param emptinessTest
+	 * @param cache
+	 */
+	public SubtypeOperator(NameResolver resolver, EmptinessTest<SemanticType> emptinessTest, SubtypeCache cache) {
 		this.resolver = resolver;
 		this.emptinessTest = emptinessTest;
+		this.cache = cache;
+	}
+
+	/**
+	 * Get the cache used by this operator for recording the results of its
+	 * queries.
+	 *
+	 * @return
+	 */
+	public SubtypeCache getCache() {
+		return cache;
 	}
 
 	/**
@@ -96,13 +121,14 @@ public class SubtypeOperator {
 	 *             corresponding type declaration.
 	 */
 	public boolean isSubtype(SemanticType lhs, SemanticType rhs, LifetimeRelation lifetimes) throws ResolutionError {
-		boolean max = emptinessTest.isVoid(lhs, EmptinessTest.NegativeMax, rhs, EmptinessTest.PositiveMax, lifetimes);
+		boolean max = cache.isVoid(emptinessTest, lhs, EmptinessTest.NegativeMax, rhs, EmptinessTest.PositiveMax,
+				lifetimes);
 		//
 		// FIXME: I don't think this logic is correct yet for some reason.
 		if (!max) {
 			return false;
 		} else {
-			boolean min = emptinessTest.isVoid(lhs, EmptinessTest.NegativeMin, rhs, EmptinessTest.PositiveMin,
+			boolean min = cache.isVoid(emptinessTest, lhs, EmptinessTest.NegativeMin, rhs, EmptinessTest.PositiveMin,
 					lifetimes);
 			if (min) {
 				return true;
@@ -145,7 +171,8 @@ public class SubtypeOperator {
 	 * @throws ResolutionError
 	 */
 	public boolean isVoid(SemanticType type, LifetimeRelation lifetimes) throws ResolutionError {
-		return emptinessTest.isVoid(type, EmptinessTest.PositiveMax, type, EmptinessTest.PositiveMax, lifetimes);
+		return cache.isVoid(emptinessTest, type, EmptinessTest.PositiveMax, type, EmptinessTest.PositiveMax,
+				lifetimes);
 	}
 
 	/**
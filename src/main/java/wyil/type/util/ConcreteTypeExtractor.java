@@ -67,7 +67,10 @@ public class ConcreteTypeExtractor implements BiFunction<SemanticType, LifetimeR
 	private final TypeSubtractor subtractor;
 
 	public ConcreteTypeExtractor(NameResolver resolver, EmptinessTest<SemanticType> emptiness) {
-		SubtypeOperator op = new SubtypeOperator(resolver, emptiness);
+		this(resolver, new SubtypeOperator(resolver, emptiness));
+	}
+
+	public ConcreteTypeExtractor(NameResolver resolver, SubtypeOperator op) {
 		this.intersector = new TypeIntersector(resolver, op);
 		this.subtractor = new TypeSubtractor(resolver, op);
 	}
@@ -13,10 +13,13 @@
 // limitations under the License.
 package wyc.testing;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -29,13 +32,15 @@ import org.junit.runners.Parameterized.Parameters;
 import wyc.util.TestUtils;
 import wycc.util.Pair;
 import wyfs.util.Trie;
+import wyil.interpreter.Interpreter;
 
 /**
  * Run through all valid test cases with verification enabled. Since every test
  * file is valid, a successful test occurs when the compiler succeeds and, when
- * executed, the compiled file produces the expected output. Note that an
- * internal failure does not count as a valid pass, and indicates the test
- * exposed some kind of compiler bug.
+ * executed, the compiled file produces the expected output. Each compiled file
+ * is executed under every engine, and all must produce the same output. Note
+ * that an internal failure does not count as a valid pass, and indicates the
+ * test exposed some kind of compiler bug.
  *
  * @author David J. Pearce
  *
@@ -141,8 +146,35 @@ public class AllValidTest {
 		if (!r) {
 			fail("Test failed to compile!");
 		}
-		// Execute the compile WyIL file
-		TestUtils.execWyil(whileySrcDir, Trie.fromString(testName));
+		// Execute the compiled WyIL file under every engine, and check they
+		// produce the same output.
+		String expected = null;
+		for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+			String output = execWyil(whileySrcDir, testName, engine);
+			if (expected == null) {
+				expected = output;
+			} else {
+				assertEquals("Engine " + engine + " produced different output", expected, output);
+			}
+		}
+		System.out.print(expected);
+	}
+
+	/**
+	 * Execute a compiled test case using a given engine, and return the output
+	 * it produces.
+	 *
+	 * @param whileySrcDir
+	 * @param testName
+	 * @param engine
+	 * @return
+	 * @throws IOException
+	 */
+	private static String execWyil(File whileySrcDir, String testName, Interpreter.Engine engine)
+			throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		TestUtils.execWyil(whileySrcDir, Trie.fromString(testName), engine, new PrintStream(output));
+		return output.toString();
 	}
 
 	// ======================================================================
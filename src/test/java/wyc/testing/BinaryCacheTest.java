@@ -0,0 +1,145 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import static wyc.testing.CompileTestUtils.MODULE_A;
+import static wyc.testing.CompileTestUtils.MODULE_B;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wyc.task.CompileTask;
+import wyc.util.BinaryCache;
+import wyc.util.Profiler;
+import wyfs.util.DirectoryRoot;
+
+/**
+ * Check that modules are restored from a binary cache by a clean build, rather
+ * than compiled, unless the interfaces they depend upon have changed.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class BinaryCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File srcdir;
+	private File cachedir;
+
+	@Before
+	public void setup() throws IOException {
+		srcdir = folder.newFolder("src");
+		cachedir = folder.newFolder("cache");
+		write("A", MODULE_A);
+		write("B", MODULE_B);
+		assertEquals(set("A", "B"), cleanBuild());
+	}
+
+	@Test
+	public void test_01() throws IOException {
+		// Nothing changed
+		assertEquals(set(), cleanBuild());
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// Body of dependency changed, hence dependent restored
+		write("B", MODULE_B.replace("x + 1", "x + 2"));
+		assertEquals(set("B"), cleanBuild());
+		assertEquals(set(), cleanBuild());
+		// Original contents are still cached
+		write("B", MODULE_B);
+		assertEquals(set(), cleanBuild());
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// Signature of dependency changed, hence dependent not restored
+		write("B", MODULE_B.replace("(int y)", "(int y)\nensures y > x"));
+		assertEquals(set("A", "B"), cleanBuild());
+		assertEquals(set(), cleanBuild());
+	}
+
+	@Test
+	public void test_04() throws IOException {
+		// Dependent compiled against a restored dependency
+		write("A", "// comment\n" + MODULE_A);
+		assertEquals(set("A"), cleanBuild());
+	}
+
+	@Test
+	public void test_05() throws IOException {
+		// Module with the same source as another is not restored from its entry
+		write("C", MODULE_B);
+		assertEquals(set("C"), cleanBuild("A", "B", "C"));
+		assertEquals(set(), cleanBuild("A", "B", "C"));
+	}
+
+	@Test
+	public void test_06() {
+		// Compiler run from a directory of class files is fingerprinted
+		String version = BinaryCache.getCompilerVersion();
+		assertTrue(version, version.matches(".*:[0-9a-f]+"));
+		assertEquals(version, BinaryCache.getCompilerVersion());
+	}
+
+	/**
+	 * Build the given modules (by default, <code>A</code> and <code>B</code>)
+	 * into an empty target directory, using a new compile task and the binary
+	 * cache.
+	 *
+	 * @return The modules which were parsed, rather than restored.
+	 * @throws IOException
+	 */
+	private Set<String> cleanBuild(String... names) throws IOException {
+		if (names.length == 0) {
+			names = new String[] { "A", "B" };
+		}
+		DirectoryRoot source = CompileTestUtils.createRoot(srcdir);
+		DirectoryRoot target = CompileTestUtils.createRoot(folder.newFolder());
+		CompileTask task = CompileTestUtils.createCompileTask(source, target);
+		Profiler profiler = new Profiler();
+		task.setProfiler(profiler);
+		task.setBinaryCache(new BinaryCache(cachedir, "test"));
+		assertEquals(names.length, CompileTestUtils.build(task, source, target, names).size());
+		target.flush();
+		for (String name : names) {
+			assertTrue(new File(target.location(), name + ".wyil").exists());
+		}
+		HashSet<String> parsed = new HashSet<>();
+		for (Profiler.Sample s : profiler.getSamples()) {
+			if (s.getKind().equals("file") && s.getPhase().equals("parse")) {
+				parsed.add(s.getFile());
+			}
+		}
+		return parsed;
+	}
+
+	private void write(String name, String contents) throws IOException {
+		CompileTestUtils.writeSource(srcdir, name, contents);
+	}
+
+	private static Set<String> set(String... names) {
+		return new HashSet<>(Arrays.asList(names));
+	}
+}
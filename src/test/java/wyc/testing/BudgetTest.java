@@ -0,0 +1,145 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.SyntaxError;
+import wybs.util.StdBuildGraph;
+import wyc.lang.WhileyFile;
+import wyc.lang.WhileyFile.Decl;
+import wyc.task.CompileTask;
+import wyc.task.Wyil2WyalBuilder;
+import wyc.util.Budget;
+import wyc.util.Profiler;
+import wycc.util.Pair;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Check that the time spent on each declaration is reported, and that a
+ * declaration which exceeds its budget is reported as an error rather than
+ * compiled indefinitely.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class BudgetTest {
+	private static final String A = "type nat is (int x) where x >= 0\n\n"
+			+ "public function f(nat x) -> (nat y):\n    return x + 1\n\n"
+			+ "public function g(int x) -> (int y):\n    return x\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DirectoryRoot root;
+
+	@Before
+	public void setup() throws IOException {
+		CompileTestUtils.writeSource(folder.getRoot(), "A", A);
+		root = CompileTestUtils.createRoot(folder.getRoot());
+	}
+
+	@Test
+	public void test_01() throws IOException {
+		// Work which never completes is stopped once over budget
+		WhileyFile file = root.get(Trie.fromString("A"), WhileyFile.ContentType).read();
+		Decl.Named decl = (Decl.Named) file.getDeclarations().get(1);
+		try {
+			new Budget(10).apply(file, decl, () -> {
+				while (true) {
+					Budget.check();
+				}
+			});
+			fail("expected budget to be exceeded");
+		} catch (SyntaxError e) {
+			assertEquals("compilation budget exceeded (10ms)", e.getMessage());
+			assertEquals(decl.getName(), e.getElement());
+		}
+		// No budget applies outside of work being budgeted
+		for (int i = 0; i != 1000; ++i) {
+			Budget.check();
+		}
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// Every declaration is reported, along with each phase it went through
+		Profiler profiler = new Profiler();
+		CompileTask task = CompileTestUtils.createCompileTask(root);
+		task.setProfiler(profiler);
+		task.setBudget(new Budget(60000));
+		assertEquals(1, CompileTestUtils.build(task, root, root, "A").size());
+		List<Profiler.Total> slowest = profiler.getSlowest(10);
+		assertEquals(3, slowest.size());
+		for (int i = 0; i != slowest.size(); ++i) {
+			Profiler.Total t = slowest.get(i);
+			assertEquals("A", t.getFile());
+			assertEquals(t.getWallTime(), t.getWallTime("type") + t.getWallTime("check"));
+			if (i > 0) {
+				assertTrue(slowest.get(i - 1).getWallTime() >= t.getWallTime());
+			}
+		}
+		assertEquals(1, profiler.getSlowest(1).size());
+		StringWriter writer = new StringWriter();
+		profiler.writeSlowest(writer, 2);
+		String[] lines = writer.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].contains("type(ms)"));
+		assertTrue(lines[0].contains("check(ms)"));
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// Generating verification conditions is stopped once over budget
+		StringBuilder contents = new StringBuilder("public function h(int x) -> (int y):\n");
+		for (int i = 0; i != 1024; ++i) {
+			contents.append("    x = x + 1\n");
+		}
+		contents.append("    return x\n");
+		CompileTestUtils.writeSource(folder.getRoot(), "B", contents.toString());
+		root.refresh();
+		CompileTask task = CompileTestUtils.createCompileTask(root);
+		assertEquals(1, CompileTestUtils.build(task, root, root, "B").size());
+		Path.Entry<WhileyFile> binary = root.get(Trie.fromString("B"), WhileyFile.BinaryContentType);
+		ArrayList<Pair<Path.Entry<?>, Path.Root>> delta = new ArrayList<>();
+		delta.add(new Pair<>(binary, root));
+		Wyil2WyalBuilder builder = new Wyil2WyalBuilder(task.project());
+		builder.setBudget(new Budget(1));
+		try {
+			builder.build(delta, new StdBuildGraph());
+			fail("expected budget to be exceeded");
+		} catch (SyntaxError e) {
+			assertEquals("compilation budget exceeded (1ms)", e.getMessage());
+			assertEquals("h", e.getElement().toString());
+		}
+		// Time spent generating verification conditions is reported
+		Profiler profiler = new Profiler();
+		builder.setBudget(Budget.UNLIMITED);
+		builder.setProfiler(profiler);
+		assertEquals(1, builder.build(delta, new StdBuildGraph()).size());
+		assertEquals(1, profiler.getSlowest(10).size());
+		assertEquals("B", profiler.getSlowest(1).get(0).getFile());
+		assertTrue(profiler.getSlowest(1).get(0).getWallTime("vcg") > 0);
+	}
+}
@@ -0,0 +1,99 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import static wyc.testing.CompileTestUtils.MODULE_A;
+import static wyc.testing.CompileTestUtils.MODULE_B;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wyc.util.CompileServer;
+
+/**
+ * Check that a compile server responds to requests, and that successive builds
+ * recompile only what has changed.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class CompileServerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File srcdir;
+	private CompileServer server;
+
+	@Before
+	public void setup() throws IOException {
+		srcdir = folder.newFolder("src");
+		server = new CompileServer(srcdir, folder.newFolder("bin"));
+		server.getTask().setParallelism(1);
+		write("A", MODULE_A);
+		write("B", MODULE_B);
+	}
+
+	@Test
+	public void test_01() throws IOException {
+		String[] lines = serve("build\nbuild\nstats\nshutdown\nbuild\n");
+		assertEquals(5, lines.length);
+		assertTrue(lines[0].startsWith("ok rebuilt 2 file(s)"));
+		assertTrue(lines[1].startsWith("ok rebuilt 0 file(s)"));
+		assertTrue(lines[2].startsWith("builds 2, rebuilt 2 file(s)"));
+		assertEquals("ok", lines[3]);
+		assertEquals("ok", lines[4]);
+		assertTrue(new File(folder.getRoot(), "bin/A.wyil").exists());
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// Changes and new files are picked up between requests
+		assertTrue(serve("build")[0].startsWith("ok rebuilt 2 file(s)"));
+		write("B", MODULE_B.replace("x + 1", "x + 2"));
+		write("C", MODULE_B);
+		assertTrue(serve("build")[0].startsWith("ok rebuilt 2 file(s)"));
+		assertTrue(serve("build C")[0].startsWith("ok rebuilt 0 file(s)"));
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// Errors are reported without stopping the server
+		write("B", MODULE_B.replace("x + 1", "x + true"));
+		String[] lines = serve("build");
+		assertEquals("failed", lines[lines.length - 1]);
+		write("B", MODULE_B);
+		assertTrue(serve("build")[0].startsWith("ok rebuilt 2 file(s)"));
+		assertEquals("failed: unknown module: D", serve("build D")[0]);
+		assertEquals("failed: unknown request \"frobnicate\"", serve("frobnicate")[0]);
+	}
+
+	private String[] serve(String requests) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		server.serve(new BufferedReader(new StringReader(requests)), new PrintStream(output, true));
+		return output.toString().split("\n");
+	}
+
+	private void write(String name, String contents) throws IOException {
+		CompileTestUtils.writeSource(srcdir, name, contents);
+	}
+}
@@ -0,0 +1,128 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+
+import wybs.util.StdBuildGraph;
+import wybs.util.StdProject;
+import wyc.lang.WhileyFile;
+import wyc.task.CompileTask;
+import wycc.util.Pair;
+import wyfs.lang.Content;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Fixtures shared by the tests which compile small projects using a compile
+ * task directly, rather than through the build rules used by the test suites.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class CompileTestUtils {
+	/**
+	 * A simple default registry which knows about whiley files and wyil files.
+	 */
+	private static final Content.Registry registry = new wyc.Activator.Registry();
+
+	/**
+	 * A module which imports a function from {@link #MODULE_B}. Together, these
+	 * are used for testing which modules are rebuilt as either changes.
+	 */
+	public static final String MODULE_A = "import f from B\n\npublic function g(int x) -> (int y):\n    return f(x)\n";
+	public static final String MODULE_B = "public function f(int x) -> (int y):\n    return x + 1\n";
+
+	/**
+	 * Construct the source of the <code>i</code>th of <code>n</code> modules
+	 * <code>M0</code> ... <code>M(n-1)</code>, each of which imports the next.
+	 * Thus, no module can be type checked until its successor has been parsed.
+	 *
+	 * @param i
+	 * @param n
+	 * @param body
+	 *            The argument passed to the next module's function (or
+	 *            returned, by the last module).
+	 * @return
+	 */
+	public static String chainedModule(int i, int n, String body) {
+		String imports = i + 1 < n ? "import f" + (i + 1) + " from M" + (i + 1) + "\n\n" : "";
+		String call = i + 1 < n ? "f" + (i + 1) + "(" + body + ")" : body;
+		return imports + "public function f" + i + "(int x) -> (int y):\n    return " + call + "\n";
+	}
+
+	/**
+	 * Write a Whiley source file with the given contents into a directory.
+	 *
+	 * @param dir
+	 * @param name
+	 *            The name of the module, without suffix.
+	 * @param contents
+	 * @throws IOException
+	 */
+	public static void writeSource(File dir, String name, String contents) throws IOException {
+		try (FileWriter writer = new FileWriter(new File(dir, name + ".whiley"))) {
+			writer.write(contents);
+		}
+	}
+
+	/**
+	 * Construct a root for a directory containing Whiley source files and/or
+	 * WyIL files.
+	 *
+	 * @param dir
+	 * @return
+	 * @throws IOException
+	 */
+	public static DirectoryRoot createRoot(File dir) throws IOException {
+		return new DirectoryRoot(dir, registry);
+	}
+
+	/**
+	 * Construct a compile task for a project consisting of the given roots.
+	 *
+	 * @param roots
+	 * @return
+	 */
+	public static CompileTask createCompileTask(Path.Root... roots) {
+		return new CompileTask(new StdProject(Arrays.asList(roots)));
+	}
+
+	/**
+	 * Compile the given modules from a source root into a target root using a
+	 * given compile task, without adding any build rules.
+	 *
+	 * @param task
+	 * @param source
+	 * @param target
+	 * @param names
+	 *            The names of the modules to compile.
+	 * @return The binaries generated.
+	 * @throws IOException
+	 */
+	public static Set<Path.Entry<?>> build(CompileTask task, Path.Root source, Path.Root target, String... names)
+			throws IOException {
+		ArrayList<Pair<Path.Entry<?>, Path.Root>> delta = new ArrayList<>();
+		for (String name : names) {
+			delta.add(new Pair<>(source.get(Trie.fromString(name), WhileyFile.ContentType), target));
+		}
+		return task.build(delta, new StdBuildGraph());
+	}
+}
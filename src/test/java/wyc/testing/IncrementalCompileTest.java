@@ -0,0 +1,124 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import static wyc.testing.CompileTestUtils.MODULE_A;
+import static wyc.testing.CompileTestUtils.MODULE_B;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wyc.task.CompileTask;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+
+/**
+ * Check that repeated builds using the same compile task rebuild only those
+ * modules affected by the changes made since the previous build.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class IncrementalCompileTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DirectoryRoot root;
+	private CompileTask task;
+
+	@Before
+	public void setup() throws IOException {
+		write("A", MODULE_A);
+		write("B", MODULE_B);
+		root = CompileTestUtils.createRoot(folder.getRoot());
+		task = CompileTestUtils.createCompileTask(root);
+		assertEquals(set("A", "B"), build());
+	}
+
+	@Test
+	public void test_01() throws IOException {
+		// Nothing changed
+		assertEquals(set(), build());
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// Body of dependency changed
+		write("B", MODULE_B.replace("x + 1", "x + 2"));
+		assertEquals(set("B"), build());
+		assertEquals(set(), build());
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// Signature of dependency changed
+		write("B", MODULE_B.replace("(int y)", "(int y)\nensures y > x"));
+		assertEquals(set("A", "B"), build());
+		assertEquals(set(), build());
+	}
+
+	@Test
+	public void test_04() throws IOException {
+		// Dependent changed
+		write("A", "// comment\n" + MODULE_A);
+		assertEquals(set("A"), build());
+	}
+
+	@Test
+	public void test_05() throws IOException {
+		// Signature of dependency changed whilst dependent not rebuilt
+		write("B", MODULE_B.replace("int x", "int z").replace("x + 1", "z + 1"));
+		assertEquals(set("B"), build("B"));
+		assertEquals(set("A"), build());
+	}
+
+	@Test
+	public void test_06() throws IOException {
+		// Signature of indirect dependency changed
+		write("C", "public type U is int\n");
+		write("D", "import U from C\n\npublic type T is U\n");
+		write("E", "import T from D\n\npublic function h(T x) -> (int y):\n    return x\n");
+		root.refresh();
+		assertEquals(set("C", "D", "E"), build("C", "D", "E"));
+		write("C", "public type U is (int x) where x >= 0\n");
+		assertEquals(set("C", "D", "E"), build("C", "D", "E"));
+		assertEquals(set(), build("C", "D", "E"));
+	}
+
+	private Set<String> build(String... names) throws IOException {
+		if (names.length == 0) {
+			names = new String[] { "A", "B" };
+		}
+		HashSet<String> rebuilt = new HashSet<>();
+		for (Path.Entry<?> e : CompileTestUtils.build(task, root, root, names)) {
+			rebuilt.add(e.id().toString());
+		}
+		return rebuilt;
+	}
+
+	private void write(String name, String contents) throws IOException {
+		CompileTestUtils.writeSource(folder.getRoot(), name, contents);
+	}
+
+	private static Set<String> set(String... names) {
+		return new HashSet<>(Arrays.asList(names));
+	}
+}
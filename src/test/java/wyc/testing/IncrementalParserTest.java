@@ -0,0 +1,211 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.SyntacticItem;
+import wybs.lang.SyntaxError;
+import wyc.Activator;
+import wyc.io.IncrementalParser;
+import wyc.io.WhileyFileLexer;
+import wyc.io.WhileyFileLexer.PackedTokens;
+import wyc.io.WhileyFileParser;
+import wyc.lang.WhileyFile;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Check that lexing and parsing a file incrementally after each edit gives
+ * the same tokens, file and syntax errors as doing so from scratch, whilst
+ * parsing only the declarations affected by each edit.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class IncrementalParserTest {
+	private static final String SOURCE = "import std::ascii\n\n"
+			+ "type nat is (int x) where x >= 0\n\n"
+			+ "// increment\n"
+			+ "public function f(nat x) -> (nat y):\n    int z = x + 1\n    return z\n\n"
+			+ "/* a constant */\nint LIMIT = 10\n\n"
+			+ "method g(&int p):\n    *p = f(LIMIT)\n\n"
+			+ "function h(int[] xs) -> (bool r):\n    return |xs| <= 2\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path.Entry<WhileyFile> entry;
+
+	@Before
+	public void setup() throws IOException {
+		DirectoryRoot root = new DirectoryRoot(folder.getRoot(), new Activator.Registry());
+		entry = root.create(Trie.fromString("A"), WhileyFile.ContentType);
+	}
+
+	@Test
+	public void test_01() {
+		// An edit within a declaration only affects that declaration
+		IncrementalParser parser = new IncrementalParser(entry, SOURCE);
+		WhileyFile before = parser.getFile();
+		int size = before.getDeclarations().size();
+		assertEquals(size, parser.getParsed());
+		WhileyFile after = parser.edit(SOURCE.indexOf("x + 1") + 4, 1, "100");
+		assertNotSame(before, after);
+		assertEquals(1, parser.getParsed());
+		check(parser);
+		// The file before the edit is unchanged
+		compare(parse(SOURCE).getModule(), before.getModule());
+		// Adding a declaration only affects that preceding it
+		after = parser.edit(parser.getText().indexOf("method g"), 0, "function k() -> (int r):\n    return 0\n\n");
+		check(parser);
+		assertEquals(size + 1, after.getDeclarations().size());
+		assertEquals(2, parser.getParsed());
+	}
+
+	@Test
+	public void test_02() {
+		// Edits giving syntax errors are reported as they would be otherwise
+		IncrementalParser parser = new IncrementalParser(entry, SOURCE);
+		parser.getFile();
+		String[] edits = { "int z = x", "int z = (x", "return z", "return z z", "/* a", "/* a */ */ ", "\n\n", "\n    \n" };
+		for (int i = 0; i < edits.length; i += 2) {
+			int offset = parser.getText().indexOf(edits[i]);
+			String expected = error(parser.getText().substring(0, offset) + edits[i + 1]
+					+ parser.getText().substring(offset + edits[i].length()));
+			try {
+				parser.edit(offset, edits[i].length(), edits[i + 1]);
+				assertNull(expected);
+			} catch (SyntaxError e) {
+				assertEquals(expected, describe(e));
+			}
+			// Undoing the edit recovers
+			parser.edit(offset, edits[i + 1].length(), edits[i]);
+			check(parser);
+		}
+	}
+
+	@Test
+	public void test_03() {
+		// Random edits give the same tokens and file as from scratch
+		Random random = new Random(1);
+		String[] insertions = { "x", " ", "\n", "1", "(", ")", "/*", "*/", "//", "\"", "=", "<", ">", "function",
+				"\nint N = 1\n", "\nfunction q():\n    skip\n", "    " };
+		IncrementalParser parser = new IncrementalParser(entry, SOURCE);
+		for (int i = 0; i != 500; ++i) {
+			int offset = random.nextInt(SOURCE.length() + 1);
+			int removed = Math.min(random.nextInt(4), SOURCE.length() - offset);
+			String inserted = random.nextBoolean() ? insertions[random.nextInt(insertions.length)] : "";
+			String expected = error(SOURCE.substring(0, offset) + inserted + SOURCE.substring(offset + removed));
+			try {
+				parser.edit(offset, removed, inserted);
+				assertNull(expected);
+				check(parser);
+			} catch (SyntaxError e) {
+				assertEquals(expected, describe(e));
+			}
+			// Undoing the edit recovers
+			parser.edit(offset, inserted.length(), SOURCE.substring(offset, offset + removed));
+			assertEquals(SOURCE, parser.getText());
+			check(parser);
+		}
+	}
+
+	@Test
+	public void test_04() {
+		// Edits which do not change the length of the text affect the
+		// declaration containing them
+		String[] edits = { "x + 1", "x + 7", "nat x)", "int x)", "x >= 0", "x >= 1", "|xs| <= 2", "|xs| >= 2",
+				"f(LIMIT)", "h(LIMIT)", "LIMIT = 10", "LIMIT = 11", "h(int[]", "q(int[]" };
+		IncrementalParser parser = new IncrementalParser(entry, SOURCE);
+		parser.getFile();
+		for (int i = 0; i < edits.length; i += 2) {
+			int offset = parser.getText().indexOf(edits[i]);
+			parser.edit(offset, edits[i].length(), edits[i + 1]);
+			assertEquals(edits[i], 1, parser.getParsed());
+			check(parser);
+		}
+	}
+
+	/**
+	 * Check the tokens and file of a parser are the same as would be obtained
+	 * from scratch.
+	 *
+	 * @param parser
+	 */
+	private void check(IncrementalParser parser) {
+		PackedTokens expected = new WhileyFileLexer(parser.getText()).scanPacked();
+		PackedTokens actual = parser.getTokens();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i != expected.size(); ++i) {
+			assertEquals(expected.getKind(i), actual.getKind(i));
+			assertEquals(expected.getStart(i), actual.getStart(i));
+			assertEquals(expected.getEnd(i), actual.getEnd(i));
+		}
+		WhileyFile file = new WhileyFileParser(new WhileyFile(entry), expected).read();
+		compare(file.getModule(), parser.getFile().getModule());
+	}
+
+	private WhileyFile parse(String text) {
+		return new WhileyFileParser(new WhileyFile(entry), new WhileyFileLexer(entry, CharBuffer.wrap(text))
+				.scanPacked()).read();
+	}
+
+	private String error(String text) {
+		try {
+			parse(text);
+			return null;
+		} catch (SyntaxError e) {
+			return describe(e);
+		}
+	}
+
+	private static String describe(SyntaxError e) {
+		// NOTE: the element may be at a different index in each file
+		SyntacticItem element = e.getElement();
+		if (element != null && element.getHeap() != null) {
+			element = element.getHeap().getParent(element, WhileyFile.Attribute.Span.class);
+		}
+		return e.getMessage() + "@" + span(element);
+	}
+
+	private static void compare(SyntacticItem expected, SyntacticItem actual) {
+		if (expected == null || actual == null) {
+			assertSame(expected, actual);
+			return;
+		}
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getOpcode(), actual.getOpcode());
+		assertArrayEquals(expected.getData(), actual.getData());
+		assertEquals(span(expected.getHeap().getParent(expected, WhileyFile.Attribute.Span.class)),
+				span(actual.getHeap().getParent(actual, WhileyFile.Attribute.Span.class)));
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i != expected.size(); ++i) {
+			compare(expected.get(i), actual.get(i));
+		}
+	}
+
+	private static String span(SyntacticItem item) {
+		WhileyFile.Attribute.Span span = (WhileyFile.Attribute.Span) item;
+		return span == null ? null : span.getStart() + ":" + span.getEnd();
+	}
+}
@@ -0,0 +1,157 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.SyntacticItem;
+import wybs.util.AbstractCompilationUnit.Identifier;
+import wyc.lang.WhileyFile;
+import wyc.task.CompileTask;
+import wyc.util.Interner;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Check that equal identifiers are interned as the same encoding, including
+ * when interned concurrently, and that the identifiers of parsed files share
+ * their encodings across files.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class InternerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() {
+		Interner interner = new Interner();
+		char[] chars = "xyzxyz".toCharArray();
+		byte[] bytes = interner.intern(chars, 0, 3);
+		assertArrayEquals("xyz".getBytes(), bytes);
+		assertSame(bytes, interner.intern(chars, 3, 6));
+		assertSame(bytes, interner.intern(new String("xyz")));
+		assertEquals(1, interner.size());
+		assertEquals(2, interner.getDuplicates());
+		// Each duplicate saves an array of three bytes
+		assertEquals(2 * 24, interner.getBytesSaved());
+		// Empty and non-ASCII identifiers are interned too
+		assertSame(interner.intern(chars, 1, 1), interner.intern(""));
+		char[] other = "\u03b1\u03b2x\u03b1\u03b2".toCharArray();
+		assertSame(interner.intern(other, 0, 2), interner.intern("\u03b1\u03b2"));
+		assertNotSame(interner.intern(other, 0, 2), interner.intern(other, 1, 3));
+		interner.clear();
+		assertEquals(0, interner.size());
+		assertEquals(0, interner.getDuplicates());
+	}
+
+	@Test
+	public void test_02() throws Exception {
+		// Many threads interning overlapping identifiers agree on every
+		// encoding
+		Interner interner = new Interner();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<byte[][]>> results = new ArrayList<>();
+			for (int t = 0; t != 4; ++t) {
+				results.add(pool.submit(() -> {
+					byte[][] encodings = new byte[10000][];
+					for (int i = 0; i != encodings.length; ++i) {
+						char[] chars = ("s" + i).toCharArray();
+						encodings[i] = interner.intern(chars, 0, chars.length);
+					}
+					return encodings;
+				}));
+			}
+			byte[][] first = results.get(0).get();
+			for (Future<byte[][]> result : results) {
+				byte[][] encodings = result.get();
+				for (int i = 0; i != encodings.length; ++i) {
+					assertArrayEquals(("s" + i).getBytes(), encodings[i]);
+					assertSame(first[i], encodings[i]);
+				}
+			}
+			assertEquals(10000, interner.size());
+			assertEquals(30000, interner.getDuplicates());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// The identifiers retained by parsed files share their encodings
+		// across files, but nothing is shared without a table
+		CompileTestUtils.writeSource(folder.getRoot(), "A", "function count(int xs) -> (int r):\n    return xs\n");
+		CompileTestUtils.writeSource(folder.getRoot(), "B", "function xs(int count) -> (int r):\n    return count\n");
+		DirectoryRoot root = CompileTestUtils.createRoot(folder.getRoot());
+		Interner interner = new Interner();
+		WhileyFile a = parse(root, "A", interner);
+		WhileyFile b = parse(root, "B", interner);
+		for (String name : new String[] { "count", "xs", "r" }) {
+			byte[] bytes = interner.intern(name);
+			assertSame(bytes, getData(a, name));
+			assertSame(bytes, getData(b, name));
+		}
+		a = parse(root, "A", null);
+		b = parse(root, "B", null);
+		assertNotSame(getData(a, "count"), getData(b, "count"));
+	}
+
+	@Test
+	public void test_04() throws IOException {
+		// The table is cleared between builds
+		CompileTestUtils.writeSource(folder.getRoot(), "A", "function f(int x) -> (int y):\n    return x\n");
+		DirectoryRoot root = CompileTestUtils.createRoot(folder.getRoot());
+		CompileTask task = CompileTestUtils.createCompileTask(root);
+		assertEquals(1, CompileTestUtils.build(task, root, root, "A").size());
+		assertEquals(0, task.getInterner().size());
+		assertEquals(0, task.getInterner().getDuplicates());
+	}
+
+	private static WhileyFile parse(DirectoryRoot root, String name, Interner interner) throws IOException {
+		return WhileyFile.parse(root.get(Trie.fromString(name), WhileyFile.ContentType), interner, null);
+	}
+
+	/**
+	 * Get the encoding held by every identifier with a given name in a file,
+	 * or <code>null</code> if these do not all hold the same encoding.
+	 */
+	private static byte[] getData(WhileyFile file, String name) {
+		byte[] bytes = null;
+		for (int i = 0; i != file.size(); ++i) {
+			SyntacticItem item = file.getSyntacticItem(i);
+			if (item instanceof Identifier && ((Identifier) item).get().equals(name)) {
+				if (bytes != null && bytes != item.getData()) {
+					return null;
+				}
+				bytes = item.getData();
+			}
+		}
+		assertNotNull("no identifier " + name, bytes);
+		return bytes;
+	}
+}
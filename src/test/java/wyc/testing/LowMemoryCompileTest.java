@@ -0,0 +1,141 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.SyntaxError;
+import wyc.task.CompileTask;
+import wyfs.util.DirectoryRoot;
+
+/**
+ * Check that compiling in low-memory mode writes out each module as it is
+ * compiled, such that compiled modules are not retained in memory, and
+ * otherwise behaves as normal.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class LowMemoryCompileTest {
+	private static final int N = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DirectoryRoot root;
+	private CompileTask task;
+
+	@Before
+	public void setup() throws IOException {
+		root = CompileTestUtils.createRoot(folder.getRoot());
+		task = CompileTestUtils.createCompileTask(root);
+		task.setLowMemory(true);
+	}
+
+	@Test
+	public void test_01() throws IOException {
+		// Each module imports the next, hence must be reread after release
+		for (int i = 0; i != N; ++i) {
+			write("M" + i, module(i, "x + 1"));
+		}
+		assertEquals(N, build());
+		// Binaries written without the root being flushed
+		for (int i = 0; i != N; ++i) {
+			assertTrue(new File(folder.getRoot(), "M" + i + ".wyil").exists());
+		}
+		assertEquals(0, build());
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		for (int i = 0; i != N; ++i) {
+			write("M" + i, module(i, i == N / 2 ? "x + true" : "x + 1"));
+		}
+		try {
+			build();
+			fail("expected type error");
+		} catch (SyntaxError e) {
+			assertEquals("M" + (N / 2), e.getEntry().id().toString());
+		}
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// Compiled modules are not retained after the build
+		long normal = retained(false);
+		long low = retained(true);
+		assertTrue("normal " + normal + " bytes, low-memory " + low + " bytes", low < normal / 2);
+	}
+
+	/**
+	 * Determine the heap retained by a project and compile task after
+	 * building modules with many declarations.
+	 *
+	 * @param lowMemory
+	 * @return
+	 * @throws IOException
+	 */
+	private long retained(boolean lowMemory) throws IOException {
+		File dir = folder.newFolder();
+		String[] names = new String[N];
+		for (int i = 0; i != N; ++i) {
+			StringBuilder contents = new StringBuilder(module(i, "x + 1"));
+			for (int j = 0; j != 32; ++j) {
+				contents.append("\nfunction g" + j + "(int[] xs, int x) -> (int r)\nrequires x >= 0 && x < |xs|:\n"
+						+ "    int i = 0\n    while i < x where i >= 0:\n        i = i + xs[i]\n    return i\n");
+			}
+			names[i] = "M" + i;
+			CompileTestUtils.writeSource(dir, names[i], contents.toString());
+		}
+		DirectoryRoot root = CompileTestUtils.createRoot(dir);
+		CompileTask task = CompileTestUtils.createCompileTask(root);
+		task.setLowMemory(lowMemory);
+		long before = getUsedHeap();
+		assertEquals(N, CompileTestUtils.build(task, root, root, names).size());
+		long after = getUsedHeap();
+		// Ensure the project and task remain reachable until measured
+		assertTrue(task.project().getRoots().contains(root));
+		return after - before;
+	}
+
+	private static long getUsedHeap() {
+		for (int i = 0; i != 4; ++i) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static String module(int i, String body) {
+		return CompileTestUtils.chainedModule(i, N, body);
+	}
+
+	private int build() throws IOException {
+		String[] names = new String[N];
+		for (int i = 0; i != N; ++i) {
+			names[i] = "M" + i;
+		}
+		return CompileTestUtils.build(task, root, root, names).size();
+	}
+
+	private void write(String name, String contents) throws IOException {
+		CompileTestUtils.writeSource(folder.getRoot(), name, contents);
+	}
+}
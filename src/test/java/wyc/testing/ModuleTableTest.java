@@ -0,0 +1,113 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import static wyc.testing.CompileTestUtils.MODULE_A;
+import static wyc.testing.CompileTestUtils.MODULE_B;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.util.StdProject;
+import wyc.lang.WhileyFile;
+import wyc.task.CompileTask;
+import wyc.util.ModuleTable;
+import wyc.util.TestUtils;
+import wyc.util.WhileyFileResolver;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Check that the table of modules for a project finds every module in its
+ * roots, including modules written after the table was constructed which have
+ * been invalidated since.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class ModuleTableTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() throws IOException {
+		write("A", MODULE_A);
+		write("B", MODULE_B);
+		assertTrue(TestUtils.compile(folder.getRoot(), false, "A", "B").first());
+		DirectoryRoot root = CompileTestUtils.createRoot(folder.getRoot());
+		StdProject project = new StdProject(Arrays.asList(root));
+		ModuleTable table = new ModuleTable(project);
+		assertEquals(2, table.size());
+		Path.ID a = Trie.fromString("A");
+		assertSame(root.get(a, WhileyFile.BinaryContentType), table.get(a));
+		assertNull(table.get(Trie.fromString("C")));
+		// A module written without being invalidated is not found until the
+		// table is refreshed
+		Path.ID c = Trie.fromString("C");
+		Path.Entry<WhileyFile> entry = root.create(c, WhileyFile.BinaryContentType);
+		assertNull(table.get(c));
+		table.invalidate(c);
+		assertSame(entry, table.get(c));
+		table.refresh();
+		assertSame(entry, table.get(c));
+		assertEquals(3, table.size());
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// A module added after the table was constructed is found when
+		// compiled, since compiling it invalidates it
+		write("B", MODULE_B);
+		DirectoryRoot root = CompileTestUtils.createRoot(folder.getRoot());
+		CompileTask task = CompileTestUtils.createCompileTask(root);
+		ModuleTable table = ((WhileyFileResolver) task.getNameResolver()).getModuleTable();
+		assertEquals(1, CompileTestUtils.build(task, root, root, "B").size());
+		root.flush();
+		Path.ID a = Trie.fromString("A");
+		assertNull(table.get(a));
+		write("A", MODULE_A);
+		root.refresh();
+		assertEquals(1, CompileTestUtils.build(task, root, root, "A").size());
+		assertSame(root.get(a, WhileyFile.BinaryContentType), table.get(a));
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// A module removed from disk is not found once the task is refreshed
+		write("A", MODULE_A);
+		write("B", MODULE_B);
+		assertTrue(TestUtils.compile(folder.getRoot(), false, "A", "B").first());
+		DirectoryRoot root = CompileTestUtils.createRoot(folder.getRoot());
+		CompileTask task = CompileTestUtils.createCompileTask(root);
+		ModuleTable table = ((WhileyFileResolver) task.getNameResolver()).getModuleTable();
+		Path.ID a = Trie.fromString("A");
+		assertNotNull(table.get(a));
+		assertTrue(new File(folder.getRoot(), "A.wyil").delete());
+		root.refresh();
+		task.refresh();
+		assertNull(table.get(a));
+		assertEquals(1, table.size());
+	}
+
+	private void write(String name, String contents) throws IOException {
+		CompileTestUtils.writeSource(folder.getRoot(), name, contents);
+	}
+}
@@ -0,0 +1,144 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.SyntacticItem;
+import wybs.lang.SyntaxError;
+import wyc.Activator;
+import wyc.io.WhileyFileLexer;
+import wyc.io.WhileyFileParser;
+import wyc.lang.WhileyFile;
+import wyfs.lang.Path;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Check that parsing a large file in chunks produces exactly the same file as
+ * parsing it sequentially, and reports the same syntax errors.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class ParallelParseTest {
+	private static final int N = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() throws IOException {
+		Path.Entry<WhileyFile> entry = write(generate(-1));
+		WhileyFile expected = parse(entry, 1);
+		WhileyFile actual = parse(entry, 4);
+		assertEquals(3 * N + 2, actual.getDeclarations().size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i != expected.size(); ++i) {
+			SyntacticItem e = expected.getSyntacticItem(i);
+			SyntacticItem a = actual.getSyntacticItem(i);
+			assertEquals(e.getClass(), a.getClass());
+			assertEquals(e.getOpcode(), a.getOpcode());
+			assertArrayEquals(e.getData(), a.getData());
+			assertEquals(e.size(), a.size());
+			for (int j = 0; j != e.size(); ++j) {
+				assertEquals(index(e.get(j)), index(a.get(j)));
+			}
+		}
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// The first error is reported, even when it is not in the first chunk
+		Path.Entry<WhileyFile> entry = write(generate(N / 2));
+		String expected = null;
+		for (int parallelism : new int[] { 1, 4 }) {
+			try {
+				parse(entry, parallelism);
+				fail("expected syntax error");
+			} catch (SyntaxError e) {
+				String actual = e.getMessage() + "@" + e.getElement();
+				assertTrue(expected == null || expected.equals(actual));
+				expected = actual;
+			}
+		}
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// Chunks are parsed in the pool given, even when not parsing from
+		// within it
+		Path.Entry<WhileyFile> entry = write(generate(-1));
+		AtomicInteger threads = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(4, p -> {
+			threads.incrementAndGet();
+			return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+		}, null, false);
+		try {
+			assertEquals(3 * N + 2, parse(entry, pool).getDeclarations().size());
+			assertTrue(threads.get() > 0);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static String generate(int error) {
+		StringBuilder source = new StringBuilder("import std::ascii\n\nint LIMIT = 10\n\n");
+		for (int i = 0; i != N; ++i) {
+			source.append("type T" + i + " is (int x) where x >= " + i + "\n\n");
+			source.append("// function f" + i + "\n");
+			source.append("public function f" + i + "(T" + i + " x) -> (int y)\nensures y > x:\n");
+			source.append("    int z = x + " + (i == error ? ") " : "") + "1\n    return z\n\n");
+			source.append("method m" + i + "(&int p):\n    *p = f" + i + "(" + i + ")\n\n");
+		}
+		return source.toString();
+	}
+
+	private static int index(SyntacticItem item) {
+		return item == null ? -1 : item.getIndex();
+	}
+
+	private Path.Entry<WhileyFile> write(String contents) throws IOException {
+		try (FileWriter writer = new FileWriter(new File(folder.getRoot(), "Large.whiley"))) {
+			writer.write(contents);
+		}
+		DirectoryRoot root = new DirectoryRoot(folder.getRoot(), new Activator.Registry());
+		return root.get(Trie.fromString("Large"), WhileyFile.ContentType);
+	}
+
+	private static WhileyFile parse(Path.Entry<WhileyFile> entry, int parallelism) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return parse(entry, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static WhileyFile parse(Path.Entry<WhileyFile> entry, ForkJoinPool pool) throws IOException {
+		WhileyFileParser parser = new WhileyFileParser(new WhileyFile(entry),
+				new WhileyFileLexer(entry).scanPacked());
+		parser.setPool(pool);
+		return parser.read();
+	}
+}
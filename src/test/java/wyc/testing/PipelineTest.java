@@ -0,0 +1,100 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.SyntaxError;
+import wyc.task.CompileTask;
+import wycc.util.Logger;
+import wyfs.util.DirectoryRoot;
+
+/**
+ * Check that overlapping parsing with type checking produces the same results
+ * as parsing every file before type checking any, regardless of the order in
+ * which files depend upon each other.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class PipelineTest {
+	private static final int N = 16;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() throws IOException {
+		// Each module imports the next, hence none can be checked until its
+		// successor has been parsed.
+		for (int i = 0; i != N; ++i) {
+			write("M" + i, module(i, "x + 1"));
+		}
+		ArrayList<String> messages = new ArrayList<>();
+		for (int workers : new int[] { 1, 4 }) {
+			messages.clear();
+			assertEquals(N, build(workers, messages));
+			assertTrue(messages.stream().anyMatch(m -> m.startsWith("Pipeline: parse occupancy")));
+		}
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// A syntax error takes precedence over a type error in an earlier file
+		for (int i = 0; i != N; ++i) {
+			write("M" + i, module(i, i == 0 ? "x + true" : "x + 1"));
+		}
+		write("M" + (N - 1), "function f(int x) -> (int y)\n    return x\n");
+		for (int workers : new int[] { 1, 4 }) {
+			try {
+				build(workers, new ArrayList<>());
+				fail("expected syntax error");
+			} catch (SyntaxError e) {
+				assertEquals("M" + (N - 1), e.getEntry().id().toString());
+			}
+		}
+	}
+
+	private static String module(int i, String body) {
+		return CompileTestUtils.chainedModule(i, N, body);
+	}
+
+	private int build(int workers, List<String> messages) throws IOException {
+		DirectoryRoot root = CompileTestUtils.createRoot(folder.getRoot());
+		CompileTask task = CompileTestUtils.createCompileTask(root);
+		task.setParallelism(workers);
+		task.setLogger(new Logger() {
+			@Override
+			public void logTimedMessage(String msg, long time, long memory) {
+				messages.add(msg);
+			}
+		});
+		String[] names = new String[N];
+		for (int i = 0; i != N; ++i) {
+			names[i] = "M" + i;
+		}
+		return CompileTestUtils.build(task, root, root, names).size();
+	}
+
+	private void write(String name, String contents) throws IOException {
+		CompileTestUtils.writeSource(folder.getRoot(), name, contents);
+	}
+}
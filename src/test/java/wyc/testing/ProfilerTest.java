@@ -0,0 +1,105 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wyc.task.CompileTask;
+import wyc.util.Profiler;
+import wyfs.util.DirectoryRoot;
+
+/**
+ * Check that compiling with a profiler records samples for every phase, file
+ * and declaration.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class ProfilerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() throws IOException {
+		Profiler profiler = compile("A", "type nat is (int x) where x >= 0\nfunction f(nat x) -> (int y):\n    return x\n");
+		Set<String> samples = new HashSet<>();
+		for (Profiler.Sample s : profiler.getSamples()) {
+			samples.add(s.getKind() + " " + s.getPhase() + " " + s.getFile() + " " + s.getDeclaration());
+			assertTrue(s.getWallTime() >= 0);
+		}
+		assertTrue(samples.contains("phase parse null null"));
+		assertTrue(samples.contains("phase type null null"));
+		assertTrue(samples.contains("phase check null null"));
+		assertTrue(samples.contains("file parse A null"));
+		assertTrue(samples.contains("file type A null"));
+		assertTrue(samples.contains("file check A null"));
+		assertTrue(samples.contains("declaration type A nat"));
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		Profiler profiler = compile("A", "function f(int x) -> (int y):\n    return x\n");
+		StringWriter csv = new StringWriter();
+		profiler.writeCSV(csv);
+		String[] lines = csv.toString().split("\n");
+		assertEquals("kind,phase,file,declaration,wall_ns,cpu_ns,allocated_bytes", lines[0]);
+		assertEquals(profiler.getSamples().size() + 1, lines.length);
+		for (String line : lines) {
+			assertEquals(7, line.split(",", -1).length);
+		}
+		StringWriter json = new StringWriter();
+		profiler.writeJSON(json);
+		assertTrue(json.toString().startsWith("{\"samples\": ["));
+		assertTrue(json.toString().contains("\"kind\": \"declaration\""));
+	}
+
+	@Test
+	public void test_03() throws IOException {
+		// Samples are not accumulated across builds
+		Profiler profiler = compile("A", "function f(int x) -> (int y):\n    return x\n");
+		int count = profiler.getSamples().size();
+		write("A", "function f(int x) -> (int y):\n    return x + 1\n");
+		build("A");
+		assertEquals(count, profiler.getSamples().size());
+	}
+
+	private DirectoryRoot root;
+	private CompileTask task;
+
+	private Profiler compile(String name, String contents) throws IOException {
+		write(name, contents);
+		root = CompileTestUtils.createRoot(folder.getRoot());
+		task = CompileTestUtils.createCompileTask(root);
+		Profiler profiler = new Profiler();
+		task.setProfiler(profiler);
+		build(name);
+		return profiler;
+	}
+
+	private void build(String name) throws IOException {
+		CompileTestUtils.build(task, root, root, name);
+	}
+
+	private void write(String name, String contents) throws IOException {
+		CompileTestUtils.writeSource(folder.getRoot(), name, contents);
+	}
+}
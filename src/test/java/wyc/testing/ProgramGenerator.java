@@ -0,0 +1,303 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Generates large Whiley projects, for measuring how the compiler scales with
+ * the size of the program being compiled. A project consists of a number of
+ * modules, each of which imports from the module before it (giving an import
+ * graph as deep as there are modules) and from a few others chosen at random.
+ * Each module declares:
+ * </p>
+ * <ul>
+ * <li>A constrained type, a record type with many fields, a recursive list type
+ * and a union type with many cases (including types imported from other
+ * modules).</li>
+ * <li>Functions over these types, including a recursive function over lists
+ * and functions which discriminate between the cases of the union.</li>
+ * <li>Long functions with contracts, made up from nested loops with invariants
+ * and conditionals, which call functions declared earlier in the module and
+ * imported from other modules.</li>
+ * </ul>
+ * <p>
+ * The programs generated are well-typed and so compile successfully, though
+ * no attempt is made to ensure they verify. The same seed and sizes always
+ * generate the same program.
+ * </p>
+ *
+ * @author David J. Pearce
+ *
+ */
+public class ProgramGenerator {
+	private final Random random;
+	private final int modules;
+	private final int functions;
+	private final int depth;
+	private final int width;
+
+	/**
+	 * Construct a generator for projects of a given size.
+	 *
+	 * @param seed
+	 *            The seed from which all choices are made.
+	 * @param modules
+	 *            The number of modules generated.
+	 * @param functions
+	 *            The number of long functions generated in each module.
+	 * @param depth
+	 *            The depth to which loops are nested in each long function.
+	 * @param width
+	 *            The number of fields in each record type and of cases in
+	 *            each union type, and the number of statements in each loop.
+	 */
+	public ProgramGenerator(long seed, int modules, int functions, int depth, int width) {
+		if (modules < 1 || functions < 1 || depth < 1 || width < 1) {
+			throw new IllegalArgumentException("invalid program size");
+		}
+		this.random = new Random(seed);
+		this.modules = modules;
+		this.functions = functions;
+		this.depth = depth;
+		this.width = width;
+	}
+
+	/**
+	 * Generate the source of every module, in the order they depend on each
+	 * other.
+	 *
+	 * @return A map from the name of each module to its source.
+	 */
+	public Map<String, String> generate() {
+		LinkedHashMap<String, String> sources = new LinkedHashMap<>();
+		for (int i = 0; i != modules; ++i) {
+			sources.put(module(i), generate(i));
+		}
+		return sources;
+	}
+
+	/**
+	 * Generate every module into a given directory.
+	 *
+	 * @param dir
+	 * @return The names of the modules generated.
+	 * @throws IOException
+	 */
+	public List<String> write(File dir) throws IOException {
+		ArrayList<String> names = new ArrayList<>();
+		for (Map.Entry<String, String> e : generate().entrySet()) {
+			try (FileWriter writer = new FileWriter(new File(dir, e.getKey() + ".whiley"))) {
+				writer.write(e.getValue());
+			}
+			names.add(e.getKey());
+		}
+		return names;
+	}
+
+	private String generate(int m) {
+		StringBuilder out = new StringBuilder();
+		// Import from the previous module, and a few others
+		TreeSet<Integer> imports = new TreeSet<>();
+		if (m > 0) {
+			imports.add(m - 1);
+			for (int i = 0; i != 2; ++i) {
+				imports.add(random.nextInt(m));
+			}
+		}
+		for (int i : imports) {
+			out.append("import Rec" + i + " from " + module(i) + "\n");
+			out.append("import loop" + i + "_0 from " + module(i) + "\n");
+		}
+		out.append("\n");
+		// Types
+		out.append("type Nat" + m + " is (int x) where x >= 0\n\n");
+		out.append("type Rec" + m + " is {");
+		for (int i = 0; i != width; ++i) {
+			out.append(i == 0 ? "" : ", ");
+			out.append(field(i) + " " + field(m, i));
+		}
+		out.append("}\n\n");
+		out.append("type List" + m + " is null | {int data, List" + m + " next}\n\n");
+		out.append("type Val" + m + " is int | bool | int[] | List" + m + " | Rec" + m);
+		for (int i : imports) {
+			out.append(" | Rec" + i);
+		}
+		out.append("\n\n");
+		// Functions over these types
+		out.append("function make" + m + "(int x) -> (Rec" + m + " r):\n");
+		out.append("    return {");
+		for (int i = 0; i != width; ++i) {
+			out.append(i == 0 ? "" : ", ");
+			out.append(field(m, i) + ": " + value(i));
+		}
+		out.append("}\n\n");
+		out.append("function sum" + m + "(List" + m + " l) -> (int r)\nensures r >= 0:\n");
+		out.append("    if l is null:\n        return 0\n");
+		out.append("    else if l.data < 0:\n        return sum" + m + "(l.next)\n");
+		out.append("    else:\n        return l.data + sum" + m + "(l.next)\n\n");
+		out.append("function size" + m + "(Val" + m + " v) -> (Nat" + m + " r):\n");
+		out.append("    if v is int:\n        return 1\n");
+		out.append("    else if v is bool:\n        return 2\n");
+		out.append("    else if v is int[]:\n        return |v|\n");
+		out.append("    else if v is List" + m + ":\n        return sum" + m + "(v)\n");
+		for (int i : imports) {
+			out.append("    else if v is Rec" + i + ":\n        return |v." + field(i, 0) + "|\n");
+		}
+		out.append("    else:\n        return |v." + field(m, 0) + "|\n\n");
+		// Long functions
+		for (int f = 0; f != functions; ++f) {
+			out.append("function loop" + m + "_" + f + "(int[] xs, int n) -> (int r)\n");
+			out.append("requires n >= 0\n");
+			out.append("ensures r >= 0:\n");
+			out.append("    int acc = 0\n");
+			loops(out, m, f, imports, 0);
+			out.append("    return acc\n\n");
+		}
+		out.append("public export method test():\n");
+		out.append("    Rec" + m + " rec = make" + m + "(1)\n");
+		out.append("    List" + m + " list = {data: 1, next: {data: 2, next: null}}\n");
+		out.append("    assume size" + m + "(rec) >= 0\n");
+		out.append("    assume sum" + m + "(list) == 3\n");
+		out.append("    assume loop" + m + "_0([1, 2, 3], 2) >= 0\n");
+		return out.toString();
+	}
+
+	/**
+	 * Generate a loop at a given depth of nesting, along with the loops nested
+	 * within it.
+	 *
+	 * @param out
+	 * @param m
+	 *            The module being generated.
+	 * @param f
+	 *            The function being generated.
+	 * @param imports
+	 *            The modules imported by this module.
+	 * @param d
+	 *            The depth of this loop.
+	 */
+	private void loops(StringBuilder out, int m, int f, TreeSet<Integer> imports, int d) {
+		String indent = indent(d + 1);
+		String i = "i" + d;
+		String bound = d == 0 ? "|xs|" : "n";
+		out.append(indent + "int " + i + " = 0\n");
+		out.append(indent + "while " + i + " < " + bound + " where " + i + " >= 0 && acc >= 0:\n");
+		String body = indent(d + 2);
+		for (int s = 0; s != width; ++s) {
+			switch (random.nextInt(4)) {
+			case 0:
+				out.append(body + "acc = acc + " + i + "\n");
+				break;
+			case 1:
+				out.append(body + "if xs[i0] > " + i + ":\n");
+				out.append(body + "    acc = acc + 1\n");
+				out.append(body + "else:\n");
+				out.append(body + "    acc = acc + " + call(m, f, imports, i) + "\n");
+				break;
+			case 2:
+				out.append(body + "int t" + d + "_" + s + " = " + call(m, f, imports, i) + "\n");
+				out.append(body + "acc = acc + t" + d + "_" + s + "\n");
+				break;
+			default:
+				out.append(body + "assert acc >= 0\n");
+			}
+		}
+		if (d + 1 < depth) {
+			loops(out, m, f, imports, d + 1);
+		}
+		out.append(body + i + " = " + i + " + 1\n");
+	}
+
+	/**
+	 * Generate a call to a function which returns a natural number, given a
+	 * variable which holds one.
+	 *
+	 * @param m
+	 * @param f
+	 * @param imports
+	 * @param i
+	 * @return
+	 */
+	private String call(int m, int f, TreeSet<Integer> imports, String i) {
+		int choice = random.nextInt(imports.size() + 2);
+		if (choice == 0 && f > 0) {
+			return "loop" + m + "_" + random.nextInt(f) + "(xs, " + i + ")";
+		} else if (choice < 2) {
+			return "sum" + m + "({data: " + i + ", next: null})";
+		} else {
+			int n = new ArrayList<>(imports).get(choice - 2);
+			return "loop" + n + "_0(xs, " + i + ")";
+		}
+	}
+
+	private static String field(int i) {
+		switch (i % 4) {
+		case 0:
+			return "int[]";
+		case 1:
+			return "int";
+		case 2:
+			return "bool";
+		default:
+			return "int|null";
+		}
+	}
+
+	/**
+	 * Get the name of a given field of a module's record type. These differ
+	 * between modules, such that no two record types are the same.
+	 *
+	 * @param m
+	 * @param i
+	 * @return
+	 */
+	private static String field(int m, int i) {
+		return "f" + i + "_" + m;
+	}
+
+	private static String value(int i) {
+		switch (i % 4) {
+		case 0:
+			return "[x; " + (i + 1) + "]";
+		case 1:
+			return "x + " + i;
+		case 2:
+			return "x > " + i;
+		default:
+			return "null";
+		}
+	}
+
+	private static String indent(int n) {
+		StringBuilder indent = new StringBuilder();
+		for (int i = 0; i != n; ++i) {
+			indent.append("    ");
+		}
+		return indent.toString();
+	}
+
+	private static String module(int i) {
+		return "M" + i;
+	}
+}
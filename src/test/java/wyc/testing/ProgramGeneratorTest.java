@@ -0,0 +1,61 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wyc.util.TestUtils;
+import wycc.util.Pair;
+
+/**
+ * Check that generated programs are the same for the same seed, and compile
+ * successfully whatever the seed.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class ProgramGeneratorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() {
+		assertEquals(new ProgramGenerator(1, 5, 3, 3, 6).generate(), new ProgramGenerator(1, 5, 3, 3, 6).generate());
+		assertNotEquals(new ProgramGenerator(1, 5, 3, 3, 6).generate(),
+				new ProgramGenerator(2, 5, 3, 3, 6).generate());
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		for (long seed = 0; seed != 3; ++seed) {
+			File dir = folder.newFolder();
+			List<String> names = new ProgramGenerator(seed, 6, 3, 3, 6).write(dir);
+			assertEquals(6, names.size());
+			Pair<Boolean, String> result = TestUtils.compile(dir, false, names.toArray(new String[names.size()]));
+			assertTrue(result.second(), result.first());
+			for (String name : names) {
+				assertTrue(new File(dir, name + ".wyil").exists());
+				assertTrue(new File(dir, name + ".wyal").exists());
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wyc.util.SourceWatcher;
+
+/**
+ * Check that changes to source files are noticed, and that a burst of changes
+ * is reported as a single batch.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class SourceWatcherTest {
+	private static final long QUIET = 200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() throws Exception {
+		write("A.whiley");
+		try (SourceWatcher watcher = new SourceWatcher(folder.getRoot())) {
+			write("A.whiley");
+			write("B.whiley");
+			write("notes.txt");
+			assertEquals(set("A", "B"), watcher.await(QUIET));
+		}
+	}
+
+	@Test
+	public void test_02() throws Exception {
+		try (SourceWatcher watcher = new SourceWatcher(folder.getRoot())) {
+			// Files written into a new directory before it is watched
+			new File(folder.getRoot(), "std").mkdir();
+			write("std/math.whiley");
+			assertTrue(watcher.await(QUIET).contains("std/math"));
+			write("std/math.whiley");
+			assertEquals(set("std/math"), watcher.await(QUIET));
+		}
+	}
+
+	private void write(String name) throws IOException {
+		try (FileWriter writer = new FileWriter(new File(folder.getRoot(), name))) {
+			writer.write("// " + System.nanoTime() + "\n");
+		}
+	}
+
+	private static Set<String> set(String... names) {
+		return new HashSet<>(Arrays.asList(names));
+	}
+}
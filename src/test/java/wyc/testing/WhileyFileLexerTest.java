@@ -0,0 +1,130 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+import static wyc.io.WhileyFileLexer.Token.Kind.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.SyntaxError;
+import wyc.Activator;
+import wyc.io.WhileyFileLexer;
+import wyc.io.WhileyFileLexer.PackedTokens;
+import wyc.io.WhileyFileLexer.Token;
+import wyc.lang.WhileyFile;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Check that packed tokens give the same kinds, positions and text as would
+ * otherwise be given, regardless of whether the source is read from disk.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class WhileyFileLexerTest {
+	private static final String SOURCE = "function f(int[] xs) -> (int r):\n" + "    // comment\n"
+			+ "    return |xs| + xs[0..2] \u2264 0x1f /* x */ 'c'\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_01() {
+		PackedTokens tokens = new WhileyFileLexer(SOURCE).scanPacked();
+		Token.Kind[] kinds = { Function, Indent, Identifier, LeftBrace, Int, LeftSquare, RightSquare, Indent,
+				Identifier, RightBrace, Indent, MinusGreater, Indent, LeftBrace, Int, Indent, Identifier,
+				RightBrace, Colon, NewLine, Indent, LineComment, NewLine, Indent, Return, Indent, VerticalBar,
+				Identifier, VerticalBar, Indent, Plus, Indent, Identifier, LeftSquare, IntegerLiteral, DotDot,
+				IntegerLiteral, RightSquare, Indent, LessEquals, Indent, HexLiteral, Indent, BlockComment, Indent,
+				CharLiteral, NewLine };
+		assertEquals(kinds.length, tokens.size());
+		int end = 0;
+		for (int i = 0; i != kinds.length; ++i) {
+			assertEquals(kinds[i], tokens.getKind(i));
+			// Tokens are contiguous and their text is as given in the source
+			assertEquals(end, tokens.getStart(i));
+			end = tokens.getEnd(i);
+			assertEquals(SOURCE.substring(tokens.getStart(i), end), tokens.getText(i));
+			Token token = tokens.get(i);
+			assertEquals(tokens.getStart(i), token.start);
+			assertEquals(end - 1, token.end());
+			assertTrue(tokens.hasText(i, token.text));
+		}
+		assertEquals(SOURCE.length(), end);
+		// Text of keywords is shared
+		assertSame(tokens.getText(0), tokens.getText(0));
+		assertEquals("\u2264", tokens.getText(39));
+	}
+
+	@Test
+	public void test_02() throws IOException {
+		// Reading from disk gives the same tokens
+		try (FileWriter writer = new FileWriter(new File(folder.getRoot(), "A.whiley"))) {
+			// NOTE: the default charset may not support unicode operators
+			writer.write(SOURCE.replace('\u2264', '<'));
+		}
+		DirectoryRoot root = new DirectoryRoot(folder.getRoot(), new Activator.Registry());
+		List<Token> expected = new WhileyFileLexer(SOURCE.replace('\u2264', '<')).scan();
+		List<Token> actual = new WhileyFileLexer(root.get(Trie.fromString("A"), WhileyFile.ContentType)).scan();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i != expected.size(); ++i) {
+			assertEquals(expected.get(i).kind, actual.get(i).kind);
+			assertEquals(expected.get(i).text, actual.get(i).text);
+			assertEquals(expected.get(i).start, actual.get(i).start);
+		}
+	}
+
+	@Test
+	public void test_03() {
+		// A sub-list is a view of the same packed tokens
+		PackedTokens tokens = new WhileyFileLexer(SOURCE).scanPacked();
+		PackedTokens view = tokens.subList(24, 30);
+		assertEquals(6, view.size());
+		for (int i = 0; i != view.size(); ++i) {
+			assertEquals(tokens.getKind(24 + i), view.getKind(i));
+			assertEquals(tokens.getStart(24 + i), view.getStart(i));
+			assertEquals(tokens.getText(24 + i), view.getText(i));
+		}
+		assertTrue(view.hasText(0, "return"));
+		assertFalse(view.hasText(0, "retur"));
+		assertEquals(VerticalBar, view.subList(1, 3).getKind(1));
+		try {
+			view.getKind(6);
+			fail("expected index out of bounds");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void test_04() {
+		// Unterminated literals are reported rather than overrun
+		for (String source : new String[] { "x = '", "x = '\\", "x = 'ab", "x = \"abc" }) {
+			try {
+				new WhileyFileLexer(source).scanPacked();
+				fail("expected syntax error for " + source);
+			} catch (SyntaxError e) {
+				assertTrue(e.getMessage().startsWith("unexpected end-of-"));
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyc.testing;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import wybs.lang.NameResolver;
+import wybs.util.AbstractCompilationUnit.Identifier;
+import wybs.util.AbstractCompilationUnit.Name;
+import wybs.util.StdProject;
+import wyc.lang.WhileyFile;
+import wyc.lang.WhileyFile.Decl;
+import wyc.util.TestUtils;
+import wyc.util.WhileyFileResolver;
+import wyfs.util.DirectoryRoot;
+import wyfs.util.Trie;
+
+/**
+ * Check that names are resolved against the current contents of a file, even
+ * when that file is modified after names have been resolved within it.
+ *
+ * @author David J. Pearce
+ *
+ */
+public class WhileyFileResolverTest {
+	private static final String A = "function f(int x) -> (int y):\n    return x\n\n"
+			+ "function g(int x) -> (int y):\n    return x\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DirectoryRoot root;
+	private WhileyFile file;
+	private WhileyFileResolver resolver;
+
+	@Before
+	public void setup() throws IOException {
+		CompileTestUtils.writeSource(folder.getRoot(), "A", A);
+		root = CompileTestUtils.createRoot(folder.getRoot());
+		file = root.get(Trie.fromString("A"), WhileyFile.ContentType).read();
+		resolver = new WhileyFileResolver(new StdProject(Collections.singletonList(root)));
+	}
+
+	@Test
+	public void test_01() throws IOException, NameResolver.ResolutionError {
+		// Names appended after a lookup are resolved
+		Decl.Function f = (Decl.Function) file.getDeclarations().get(0);
+		assertSame(f, resolver.resolveExactly(name("f"), Decl.Function.class));
+		CompileTestUtils.writeSource(folder.getRoot(), "B", "function h(int x) -> (int y):\n    return x\n");
+		root.refresh();
+		WhileyFile other = root.get(Trie.fromString("B"), WhileyFile.ContentType).read();
+		int offset = file.append(other);
+		Decl h = other.getDeclarations().get(0);
+		assertSame(file.getSyntacticItem(offset + h.getIndex()), resolver.resolveExactly(name("h"), Decl.Function.class));
+	}
+
+	@Test
+	public void test_02() throws NameResolver.ResolutionError {
+		// Names replaced after a lookup are no longer resolved
+		Decl.Function f = (Decl.Function) file.getDeclarations().get(0);
+		assertSame(f, resolver.resolveExactly(name("f"), Decl.Function.class));
+		f.setOperand(1, file.replace(f.getName().getIndex(), new Identifier("h")));
+		assertSame(f, resolver.resolveExactly(name("h"), Decl.Function.class));
+		try {
+			resolver.resolveExactly(name("f"), Decl.Function.class);
+			fail("expected name not to be found");
+		} catch (NameResolver.NameNotFoundError e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void test_03() throws Exception {
+		// Names resolved concurrently from another module all find the same
+		// declaration, since that module is only read once.
+		assertTrue(TestUtils.compile(folder.getRoot(), false, "A").first());
+		CompileTestUtils.writeSource(folder.getRoot(), "B", "function h(int x) -> (int y):\n    return x\n");
+		root.refresh();
+		resolver = new WhileyFileResolver(new StdProject(Collections.singletonList(root)));
+		WhileyFile other = root.get(Trie.fromString("B"), WhileyFile.ContentType).read();
+		ArrayList<Callable<Decl.Function>> tasks = new ArrayList<>();
+		for (int i = 0; i != 8; ++i) {
+			Name name = other.allocate(new Name(new Identifier("A"), new Identifier("f")));
+			tasks.add(() -> resolver.resolveExactly(name, Decl.Function.class));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			List<Future<Decl.Function>> results = executor.invokeAll(tasks);
+			Decl.Function f = results.get(0).get();
+			for (Future<Decl.Function> result : results) {
+				assertSame(f, result.get());
+			}
+			// Preloading does not read the module again
+			resolver.preload(Trie.fromString("A"));
+			assertSame(f, resolver.resolveExactly(other.allocate(new Name(new Identifier("A"), new Identifier("f"))),
+					Decl.Function.class));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Name name(String name) {
+		return file.allocate(new Name(new Identifier(name)));
+	}
+}
@@ -0,0 +1,87 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http:www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyil.testing;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import wyil.interpreter.ConcreteSemantics;
+import wyil.interpreter.ConcreteSemantics.RValue;
+
+public class ArrayValueTest {
+	private static final ConcreteSemantics semantics = new ConcreteSemantics();
+
+	@Test
+	public void test_01() {
+		// Writing leaves the original unchanged
+		RValue.Array xs = array(1, 2, 3);
+		RValue.Array ys = xs.write(semantics.Int(0), semantics.Int(5));
+		assertEquals(array(1, 2, 3), xs);
+		assertEquals(array(5, 2, 3), ys);
+	}
+
+	@Test
+	public void test_02() {
+		// Alternate between old and new versions
+		RValue.Array xs = array(1, 2, 3);
+		RValue.Array ys = xs.write(semantics.Int(1), semantics.Int(7));
+		RValue.Array zs = ys.write(semantics.Int(2), semantics.Int(9));
+		assertEquals(semantics.Int(2), xs.read(semantics.Int(1)));
+		assertEquals(semantics.Int(9), zs.read(semantics.Int(2)));
+		assertEquals(semantics.Int(7), ys.read(semantics.Int(1)));
+		assertEquals(semantics.Int(3), ys.read(semantics.Int(2)));
+		assertEquals(semantics.Int(3), xs.read(semantics.Int(2)));
+	}
+
+	@Test
+	public void test_03() {
+		// Comparing versions of the same array
+		RValue.Array xs = array(1, 2, 3);
+		RValue.Array ys = xs.write(semantics.Int(0), semantics.Int(1));
+		RValue.Array zs = ys.write(semantics.Int(0), semantics.Int(4));
+		assertEquals(xs, ys);
+		assertEquals(ys, xs);
+		assertNotEquals(xs, zs);
+		assertNotEquals(zs, ys);
+		assertEquals(xs.hashCode(), ys.hashCode());
+	}
+
+	@Test
+	public void test_04() {
+		// Writing an older version branches off
+		RValue.Array xs = array(1, 2, 3);
+		RValue.Array ys = xs.write(semantics.Int(0), semantics.Int(4));
+		RValue.Array zs = xs.write(semantics.Int(0), semantics.Int(5));
+		assertEquals(array(1, 2, 3), xs);
+		assertEquals(array(4, 2, 3), ys);
+		assertEquals(array(5, 2, 3), zs);
+	}
+
+	@Test
+	public void test_05() {
+		// Elements returned are a snapshot
+		RValue.Array xs = array(1, 2, 3);
+		RValue[] elements = xs.getElements();
+		xs.write(semantics.Int(0), semantics.Int(4));
+		assertEquals(semantics.Int(1), elements[0]);
+	}
+
+	private static RValue.Array array(int... values) {
+		RValue[] elements = new RValue[values.length];
+		for (int i = 0; i != values.length; ++i) {
+			elements[i] = semantics.Int(values[i]);
+		}
+		return semantics.Array(elements);
+	}
+}
@@ -0,0 +1,87 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http:www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyil.testing;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+
+import wyil.interpreter.ConcreteSemantics.RValue;
+
+public class IntegerValueTest {
+	private static final long MAX = Long.MAX_VALUE;
+	private static final long MIN = Long.MIN_VALUE;
+
+	@Test public void test_01() { checkAdd(1, 2); }
+	@Test public void test_02() { checkAdd(MAX, 1); }
+	@Test public void test_03() { checkAdd(MIN, -1); }
+	@Test public void test_04() { checkSubtract(MIN, 1); }
+	@Test public void test_05() { checkSubtract(MAX, -1); }
+	@Test public void test_06() { checkSubtract(-5, 7); }
+	@Test public void test_07() { checkMultiply(3, -7); }
+	@Test public void test_08() { checkMultiply(MAX, 2); }
+	@Test public void test_09() { checkMultiply(MIN, -1); }
+	@Test public void test_10() { checkMultiply(1L << 31, 1L << 31); }
+	@Test public void test_11() { checkDivide(-7, 2); }
+	@Test public void test_12() { checkDivide(MIN, -1); }
+	@Test public void test_13() { checkRemainder(-7, 2); }
+	@Test public void test_14() { checkRemainder(MIN, -1); }
+
+	@Test
+	public void test_15() {
+		// Negation of the smallest long overflows
+		assertEquals(BigInteger.valueOf(MIN).negate(), RValue.Int.valueOf(MIN).negate().bigValue());
+	}
+
+	@Test
+	public void test_16() {
+		// Promoted values which fit within a long are demoted again
+		RValue.Int big = RValue.Int.valueOf(MAX).add(RValue.Int.valueOf(1));
+		RValue.Int back = big.subtract(RValue.Int.valueOf(1));
+		assertEquals(RValue.Int.valueOf(MAX), back);
+		assertEquals(RValue.Int.valueOf(MAX).hashCode(), back.hashCode());
+	}
+
+	@Test
+	public void test_17() {
+		// Small values are shared
+		assertSame(RValue.Int.valueOf(10), RValue.Int.valueOf(3).add(RValue.Int.valueOf(7)));
+	}
+
+	private static void checkAdd(long lhs, long rhs) {
+		BigInteger expected = BigInteger.valueOf(lhs).add(BigInteger.valueOf(rhs));
+		assertEquals(expected, RValue.Int.valueOf(lhs).add(RValue.Int.valueOf(rhs)).bigValue());
+	}
+
+	private static void checkSubtract(long lhs, long rhs) {
+		BigInteger expected = BigInteger.valueOf(lhs).subtract(BigInteger.valueOf(rhs));
+		assertEquals(expected, RValue.Int.valueOf(lhs).subtract(RValue.Int.valueOf(rhs)).bigValue());
+	}
+
+	private static void checkMultiply(long lhs, long rhs) {
+		BigInteger expected = BigInteger.valueOf(lhs).multiply(BigInteger.valueOf(rhs));
+		assertEquals(expected, RValue.Int.valueOf(lhs).multiply(RValue.Int.valueOf(rhs)).bigValue());
+	}
+
+	private static void checkDivide(long lhs, long rhs) {
+		BigInteger expected = BigInteger.valueOf(lhs).divide(BigInteger.valueOf(rhs));
+		assertEquals(expected, RValue.Int.valueOf(lhs).divide(RValue.Int.valueOf(rhs)).bigValue());
+	}
+
+	private static void checkRemainder(long lhs, long rhs) {
+		BigInteger expected = BigInteger.valueOf(lhs).remainder(BigInteger.valueOf(rhs));
+		assertEquals(expected, RValue.Int.valueOf(lhs).remainder(RValue.Int.valueOf(rhs)).bigValue());
+	}
+}
@@ -0,0 +1,72 @@
+// Copyright 2011 The Whiley Project Developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http:www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package wyil.testing;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import wybs.lang.NameResolver;
+import static wyc.lang.WhileyFile.Type;
+
+import wyc.util.TestUtils;
+import wyil.type.subtyping.RelaxedTypeEmptinessTest;
+import wyil.type.subtyping.SubtypeCache;
+import wyil.type.subtyping.SubtypeOperator;
+
+public class SubtypeCacheTest {
+	@Test public void test_01() { checkCached("int|null", "int", true); }
+	@Test public void test_02() { checkCached("int", "int|null", false); }
+	@Test public void test_03() { checkCached("int[]|int", "int[]|int", true); }
+	@Test public void test_04() { checkCached("int[]", "int|null", false); }
+
+	@Test
+	public void test_05() throws NameResolver.ResolutionError {
+		// Structurally identical types parsed separately should share entries
+		SubtypeCache cache = new SubtypeCache();
+		SubtypeOperator subtypeOperator = new SubtypeOperator(null, new RelaxedTypeEmptinessTest(null), cache);
+		assertTrue(subtypeOperator.isSubtype(TestUtils.fromString("int|null"), TestUtils.fromString("null"), null));
+		long misses = cache.getMisses();
+		assertTrue(subtypeOperator.isSubtype(TestUtils.fromString("int|null"), TestUtils.fromString("null"), null));
+		assertEquals(misses, cache.getMisses());
+	}
+
+	@Test
+	public void test_06() throws NameResolver.ResolutionError {
+		// Cache must respect its capacity
+		SubtypeCache cache = new SubtypeCache(1);
+		SubtypeOperator subtypeOperator = new SubtypeOperator(null, new RelaxedTypeEmptinessTest(null), cache);
+		assertTrue(subtypeOperator.isSubtype(TestUtils.fromString("int"), TestUtils.fromString("int"), null));
+		assertFalse(subtypeOperator.isSubtype(TestUtils.fromString("int"), TestUtils.fromString("null"), null));
+		assertEquals(1, cache.size());
+	}
+
+	private void checkCached(String from, String to, boolean expected) {
+		NameResolver resolver = null;
+		SubtypeCache cache = new SubtypeCache();
+		SubtypeOperator subtypeOperator = new SubtypeOperator(resolver,
+				new RelaxedTypeEmptinessTest(resolver), cache);
+		Type ft = TestUtils.fromString(from);
+		Type tt = TestUtils.fromString(to);
+		try {
+			assertEquals(expected, subtypeOperator.isSubtype(ft, tt, null));
+			long misses = cache.getMisses();
+			long hits = cache.getHits();
+			assertEquals(expected, subtypeOperator.isSubtype(ft, tt, null));
+			assertEquals(misses, cache.getMisses());
+			assertTrue(cache.getHits() > hits);
+		} catch(NameResolver.ResolutionError e) {
+			throw new RuntimeException(e);
+		}
+	}
+}